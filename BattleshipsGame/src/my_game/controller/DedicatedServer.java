@@ -0,0 +1,113 @@
+package my_game.controller;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import my_game.networking.NetworkEntity;
+import my_game.networking.server.Constants;
+import my_game.networking.server.NioGameServer;
+import my_game.util.Misc;
+
+/**
+ * Runs matches on a machine without a display. Players connect with the
+ * usual client, log in with their hello and are paired by the matchmaking
+ * of the GameLobby of a NioGameServer. Every full session is hosted by a HostedMatch: reef
+ * voting, then the authoritative game state. Neither the GUI nor any asset
+ * is loaded.
+ * <p>
+ * Usage: DedicatedServer [name [port [io threads]]]
+ */
+public class DedicatedServer implements GameLobby.LobbyListener {
+
+    private final NioGameServer server;
+    private final GameLobby lobby;
+    /** The match of every full session, by session id. */
+    private final ConcurrentHashMap<Integer, HostedMatch> matches = new ConcurrentHashMap<Integer, HostedMatch>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public DedicatedServer(String name, int port, int ioThreads) {
+        this.lobby = new GameLobby();
+        this.server = new NioGameServer(name, port, ioThreads, lobby);
+        lobby.addLobbyListener(this);
+    }
+
+    /**
+     * Starts accepting players.
+     * @throws IOException If the port can not be bound.
+     */
+    public void start() throws IOException {
+        server.start();
+        lobby.startMatchmaking();
+    }
+
+    public void stop() {
+        lobby.stopMatchmaking();
+        server.stop();
+        stopped.countDown();
+    }
+
+    /**
+     * Waits until the server is stopped, the I/O threads of the server do
+     * not keep the JVM running.
+     * @throws InterruptedException
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * @return The number of matches being played or voted for.
+     */
+    public int getMatchCount() {
+        return matches.size();
+    }
+
+    public GameLobby getLobby() {
+        return lobby;
+    }
+
+    public void onPlayerJoined(MatchSession session, NetworkEntity player) {
+        if(session.isFull()) {
+            //the players of a paired session join it together, the match is started once
+            HostedMatch match = new HostedMatch(session, server.getName() + " #" + session.getId());
+            if(matches.putIfAbsent(session.getId(), match) == null) {
+                match.start();
+            }
+        }
+    }
+
+    public void onPlayerLeft(MatchSession session, NetworkEntity player) {
+        HostedMatch match = matches.get(session.getId());
+        if(match != null) {
+            match.playerLeft(player);
+        }
+        if(session.getPlayerCount() == 0) {
+            matches.remove(session.getId());
+        }
+    }
+
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        String name = (args.length > 0) ? args[0] : "DedicatedServer";
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : Constants.SERVER_PORT;
+        int ioThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Constants.IO_THREADS;
+        final DedicatedServer dedicated = new DedicatedServer(name, port, ioThreads);
+        try {
+            dedicated.start();
+        } catch (IOException ex) {
+            Misc.log("The server can not be started: " + ex.getMessage());
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                dedicated.stop();
+            }
+        }));
+        Misc.log(String.format("Dedicated server %s started in %.0fms.", name, (System.nanoTime() - start) / 1e6));
+        try {
+            dedicated.awaitStop();
+        } catch (InterruptedException ex) {
+            dedicated.stop();
+        }
+    }
+}
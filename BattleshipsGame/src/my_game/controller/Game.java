@@ -10,6 +10,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import my_game.gui.GameGUI;
 import my_game.gui.GameGUI.Action;
+import my_game.models.game_components.ActionCommand;
 import my_game.models.game_components.CoralReef;
 import my_game.models.game_components.GameObject;
 import my_game.models.game_components.GameState;
@@ -18,11 +19,11 @@ import my_game.models.game_components.Map;
 import my_game.models.game_components.MoveDescription;
 import my_game.models.game_components.Ship;
 import my_game.models.game_components.ShipUnit;
+import my_game.models.game_components.StateSnapshot;
 import my_game.models.player_components.Message;
 import my_game.models.player_components.Player;
-import my_game.models.ships_impl.KamikazeBoat;
 import my_game.models.ships_impl.MineLayer;
-import my_game.models.ships_impl.RadarBoat;
+import my_game.networking.Heartbeat;
 import my_game.networking.NetEntityListener;
 import my_game.networking.NetworkEntity;
 import my_game.util.GameException;
@@ -55,6 +56,8 @@ public class Game implements GameGUI.GameGuiListener {
     private GameState gameState, receivedGameState;
     
     private boolean receivedNewGamestate = false;
+    /** Set when the connection to the opponent is lost, no game state will be received anymore. */
+    private boolean peerDisconnected = false;
     
     /** The player type is a flag indicating whether the player running the instance
      * of this Game object is the host of the game, or a client connected to the host. */
@@ -73,7 +76,6 @@ public class Game implements GameGUI.GameGuiListener {
     private ArrayList<Vector2> weaponHighlight;
     //////*************************************
     private boolean awaitingInput, hasTurn, enemyShipSelectionAllowed;
-    private boolean playAnimation;
     private Vector2 input;
     
     public Game(Player player, Player opponent, CoralReef reef, NetworkEntity net, Game.PlayerType playerType, String name) {
@@ -125,10 +127,11 @@ public class Game implements GameGUI.GameGuiListener {
             net.addNetListener(cListener);
             
             System.out.println("Client will now wait to receive game state.");
-            //You are a client. Wait to receive a game state from server
-            this.playerIndex = 1;
+            //You are a client. Wait to receive a game state from server, 
+            //which tells the index of this player
+            this.playerIndex = -1;
             synchronized(player) {
-                while(!receivedNewGamestate) {
+                while(!receivedNewGamestate && !peerDisconnected) {
                     try {
                         player.wait();
                     } catch (InterruptedException ex) {
@@ -136,10 +139,22 @@ public class Game implements GameGUI.GameGuiListener {
                     }
                 }
             }
+            if(!receivedNewGamestate) {
+                Misc.log("Connection to the host lost before receiving a game state.");
+                return;
+            }
             System.out.println("Client received a game state.");
             this.gameState = receivedGameState;
             receivedNewGamestate = false;
             
+            //the player of a host is player0, but a dedicated server may seat this player first
+            if(gameState.getPlayer(0).getUsername().equals(player.getUsername())) {
+                this.playerIndex = 0;
+            } else {
+                this.playerIndex = 1;
+            }
+            gameState.setPlayer(playerIndex, player);
+            
             startGame();
         }
     } 
@@ -189,7 +204,7 @@ public class Game implements GameGUI.GameGuiListener {
             System.out.println("Client will now wait to receive game state.");
             //You are a client. Wait to receive a game state from server
             synchronized(player) {
-                while(!receivedNewGamestate) {
+                while(!receivedNewGamestate && !peerDisconnected) {
                     try {
                         player.wait();
                     } catch (InterruptedException ex) {
@@ -197,6 +212,10 @@ public class Game implements GameGUI.GameGuiListener {
                     }
                 }
             }
+            if(!receivedNewGamestate) {
+                Misc.log("Connection to the host lost before receiving a game state.");
+                return;
+            }
             System.out.println("Client received a game state.");
             this.gameState = receivedGameState;
             receivedNewGamestate = false;
@@ -232,6 +251,14 @@ public class Game implements GameGUI.GameGuiListener {
             throw new UnsupportedOperationException("Not supported yet.");
         }
 
+        public void onDisconnected() {
+            peerDisconnected();
+        }
+
+        public void onActionReceive(ActionCommand action, int checksum) {
+            actionReceived(action, checksum);
+        }
+
         public void onGameStateReceive(GameState gs) {
             //use player as a common synchronization object
             synchronized(player) {
@@ -264,6 +291,14 @@ public class Game implements GameGUI.GameGuiListener {
             throw new UnsupportedOperationException("Not supported yet.");
         }
 
+        public void onDisconnected() {
+            peerDisconnected();
+        }
+
+        public void onActionReceive(ActionCommand action, int checksum) {
+            actionReceived(action, checksum);
+        }
+
         public void onGameStateReceive(GameState gs) {
             //use player as a common synchronization object
             synchronized(player) {
@@ -329,7 +364,7 @@ public class Game implements GameGUI.GameGuiListener {
     @Override
     public void onMouseClick(int x, int y) {
         //if it's the player's turn and there is a ship under the mouse cursor, select the ship
-        Vector2 position = new Vector2(x, y);
+        Vector2 position = Vector2.of(x, y);
         if(!hasTurn) {
             //do nothing, it is not the turn of this player
         } else if(!awaitingInput && gameState.getMap().isShip(position) && gui.isVisible(x, y)) {
@@ -354,7 +389,7 @@ public class Game implements GameGUI.GameGuiListener {
             }
         } else if (awaitingInput) {
             synchronized(this) {
-                input = new Vector2(position);
+                input = position;
                 this.notifyAll();
                 //check if the player clicked on a new ship
                 if(gui.isVisible(x, y) && gameState.getMap().isShip(position)) {
@@ -456,12 +491,10 @@ public class Game implements GameGUI.GameGuiListener {
                         interruptPreviousActions();
                         t = new Thread(new Runnable() {
                             public void run() {
-                                if(gui.longRadarActivated) {
-                                    ((RadarBoat) selectedShip).toggleRadar();
-                                        gameState.getMap().updateRadarVisibilityArrays();
-                                        clearGUI();
-                                        playAnimation = false;
-                                        endTurn();
+                                if(gui.longRadarActivated
+                                        && takeAction(new ActionCommand(Action.LongRadar, selectedShip, null))) {
+                                    clearGUI();
+                                    endTurn();
                                 }
                             }
                         });
@@ -480,7 +513,7 @@ public class Game implements GameGUI.GameGuiListener {
                     break;
                     case EndTurn:
                         interruptPreviousActions();
-                        endTurn();
+                        passTurn();
                         break;
                     case Mine:
                         interruptPreviousActions();
@@ -499,7 +532,7 @@ public class Game implements GameGUI.GameGuiListener {
                 }
             } else if(action.equals(Action.EndTurn)) {
                     interruptPreviousActions();
-                    endTurn();
+                    passTurn();
             }
         }
     }
@@ -560,10 +593,12 @@ public class Game implements GameGUI.GameGuiListener {
         if(gameState.getPhase().equals(GamePhase.PlayerTurns)) {
             while(!gameState.gameOver()) {
                 startTurn();
-                waitForGameState();
-                //TODO for now we are simply assigning the game state as it is received
-                // but in future check for consistency and consider the server's game
-                //state as the primary one
+                if(!waitForGameState()) {
+                    connectionLost();
+                    return;
+                }
+                //the received state is either this state with the opponent's actions
+                //applied, or the host's state if the two states went apart
                 gameState = receivedGameState;
                 receivedNewGamestate = false;
                 if(gameState.previousAction == null) {
@@ -620,13 +655,19 @@ public class Game implements GameGUI.GameGuiListener {
             //game state from the server
             sendGameState();
             //wait the server's finalized copy
-            waitForGameState();
+            if(!waitForGameState()) {
+                connectionLost();
+                return;
+            }
             //set the received game state 
             this.gameState = receivedGameState;
             receivedNewGamestate = false;
         } else {
             //this is the server, wait for the client's state
-            waitForGameState();
+            if(!waitForGameState()) {
+                connectionLost();
+                return;
+            }
             receivedNewGamestate = false;
             //now we've received a new gamestate from the other party; merge with 
             //the current gamestate
@@ -678,24 +719,41 @@ public class Game implements GameGUI.GameGuiListener {
         } else {
             hasTurn = false;
         }
-        playAnimation = false;
     }
     
+    /**
+     * Applies an action of this player to the game state and sends it to the
+     * other player, who applies it on his side.
+     * @param action
+     * @return False if the action is not valid, in which case nothing was done.
+     */
+    private boolean takeAction(ActionCommand action) {
+        if(!gameState.applyAction(action)) {
+            Misc.log("Action not valid: " + action);
+            return false;
+        }
+        net.sendAction(action, gameState);
+        return true;
+    }
+    
+    /**
+     * Ends the turn of this player without taking an action.
+     */
+    private void passTurn() {
+        if(takeAction(ActionCommand.endTurn())) {
+            endTurn();
+        }
+    }
+    
+    /**
+     * Updates the gui once an action has ended the turn of this player.
+     */
     private void endTurn() {
-        //do a sinked ship test
-        gameState.sinkShips();
-        if(playAnimation) {
+        if(gameState.previousAction != null) {
             gui.updateGameState(gameState);
         } else {
             gui.drawGameState(gameState);
         }
-        //set turn to next player
-        gameState.nextTurn();
-        if(!playAnimation) {
-            gameState.previousAction = null;
-        }
-        //send the game state
-        sendGameState();
         //disable buttons
         gui.setAllButtonsEnabled(false);
         selectedShip = null;
@@ -705,8 +763,6 @@ public class Game implements GameGUI.GameGuiListener {
         hasTurn = false;
         //TODO insert other stuff to do at the end of a turn
     }
-    /** Used to keep track of how many time the kamikaze moved. */
-    private boolean kamikaze = true;
     
     public void moveAction(Ship s){
         //gather the available move positions for the specified ship
@@ -721,29 +777,16 @@ public class Game implements GameGUI.GameGuiListener {
                 awaitingInput = false;
                 
                 //check if the result is acceptable
-                if(input != null && gameState.moveShip(s, input, moveHighlight)) {
-                    //action successfully executed
-                    Message m = new Message("Ship moved to new position " + input + ".", Message.MessageType.Game, player);
-                    gameState.addMessage(m);
+                if(input != null && takeAction(new ActionCommand(Action.Move, s, input))) {
                     //clear up the gui
                     clearGUI();
-                    //draw the movement animation by calling the update method in gui
-                    playAnimation = true;
-                    
-                    if(s.getShipType().equals(Ship.ShipType.KamikazeBoat) && kamikaze) {
-                        kamikaze = false;
+                    if(gameState.getCurrentPlayer().equals(player)) {
+                        //a kamikaze boat moves a second time in the same turn
                         gui.setActionButtonsEnabled(false);
-                        sendGameState();
                         moveAction(s);
                     } else {
-                        kamikaze = true;
-                        if(suicideActivated) {
-                            suicideActivated = false;
-                            gameState.getMap().kamAttack(s);
-                        }
                         endTurn();
                     }
-                    
                 }
             } catch (InterruptedException ex) {
                 Logger.getLogger(Game.class.getName()).log(Level.SEVERE, null, ex);
@@ -763,13 +806,9 @@ public class Game implements GameGUI.GameGuiListener {
                 this.wait();
                 awaitingInput = false;
 
-                if(input != null && gameState.getMap().turnShip(s, input, turnHighlight)) {
-                    //action successfully executed
-                    Message m = new Message("Ship turned to new position " + input + ".", Message.MessageType.Game, player);
-                    gameState.addMessage(m);
+                if(input != null && takeAction(new ActionCommand(Action.Turn, s, input))) {
                     //clear up the gui
                     clearGUI();
-                    playAnimation = false;
                     endTurn();
                 }
             } catch (InterruptedException ex) {
@@ -779,10 +818,7 @@ public class Game implements GameGUI.GameGuiListener {
     }
             
     private void cannonAttackAction(Ship s) {
-        //need to be called on the map object.
         weaponHighlight = s.getCannonPositions();
-
-        // TO DO: pass these positions to GUI and get user's selection in Vector2 newPosition)
         gui.highlightPositions(weaponHighlight);
        
         synchronized(this) {
@@ -791,28 +827,9 @@ public class Game implements GameGUI.GameGuiListener {
                 this.wait();
                 awaitingInput = false;
                 if(input != null) {
-                    //check if the result is acceptable
-                    boolean found = false;
-                    for(Vector2 v: weaponHighlight) {
-                        if(v.equals(input)) {
-                            found = true;
-                        }
-                    }
-
-                    GameObject targetHit = gameState.cannonAttack(s, input);
-                    if(targetHit != null && found) {
-                        Message m = new Message("Cannon impact at coordinates: " + gameState.getMap().objectCoordinates(targetHit), Message.MessageType.Game, null);
-                        //Message m = new Message("Cannon impact at : " + ((ShipUnit) targetHit).unitArmour + " " + ((ShipUnit) targetHit).damageLevel, Message.MessageType.Game, null);
-                        gameState.addMessage(m);
-                        //clear up the gui
-                        clearGUI();
-                        playAnimation = false;
-                        endTurn();
-                    } else if(!found) {
-                        clearGUI();
-                    } else {
-                        Misc.log("No hit.");
-                        clearGUI();
+                    clearGUI();
+                    //the attack is only taken if the target is in range
+                    if(takeAction(new ActionCommand(Action.CannonAttack, s, input))) {
                         endTurn();
                     }
                 }
@@ -824,25 +841,8 @@ public class Game implements GameGUI.GameGuiListener {
     
     
     private void torpedoAttackAction(Ship s) {
-        //get the direction of the ship
-        Vector2 direction = new Vector2(s.getPosition());
-        direction.sub(s.getShipUnits()[1].getPosition());   //by subtracting a ship unit's position from the bow position we get a vector in the direction of the ship
-        //normalize direction
-        if(direction.x != 0) {
-            direction.x = direction.x / Math.abs(direction.x);
-        }
-        if(direction.y != 0) {
-            direction.y = direction.y / Math.abs(direction.y);
-        }
-        
-        ArrayList<Vector2> highlight = new ArrayList<Vector2>();
-        Vector2 bow = s.getPosition();
-        for(int i = 0; i < 10; i++) {
-            highlight.add(new Vector2(bow.x + ((i + 1) * direction.x), bow.y + ((i + 1) * direction.y)));
-            Misc.log(highlight.get(i).toString());
-        }
-        // pass these positions to GUI
-        gui.highlightPositions(highlight);
+        // pass the positions in front of the ship to GUI
+        gui.highlightPositions(GameState.getTorpedoPositions(s));
        
         synchronized(this) {
             try {
@@ -850,28 +850,10 @@ public class Game implements GameGUI.GameGuiListener {
                 this.wait();
                 awaitingInput = false;
                 if(input != null) {
-                    //check if the result is acceptable
-                    boolean found = false;
-                    for(Vector2 v: highlight) {
-                        if(v.equals(input)) {
-                            found = true;
-                        }
-                    }
-                    
-                    if(!found) {
-                        Misc.log("Not found.");
-                        clearGUI();
-                        return;
-                    }
-                    Misc.log("Proceding to shoot torpedo.");
-                    gameState.getMap().torpedoAttack(s, input);
-                    
-                    Message m = new Message("Torpedo fired.", Message.MessageType.Game, this.player);
-                    gameState.addMessage(m);
-                    gameState.layMine(s, input);
                     clearGUI();
-                    playAnimation = false;
-                    endTurn();
+                    if(takeAction(new ActionCommand(Action.TorpedoAttack, s, input))) {
+                        endTurn();
+                    }
                 }
             } catch (InterruptedException ex) {
                 Logger.getLogger(Game.class.getName()).log(Level.SEVERE, null, ex);
@@ -889,19 +871,97 @@ public class Game implements GameGUI.GameGuiListener {
         
     /**
      * Blocks the current thread until a game state is received.
+     * @return False if the connection to the opponent was lost instead.
      */
-    private void waitForGameState() {
+    private boolean waitForGameState() {
         synchronized(player) {
             try {
-                while(!receivedNewGamestate || receivedGameState == null) {
+                while((!receivedNewGamestate || receivedGameState == null) && !peerDisconnected) {
                     player.wait();
                 }
             } catch(InterruptedException e) {
                 e.printStackTrace();
             }
+            return receivedNewGamestate && receivedGameState != null;
+        }
+    }
+    
+    /**
+     * Applies an action of the opponent to the game state and wakes up the 
+     * threads waiting for a game state. An action which is not valid is
+     * rejected. A valid action which does not lead to the opponent's state
+     * is kept, but the two states went apart: the host sends its own state
+     * to the client, and a client asks the host for its state.
+     * @param action
+     * @param checksum Checksum of the opponent's state after the action, 0 if unknown.
+     */
+    private void actionReceived(ActionCommand action, int checksum) {
+        synchronized(player) {
+            int sender = gameState.getPlayerTurn();
+            //a client under fog of war sends the checksum of the view it had
+            boolean[][] visible = gameState.getMap().getVisibility(sender).toArray();
+            boolean applied = !gameState.getCurrentPlayer().equals(player) && gameState.applyAction(action);
+            boolean consistent = applied;
+            if(applied && checksum != 0) {
+                try {
+                    consistent = StateSnapshot.matches(gameState, sender, visible, checksum);
+                } catch(IllegalStateException ex) {
+                    //the state can not be checked, trust the action
+                }
+            }
+            if(!applied) {
+                Misc.log("Action of the other player rejected: " + action);
+            } else if(!consistent) {
+                Misc.log("State of the other player out of step after: " + action);
+            }
+            if(!consistent) {
+                if(playerType.equals(PlayerType.Host)) {
+                    net.sendGameState(gameState);
+                } else {
+                    net.requestGameState();
+                }
+            }
+            if(applied && (consistent || playerType.equals(PlayerType.Host))) {
+                net.actionApplied(gameState);
+            }
+            //the host just sent its state back, which the game goes on from;
+            //a client waits for the state it asked for
+            if(applied && (consistent || playerType.equals(PlayerType.Host))) {
+                receivedGameState = gameState;
+                receivedNewGamestate = true;
+                player.notifyAll();
+            }
         }
     }
     
+    /**
+     * Wakes up the threads waiting for a game state, the opponent is gone.
+     */
+    private void peerDisconnected() {
+        synchronized(player) {
+            peerDisconnected = true;
+            player.notifyAll();
+        }
+    }
+    
+    /**
+     * Tells the player that the opponent is gone and the game can not go on.
+     */
+    private void connectionLost() {
+        Misc.log("Connection to the other player lost (" + net.getHeartbeat() + ").");
+        gameState.addMessage(new Message("The connection to the other player was lost.", 
+                Message.MessageType.NetworkError, null));
+        gui.drawGameState(gameState);
+    }
+    
+    /**
+     * @return The heartbeat of the connection to the opponent, which gives 
+     * the round trip time and jitter of the connection.
+     */
+    public Heartbeat getHeartbeat() {
+        return net.getHeartbeat();
+    }
+    
     public void layMine(Ship s){
     	MineLayer miner = (MineLayer) s;
         if (!miner.hasMine()){
@@ -916,33 +976,11 @@ public class Game implements GameGUI.GameGuiListener {
                 this.wait();
                 awaitingInput = false;
                 if(input != null) {
-                    //check if the result is acceptable
-                    boolean found = false;
-                    for(Vector2 v: mineZone) {
-                        if(v.equals(input)) {
-                            found = true;
-                        }
-                    }
-                    
-                    if(!found) {
-                        clearGUI();
-                        return;
-                    }
-                    //now if the player clicked on a mine, it should be picked.
-                    //if there was no mine, a new one should be placed
-                    if(gameState.getMap().isMine(input)) {
-                        //pickup mine
-                        Message m = new Message("Mine picked up.", Message.MessageType.Game, this.player);
-                        gameState.addMessage(m);
-                        gameState.pickupMine(miner, input);
-                    } else {
-                        Message m = new Message("Mine layed.", Message.MessageType.Game, this.player);
-                        gameState.addMessage(m);
-                        gameState.layMine(s, input);
-                    }
                     clearGUI();
-                    playAnimation = false;
-                    endTurn();
+                    //a mine is picked up if there is one at the input, otherwise a new one is layed
+                    if(takeAction(new ActionCommand(Action.Mine, s, input))) {
+                        endTurn();
+                    }
                 }
             } catch (InterruptedException ex) {
                 Logger.getLogger(Game.class.getName()).log(Level.SEVERE, null, ex);
@@ -950,23 +988,18 @@ public class Game implements GameGUI.GameGuiListener {
         }
     }
     
-    private boolean suicideActivated = false;
-
     private void suicideAttack(Ship selectedShip) {
-        suicideActivated = true;
-        ((KamikazeBoat) selectedShip).activateAttack();
-        moveAction(selectedShip);
+        if(takeAction(new ActionCommand(Action.Suicide, selectedShip, null))) {
+            //the attack goes off once the boat has moved
+            moveAction(selectedShip);
+        }
     }
 
     private void repair(Ship selectedShip) {
-            //pickup mine
-            Message m = new Message("Ship repairing.", Message.MessageType.Game, this.player);
-            gameState.addMessage(m);
-            selectedShip.getRepaired();
-
-        clearGUI();
-        playAnimation = false;
-        endTurn();
+        if(takeAction(new ActionCommand(Action.Repair, selectedShip, null))) {
+            clearGUI();
+            endTurn();
+        }
     }
     
     public void fireCannon(GameObject unit){
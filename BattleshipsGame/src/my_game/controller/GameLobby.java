@@ -4,12 +4,436 @@
  */
 package my_game.controller;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import my_game.networking.NetworkEntity;
+import my_game.networking.server.Constants;
+
 /**
  * This is a controller for the game lobby. It is responsible for obtaining a
  * game name, for making sure the valid player is connecting to the server and
  * making sure both players agree on a coral reef layout.
+ * <p>
+ * When the server runs many matches at once, every connection is queued by
+ * the lobby for matchmaking once its player has logged in with a hello, 
+ * and each pair of players gets a match session of its own. The queue is kept sorted
+ * by rating in a ConcurrentSkipListSet, so a player is paired on arrival
+ * with the closest waiting rating in O(log n) if it is within the rating
+ * window of either player. The window of a player widens the longer it
+ * waits: MATCH_WINDOW rating points at first, and MATCH_WIDENING more every
+ * second. Players left waiting are paired by matchWaiting(), which runs
+ * every MATCHMAKING_INTERVAL once startMatchmaking() is called.
+ * <p>
+ * Ratings are not computed from the results of the matches yet: a player
+ * rates DEFAULT_RATING unless it is given a rating with setRating().
  */
 public class GameLobby {
     
+    /**
+     * Notified when connections are routed to or removed from a match session,
+     * so that the game logic can attach its NetEntityListeners to them.
+     */
+    public interface LobbyListener {
+        
+        /**
+         * Called when a connection has been placed in a session.
+         * @param session The session joined.
+         * @param player The network entity of the joining player.
+         */
+        public void onPlayerJoined(MatchSession session, NetworkEntity player);
+        
+        /**
+         * Called when a connection has left its session.
+         * @param session The session left.
+         * @param player The network entity of the leaving player.
+         */
+        public void onPlayerLeft(MatchSession session, NetworkEntity player);
+    }
+    
+    /** All running sessions by id. */
+    private final HashMap<Integer, MatchSession> sessions;
+    /** The session of every connected network entity. */
+    private final HashMap<NetworkEntity, MatchSession> sessionOf;
+    private int nextSessionId = 1;
+    
+    private final CopyOnWriteArrayList<LobbyListener> listeners;
+    
+    /** Runs the matchmaking of every lobby. */
+    private static final ScheduledExecutorService MATCHMAKER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Matchmaker");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    
+    /** The players waiting for an opponent, by rating then arrival. */
+    private final ConcurrentSkipListSet<Ticket> queue = new ConcurrentSkipListSet<Ticket>();
+    /** The ticket of every waiting network entity. */
+    private final ConcurrentHashMap<NetworkEntity, Ticket> tickets = new ConcurrentHashMap<NetworkEntity, Ticket>();
+    /** The ratings of the players by username, DEFAULT_RATING if unknown. */
+    private final ConcurrentHashMap<String, Integer> ratings = new ConcurrentHashMap<String, Integer>();
+    private final AtomicLong nextTicket = new AtomicLong();
+    private ScheduledFuture<?> matchmaking;
+    
+    public GameLobby() {
+        sessions = new HashMap<Integer, MatchSession>();
+        sessionOf = new HashMap<NetworkEntity, MatchSession>();
+        listeners = new CopyOnWriteArrayList<LobbyListener>();
+    }
+    
+    public void addLobbyListener(LobbyListener l) {
+        listeners.add(l);
+    }
+    
+    public void removeLobbyListener(LobbyListener l) {
+        listeners.remove(l);
+    }
+    
+    /**
+     * Queues a network entity whose player just logged in for matchmaking,
+     * with the rating of its player.
+     * @param player
+     */
+    public void enqueue(NetworkEntity player) {
+        enqueue(player, getRating(player.getConnectedPlayer().getUsername()));
+    }
+    
+    /**
+     * Queues a network entity for matchmaking. It is paired right away with
+     * the closest waiting rating within the window of either player, or
+     * waits to be paired by matchWaiting().
+     * <p>
+     * The ticket is known to leave() from the start, claimed until it is in
+     * the queue, so a player leaving meanwhile is never left in the queue.
+     * @param player
+     * @param rating
+     */
+    public void enqueue(NetworkEntity player, int rating) {
+        Ticket ticket = new Ticket(player, rating, nextTicket.incrementAndGet());
+        ticket.claim();
+        synchronized(this) {
+            tickets.put(player, ticket);
+        }
+        Ticket opponent = findOpponent(ticket);
+        if(opponent != null) {
+            startSession(opponent, ticket);
+            return;
+        }
+        synchronized(this) {
+            if(ticket.hasLeft()) {
+                tickets.remove(player, ticket);
+                return;
+            }
+            queue.add(ticket);
+            ticket.release();
+        }
+    }
+    
+    /**
+     * Finds and claims the waiting player closest in rating to a new ticket.
+     * @param ticket
+     * @return The claimed opponent, null if no waiting rating is close enough.
+     */
+    private Ticket findOpponent(Ticket ticket) {
+        Ticket probe = new Ticket(null, ticket.rating, 0);
+        long now = System.currentTimeMillis();
+        while(true) {
+            //the oldest ticket of the same or the next higher rating, and the next lower one
+            Ticket above = unclaimed(queue.ceiling(probe), true);
+            Ticket below = unclaimed(queue.lower(probe), false);
+            if(above != null && !ticket.fits(above, now)) {
+                above = null;
+            }
+            if(below != null && !ticket.fits(below, now)) {
+                below = null;
+            }
+            if(above == null && below == null) {
+                return null;
+            }
+            Ticket closest = (above == null || (below != null && ticket.rating - below.rating < above.rating - ticket.rating)) ? below : above;
+            if(closest.claim()) {
+                remove(closest);
+                return closest;
+            }
+            //claimed by someone else meanwhile, look again
+        }
+    }
+    
+    /**
+     * @param t
+     * @param up
+     * @return The first ticket from t, going up or down the queue, not 
+     * claimed by a pairing in progress.
+     */
+    private Ticket unclaimed(Ticket t, boolean up) {
+        while(t != null && t.isClaimed()) {
+            t = up ? queue.higher(t) : queue.lower(t);
+        }
+        return t;
+    }
+    
+    /**
+     * Takes a claimed ticket out of the queue. It stays in tickets until its
+     * session is started, so that a player leaving meanwhile is seen by
+     * startSession().
+     * @param t
+     */
+    private void remove(Ticket t) {
+        queue.remove(t);
+    }
+    
+    /**
+     * Pairs the waiting players whose windows have widened enough: every
+     * two players next to each other in the queue are paired if their 
+     * ratings are within the window of either of them.
+     * @return The number of sessions started.
+     */
+    public int matchWaiting() {
+        long now = System.currentTimeMillis();
+        int started = 0;
+        Ticket previous = null;
+        for(Ticket t: queue) {
+            if(t.hasLeft() && t.claim()) {
+                //left while a pairing held it
+                remove(t);
+                tickets.remove(t.player, t);
+                continue;
+            }
+            if(t.isClaimed()) {
+                continue;
+            }
+            if(previous != null && previous.fits(t, now) && previous.claim()) {
+                if(t.claim()) {
+                    remove(previous);
+                    remove(t);
+                    startSession(previous, t);
+                    started++;
+                    previous = null;
+                    continue;
+                }
+                previous.release();
+            }
+            previous = t;
+        }
+        return started;
+    }
+    
+    /**
+     * Runs matchWaiting() every MATCHMAKING_INTERVAL.
+     */
+    public synchronized void startMatchmaking() {
+        if(matchmaking == null) {
+            matchmaking = MATCHMAKER.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    matchWaiting();
+                }
+            }, Constants.MATCHMAKING_INTERVAL, Constants.MATCHMAKING_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    public synchronized void stopMatchmaking() {
+        if(matchmaking != null) {
+            matchmaking.cancel(false);
+            matchmaking = null;
+        }
+    }
+    
+    /**
+     * @return The number of players waiting for an opponent.
+     */
+    public int getQueuedCount() {
+        return tickets.size();
+    }
+    
+    /**
+     * Counts the tickets in the matchmaking queue, in O(n). Once no player
+     * is being queued or paired, it is the same as getQueuedCount().
+     * @return The number of tickets in the queue.
+     */
+    public int getQueueLength() {
+        return queue.size();
+    }
+    
+    /**
+     * @param username
+     * @return The rating of a player, DEFAULT_RATING if it has none yet.
+     */
+    public int getRating(String username) {
+        Integer rating = ratings.get(username);
+        return (rating == null) ? Constants.DEFAULT_RATING : rating;
+    }
+    
+    /**
+     * Sets the rating a player is queued with from now on.
+     * @param username
+     * @param rating 
+     */
+    public void setRating(String username, int rating) {
+        ratings.put(username, rating);
+    }
+    
+    /**
+     * Opens a session for two paired players. If one of them left while
+     * they were being paired, the other one is queued again instead.
+     */
+    private void startSession(Ticket a, Ticket b) {
+        MatchSession session;
+        synchronized(this) {
+            tickets.remove(a.player, a);
+            tickets.remove(b.player, b);
+            if(a.hasLeft() || b.hasLeft()) {
+                for(Ticket t: new Ticket[] {a, b}) {
+                    if(!t.hasLeft()) {
+                        //back in its place, with the time it has waited
+                        tickets.put(t.player, t);
+                        queue.add(t);
+                        t.release();
+                    }
+                }
+                return;
+            }
+            session = new MatchSession(nextSessionId++);
+            sessions.put(session.getId(), session);
+            session.addPlayer(a.player);
+            session.addPlayer(b.player);
+            sessionOf.put(a.player, session);
+            sessionOf.put(b.player, session);
+        }
+        for(LobbyListener l: listeners) {
+            l.onPlayerJoined(session, a.player);
+            l.onPlayerJoined(session, b.player);
+        }
+    }
+    
+    /**
+     * Removes a network entity from its session, or from the matchmaking
+     * queue. The session is closed once it has no players left.
+     * @param player
+     */
+    public void leave(NetworkEntity player) {
+        MatchSession session;
+        synchronized(this) {
+            Ticket ticket = tickets.get(player);
+            if(ticket != null) {
+                ticket.leave();
+                if(ticket.claim()) {
+                    remove(ticket);
+                    tickets.remove(player, ticket);
+                    return;
+                }
+                //claimed by a pairing in progress or by enqueue(), which 
+                //will see it has left
+            }
+            session = sessionOf.remove(player);
+            if(session == null) {
+                return;
+            }
+            session.removePlayer(player);
+            if(session.getPlayerCount() == 0) {
+                sessions.remove(session.getId());
+            }
+        }
+        for(LobbyListener l: listeners) {
+            l.onPlayerLeft(session, player);
+        }
+    }
+    
+    /**
+     * @param player
+     * @return The session of a connected network entity, null if it has none.
+     */
+    public synchronized MatchSession getSession(NetworkEntity player) {
+        return sessionOf.get(player);
+    }
+    
+    /**
+     * @return A copy of the list of running sessions.
+     */
+    public synchronized List<MatchSession> getSessions() {
+        return new ArrayList<MatchSession>(sessions.values());
+    }
+    
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
     
+    /**
+     * A player waiting in the matchmaking queue. Tickets are ordered by
+     * rating, then by arrival. A ticket is claimed by the pairing taking
+     * it, so two pairings never take the same player.
+     */
+    private static class Ticket implements Comparable<Ticket> {
+        
+        final NetworkEntity player;
+        final int rating;
+        final long number;
+        final long queuedAt = System.currentTimeMillis();
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        /** Set when the player leaves, possibly while being paired. */
+        private volatile boolean left;
+        
+        Ticket(NetworkEntity player, int rating, long number) {
+            this.player = player;
+            this.rating = rating;
+            this.number = number;
+        }
+        
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+        
+        void release() {
+            claimed.set(false);
+        }
+        
+        boolean isClaimed() {
+            return claimed.get();
+        }
+        
+        void leave() {
+            left = true;
+        }
+        
+        boolean hasLeft() {
+            return left;
+        }
+        
+        /**
+         * @param now
+         * @return The largest rating difference this player accepts.
+         */
+        long window(long now) {
+            return Constants.MATCH_WINDOW + Constants.MATCH_WIDENING * (now - queuedAt) / 1000;
+        }
+        
+        /**
+         * @param other
+         * @param now
+         * @return True if the two ratings are within the window of either player.
+         */
+        boolean fits(Ticket other, long now) {
+            int difference = Math.abs(rating - other.rating);
+            return difference <= Math.max(window(now), other.window(now));
+        }
+        
+        public int compareTo(Ticket o) {
+            if(rating != o.rating) {
+                return (rating < o.rating) ? -1 : 1;
+            }
+            return (number < o.number) ? -1 : ((number == o.number) ? 0 : 1);
+        }
+    }
 }
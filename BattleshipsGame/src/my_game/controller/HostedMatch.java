@@ -0,0 +1,221 @@
+package my_game.controller;
+
+import java.util.List;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameState.GamePhase;
+import my_game.models.game_components.StateSnapshot;
+import my_game.models.player_components.Player;
+import my_game.networking.NetEntityListener;
+import my_game.networking.NetworkEntity;
+import my_game.util.Misc;
+
+/**
+ * A match hosted by a dedicated server, between two connected clients. The
+ * server takes the part a host player has in a game between two players:
+ * <ul>
+ * <li>it sends a coral reef to both players, and a new one until both
+ * vote for the same reef;</li>
+ * <li>it sends the new game state, and merges the ship positions each
+ * player sends back into the state both players then start from;</li>
+ * <li>it applies the actions of the player whose turn it is to its own
+ * state and sends them to the other player. An action which is not valid
+ * is refused and its sender gets the server's state. An action which does
+ * not lead to the state of its sender is not passed on either, but it
+ * counts: both players get the server's state instead.</li>
+ * </ul>
+ * No GUI is involved, the match is only made of its state and the
+ * listeners of the two connections. The players are told apart by their
+ * username, which must differ.
+ */
+public class HostedMatch {
+
+    private final MatchSession session;
+    private final String name;
+    private final NetworkEntity[] seats;
+    private final Player[] players;
+    private CoralReef reef;
+    private final boolean[] votes = new boolean[MatchSession.PLAYERS];
+    /** The state of the match, null while the players vote for a reef. */
+    private GameState gameState;
+    /** Set for each player whose ship positions were merged into the state. */
+    private final boolean[] positioned = new boolean[MatchSession.PLAYERS];
+    private final Seat[] listeners = new Seat[MatchSession.PLAYERS];
+    private boolean over = false;
+
+    /**
+     * @param session A full session whose players are logged in.
+     * @param name The name of the game.
+     */
+    public HostedMatch(MatchSession session, String name) {
+        this.session = session;
+        this.name = name;
+        List<NetworkEntity> entities = session.getPlayers();
+        this.seats = entities.toArray(new NetworkEntity[MatchSession.PLAYERS]);
+        this.players = new Player[MatchSession.PLAYERS];
+        for(int i = 0; i < seats.length; i++) {
+            players[i] = seats[i].getConnectedPlayer();
+        }
+    }
+
+    /**
+     * Starts listening to the players and sends them the first reef.
+     */
+    public synchronized void start() {
+        if(players[0].getUsername().equals(players[1].getUsername())) {
+            Misc.log("[MATCH]: " + session + ": both players are called " + players[0].getUsername() + ", the second one is refused.");
+            seats[1].stopNet();
+            return;
+        }
+        for(int i = 0; i < seats.length; i++) {
+            listeners[i] = new Seat(i);
+            seats[i].addNetListener(listeners[i]);
+        }
+        Misc.log("[MATCH]: " + session + ": " + players[0].getUsername() + " against " + players[1].getUsername() + ".");
+        reef = new CoralReef();
+        for(NetworkEntity seat: seats) {
+            seat.sendCoralReefToListeners(reef);
+        }
+    }
+
+    /**
+     * Called when a player leaves the session. The other player can not go
+     * on alone and is disconnected too.
+     * @param player
+     */
+    public synchronized void playerLeft(NetworkEntity player) {
+        if(over) {
+            return;
+        }
+        over = true;
+        Misc.log("[MATCH]: " + session + ": " + player.getConnectedPlayer() + " left, the match is over.");
+        for(int i = 0; i < seats.length; i++) {
+            if(listeners[i] != null) {
+                seats[i].removeNetListener(listeners[i]);
+            }
+            if(seats[i] != player) {
+                seats[i].stopNet();
+            }
+        }
+    }
+
+    /**
+     * @return The state of the match, null while the players vote for a reef.
+     */
+    public synchronized GameState getGameState() {
+        return gameState;
+    }
+
+    private synchronized void voteReceived(int index, boolean vote) {
+        if(gameState != null) {
+            return;
+        }
+        if(!vote) {
+            //like a host refusing a reef: a refusal, then the new reef
+            votes[0] = false;
+            votes[1] = false;
+            reef.generateNewReef();
+            for(NetworkEntity seat: seats) {
+                seat.sendVote(false);
+                seat.sendCoralReefToListeners(reef);
+            }
+            return;
+        }
+        votes[index] = true;
+        if(votes[0] && votes[1]) {
+            for(NetworkEntity seat: seats) {
+                seat.sendVote(true);
+            }
+            gameState = new GameState(players, reef, (Math.random() < 0.5) ? 0 : 1, name);
+            reef = null;
+            for(NetworkEntity seat: seats) {
+                seat.sendGameState(gameState);
+            }
+            gameState.setGamePhase(GamePhase.ShipPositioning);
+        }
+    }
+
+    private synchronized void stateReceived(int index, GameState gs) {
+        if(gameState == null || !gameState.getPhase().equals(GamePhase.ShipPositioning) || positioned[index]) {
+            Misc.log("[MATCH]: " + session + ": unexpected game state from " + players[index].getUsername() + ".");
+            return;
+        }
+        //take the ships of this player from its state
+        gameState.mergeShipPositions(players[1 - index], gs);
+        positioned[index] = true;
+        if(positioned[0] && positioned[1]) {
+            for(NetworkEntity seat: seats) {
+                seat.sendGameState(gameState);
+            }
+            gameState.setGamePhase(GamePhase.PlayerTurns);
+        }
+    }
+
+    private synchronized void actionReceived(int index, ActionCommand action, int checksum) {
+        if(gameState == null || over) {
+            return;
+        }
+        //a player under fog of war sends the checksum of the view it had
+        boolean[][] visible = gameState.getMap().getVisibility(index).toArray();
+        if(gameState.getPlayerTurn() != index || !gameState.applyAction(action)) {
+            Misc.log("[MATCH]: " + session + ": action of " + players[index].getUsername() + " rejected: " + action);
+            seats[index].sendGameState(gameState);
+            return;
+        }
+        boolean consistent = true;
+        if(checksum != 0) {
+            try {
+                consistent = StateSnapshot.matches(gameState, index, visible, checksum);
+            } catch(IllegalStateException ex) {
+                //the state can not be checked, trust the action
+            }
+        }
+        seats[1 - index].sendAction(action, gameState);
+        if(!consistent) {
+            //a valid action, but the player's state went apart from the server's
+            Misc.log("[MATCH]: " + session + ": " + players[index].getUsername() + " out of step after: " + action);
+            seats[index].sendGameState(gameState);
+        }
+        if(gameState.gameOver()) {
+            over = true;
+            Misc.log("[MATCH]: " + session + " is over.");
+        }
+    }
+
+    /**
+     * The listener of the connection of one player.
+     */
+    private class Seat implements NetEntityListener {
+
+        private final int index;
+
+        Seat(int index) {
+            this.index = index;
+        }
+
+        public void onConnected() {
+            //already logged in
+        }
+
+        public void onReefReceive(CoralReef reef) {
+            Misc.log("[MATCH]: " + session + ": coral reef received from " + players[index].getUsername() + ", ignored.");
+        }
+
+        public void onVoteReceive(boolean vote) {
+            voteReceived(index, vote);
+        }
+
+        public void onGameStateReceive(GameState gs) {
+            stateReceived(index, gs);
+        }
+
+        public void onActionReceive(ActionCommand action, int checksum) {
+            actionReceived(index, action, checksum);
+        }
+
+        public void onDisconnected() {
+            //the lobby calls playerLeft
+        }
+    }
+}
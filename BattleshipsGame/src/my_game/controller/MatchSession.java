@@ -0,0 +1,71 @@
+package my_game.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import my_game.networking.NetworkEntity;
+
+/**
+ * A single match hosted by a multi-match server. It groups the network 
+ * entities of the players taking part in the match.
+ */
+public class MatchSession {
+    
+    /** Number of players needed to start a match. */
+    public static final int PLAYERS = 2;
+    
+    private final int id;
+    private final ArrayList<NetworkEntity> players;
+    
+    public MatchSession(int id) {
+        this.id = id;
+        this.players = new ArrayList<NetworkEntity>(PLAYERS);
+    }
+    
+    synchronized void addPlayer(NetworkEntity player) {
+        players.add(player);
+    }
+    
+    synchronized void removePlayer(NetworkEntity player) {
+        players.remove(player);
+    }
+    
+    /**
+     * @return The id of this session, unique within its lobby.
+     */
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * @return A copy of the list of players in this session.
+     */
+    public synchronized List<NetworkEntity> getPlayers() {
+        return new ArrayList<NetworkEntity>(players);
+    }
+    
+    /**
+     * @param player
+     * @return The other player of the session, null if it is still waiting for one.
+     */
+    public synchronized NetworkEntity getOpponent(NetworkEntity player) {
+        for(NetworkEntity p: players) {
+            if(p != player) {
+                return p;
+            }
+        }
+        return null;
+    }
+    
+    public synchronized int getPlayerCount() {
+        return players.size();
+    }
+    
+    public synchronized boolean isFull() {
+        return players.size() >= PLAYERS;
+    }
+    
+    @Override
+    public String toString() {
+        return "Session " + id + " (" + getPlayerCount() + "/" + PLAYERS + ")";
+    }
+}
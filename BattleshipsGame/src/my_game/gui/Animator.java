@@ -67,11 +67,9 @@ public class Animator {
     void startMoveAnimation(GameState updateState, Spatial[][] grid) {
         //get a vector pointing from old position to the new one
         move = (MoveDescription) updateState.previousAction;
-        path = new Vector2(move.newPositions[0]);
-        path.sub(move.oldPositions[0]);
+        path = move.newPositions[0].minus(move.oldPositions[0]);
         //scale the path to fit the scale of the remaining things on screen
-        path.x = path.x * 2;
-        path.y = path.y * 2;
+        path = Vector2.of(path.x * 2, path.y * 2);
         //get a reference to all the spatials in order to be able to manipulate them directly
         objectGridRef = grid;
         
@@ -126,11 +124,9 @@ public class Animator {
     
     void startCannonAnimation(GameState updateState, Spatial[][] grid) {
         cannon = (CannonDescription) updateState.previousAction;
-        path = new Vector2(cannon.target);
-        path.sub(cannon.origin);
+        path = cannon.target.minus(cannon.origin);
         //scale the path to fit the scale of the remaining things on screen
-        path.x = path.x * 2;
-        path.y = path.y * 2;
+        path = Vector2.of(path.x * 2, path.y * 2);
         //get a reference to all the spatials in order to be able to manipulate them directly
         objectGridRef = grid;
         
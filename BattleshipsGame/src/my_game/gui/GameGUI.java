@@ -799,7 +799,7 @@ public class GameGUI extends SimpleApplication implements ActionListener {
                     field.detachChild(objectsGrid[x][y]);
                     objectsGrid[x][y] = null;
                 }
-                Vector2 position = new Vector2(x, y);
+                Vector2 position = Vector2.of(x, y);
                 if(!gameState.getMap().isCoral(position)) {
                     drawMapObject(position, gs.getMap());
                     if(objectsGrid[x][y] != null && !visibility[x][y]) {
@@ -822,12 +822,12 @@ public class GameGUI extends SimpleApplication implements ActionListener {
                     radarGrid[x][y].setCullHint(CullHint.Always);
                     //do not redraw coral reefs
                     if(objectsGrid[x][y] != null) {
-                        //this.drawMapObject(new Vector2(x, y), state.getMap());
+                        //this.drawMapObject(Vector2.of(x, y), state.getMap());
                         objectsGrid[x][y].setCullHint(CullHint.Never);
                     }
                 } else if(!visibility[x][y]) {
                     //this cell should not be visible
-                    GameObject o = gameState.getMap().getObjectAt(new Vector2(x, y));
+                    GameObject o = gameState.getMap().getObjectAt(Vector2.of(x, y));
                     //do not repaint or hide coral reefs
                     if(objectsGrid[x][y] != null && o != null && !o.getObjectType().equals(GameObjectType.CoralReef)) {
                         //field.detachChild(objectsGrid[x][y]);
@@ -887,7 +887,7 @@ public class GameGUI extends SimpleApplication implements ActionListener {
         
         for(int x = 0; x < m.WIDTH; x++) {
             for(int y = 0; y < m.HEIGHT; y++) {
-                Vector2 position = new Vector2(x, y);
+                Vector2 position = Vector2.of(x, y);
                 if(visibility[x][y]) {
                    drawMapObject(position, m);
                    drawRadarShade(x, y);
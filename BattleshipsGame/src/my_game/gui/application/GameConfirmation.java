@@ -19,6 +19,7 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.Stage;
 import my_game.controller.Game;
+import my_game.models.game_components.ActionCommand;
 import my_game.models.game_components.CoralReef;
 import my_game.models.game_components.GameState;
 import my_game.networking.NetEntityListener;
@@ -201,6 +202,13 @@ public class GameConfirmation
             playerStatus.setText("A player has connected");
         }
 
+        public void onDisconnected() {
+            //stop waiting for a vote which will never come
+            otherPlayerVote = false;
+            otherPlayerHasVoted = true;
+            playerStatus.setText("Player 2 has disconnected");
+        }
+
         public void onReefReceive(CoralReef reef) {
             //Server is not supposed to receive this, something went wrong
             Logger.getLogger(GameConfirm.class.getName()).log(Level.SEVERE, null, new GameException("CoralReef object received by server!"));
@@ -222,6 +230,11 @@ public class GameConfirmation
             //this method shouldn't get called while here
             Logger.getLogger(GameConfirm.class.getName()).log(Level.SEVERE, null, new GameException("GameState received in GameConfirmation.java"));
         }
+
+        public void onActionReceive(ActionCommand action, int checksum) {
+            //this method shouldn't get called while here
+            Logger.getLogger(GameConfirm.class.getName()).log(Level.SEVERE, null, new GameException("Action received in GameConfirmation.java"));
+        }
         
     }
     
@@ -231,6 +244,13 @@ public class GameConfirmation
             //do nothing
         }
 
+        public void onDisconnected() {
+            //stop waiting for a vote which will never come
+            otherPlayerVote = false;
+            otherPlayerHasVoted = true;
+            playerStatus.setText("Player 1 has disconnected");
+        }
+
         public void onReefReceive(CoralReef reef) {
             //display the newly received coral reef in the text area
             map.setText(reef.toString());
@@ -252,5 +272,10 @@ public class GameConfirmation
             //this method shouldn't get called while here
             Logger.getLogger(GameConfirm.class.getName()).log(Level.SEVERE, null, new GameException("GameState received in GameConfirmation.java"));
         }
+
+        public void onActionReceive(ActionCommand action, int checksum) {
+            //this method shouldn't get called while here
+            Logger.getLogger(GameConfirm.class.getName()).log(Level.SEVERE, null, new GameException("Action received in GameConfirmation.java"));
+        }
     }
 }
\ No newline at end of file
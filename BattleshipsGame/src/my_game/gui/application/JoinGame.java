@@ -80,6 +80,10 @@ public class JoinGame
                     list.add(si);
                 }
             }
+            
+            public void removeServerInfo(ServerInfo si) {
+                list.remove(si);
+            }
         });
         
         background.fitHeightProperty().bind(pane.heightProperty());
@@ -0,0 +1,58 @@
+package my_game.models.game_components;
+
+import my_game.gui.GameGUI.Action;
+import my_game.util.Vector2;
+
+/**
+ * A single action taken by the player who has the turn: the type of the
+ * action, the id of the ship taking it and the position chosen by the player.
+ * Both sides of a connection apply the same commands to the same state with
+ * GameState.applyAction, so a turn is sent as a command instead of a state.
+ */
+public class ActionCommand {
+    
+    private final Action actionType;
+    /** Id of the ship in its player's fleet, -1 for an action without a ship. */
+    private final int shipId;
+    /** Position chosen by the player, null if the action has none. */
+    private final Vector2 target;
+    
+    public ActionCommand(Action actionType, int shipId, Vector2 target) {
+        this.actionType = actionType;
+        this.shipId = shipId;
+        this.target = target;
+    }
+    
+    /**
+     * @param actionType
+     * @param ship The ship taking the action.
+     * @param target Can be null.
+     */
+    public ActionCommand(Action actionType, Ship ship, Vector2 target) {
+        this(actionType, ship.getShipId(), target);
+    }
+    
+    /**
+     * @return A command ending the turn without doing anything.
+     */
+    public static ActionCommand endTurn() {
+        return new ActionCommand(Action.EndTurn, -1, null);
+    }
+    
+    public Action getActionType() {
+        return actionType;
+    }
+    
+    public int getShipId() {
+        return shipId;
+    }
+    
+    public Vector2 getTarget() {
+        return target;
+    }
+    
+    @Override
+    public String toString() {
+        return actionType + " ship: " + shipId + " target: " + target;
+    }
+}
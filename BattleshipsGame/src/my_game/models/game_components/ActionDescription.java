@@ -12,6 +12,8 @@ import my_game.gui.GameGUI.Action;
  * @author Ivaylo Parvanov
  */
 public abstract class ActionDescription implements java.io.Serializable {
+    private static final long serialVersionUID = -7705565750426778113L;
+
     Action actionType;
     
     /**
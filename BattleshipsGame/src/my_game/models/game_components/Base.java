@@ -9,6 +9,7 @@ import my_game.util.Vector2;
  *
  */
 public class Base implements java.io.Serializable {
+    private static final long serialVersionUID = -1172204513144533436L;
     
     private final int playerID;
     private final int size = 10;
@@ -26,7 +27,7 @@ public class Base implements java.io.Serializable {
             i = 29;
         }
         for (j = 10; j < 20; j++){
-            Vector2 v = new Vector2(i,j);
+            Vector2 v = Vector2.of(i,j);
             positions.add(v);          
         }
 
@@ -38,6 +39,10 @@ public class Base implements java.io.Serializable {
         this.baseUnits = bu;
     }
     
+    public int getPlayerID(){
+        return playerID;
+    }
+    
     public int getRemainingSize(){
 
         for (BaseUnit unit: baseUnits){
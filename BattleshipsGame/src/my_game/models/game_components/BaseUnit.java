@@ -11,6 +11,7 @@ import my_game.util.Vector2;
  * @author wei
  */
 public class BaseUnit extends GameObject implements java.io.Serializable {
+    private static final long serialVersionUID = -1439667325075186854L;
 
     private int damageLevel; //0: healthy, 1: destroyed
     private Base base;
@@ -36,6 +37,10 @@ public class BaseUnit extends GameObject implements java.io.Serializable {
         if (damageLevel == 0)
         	damageLevel++;
     }
+    void setDamageLevel(int level) {
+        this.damageLevel = level;
+    }
+    
     public int getDamageLevel(){
         return damageLevel;
     }
@@ -0,0 +1,201 @@
+package my_game.models.game_components;
+
+import java.util.Arrays;
+import my_game.util.Vector2;
+
+/**
+ * A set of cells of the map grid, one bit per cell. The cell (x, y) is the
+ * bit x * Map.HEIGHT + y, the order the cells of a StateSnapshot are in.
+ * Testing a cell is a single bit probe, and two boards are merged or
+ * compared a word of 64 cells at a time.
+ */
+public class BitBoard {
+
+    public static final int CELLS = Map.WIDTH * Map.HEIGHT;
+    static final int WORDS = (CELLS + 63) >>> 6;
+
+    private final long[] words = new long[WORDS];
+
+    public BitBoard() {
+    }
+
+    public BitBoard(BitBoard b) {
+        System.arraycopy(b.words, 0, words, 0, WORDS);
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return The bit of the cell, which must be on the grid.
+     */
+    public static int index(int x, int y) {
+        return x * Map.HEIGHT + y;
+    }
+
+    public static boolean onGrid(int x, int y) {
+        return x >= 0 && x < Map.WIDTH && y >= 0 && y < Map.HEIGHT;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return True if the cell is in this set, false if it is not or is off
+     * the grid.
+     */
+    public boolean get(int x, int y) {
+        if(!onGrid(x, y)) {
+            return false;
+        }
+        int i = index(x, y);
+        return (words[i >>> 6] & (1L << i)) != 0;
+    }
+
+    public boolean get(Vector2 position) {
+        return get(position.x, position.y);
+    }
+
+    /**
+     * @param index The bit of a cell on the grid (see index()).
+     * @return True if the cell is in this set.
+     */
+    public boolean get(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Adds or removes the cell of a bit.
+     * @param index The bit of a cell on the grid (see index()).
+     * @param value
+     */
+    public void set(int index, boolean value) {
+        if(value) {
+            words[index >>> 6] |= 1L << index;
+        } else {
+            words[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Adds a cell, cells off the grid are ignored.
+     * @param x
+     * @param y
+     */
+    public void set(int x, int y) {
+        if(onGrid(x, y)) {
+            int i = index(x, y);
+            words[i >>> 6] |= 1L << i;
+        }
+    }
+
+    /**
+     * Removes a cell, cells off the grid are ignored.
+     * @param x
+     * @param y
+     */
+    public void clear(int x, int y) {
+        if(onGrid(x, y)) {
+            int i = index(x, y);
+            words[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    public void set(int x, int y, boolean value) {
+        if(value) {
+            set(x, y);
+        } else {
+            clear(x, y);
+        }
+    }
+
+    /**
+     * Removes every cell.
+     */
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Makes this set the same as another one.
+     * @param b
+     */
+    public void copyFrom(BitBoard b) {
+        System.arraycopy(b.words, 0, words, 0, WORDS);
+    }
+
+    /**
+     * Adds every cell of another set to this one.
+     * @param b
+     */
+    public void or(BitBoard b) {
+        for(int i = 0; i < WORDS; i++) {
+            words[i] |= b.words[i];
+        }
+    }
+
+    /**
+     * Removes the cells of another set from this one.
+     * @param b
+     */
+    public void andNot(BitBoard b) {
+        for(int i = 0; i < WORDS; i++) {
+            words[i] &= ~b.words[i];
+        }
+    }
+
+    /**
+     * @param b
+     * @return True if a cell is in both sets.
+     */
+    public boolean intersects(BitBoard b) {
+        for(int i = 0; i < WORDS; i++) {
+            if((words[i] & b.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        for(long w: words) {
+            if(w != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of cells in this set.
+     */
+    public int cardinality() {
+        int count = 0;
+        for(long w: words) {
+            count += Long.bitCount(w);
+        }
+        return count;
+    }
+
+    /**
+     * @return The set as a grid of flags, by x then y.
+     */
+    public boolean[][] toArray() {
+        boolean[][] array = new boolean[Map.WIDTH][Map.HEIGHT];
+        for(int x = 0; x < Map.WIDTH; x++) {
+            for(int y = 0; y < Map.HEIGHT; y++) {
+                int i = index(x, y);
+                array[x][y] = (words[i >>> 6] & (1L << i)) != 0;
+            }
+        }
+        return array;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof BitBoard) && Arrays.equals(words, ((BitBoard) o).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+}
@@ -11,6 +11,7 @@ import my_game.util.Vector2;
  *
  */
 public class CannonDescription extends ActionDescription {
+    private static final long serialVersionUID = 4256389872785434022L;
     
     public Vector2 origin;
     public Vector2 target;
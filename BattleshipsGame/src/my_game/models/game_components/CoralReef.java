@@ -12,9 +12,9 @@ import my_game.util.Vector2;
  */
 public class CoralReef {
     /** Number of cells the coral reef is wide (x-axis dimension in top projection). */
-    public final int WIDTH = 10;
+    public static final int WIDTH = 10;
     /** Number of cells the coral reef is high (y-axis dimension in top projection). */
-    public final int HEIGHT = 24;
+    public static final int HEIGHT = 24;
     /** The probability with which an obstacle can appear in a given cell. */
     private final double CHANCE_OF_OBSTACLE = 0.15;
     
@@ -31,7 +31,7 @@ public class CoralReef {
         reef = new boolean[WIDTH][HEIGHT];
         for(int x = 0; x < WIDTH; x++) {
             for(int y = 0; y < HEIGHT; y++) {
-                if(gs.getMap().isCoral(new Vector2(x + 10, y + 3))) {
+                if(gs.getMap().isCoral(Vector2.of(x + 10, y + 3))) {
                     reef[x][y] = true;
                 }
             }
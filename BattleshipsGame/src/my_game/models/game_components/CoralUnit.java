@@ -9,6 +9,7 @@ package my_game.models.game_components;
  * @author wei
  */
 public class CoralUnit extends GameObject{
+    private static final long serialVersionUID = -3716873460823777609L;
     
     public CoralUnit() {
         super();
@@ -9,6 +9,8 @@ package my_game.models.game_components;
  * a game object.
  */
 public abstract class GameObject implements java.io.Serializable {
+    private static final long serialVersionUID = -2036297951134215916L;
+
     public enum GameObjectType {
         Ship, Mine, CoralReef, Base, MineZone
     ,   MidUnit}
@@ -4,6 +4,10 @@
  */
 package my_game.models.game_components;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -13,6 +17,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,6 +36,11 @@ import my_game.util.Vector2;
  * The state of a game describes a game fully.
  */
 public class GameState implements java.io.Serializable {
+    /*
+     * The serialized classes keep the ids they had in the first release, so
+     * the games saved back then can still be loaded.
+     */
+    private static final long serialVersionUID = 222774544552100745L;
 
     public enum GamePhase {
         New,    // game has just been created, players have not interacted yet
@@ -40,6 +50,9 @@ public class GameState implements java.io.Serializable {
         GameOver    //the game is over, one player is the winner
     };
     
+    /** The ten positions in front of the bow a torpedo can reach. */
+    private static final RangeTemplate TORPEDO_RANGE = RangeTemplate.line(10);
+    
     protected GamePhase phase;
     
     /** An array of two players who are playing the game. */
@@ -60,6 +73,9 @@ public class GameState implements java.io.Serializable {
     /* Variables used to describe the last action. */
     public ActionDescription previousAction;
     
+    /** The kamikaze boat which moved once this turn and is moving again, null if none. */
+    private transient Ship movingKamikaze;
+    
     /* TEST ONLY */
     //Ship[] player0Ships;
     //Ship[] player1Ships;
@@ -92,6 +108,13 @@ public class GameState implements java.io.Serializable {
 
         Ship[] player0Ships = generateShips(player[0].id, player0Base);
         Ship[] player1Ships = generateShips(player[1].id, player1Base);             
+        //give every ship a stable id: its index in the fleet
+        for(int i = 0; i < player0Ships.length; i++) {
+            player0Ships[i].setShipId(i);
+        }
+        for(int i = 0; i < player1Ships.length; i++) {
+            player1Ships[i].setShipId(i);
+        }
         /***********/
         
         //init map
@@ -152,11 +175,11 @@ public class GameState implements java.io.Serializable {
     
     /* TEST ONLY */
     public Ship[] getShipsP0(){
-        return (Ship[]) map.player0Ships.toArray();
+        return map.player0Ships.toArray(new Ship[map.player0Ships.size()]);
     }
     
     public Ship[] getShipsP1(){
-        return (Ship[]) map.player1Ships.toArray();
+        return map.player1Ships.toArray(new Ship[map.player1Ships.size()]);
     }    
     /******END TEST *******************/
     
@@ -175,6 +198,21 @@ public class GameState implements java.io.Serializable {
         this.map = new Map(copyState.map);
         //TODO implement map copy constructor
     }
+    /**
+     * Builds a game state out of already constructed parts. Used when a state
+     * is rebuilt from its StateSnapshot.
+     */
+    GameState(String name, Player[] player, int playerTurn, GamePhase phase, 
+            Map map, ChatLog chatLog, ActionDescription previousAction) {
+        this.name = name;
+        this.player = new Player[] {player[0], player[1]};
+        this.playerTurn = playerTurn;
+        this.phase = phase;
+        this.map = map;
+        this.chatLog = chatLog;
+        this.previousAction = previousAction;
+    }
+    
     public void setGamePhase(GamePhase p){
         this.phase = p;
     }
@@ -212,6 +250,7 @@ public class GameState implements java.io.Serializable {
           if (destroyed){
             sinkShip(s);
             map.player0Ships.remove(s);
+            map.updateRadar(s);
           }
         }
         for(Ship s: map.player1Ships) {
@@ -227,6 +266,7 @@ public class GameState implements java.io.Serializable {
           if (destroyed){
             sinkShip(s);
             map.player0Ships.remove(s);
+            map.updateRadar(s);
           }
       }
 }
@@ -264,75 +304,75 @@ public class GameState implements java.io.Serializable {
         ArrayList<Vector2> position = new ArrayList<Vector2>();
         int y = 10;
         for (int x = 5; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }
         Cruiser c1 = new Cruiser(pid, position, d);
         position.clear();
         y++;
         for (int x = 5; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }
         Cruiser c2 = new Cruiser(pid, position, d);   
         position.clear();
         y++;
         for (int x = 4; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         Destroyer d1 = new Destroyer(pid, position, d);
         position.clear();
         y++;
         for (int x = 4; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         Destroyer d2 = new Destroyer(pid, position, d);        
         position.clear();
         y++;
         for (int x = 4; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         Destroyer d3 = new Destroyer(pid, position, d);        
         position.clear();
         y++;
         for (int x = 3; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         TorpedoBoat t1 = new TorpedoBoat(pid, position, d);   
         position.clear();
         y++;
         for (int x = 3; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         TorpedoBoat t2 = new TorpedoBoat(pid, position, d);     
         position.clear();
         y++;
         for (int x = 2; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         MineLayer m1 = new MineLayer(pid, position, d);    
         position.clear();
         y++;
         for (int x = 2; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         MineLayer m2 = new MineLayer(pid, position, d);     
         position.clear();
         y++;
         for (int x = 3; x > 0; x--){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         RadarBoat r = new RadarBoat(pid, position, d);   
         position.clear();
-        Vector2 kam = new Vector2(0,20);
+        Vector2 kam = Vector2.of(0,20);
         position.add(kam);
         KamikazeBoat k = new KamikazeBoat(pid,position,d);
         
@@ -359,75 +399,75 @@ public class GameState implements java.io.Serializable {
         int y = 10;
         int x;
         for (x = 29-5; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }
         Cruiser c1 = new Cruiser(pid, position, d);
         position.clear();
         y++;
         for (x = 29-5; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }
         Cruiser c2 = new Cruiser(pid, position, d);   
         position.clear();
         y++;
         for (x = 29-4; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         Destroyer d1 = new Destroyer(pid, position, d);
         position.clear();
         y++;
         for (x = 29-4; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         Destroyer d2 = new Destroyer(pid, position, d);        
         position.clear();
         y++;
         for (x = 29-4; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         Destroyer d3 = new Destroyer(pid, position, d);        
         position.clear();
         y++;
         for (x = 29-3; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         TorpedoBoat t1 = new TorpedoBoat(pid, position, d);   
         position.clear();
         y++;
         for (x = 29-3; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         TorpedoBoat t2 = new TorpedoBoat(pid, position, d);     
         position.clear();
         y++;
         for (x = 29-2; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         MineLayer m1 = new MineLayer(pid, position, d);    
         position.clear();
         y++;
         for (x = 29-2; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         MineLayer m2 = new MineLayer(pid, position, d);     
         position.clear();
         y++;
         for (x = 29-3; x < 30; x++){
-            Vector2 v = new Vector2(x,y);
+            Vector2 v = Vector2.of(x,y);
             position.add(v);
         }        
         RadarBoat r = new RadarBoat(pid, position, d);  
         position.clear();
-        Vector2 kam = new Vector2(29,9);
+        Vector2 kam = Vector2.of(29,9);
         position.add(kam);
         KamikazeBoat k = new KamikazeBoat(pid,position,d);        
         Ship[] ships = new Ship[11];
@@ -461,13 +501,13 @@ public class GameState implements java.io.Serializable {
         if(p.x == 0){ // blue side
             if (p.y <= 9 && p.y >= 5){
                 for (i = 10-shipSize; i < 10; i++){
-                    Vector2 v = new Vector2(p.x,i);
+                    Vector2 v = Vector2.of(p.x,i);
                     s.setDirection(ShipDirection.North);
                     positions.add(v);
                 }              
             }else if (p.y >= 20 && p.y <= 24){
                 for (i = 19+shipSize; i > 19; i--){
-                    Vector2 v = new Vector2(p.x,i);
+                    Vector2 v = Vector2.of(p.x,i);
                     s.setDirection(ShipDirection.South);
                     positions.add(v);                
                 }
@@ -475,32 +515,31 @@ public class GameState implements java.io.Serializable {
         }else if (p.x == 29){ //red side
             if (p.y <= 9 && p.y >= 5){
                 for (i = 10-shipSize; i < 10; i++){
-                    Vector2 v = new Vector2(p.x,i);
+                    Vector2 v = Vector2.of(p.x,i);
                     s.setDirection(ShipDirection.North);
                     positions.add(v);
                 }              
             }else if (p.y >= 20 && p.y <= 24){
                 for (i = 19+shipSize; i > 19; i--){
-                    Vector2 v = new Vector2(p.x,i);
+                    Vector2 v = Vector2.of(p.x,i);
                     s.setDirection(ShipDirection.South);
                     positions.add(v);                
                 }
             }
         }else if(p.y > 9 && p.y < 20 && p.x <= 5){
             for (i = shipSize; i >= 1; i--){
-                Vector2 v = new Vector2(i,p.y);
+                Vector2 v = Vector2.of(i,p.y);
                 s.setDirection(ShipDirection.East);
                 positions.add(v);
             }             
         }else if(p.y > 9 && p.y < 20 && p.x >= 24){
             for (i = 29-shipSize; i < 29; i++){
-                Vector2 v = new Vector2(i,p.y);
+                Vector2 v = Vector2.of(i,p.y);
                 s.setDirection(ShipDirection.West);
                 positions.add(v);            
             }
         }else{
             validTarget = false;
-            map.updateRadarVisibilityArrays(); 
         }
         
         if (validTarget){        
@@ -513,13 +552,12 @@ public class GameState implements java.io.Serializable {
             if (canMove){
                 map.updateShipPositions(s,positions);  
                 s.moveTo(positions);
-                map.updateRadarVisibilityArrays();
+                map.updateRadar(s);
                 return true;
             }else{
-                map.updateRadarVisibilityArrays();                
-            }    
-        }else{
-            map.updateRadarVisibilityArrays(); 
+                //the direction of the ship was set all the same
+                map.updateRadar(s);
+            }
         }
         //the target was invalid and no movement occured
         return false;
@@ -554,11 +592,20 @@ public class GameState implements java.io.Serializable {
                     "The filename provided already exists Save failed");
             return false;
         }
-        FileOutputStream f = new FileOutputStream(filename+".sav");
-        ObjectOutput s = new ObjectOutputStream(f); 
-        s.writeObject(this); 
-        s.flush();
-        s.close(); 
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(filename+".sav")));
+        try {
+            try {
+                GameStateCodec.write(this, out);
+            } catch(IllegalStateException ex) {
+                //the codec can not describe this state and wrote nothing, save it serialized instead
+                ObjectOutput s = new ObjectOutputStream(out);
+                s.writeObject(this);
+                s.flush();
+            }
+        } finally {
+            out.close();
+        }
         return true;
     }       
     
@@ -569,7 +616,18 @@ public class GameState implements java.io.Serializable {
      * @throws IOException 
      */
     public static GameState loadGame(String gameFile) throws FileNotFoundException, IOException {
-        FileInputStream in = new FileInputStream(gameFile);
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(gameFile));
+        //files written by GameStateCodec start with its magic number, older saves are serialized
+        in.mark(4);
+        int magic = new DataInputStream(in).readInt();
+        in.reset();
+        if(magic == GameStateCodec.MAGIC) {
+            try {
+                return GameStateCodec.read(new DataInputStream(in));
+            } finally {
+                in.close();
+            }
+        }
         ObjectInputStream s = new ObjectInputStream(in); 
         GameState loadedGame = null; 
         try { 
@@ -606,12 +664,13 @@ public class GameState implements java.io.Serializable {
         } else if(invariablePlayer.equals(this.player[1])) {
             //place player[0]'s ships from otherState into this GameState
             map.player0Ships.clear();
-            map.player1Ships.addAll(otherState.map.player0Ships);
+            map.player0Ships.addAll(otherState.map.player0Ships);
             //now copy the respective player's half of the map grid to this state's map grid
             map.setGrid(otherState.map, 0, 0, 15, 29);
         } else {
             Logger.getLogger(GameState.class.getName()).log(Level.SEVERE, null, new GameException("Unknown player."));
         }
+        map.updateRadarVisibilityArrays();
     }
     
     
@@ -644,11 +703,160 @@ public class GameState implements java.io.Serializable {
         return hit;
     }
     
+    /**
+     * Applies an action of the player who has the turn. The action is first
+     * checked against the rules: the ship has to belong to that player, carry
+     * the weapon used and the target has to be in range. The state is left
+     * untouched if the action is not valid. Every action ends the turn except
+     * the activation of a kamikaze boat's attack and the first of its two moves.
+     * @param c
+     * @return False if the action is not valid.
+     */
+    public boolean applyAction(ActionCommand c) {
+        if(!GamePhase.PlayerTurns.equals(phase)) {
+            return false;
+        }
+        Player actor = player[playerTurn];
+        if(c.getActionType().equals(Action.EndTurn)) {
+            endTurn(false);
+            return true;
+        }
+        Ship s = findShip(playerTurn, c.getShipId());
+        if(s == null || (movingKamikaze != null && s != movingKamikaze)) {
+            return false;
+        }
+        Vector2 target = c.getTarget();
+        boolean animate = false;
+        switch(c.getActionType()) {
+            case Move:
+                if(target == null || !moveShip(s, target, map.prepareMoveShip(s))) {
+                    return false;
+                }
+                addMessage(new Message("Ship moved to new position " + target + ".", Message.MessageType.Game, actor));
+                if(s instanceof KamikazeBoat && movingKamikaze == null) {
+                    //the kamikaze boat moves a second time in this turn
+                    movingKamikaze = s;
+                    return true;
+                }
+                if(s instanceof KamikazeBoat && ((KamikazeBoat) s).isAttackActive()) {
+                    map.kamAttack(s);
+                }
+                animate = true;
+                break;
+            case Turn:
+                if(target == null || !map.turnShip(s, target, map.prepareTurnShip(s))) {
+                    return false;
+                }
+                addMessage(new Message("Ship turned to new position " + target + ".", Message.MessageType.Game, actor));
+                break;
+            case CannonAttack:
+                if(!s.getWeapons().contains("cannon") || target == null || !s.isInCannonRange(target)) {
+                    return false;
+                }
+                GameObject hit = cannonAttack(s, target);
+                if(hit != null) {
+                    addMessage(new Message("Cannon impact at coordinates: " + target, 
+                            Message.MessageType.Game, null));
+                }
+                break;
+            case TorpedoAttack:
+                if(!s.getWeapons().contains("torpedo") || target == null 
+                        || !TORPEDO_RANGE.contains(s.getHeading(), s.getPosition(), target.x, target.y)) {
+                    return false;
+                }
+                map.torpedoAttack(s, target);
+                addMessage(new Message("Torpedo fired.", Message.MessageType.Game, actor));
+                layMine(s, target);
+                break;
+            case Mine:
+                if(!(s instanceof MineLayer) || !((MineLayer) s).hasMine() 
+                        || !contains(Arrays.asList(map.getFilteredMineDropZone(s)), target)) {
+                    return false;
+                }
+                if(map.isMine(target)) {
+                    addMessage(new Message("Mine picked up.", Message.MessageType.Game, actor));
+                    pickupMine((MineLayer) s, target);
+                } else {
+                    addMessage(new Message("Mine layed.", Message.MessageType.Game, actor));
+                    layMine(s, target);
+                }
+                break;
+            case Repair:
+                if(!map.isDocked(s)) {
+                    return false;
+                }
+                addMessage(new Message("Ship repairing.", Message.MessageType.Game, actor));
+                s.getRepaired();
+                break;
+            case LongRadar:
+                if(!(s instanceof RadarBoat)) {
+                    return false;
+                }
+                ((RadarBoat) s).toggleRadar();
+                map.updateRadar(s);
+                break;
+            case Suicide:
+                if(!(s instanceof KamikazeBoat)) {
+                    return false;
+                }
+                //the attack goes off after the boat's moves
+                ((KamikazeBoat) s).activateAttack();
+                return true;
+            default:
+                return false;
+        }
+        endTurn(animate);
+        return true;
+    }
+    
+    /**
+     * Sinks the destroyed ships and gives the turn to the other player.
+     * @param animate True to keep the description of the last action.
+     */
+    private void endTurn(boolean animate) {
+        movingKamikaze = null;
+        sinkShips();
+        nextTurn();
+        if(!animate) {
+            previousAction = null;
+        }
+    }
+    
+    /**
+     * Returns the ship with the specified id from a player's fleet.
+     * @param playerIndex
+     * @param shipId
+     * @return Null if the player has no such ship.
+     */
+    public Ship findShip(int playerIndex, int shipId) {
+        for(Ship s: (playerIndex == 0) ? map.player0Ships : map.player1Ships) {
+            if(s.getShipId() == shipId) {
+                return s;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the positions a torpedo fired by the ship can reach: the ten
+     * positions in front of its bow which are on the grid.
+     * @param s
+     * @return 
+     */
+    public static ArrayList<Vector2> getTorpedoPositions(Ship s) {
+        //the heading comes from the positions of the bow and the unit behind it
+        return TORPEDO_RANGE.getPositions(s.getHeading(), s.getPosition());
+    }
+    
+    private static boolean contains(List<Vector2> positions, Vector2 p) {
+        return p != null && positions.contains(p);
+    }
+    
     public boolean isSeenBySonar(Vector2 position, Player p) {
         if(p.equals(player[0])) {
-            return map.getSonarVisibility(0)[position.x][position.y];
+            return map.isSeenBySonar(0, position);
         } else {
-            return map.getSonarVisibility(1)[position.x][position.y];
+            return map.isSeenBySonar(1, position);
         }
     }
     
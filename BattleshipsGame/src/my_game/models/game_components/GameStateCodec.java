@@ -0,0 +1,416 @@
+package my_game.models.game_components;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import my_game.models.game_components.GameState.GamePhase;
+import my_game.models.player_components.Message;
+import my_game.models.player_components.Player;
+import my_game.util.ShipDirection;
+import my_game.util.Vector2;
+
+/**
+ * Writes a GameState in a compact, versioned binary format and reads it back.
+ * <p>
+ * The grid is written as one byte per cell giving the kind of object in the
+ * cell and its owner. Ships are written as records of their type, direction,
+ * bow and unit damage, the other units of a ship being found from the bow
+ * and the direction. Players are written once and referred to by index. The
+ * ship and base unit standing in each cell are found back from the positions
+ * of the units.
+ * <p>
+ * The codec works on a StateSnapshot, so a state which can not be captured
+ * (see StateSnapshot.capture) can not be written either, nor can a state in
+ * which a ship unit is on the grid away from its own position.
+ */
+public class GameStateCodec {
+
+    /** First bytes of an encoded state, "BSGS". */
+    public static final int MAGIC = 0x42534753;
+    public static final byte VERSION = 1;
+
+    /* Cell bytes: the low 3 bits are the kind of object, as in StateSnapshot. */
+    private static final int CELL_OWNER = 8;
+    private static final int CELL_MINE_DESTROYED = 8;
+    private static final int CELL_MINE_ACTIVE = 16;
+
+    /** The units of the ship are not in a line behind the bow, all their
+     * positions are written. */
+    private static final int FLAG_EXPLICIT_UNITS = 128;
+
+    /** Position of every base unit, player0's base first. */
+    private static final Vector2[] BASE_POSITIONS = new Vector2[2 * StateSnapshot.BASE_UNITS];
+    static {
+        BaseUnit[] units0 = new Base(0, 1).getBaseUnits();
+        BaseUnit[] units1 = new Base(0, 0).getBaseUnits();
+        for(int i = 0; i < StateSnapshot.BASE_UNITS; i++) {
+            BASE_POSITIONS[i] = units0[i].getPosition();
+            BASE_POSITIONS[StateSnapshot.BASE_UNITS + i] = units1[i].getPosition();
+        }
+    }
+
+    private GameStateCodec() {
+    }
+
+    /**
+     * Writes a game state.
+     * @param gs
+     * @param out
+     * @throws IOException
+     * @throws IllegalStateException If the codec can not describe the state,
+     * in which case nothing is written.
+     */
+    public static void write(GameState gs, DataOutputStream out) throws IOException {
+        write(StateSnapshot.capture(gs), out);
+    }
+
+    /**
+     * Takes the snapshot of a state which write(StateSnapshot, ...) can then
+     * write without failing.
+     * @param gs
+     * @return
+     * @throws IllegalStateException If the codec can not describe the state.
+     */
+    public static StateSnapshot prepare(GameState gs) {
+        StateSnapshot s = StateSnapshot.capture(gs);
+        checkUnitPositions(s);
+        return s;
+    }
+
+    /**
+     * Reads a game state written by write().
+     * @param in
+     * @return A new game state.
+     * @throws IOException If the data is not a valid encoded state.
+     */
+    public static GameState read(DataInputStream in) throws IOException {
+        return readSnapshot(in).toGameState();
+    }
+
+    /**
+     * Writes the state held by a snapshot.
+     * @param s
+     * @param out
+     * @throws IOException
+     * @throws IllegalStateException If the codec can not describe the state,
+     * in which case nothing is written. Never thrown for a snapshot returned
+     * by prepare().
+     */
+    public static void write(StateSnapshot s, DataOutputStream out) throws IOException {
+        checkUnitPositions(s);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(s.name == null ? "" : s.name);
+        out.writeByte((s.phase == null) ? -1 : s.phase.ordinal());
+        out.writeByte(s.playerTurn);
+        for(Player p: s.players) {
+            writePlayer(out, p);
+        }
+
+        for(int i = 0; i < s.cells.length; i++) {
+            out.writeByte(cellByte(s.cells[i]));
+        }
+
+        int count = 0;
+        for(int[] record: s.ships) {
+            if(record != null) {
+                count++;
+            }
+        }
+        out.writeByte(count);
+        for(int slot = 0; slot < StateSnapshot.SHIP_SLOTS; slot++) {
+            if(s.ships[slot] != null) {
+                out.writeByte(slot);
+                writeShip(out, s.ships[slot]);
+            }
+        }
+
+        for(int damage: s.baseDamage) {
+            out.writeByte(damage);
+        }
+
+        out.writeShort(s.messages.size());
+        for(Message m: s.messages) {
+            out.writeUTF(m.text);
+            out.writeByte(m.getMessageType().ordinal());
+            out.writeByte(GameStateDelta.playerIndex(s.players, m.getReceiver()));
+        }
+
+        GameStateDelta.writeAction(out, s.previousAction);
+    }
+
+    static StateSnapshot readSnapshot(DataInputStream in) throws IOException {
+        if(in.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not an encoded game state.");
+        }
+        int version = in.readByte();
+        if(version != VERSION) {
+            throw new StreamCorruptedException("Unsupported game state version " + version + ".");
+        }
+        try {
+            String name = in.readUTF();
+            int phase = in.readByte();
+            int playerTurn = in.readByte();
+            Player[] players = new Player[] {readPlayer(in), readPlayer(in)};
+
+            byte[] cellBytes = new byte[Map.WIDTH * Map.HEIGHT];
+            in.readFully(cellBytes);
+
+            int[][] ships = new int[StateSnapshot.SHIP_SLOTS][];
+            int count = in.readUnsignedByte();
+            for(int i = 0; i < count; i++) {
+                int slot = in.readUnsignedByte();
+                ships[slot] = readShip(in);
+            }
+
+            int[] baseDamage = new int[2 * StateSnapshot.BASE_UNITS];
+            for(int i = 0; i < baseDamage.length; i++) {
+                baseDamage[i] = in.readByte();
+            }
+
+            count = in.readUnsignedShort();
+            ArrayList<Message> messages = new ArrayList<Message>(count);
+            for(int i = 0; i < count; i++) {
+                String text = in.readUTF();
+                Message.MessageType type = Message.MessageType.values()[in.readByte()];
+                int receiver = in.readByte();
+                messages.add(new Message(text, type, (receiver < 0) ? null : players[receiver]));
+            }
+            ActionDescription previousAction = GameStateDelta.readAction(in);
+
+            return new StateSnapshot(name, players, (phase < 0) ? null : GamePhase.values()[phase],
+                    playerTurn, cellCodes(cellBytes, ships), ships, baseDamage, messages, previousAction);
+        } catch(ArrayIndexOutOfBoundsException ex) {
+            throw new StreamCorruptedException("Value out of range in encoded game state.");
+        }
+    }
+
+    private static void writePlayer(DataOutputStream out, Player p) throws IOException {
+        out.writeInt(p.getID());
+        out.writeUTF(p.getUsername());
+        out.writeUTF(p.getPassword() == null ? "" : p.getPassword());
+        byte[] address = (p.getIP() == null) ? new byte[0] : p.getIP().getAddress();
+        out.writeByte(address.length);
+        out.write(address);
+        out.writeInt(p.getPort());
+    }
+
+    private static Player readPlayer(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        String username = in.readUTF();
+        String password = in.readUTF();
+        byte[] address = new byte[in.readUnsignedByte()];
+        in.readFully(address);
+        int port = in.readInt();
+        Player p = new Player(username, password,
+                (address.length == 0) ? null : InetAddress.getByAddress(address), port, 0);
+        if(p.getID() != id) {
+            throw new StreamCorruptedException("Player " + username + " does not match its id.");
+        }
+        return p;
+    }
+
+    /**
+     * @return The byte describing the cell with the given snapshot code.
+     */
+    private static int cellByte(int code) {
+        switch(code & 7) {
+            case StateSnapshot.CELL_SHIP:
+                //the slot of a ship tells its owner
+                return StateSnapshot.CELL_SHIP | (((code >> 3) & 0x1F) >= StateSnapshot.MAX_SHIPS ? CELL_OWNER : 0);
+            case StateSnapshot.CELL_BASE:
+                return StateSnapshot.CELL_BASE | (((code >> 3) & 1) != 0 ? CELL_OWNER : 0);
+            case StateSnapshot.CELL_MINE:
+                return code & (7 | CELL_MINE_DESTROYED | CELL_MINE_ACTIVE);
+            default:
+                return code & 7;
+        }
+    }
+
+    /**
+     * Checks that every ship unit on the grid stands at its own position,
+     * otherwise it could not be found back when reading.
+     * @throws IllegalStateException
+     */
+    private static void checkUnitPositions(StateSnapshot s) {
+        for(int i = 0; i < s.cells.length; i++) {
+            int code = s.cells[i];
+            if((code & 7) != StateSnapshot.CELL_SHIP) {
+                continue;
+            }
+            int[] r = s.ships[(code >> 3) & 0x1F];
+            int unit = (code >> 8) & 0xFF;
+            if(r[StateSnapshot.REC_HEADER + 3 * unit] != i / Map.HEIGHT
+                    || r[StateSnapshot.REC_HEADER + 3 * unit + 1] != i % Map.HEIGHT) {
+                throw new IllegalStateException("Ship unit on " + i / Map.HEIGHT + "," + i % Map.HEIGHT
+                        + " is not at its own position.");
+            }
+        }
+    }
+
+    /**
+     * Turns the cell bytes back into snapshot codes, finding the ship and
+     * base unit in each cell from the positions of the units.
+     */
+    private static int[] cellCodes(byte[] cellBytes, int[][] ships) throws IOException {
+        //ship unit standing on each cell, for each player: slot and unit index + 1
+        int[][] shipAt = new int[2][cellBytes.length];
+        for(int slot = 0; slot < StateSnapshot.SHIP_SLOTS; slot++) {
+            int[] r = ships[slot];
+            if(r == null) {
+                continue;
+            }
+            int owner = (slot < StateSnapshot.MAX_SHIPS) ? 0 : 1;
+            for(int u = 0; u < r[StateSnapshot.REC_UNIT_COUNT]; u++) {
+                int x = r[StateSnapshot.REC_HEADER + 3 * u];
+                int y = r[StateSnapshot.REC_HEADER + 3 * u + 1];
+                if(x >= 0 && x < Map.WIDTH && y >= 0 && y < Map.HEIGHT) {
+                    shipAt[owner][x * Map.HEIGHT + y] = StateSnapshot.shipCell(slot, u) + 1;
+                }
+            }
+        }
+
+        int[] cells = new int[cellBytes.length];
+        for(int i = 0; i < cellBytes.length; i++) {
+            int b = cellBytes[i];
+            int owner = ((b & CELL_OWNER) != 0) ? 1 : 0;
+            switch(b & 7) {
+                case StateSnapshot.CELL_SHIP:
+                    if(shipAt[owner][i] == 0) {
+                        throw new StreamCorruptedException("No ship unit at " + i / Map.HEIGHT + "," + i % Map.HEIGHT + ".");
+                    }
+                    cells[i] = shipAt[owner][i] - 1;
+                    break;
+                case StateSnapshot.CELL_BASE:
+                    cells[i] = StateSnapshot.baseCell(owner, baseUnitAt(owner, i / Map.HEIGHT, i % Map.HEIGHT));
+                    break;
+                case StateSnapshot.CELL_MINE:
+                    cells[i] = StateSnapshot.mineCell((b & CELL_MINE_DESTROYED) != 0, (b & CELL_MINE_ACTIVE) != 0);
+                    break;
+                default:
+                    cells[i] = b & 7;
+                    break;
+            }
+        }
+        return cells;
+    }
+
+    private static int baseUnitAt(int owner, int x, int y) throws IOException {
+        for(int i = 0; i < StateSnapshot.BASE_UNITS; i++) {
+            Vector2 p = BASE_POSITIONS[owner * StateSnapshot.BASE_UNITS + i];
+            if(p.x == x && p.y == y) {
+                return i;
+            }
+        }
+        throw new StreamCorruptedException("No base unit at " + x + "," + y + ".");
+    }
+
+    /**
+     * Writes a ship record. The positions of the units are only written if
+     * they can not be found from the bow and the direction.
+     */
+    private static void writeShip(DataOutputStream out, int[] r) throws IOException {
+        int units = r[StateSnapshot.REC_UNIT_COUNT];
+        boolean inLine = unitsInLine(r);
+        out.writeByte(r[StateSnapshot.REC_TYPE]);
+        out.writeInt(r[StateSnapshot.REC_PLAYER_ID]);
+        out.writeByte(r[StateSnapshot.REC_DIRECTION]);
+        out.writeByte(r[StateSnapshot.REC_CURRENT_SIZE]);
+        out.writeByte(r[StateSnapshot.REC_CURRENT_SPEED]);
+        out.writeByte(r[StateSnapshot.REC_DESTROYED_UNITS]);
+        out.writeByte(r[StateSnapshot.REC_FLAGS] | (inLine ? 0 : FLAG_EXPLICIT_UNITS));
+        out.writeByte(r[StateSnapshot.REC_MINES]);
+        out.writeByte(units);
+        for(int u = 0; u < units; u++) {
+            if(u == 0 || !inLine) {
+                out.writeByte(r[StateSnapshot.REC_HEADER + 3 * u]);
+                out.writeByte(r[StateSnapshot.REC_HEADER + 3 * u + 1]);
+            }
+            out.writeByte(r[StateSnapshot.REC_HEADER + 3 * u + 2]);
+        }
+    }
+
+    private static int[] readShip(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        int playerId = in.readInt();
+        int direction = in.readByte();
+        int size = in.readByte();
+        int speed = in.readByte();
+        int destroyed = in.readByte();
+        int flags = in.readUnsignedByte();
+        int mines = in.readByte();
+        int units = in.readUnsignedByte();
+        int[] r = new int[StateSnapshot.REC_HEADER + 3 * units];
+        r[StateSnapshot.REC_TYPE] = type;
+        r[StateSnapshot.REC_PLAYER_ID] = playerId;
+        r[StateSnapshot.REC_DIRECTION] = direction;
+        r[StateSnapshot.REC_CURRENT_SIZE] = size;
+        r[StateSnapshot.REC_CURRENT_SPEED] = speed;
+        r[StateSnapshot.REC_DESTROYED_UNITS] = destroyed;
+        r[StateSnapshot.REC_FLAGS] = flags & ~FLAG_EXPLICIT_UNITS;
+        r[StateSnapshot.REC_MINES] = mines;
+        r[StateSnapshot.REC_UNIT_COUNT] = units;
+        boolean inLine = (flags & FLAG_EXPLICIT_UNITS) == 0;
+        Vector2 step = sternStep(direction);
+        for(int u = 0; u < units; u++) {
+            int x, y;
+            if(u == 0 || !inLine) {
+                x = in.readByte();
+                y = in.readByte();
+            } else {
+                x = r[StateSnapshot.REC_HEADER] + u * step.x;
+                y = r[StateSnapshot.REC_HEADER + 1] + u * step.y;
+            }
+            r[StateSnapshot.REC_HEADER + 3 * u] = x;
+            r[StateSnapshot.REC_HEADER + 3 * u + 1] = y;
+            r[StateSnapshot.REC_HEADER + 3 * u + 2] = in.readByte();
+        }
+        return r;
+    }
+
+    /**
+     * @return True if every unit of the ship stands behind the previous one,
+     * starting from the bow.
+     */
+    private static boolean unitsInLine(int[] r) {
+        int units = r[StateSnapshot.REC_UNIT_COUNT];
+        int bowX = r[StateSnapshot.REC_HEADER];
+        int bowY = r[StateSnapshot.REC_HEADER + 1];
+        if(bowX < 0) {
+            return units <= 1;
+        }
+        Vector2 step = sternStep(r[StateSnapshot.REC_DIRECTION]);
+        for(int u = 1; u < units; u++) {
+            if(r[StateSnapshot.REC_HEADER + 3 * u] != bowX + u * step.x
+                    || r[StateSnapshot.REC_HEADER + 3 * u + 1] != bowY + u * step.y) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The offset from a unit of a ship to the unit behind it, for a
+     * ship facing the given direction.
+     */
+    private static Vector2 sternStep(int direction) {
+        if(direction < 0) {
+            return Vector2.of(0, 0);
+        }
+        switch(ShipDirection.values()[direction]) {
+            case North:
+                return Vector2.of(0, 1);
+            case South:
+                return Vector2.of(0, -1);
+            case East:
+                return Vector2.of(-1, 0);
+            case West:
+                return Vector2.of(1, 0);
+            default:
+                return Vector2.of(0, 0);
+        }
+    }
+}
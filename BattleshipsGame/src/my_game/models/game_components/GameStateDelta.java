@@ -0,0 +1,349 @@
+package my_game.models.game_components;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import my_game.models.game_components.GameState.GamePhase;
+import my_game.models.player_components.Message;
+import my_game.models.player_components.Player;
+import my_game.util.GameException;
+import my_game.util.Vector2;
+
+/**
+ * The differences between two snapshots of a game: the grid cells which
+ * changed, the ships whose position, direction or damage changed, the base
+ * units hit, the new chat messages and the last action. A delta is computed
+ * against a base snapshot and can only be applied on that same base, which
+ * is checked through the checksums of the base and resulting snapshots.
+ */
+public class GameStateDelta {
+
+    private int baseChecksum;
+    private int targetChecksum;
+    private GamePhase phase;
+    private int playerTurn;
+    private int[] cellIndexes;
+    private int[] cellCodes;
+    private int[] shipSlots;
+    /** New record of every changed ship, null if the ship is gone. */
+    private int[][] shipRecords;
+    private int[] baseIndexes;
+    private int[] baseValues;
+    /** Number of messages in the base, the new ones are appended after. */
+    private int messageOffset;
+    private String[] messageTexts;
+    private int[] messageTypes;
+    /** Index of the receiver of every new message, -1 if sent to everyone. */
+    private int[] messageReceivers;
+    private ActionDescription previousAction;
+
+    private GameStateDelta() {
+    }
+
+    /**
+     * Computes the changes which turn the base snapshot into the target one.
+     * @param base A snapshot known to both sides of the connection.
+     * @param target The snapshot to send.
+     * @return
+     */
+    public static GameStateDelta diff(StateSnapshot base, StateSnapshot target) {
+        GameStateDelta d = new GameStateDelta();
+        d.baseChecksum = base.checksum();
+        d.targetChecksum = target.checksum();
+        d.phase = target.phase;
+        d.playerTurn = target.playerTurn;
+        d.previousAction = target.previousAction;
+
+        int count = 0;
+        for(int i = 0; i < target.cells.length; i++) {
+            if(base.cells[i] != target.cells[i]) {
+                count++;
+            }
+        }
+        d.cellIndexes = new int[count];
+        d.cellCodes = new int[count];
+        count = 0;
+        for(int i = 0; i < target.cells.length; i++) {
+            if(base.cells[i] != target.cells[i]) {
+                d.cellIndexes[count] = i;
+                d.cellCodes[count] = target.cells[i];
+                count++;
+            }
+        }
+
+        ArrayList<Integer> slots = new ArrayList<Integer>();
+        for(int slot = 0; slot < StateSnapshot.SHIP_SLOTS; slot++) {
+            if(!Arrays.equals(base.ships[slot], target.ships[slot])) {
+                slots.add(slot);
+            }
+        }
+        d.shipSlots = new int[slots.size()];
+        d.shipRecords = new int[slots.size()][];
+        for(int i = 0; i < d.shipSlots.length; i++) {
+            d.shipSlots[i] = slots.get(i);
+            d.shipRecords[i] = target.ships[d.shipSlots[i]];
+        }
+
+        count = 0;
+        for(int i = 0; i < target.baseDamage.length; i++) {
+            if(base.baseDamage[i] != target.baseDamage[i]) {
+                count++;
+            }
+        }
+        d.baseIndexes = new int[count];
+        d.baseValues = new int[count];
+        count = 0;
+        for(int i = 0; i < target.baseDamage.length; i++) {
+            if(base.baseDamage[i] != target.baseDamage[i]) {
+                d.baseIndexes[count] = i;
+                d.baseValues[count] = target.baseDamage[i];
+                count++;
+            }
+        }
+
+        //chat messages are only ever appended
+        d.messageOffset = base.messages.size();
+        int newMessages = Math.max(0, target.messages.size() - d.messageOffset);
+        d.messageTexts = new String[newMessages];
+        d.messageTypes = new int[newMessages];
+        d.messageReceivers = new int[newMessages];
+        for(int i = 0; i < newMessages; i++) {
+            Message m = target.messages.get(d.messageOffset + i);
+            d.messageTexts[i] = m.text;
+            d.messageTypes[i] = m.getMessageType().ordinal();
+            d.messageReceivers[i] = playerIndex(target.players, m.getReceiver());
+        }
+        return d;
+    }
+
+    static int playerIndex(Player[] players, Player p) {
+        if(p == null) {
+            return -1;
+        }
+        return p.equals(players[1]) ? 1 : 0;
+    }
+
+    /**
+     * Applies the changes of this delta on a copy of the base snapshot.
+     * @param base The snapshot this delta was computed against.
+     * @return The resulting snapshot.
+     * @throws GameException If the base is not the one this delta was
+     * computed against, or if the result does not match the sender's state.
+     */
+    public StateSnapshot applyTo(StateSnapshot base) throws GameException {
+        if(base.checksum() != baseChecksum) {
+            throw new GameException("Delta computed against another base state.");
+        }
+        int[] cells = base.cells.clone();
+        for(int i = 0; i < cellIndexes.length; i++) {
+            cells[cellIndexes[i]] = cellCodes[i];
+        }
+        int[][] ships = base.ships.clone();
+        for(int i = 0; i < shipSlots.length; i++) {
+            ships[shipSlots[i]] = shipRecords[i];
+        }
+        int[] baseDamage = base.baseDamage.clone();
+        for(int i = 0; i < baseIndexes.length; i++) {
+            baseDamage[baseIndexes[i]] = baseValues[i];
+        }
+        if(base.messages.size() != messageOffset) {
+            throw new GameException("Delta computed against another chat log.");
+        }
+        ArrayList<Message> messages = new ArrayList<Message>(base.messages);
+        for(int i = 0; i < messageTexts.length; i++) {
+            Player receiver = (messageReceivers[i] < 0) ? null : base.players[messageReceivers[i]];
+            messages.add(new Message(messageTexts[i], Message.MessageType.values()[messageTypes[i]], receiver));
+        }
+        StateSnapshot result = new StateSnapshot(base.name, base.players, phase, playerTurn,
+                cells, ships, baseDamage, messages, previousAction);
+        if(result.checksum() != targetChecksum) {
+            throw new GameException("State after applying the delta does not match the sender's state.");
+        }
+        return result;
+    }
+
+    public int getBaseChecksum() {
+        return baseChecksum;
+    }
+
+    public int getTargetChecksum() {
+        return targetChecksum;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(baseChecksum);
+        out.writeInt(targetChecksum);
+        out.writeByte((phase == null) ? -1 : phase.ordinal());
+        out.writeByte(playerTurn);
+
+        out.writeShort(cellIndexes.length);
+        for(int i = 0; i < cellIndexes.length; i++) {
+            out.writeShort(cellIndexes[i]);
+            out.writeInt(cellCodes[i]);
+        }
+
+        out.writeByte(shipSlots.length);
+        for(int i = 0; i < shipSlots.length; i++) {
+            out.writeByte(shipSlots[i]);
+            int[] record = shipRecords[i];
+            if(record == null) {
+                out.writeShort(-1);
+            } else {
+                out.writeShort(record.length);
+                for(int value: record) {
+                    out.writeInt(value);
+                }
+            }
+        }
+
+        out.writeByte(baseIndexes.length);
+        for(int i = 0; i < baseIndexes.length; i++) {
+            out.writeByte(baseIndexes[i]);
+            out.writeByte(baseValues[i]);
+        }
+
+        out.writeShort(messageOffset);
+        out.writeShort(messageTexts.length);
+        for(int i = 0; i < messageTexts.length; i++) {
+            out.writeUTF(messageTexts[i]);
+            out.writeByte(messageTypes[i]);
+            out.writeByte(messageReceivers[i]);
+        }
+
+        writeAction(out, previousAction);
+    }
+
+    public static GameStateDelta read(DataInputStream in) throws IOException {
+        GameStateDelta d = new GameStateDelta();
+        d.baseChecksum = in.readInt();
+        d.targetChecksum = in.readInt();
+        int phase = in.readByte();
+        d.phase = (phase < 0) ? null : GamePhase.values()[phase];
+        d.playerTurn = in.readByte();
+
+        int count = in.readUnsignedShort();
+        d.cellIndexes = new int[count];
+        d.cellCodes = new int[count];
+        for(int i = 0; i < count; i++) {
+            d.cellIndexes[i] = in.readUnsignedShort();
+            d.cellCodes[i] = in.readInt();
+        }
+
+        count = in.readUnsignedByte();
+        d.shipSlots = new int[count];
+        d.shipRecords = new int[count][];
+        for(int i = 0; i < count; i++) {
+            d.shipSlots[i] = in.readUnsignedByte();
+            int length = in.readShort();
+            if(length >= 0) {
+                d.shipRecords[i] = new int[length];
+                for(int j = 0; j < length; j++) {
+                    d.shipRecords[i][j] = in.readInt();
+                }
+            }
+        }
+
+        count = in.readUnsignedByte();
+        d.baseIndexes = new int[count];
+        d.baseValues = new int[count];
+        for(int i = 0; i < count; i++) {
+            d.baseIndexes[i] = in.readUnsignedByte();
+            d.baseValues[i] = in.readByte();
+        }
+
+        d.messageOffset = in.readUnsignedShort();
+        count = in.readUnsignedShort();
+        d.messageTexts = new String[count];
+        d.messageTypes = new int[count];
+        d.messageReceivers = new int[count];
+        for(int i = 0; i < count; i++) {
+            d.messageTexts[i] = in.readUTF();
+            d.messageTypes[i] = in.readByte();
+            d.messageReceivers[i] = in.readByte();
+        }
+
+        d.previousAction = readAction(in);
+        return d;
+    }
+
+    /**
+     * Writes the description of the last action: its kind followed by the
+     * positions needed to animate it.
+     * @param out
+     * @param a Can be null.
+     * @throws IOException
+     */
+    public static void writeAction(DataOutputStream out, ActionDescription a) throws IOException {
+        if(a instanceof MoveDescription) {
+            MoveDescription m = (MoveDescription) a;
+            out.writeByte(1);
+            writeVectors(out, m.oldPositions);
+            writeVectors(out, m.newPositions);
+        } else if(a instanceof CannonDescription) {
+            CannonDescription c = (CannonDescription) a;
+            out.writeByte(2);
+            writeVector(out, c.origin);
+            writeVector(out, c.target);
+            out.writeBoolean(c.hit);
+        } else {
+            out.writeByte(0);
+        }
+    }
+
+    public static ActionDescription readAction(DataInputStream in) throws IOException {
+        switch(in.readByte()) {
+            case 1:
+                Vector2[] oldPositions = readVectors(in);
+                Vector2[] newPositions = readVectors(in);
+                return new MoveDescription(oldPositions, newPositions);
+            case 2:
+                Vector2 origin = readVector(in);
+                Vector2 target = readVector(in);
+                return new CannonDescription(origin, target, in.readBoolean());
+            default:
+                return null;
+        }
+    }
+
+    private static void writeVectors(DataOutputStream out, Vector2[] v) throws IOException {
+        if(v == null) {
+            out.writeShort(-1);
+            return;
+        }
+        out.writeShort(v.length);
+        for(Vector2 p: v) {
+            writeVector(out, p);
+        }
+    }
+
+    private static Vector2[] readVectors(DataInputStream in) throws IOException {
+        int length = in.readShort();
+        if(length < 0) {
+            return null;
+        }
+        Vector2[] v = new Vector2[length];
+        for(int i = 0; i < length; i++) {
+            v[i] = readVector(in);
+        }
+        return v;
+    }
+
+    private static void writeVector(DataOutputStream out, Vector2 v) throws IOException {
+        out.writeBoolean(v != null);
+        if(v != null) {
+            out.writeShort(v.x);
+            out.writeShort(v.y);
+        }
+    }
+
+    private static Vector2 readVector(DataInputStream in) throws IOException {
+        if(!in.readBoolean()) {
+            return null;
+        }
+        int x = in.readShort();
+        int y = in.readShort();
+        return Vector2.of(x, y);
+    }
+}
@@ -6,6 +6,8 @@ package my_game.models.game_components;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import my_game.models.ships_impl.Cruiser;
@@ -27,6 +29,7 @@ import my_game.util.Vector2;
 * screen: ships, obstacles (corals), bases and weapons.
 */
 public class Map implements java.io.Serializable {
+    private static final long serialVersionUID = 9008222179868529520L;
     
     public final static int WIDTH = 30;
     public final static int HEIGHT = 30;
@@ -36,8 +39,32 @@ public class Map implements java.io.Serializable {
     private final int Y_OFFSET = 3;
     /** 2D array representing the cells of the map grid which contain game objects. */
     protected GameObject[][] grid = new GameObject[WIDTH][HEIGHT];
-    /** 2D array giving the radar visibility for every grid cell of the map. */
-    boolean[][] player0Visibility, player1Visibility;   //TODO implement
+    /*
+     * Bitboards of the grid, kept in sync with it by place(): the cells
+     * holding any object, the cells of each kind of object and the cells
+     * next to a mine. They are not saved, readObject() builds them again.
+     */
+    private transient BitBoard occupied, coral, bases, mines, mineZones;
+    /** The number of mines next to each cell, the cells of mineZones are those above 0. */
+    private transient byte[] mineZoneCount;
+    /** The cells holding a unit of a ship of player0, and of player1. */
+    private transient BitBoard[] ships;
+    /** The radar visibility of every grid cell for player0, and for player1. */
+    private transient BitBoard[] radar;
+    /** The cells in the sonar range of player0, and of player1. */
+    private transient BitBoard[] sonar;
+    /*
+     * The radar and sonar are kept up to date one ship at a time: each cell
+     * counts how many ships of a player see it, and every ship of a fleet
+     * has the footprint it added to the counts. Moving a ship takes its old
+     * footprint away and adds the new one.
+     */
+    private transient short[][] radarCount, sonarCount;
+    private transient IdentityHashMap<Ship, Footprint> footprints;
+    /** The cells each player sees whatever its ships do: around its own base, and the other base. */
+    private transient BitBoard[] baseVisibility;
+    /** Marks the cells of a footprint while it is made. */
+    private transient BitBoard scratch;
     protected ArrayList<Ship> player0Ships;
     protected ArrayList<Ship> player1Ships;
     protected Base p0Base;
@@ -45,17 +72,29 @@ public class Map implements java.io.Serializable {
     private ArrayList<Vector2> dockingZone = new ArrayList<Vector2>();
 
     public Map(Map m) {
-        //shallow copy grid and visibility arrays
-        player0Visibility = new boolean[WIDTH][HEIGHT];
-        player1Visibility = new boolean[WIDTH][HEIGHT];
-        
+        //shallow copy grid and bitboards
+        initLayers();
         for(int i = 0; i < WIDTH; i++) {
             for(int j = 0; j < HEIGHT; j++) {
                 grid[i][j] = m.grid[i][j];
-                player0Visibility[i][j] = m.player0Visibility[i][j];
-                player1Visibility[i][j] = m.player1Visibility[i][j];
             }
         }
+        occupied.copyFrom(m.occupied);
+        coral.copyFrom(m.coral);
+        bases.copyFrom(m.bases);
+        mines.copyFrom(m.mines);
+        mineZones.copyFrom(m.mineZones);
+        mineZoneCount = m.mineZoneCount.clone();
+        for(int i = 0; i < 2; i++) {
+            ships[i].copyFrom(m.ships[i]);
+            radar[i].copyFrom(m.radar[i]);
+            sonar[i].copyFrom(m.sonar[i]);
+            radarCount[i] = m.radarCount[i].clone();
+            sonarCount[i] = m.sonarCount[i].clone();
+            baseVisibility[i].copyFrom(m.baseVisibility[i]);
+        }
+        //the footprints are never changed, only replaced
+        footprints.putAll(m.footprints);
         //copy other fields
         this.player0Ships = new ArrayList<Ship>();
         this.player1Ships = new ArrayList<Ship>();
@@ -69,20 +108,21 @@ public class Map implements java.io.Serializable {
     
     public Map(CoralReef reef, Ship[] player0Ships, Ship[] player1Ships, Base b0, Base b1) {
         //clear the grid (init all to null)
+        initLayers();
         clearGrid();
         /* TODO when creating the mapGrid use a CoralReef to provide
         * the positions of all obstacles. */
         int x_start = X_OFFSET;
-        int x_end = X_OFFSET + reef.WIDTH;
+        int x_end = X_OFFSET + CoralReef.WIDTH;
         int y_start = Y_OFFSET;
-        int y_end = Y_OFFSET + reef.HEIGHT;
+        int y_end = Y_OFFSET + CoralReef.HEIGHT;
         int xMap, yMap, xReef, yReef;
         for (xMap = x_start, xReef = 0; xMap < x_end; xMap++, xReef++){
             for (yMap = y_start, yReef = 0; yMap < y_end; yMap++, yReef++){
                 if (reef.hasObstacleIn(xReef, yReef)){
                     CoralUnit coralUnit = new CoralUnit();
                     //maybe setObjectAt should return void?
-                    Vector2 position = new Vector2(xMap,yMap);
+                    Vector2 position = Vector2.of(xMap,yMap);
                     this.setObjectAt(position, coralUnit);
                 }
             }
@@ -99,28 +139,114 @@ public class Map implements java.io.Serializable {
             this.player1Ships.add(s);
         }
         
+        //the bases tell the ships of the two players apart
+        this.p0Base = b0;
+        this.p1Base = b1;
+        
         //Position ships on the map grid as well.
         initShips(player0Ships);
         initShips(player1Ships);
         
-        this.p0Base = b0;
-        this.p1Base = b1;
-        
         initBase(b0);
         initBase(b1);
         initDockingZone();
-        
-        player0Visibility = new boolean[WIDTH][HEIGHT];
-        player1Visibility = new boolean[WIDTH][HEIGHT];
+        initBaseVisibility();
 
         updateRadarVisibilityArrays();
     }
     
+    /**
+     * Creates a map with only the two bases set, the grid is otherwise empty
+     * and there are no ships. Used when a map is rebuilt from a StateSnapshot;
+     * the caller fills the grid and ship lists and then updates the radar.
+     * @param b0 Base of player0 (west side).
+     * @param b1 Base of player1 (east side).
+     */
+    Map(Base b0, Base b1) {
+        initLayers();
+        clearGrid();
+        this.player0Ships = new ArrayList<Ship>();
+        this.player1Ships = new ArrayList<Ship>();
+        this.p0Base = b0;
+        this.p1Base = b1;
+        initDockingZone();
+        initBaseVisibility();
+    }
+    
+    private void initLayers() {
+        occupied = new BitBoard();
+        coral = new BitBoard();
+        bases = new BitBoard();
+        mines = new BitBoard();
+        mineZones = new BitBoard();
+        mineZoneCount = new byte[BitBoard.CELLS];
+        ships = new BitBoard[] {new BitBoard(), new BitBoard()};
+        radar = new BitBoard[] {new BitBoard(), new BitBoard()};
+        sonar = new BitBoard[] {new BitBoard(), new BitBoard()};
+        radarCount = new short[2][BitBoard.CELLS];
+        sonarCount = new short[2][BitBoard.CELLS];
+        footprints = new IdentityHashMap<Ship, Footprint>();
+        baseVisibility = new BitBoard[] {new BitBoard(), new BitBoard()};
+        scratch = new BitBoard();
+    }
+    
+    /**
+     * Makes visible to each player the cells around its base and the cells
+     * of the other base, the bases never move.
+     */
+    private void initBaseVisibility() {
+        for(BaseUnit u: this.p0Base.getBaseUnits()) {
+            //make visible every grid cell around the base unit
+            Vector2 pos = u.getPosition();
+            makeVisibleAllNeighbours(pos, baseVisibility[0]);
+            //add only the base blocks as visible to the other player
+            baseVisibility[1].set(pos.x, pos.y);
+        }
+        for(BaseUnit u: this.p1Base.getBaseUnits()) {
+            Vector2 pos = u.getPosition();
+            makeVisibleAllNeighbours(pos, baseVisibility[1]);
+            baseVisibility[0].set(pos.x, pos.y);
+        }
+    }
+    
+    /**
+     * Reads a saved or received map and builds its bitboards from the grid.
+     */
+    private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        numberShips(player0Ships);
+        numberShips(player1Ships);
+        initLayers();
+        for(int x = 0; x < WIDTH; x++) {
+            for(int y = 0; y < HEIGHT; y++) {
+                place(x, y, grid[x][y]);
+            }
+        }
+        initBaseVisibility();
+        updateRadarVisibilityArrays();
+    }
+    
+    /**
+     * Gives the ships of a fleet saved before the ships had ids, which all
+     * read as 0, the ids GameState gives them: their index in the fleet.
+     * @param fleet
+     */
+    private static void numberShips(ArrayList<Ship> fleet) {
+        for(Ship s: fleet) {
+            if(s.getShipId() != 0) {
+                return;
+            }
+        }
+        for(int i = 0; i < fleet.size(); i++) {
+            fleet.get(i).setShipId(i);
+        }
+    }
+    
     private void initDockingZone(){
-        Vector2 d0 = new Vector2(0,9);
-        Vector2 d1 = new Vector2(0,20);
-        Vector2 d2 = new Vector2(29,9);
-        Vector2 d3 = new Vector2(29,20);
+        Vector2 d0 = Vector2.of(0,9);
+        Vector2 d1 = Vector2.of(0,20);
+        Vector2 d2 = Vector2.of(29,9);
+        Vector2 d3 = Vector2.of(29,20);
         dockingZone.add(d0);
         dockingZone.add(d1);
         dockingZone.add(d2);
@@ -128,12 +254,12 @@ public class Map implements java.io.Serializable {
         Vector2 d;
         int i = 1;
         for (int j = 10; j < 20; j++){
-            d = new Vector2(i,j);
+            d = Vector2.of(i,j);
             dockingZone.add(d);
         }
         i = 28;
         for (int j = 10; j < 20; j++){
-            d = new Vector2(i,j);
+            d = Vector2.of(i,j);
             dockingZone.add(d);
         }        
         
@@ -246,13 +372,8 @@ public class Map implements java.io.Serializable {
      * @return 
      */
     private boolean isSelf(Ship s, Vector2 p){
-        ShipUnit[] shipUnits = s.getShipUnits();
-        ArrayList<Vector2> selfPositions = new ArrayList<Vector2>();      
-        for (ShipUnit su: shipUnits){
-            selfPositions.add(su.getPosition());
-        }        
-        for (Vector2 v: selfPositions){
-            if(v.equals(p)){
+        for (ShipUnit su: s.getShipUnits()){
+            if(p.equals(su.getPosition())){
                 return true;
             }
         }
@@ -271,13 +392,7 @@ public class Map implements java.io.Serializable {
      */
 //    public void moveShip(Ship ship,Vector2 newPosition, Positions p) throws GameException {
     public boolean moveShip(Ship ship,Vector2 newPosition, Positions p) {
-        boolean found = false;
-        for(Vector2 v: p.getAll()) {
-            if(v.equals(newPosition)) {
-                found = true;
-            }
-        }
-        if(!found) {
+        if(!p.contains(newPosition)) {
             return false;
         }
         if (ship.getShipType().compareTo(Ship.ShipType.KamikazeBoat)== 0){
@@ -293,7 +408,7 @@ public class Map implements java.io.Serializable {
         } else {
             return false;
         }       
-        this.updateRadarVisibilityArrays();
+        this.updateRadar(ship);
         return true;
     }
     private boolean moveShipKamikaze(Ship ship, Vector2 p){
@@ -310,7 +425,7 @@ public class Map implements java.io.Serializable {
             positions.add(p);
             this.updateShipPositions(ship, positions);
             ship.moveToKam(p);
-            this.updateRadarVisibilityArrays();
+            this.updateRadar(ship);
             return true;
         }
      
@@ -548,7 +663,7 @@ public class Map implements java.io.Serializable {
             //and for insert every ship unit of every ship into the grid
             for(ShipUnit su: s.getShipUnits()) {
                 Vector2 position = su.getPosition();
-                grid[position.x][position.y] = su;
+                place(position.x, position.y, su);
             }
         }
     }
@@ -559,7 +674,7 @@ public class Map implements java.io.Serializable {
         BaseUnit[] baseUnits = b.getBaseUnits();
         for(BaseUnit bu: baseUnits) {
            Vector2 position = bu.getPosition();
-           grid[position.x][position.y] = bu;
+           place(position.x, position.y, bu);
         }       
      }
 /**
@@ -633,13 +748,7 @@ public class Map implements java.io.Serializable {
     }
     
     public boolean turnShip(Ship ship, Vector2 newPosition, TurnPositions p){
-        boolean found = false;
-        for(Vector2 v: p.getAll()) {
-            if(v.equals(newPosition)) {
-                found = true;
-            }
-        }
-        if(!found) {
+        if(!p.contains(newPosition)) {
             return false;
         }      
         Turns shipPositions = getTurnPositions (newPosition, p);     
@@ -655,9 +764,8 @@ public class Map implements java.io.Serializable {
         if (valid != null){
             this.updateShipPositions(ship, valid);    
             ship.turnTo(valid, newDirection);           
+            updateRadar(ship);
         }        
-        
-        updateRadarVisibilityArrays();
         return true;
     }
     
@@ -669,7 +777,7 @@ public class Map implements java.io.Serializable {
         ShipUnit[] units = ship.getShipUnits();
         ArrayList<Vector2> list = new ArrayList<Vector2>();
         for(ShipUnit s: units) {
-            list.add(new Vector2(s.getPosition()));
+            list.add(s.getPosition());
         }
         return list;
     }
@@ -855,43 +963,45 @@ public class Map implements java.io.Serializable {
      * @return 
      */
     public boolean isVisibleObstacle(Ship s, Vector2 p){
-        boolean isVisibleObstacle = false;
-        GameObject o = this.getObjectAt(p);    
-        // null game object is the empty sea. 
-        if (o == null){
+        // the empty sea is not an obstacle. 
+        if (!occupied.get(p)){
             return false;
         }
-        if (o.getObjectType().compareTo(GameObject.GameObjectType.Base)==0){
-             isVisibleObstacle = true;
-        }else if (o.getObjectType().compareTo(GameObject.GameObjectType.CoralReef)==0){
-            isVisibleObstacle = true;
-
-        }else if (o.getObjectType().compareTo(GameObject.GameObjectType.Ship)==0){
-            ShipUnit su = (ShipUnit)o;
-            if (su.getShip().getPlayerID()== s.getPlayerID()){
-                isVisibleObstacle = true;
-            }
-            ArrayList<Vector2> visible = s.getRadarPositions();            
-            for (Vector2 v: visible){
-                if (v.equals(p)){
-                    isVisibleObstacle = true;
-                    break;
-                }
-            }
-        }else if (o.getObjectType().compareTo(GameObject.GameObjectType.Mine) == 0){
-            if (s.getShipType().compareTo(Ship.ShipType.MineLayer) == 0){
-                ArrayList<Vector2> visible = s.getRadarPositions();
-                for (Vector2 v: visible){
-                    if (v.equals(p)){
-                        System.out.println("MINELAYER can see mine");
-                        isVisibleObstacle = true;
-                        break;
-                    }
-                }                
+        if (bases.get(p) || coral.get(p)){
+            return true;
+        }
+        int owner = getPlayerIndex(s);
+        if (ships[owner].get(p)){
+            return true;
+        }
+        if (ships[1 - owner].get(p)){
+            return isInRadarRange(s, p);
+        }
+        if (mines.get(p) && s.getShipType().compareTo(Ship.ShipType.MineLayer) == 0){
+            if (isInRadarRange(s, p)){
+                System.out.println("MINELAYER can see mine");
+                return true;
             }
-        }    
-        
-        return isVisibleObstacle;
+        }
+        return false;
+    }
+    
+    /**
+     * @param s
+     * @param p
+     * @return True if the position is in the radar range of the ship.
+     */
+    private boolean isInRadarRange(Ship s, Vector2 p){
+        return s.isInRadarRange(p);
+    }
+    
+    /**
+     * @param s
+     * @return 0 if the ship belongs to player0 (the player of the west base),
+     * otherwise 1.
+     */
+    private int getPlayerIndex(Ship s){
+        return (s.getPlayerID() == p0Base.getPlayerID()) ? 0 : 1;
     }
     /**
      * This method checks if there is an obstacle (NOT INCLUDING mines) at a 
@@ -901,71 +1011,26 @@ public class Map implements java.io.Serializable {
      * @return 
      */   
     public boolean isHiddenObstacle(Ship s, Vector2 p){
-        boolean isHiddenObstacle = false;
-        boolean canSee = false;
-        GameObject o = this.getObjectAt(p);   
-        if (o == null){
+        if (!ships[0].get(p) && !ships[1].get(p)){
             return false;
         }  
-        
         if (isSelf(s,p)){
             return false;
         }
-        if (o.getObjectType().compareTo(GameObject.GameObjectType.Ship)==0){
-            ArrayList<Vector2> visible = s.getRadarPositions();
-            for (Vector2 v: visible){
-                if (v.equals(p)){
-                    canSee = true;
-                    break;
-                }
-            }
-            if (!canSee){
-                isHiddenObstacle = true;
-            }
-        }
-        
-        return isHiddenObstacle;
+        return !isInRadarRange(s, p);
     }  
     
     public boolean isMine(Vector2 p){
-        boolean isMine = false;
-        GameObject o = this.getObjectAt(p);  
-        if (o == null){
-            return false;
-        }        
-        if (o.getObjectType().compareTo(GameObject.GameObjectType.Mine) == 0){
-            isMine = true;
-        }
-        return isMine;
+        return mines.get(p);
     }
    
+    /**
+     * @param p
+     * @return True if the position is next to a mine, above, below, left or
+     * right of it.
+     */
     public boolean isMineZone(Vector2 p){
-        Vector2 v;
-        Vector2[] minezone;
-        ArrayList<Vector2> allMinezone = new ArrayList<Vector2>();
-        for (int i = 0; i < WIDTH; i++){
-            for (int j = 0; j < HEIGHT; j++){
-                v = new Vector2(i,j);
-                GameObject o = getObjectAt(v);
-                if (o != null){
-                    if (o.getObjectType().compareTo(GameObject.GameObjectType.Mine) == 0){
-                        Mine m = (Mine)o;
-                        minezone = m.getMineZone();
-                        for (Vector2 zone : minezone){
-                            allMinezone.add(zone);
-                        }
-                    }
-                }
-            }
-        }
-        boolean isMineZone = false;
-        for (Vector2 mz: allMinezone){
-            if (mz.equals(p)){
-                isMineZone = true;
-            }            
-        }
-
-        return isMineZone;
+        return mineZones.get(p);
     }    
 
     
@@ -974,7 +1039,7 @@ public class Map implements java.io.Serializable {
      * @return True if at the specified position there is a ship, otherwise false.
      */
     public boolean isShip(Vector2 position) {
-        return this.getObjectAt(position) instanceof ShipUnit;
+        return ships[0].get(position) || ships[1].get(position);
     }
     
     /**
@@ -984,11 +1049,7 @@ public class Map implements java.io.Serializable {
      * @return 
      */
     public boolean isClear(Vector2 position){
-        boolean isClear = false;
-        if (this.getObjectAt(position) == null){
-            isClear = true;
-        }
-        return isClear;
+        return !occupied.get(position);
     }
     
     /**
@@ -1037,13 +1098,103 @@ public class Map implements java.io.Serializable {
     public GameObject setObjectAt(Vector2 position, GameObject object) {
         if(position.x >= 0 && position.x < WIDTH &&
            position.y >= 0 && position.y < HEIGHT) {
-            grid[position.x][position.y] = object;
+            place(position.x, position.y, object);
             return grid[position.x][position.y];
         } else {
             return null;
         }
     }
     
+    /**
+     * Puts an object in a cell of the grid and updates the bitboards. Every
+     * change of the grid goes through here.
+     * @param x Within bounds on the grid.
+     * @param y Within bounds on the grid.
+     * @param object The object, or null to empty the cell.
+     */
+    private void place(int x, int y, GameObject object) {
+        boolean mineChanged = mines.get(x, y) != (object instanceof Mine);
+        boolean coralChanged = coral.get(x, y) != (object instanceof CoralUnit);
+        grid[x][y] = object;
+        occupied.set(x, y, object != null);
+        coral.set(x, y, object instanceof CoralUnit);
+        if(coralChanged) {
+            //the corals are visible to both players
+            int i = BitBoard.index(x, y);
+            updateRadarCell(0, i);
+            updateRadarCell(1, i);
+        }
+        bases.set(x, y, object instanceof BaseUnit);
+        mines.set(x, y, object instanceof Mine);
+        boolean p0Ship = false, p1Ship = false;
+        if(object instanceof ShipUnit) {
+            p0Ship = getPlayerIndex(((ShipUnit) object).getShip()) == 0;
+            p1Ship = !p0Ship;
+        }
+        ships[0].set(x, y, p0Ship);
+        ships[1].set(x, y, p1Ship);
+        if(mineChanged) {
+            addMineZone(x, y, (object instanceof Mine) ? 1 : -1);
+        }
+    }
+    
+    /**
+     * Adds the zone of a mine to the mine zone counts (delta 1), or takes it
+     * away (delta -1).
+     */
+    private void addMineZone(int x, int y, int delta) {
+        addMineZoneCell(x, y - 1, delta);
+        addMineZoneCell(x, y + 1, delta);
+        addMineZoneCell(x - 1, y, delta);
+        addMineZoneCell(x + 1, y, delta);
+    }
+    
+    private void addMineZoneCell(int x, int y, int delta) {
+        if(BitBoard.onGrid(x, y)) {
+            int i = BitBoard.index(x, y);
+            mineZoneCount[i] += delta;
+            mineZones.set(i, mineZoneCount[i] > 0);
+        }
+    }
+    
+    /**
+     * @return The number of cells above, below, left or right of (x, y)
+     * which hold an object: the cells a mine laid at (x, y) would be next to.
+     */
+    private int countOccupiedNeighbours(int x, int y) {
+        int count = 0;
+        if(occupied.get(x, y - 1)) {
+            count++;
+        }
+        if(occupied.get(x, y + 1)) {
+            count++;
+        }
+        if(occupied.get(x - 1, y)) {
+            count++;
+        }
+        if(occupied.get(x + 1, y)) {
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * @return The mine whose zone (x, y) is in, the one right of it first,
+     * then left, below and above. Null if there is none.
+     */
+    private Mine getMineNextTo(int x, int y) {
+        if(mines.get(x + 1, y)) {
+            return (Mine) grid[x + 1][y];
+        } else if(mines.get(x - 1, y)) {
+            return (Mine) grid[x - 1][y];
+        } else if(mines.get(x, y + 1)) {
+            return (Mine) grid[x][y + 1];
+        } else if(mines.get(x, y - 1)) {
+            return (Mine) grid[x][y - 1];
+        }
+        return null;
+    }
+    
     /**
      * This function is an interface for Map to access the concrete attack action; as a controller Map takes two inputs
      * then finds out what ship type the attacker is and get the GameObject at the specific location; then it invokes the
@@ -1054,30 +1205,31 @@ public class Map implements java.io.Serializable {
      */
     public GameObject cannonAttack(Ship attacker, Vector2 position){
     	GameObject target = getObjectAt(position);
+        GameObject hit = null;
     	
-    	if(attacker.getClass() == new Cruiser(10000).getClass()){
-            return ((Cruiser) attacker).fireCannon(target);
+    	if(attacker.getClass() == Cruiser.class){
+            hit = ((Cruiser) attacker).fireCannon(target);
     	}
-    	else if(attacker.getClass() == new TorpedoBoat(10000).getClass()){
-    		return ((TorpedoBoat) attacker).fireCannon(target);
+    	else if(attacker.getClass() == TorpedoBoat.class){
+    		hit = ((TorpedoBoat) attacker).fireCannon(target);
     	}
-    	else if(attacker.getClass() == new Destroyer(10000).getClass()){
-    		return ((Destroyer) attacker).fireCannon(target);
+    	else if(attacker.getClass() == Destroyer.class){
+    		hit = ((Destroyer) attacker).fireCannon(target);
     	}
-    	else if(attacker.getClass() == new MineLayer(10000).getClass()){
-    		return ((MineLayer) attacker).fireCannon(target);
+    	else if(attacker.getClass() == MineLayer.class){
+    		hit = ((MineLayer) attacker).fireCannon(target);
     	}
-    	else if(attacker.getClass() == new RadarBoat(10000).getClass()){
-    		return ((RadarBoat) attacker).fireCannon(target);
+    	else if(attacker.getClass() == RadarBoat.class){
+    		hit = ((RadarBoat) attacker).fireCannon(target);
     	}
-    	else if (target.getClass() == new Mine().getClass()){
+    	if (target != null && target.getClass() == Mine.class){
     		setObjectAt(position, null);
     	}
-        return null;
+        return hit;
     }
     
     public GameObject layMine(Ship mineLayer, Vector2 position) {
-    	if(mineLayer.getClass() != new MineLayer(10000).getClass())
+    	if(mineLayer.getClass() != MineLayer.class)
     		return null;    	
     	if(getObjectAt(position) != null)
     		return null;
@@ -1087,14 +1239,7 @@ public class Map implements java.io.Serializable {
         MineLayer ml = (MineLayer)mineLayer;
         Mine mine = ml.layMine(position);
         if (mine != null){
-        	Vector2[] zone = mine.getMineZone();
-        	int count = 0;
-            for(Vector2 temp: zone) {
-                if(getObjectAt(temp) != null)              
-                    count++;
-            }
-    	
-            if(count > 1)
+            if(countOccupiedNeighbours(position.x, position.y) > 1)
     		return null;	
     //	mine.setActive(true);
             setObjectAt(position, mine);  	
@@ -1106,29 +1251,19 @@ public class Map implements java.io.Serializable {
     public Vector2[] getFilteredMineDropZone(Ship mineLayer){
     	ArrayList<Vector2> zone = new ArrayList<Vector2>();
     	
-    	if(mineLayer.getClass() != new MineLayer(10000).getClass())
+    	if(mineLayer.getClass() != MineLayer.class)
     		return null;
     	
     	for(Vector2 pos: ((MineLayer)mineLayer).getMineDropPickupZone()) {
-            GameObject o = getObjectAt(pos);
-    		if(o != null){
-                    if (o.getObjectType().equals(GameObject.GameObjectType.Mine)){
+    		if(occupied.get(pos)){
+                    if (mines.get(pos)){
                         zone.add(pos);
                     }else{
                         continue;
                     }
                 }	
         	
-    	Mine mine = new Mine();
-        mine.setPosition(pos);
-        int count = 0;
-        	
-       	for(Vector2 temp: mine.getMineZone()) {
-       		if(getObjectAt(temp) != null)              
-       		count++;
-        }
-        	
-        if(count <= 1)
+        if(countOccupiedNeighbours(pos.x, pos.y) <= 1)
         	zone.add(pos);
     	}
     	
@@ -1148,7 +1283,7 @@ public class Map implements java.io.Serializable {
             su.setDamage(1);
         }
         
-        if(temp!= null && temp.getClass() == new Mine().getClass()){
+        if(mines.get(m)){
             ((Mine)temp).setDestoryed(true);
             setObjectAt(m, null);
          /*   for(Vector2 mz: ((Mine)temp).getMineZone()){
@@ -1157,16 +1292,7 @@ public class Map implements java.io.Serializable {
        */
         }
         else{ //temp is a MineZone,which is not a GameObject
-            int x = m.x;
-            int y = m.y;
-            Mine mine = null;
-            Vector2[] possibleZone =  {new Vector2(x, y-1), new Vector2(x, y+1), new Vector2(x-1, y), new Vector2(x+1, y)};
-            for(Vector2 pos: possibleZone){
-            	GameObject possibleMine = getObjectAt(pos);
-            	if(possibleMine != null && possibleMine.getClass() == new Mine().getClass()){
-            		mine = (Mine)possibleMine;
-            	}
-            }
+            Mine mine = getMineNextTo(m.x, m.y);
             
             mine.setDestoryed(true);
             setObjectAt(m, null);
@@ -1253,21 +1379,12 @@ public class Map implements java.io.Serializable {
     
     // checks if a ship is docked at the base. called for ship repair.
     public boolean isDocked(Ship s){
-        boolean docked = false;
-        ShipUnit[] shipUnits = s.getShipUnits();
-        ArrayList<Vector2> ship = new ArrayList<Vector2>();
-        for (ShipUnit su: shipUnits){
-            ship.add(su.getPosition());
-        }
-        for (Vector2 v: ship){
-            for (Vector2 docking: dockingZone){
-                if(v.equals(docking)){
-                    docked = true;
-                    break;
-                }
+        for (ShipUnit su: s.getShipUnits()){
+            if(dockingZone.contains(su.getPosition())){
+                return true;
             }
         }
-        return docked;
+        return false;
     }
     /**
      * Checks whether the specified ship belongs to the blue player (player on the
@@ -1319,11 +1436,8 @@ public class Map implements java.io.Serializable {
     public boolean[][] getRadarVisibility(int playerIndex) {
         switch(playerIndex) {
             case 0:
-                boolean[][] newArray = copyArray(player0Visibility);
-                return newArray;
             case 1:
-                boolean[][] newArray1 = copyArray(player1Visibility);
-                return newArray1;
+                return radar[playerIndex].toArray();
             default:
                 Logger.getLogger(Map.class.getName()).log(Level.SEVERE, null,                         
                         new GameException("Unknown player index: " + playerIndex));
@@ -1338,28 +1452,10 @@ public class Map implements java.io.Serializable {
      * @return 
      */
     public boolean[][] getSonarVisibility(int playerIndex) {
-        boolean[][] map = new boolean[WIDTH][HEIGHT];
         switch(playerIndex) {
             case 0:
-                for(Ship s: player0Ships) {
-                    if(s.getShipType().equals((Ship.ShipType.MineLayer))) {
-                        //add the mine layer's radar range as sonar range
-                        for(Vector2 v: s.getRadarPositions()) {
-                            map[v.x][v.y] = true;
-                        }
-                    }
-                }
-                return map;
             case 1:
-                for(Ship s: player1Ships) {
-                    if(s.getShipType().equals((Ship.ShipType.MineLayer))) {
-                        //add the mine layer's radar range as sonar range
-                        for(Vector2 v: s.getRadarPositions()) {
-                            map[v.x][v.y] = true;
-                        }
-                    }
-                }
-                return map;
+                return sonar[playerIndex].toArray();
             default:
                 Logger.getLogger(Map.class.getName()).log(Level.SEVERE, null,                         
                         new GameException("Unknown player index: " + playerIndex));
@@ -1368,6 +1464,36 @@ public class Map implements java.io.Serializable {
         return null;
     }
     
+    /**
+     * Returns the cells the player with the specified index can see, in the
+     * range of its radar or of its sonar.
+     * @param playerIndex 0 or 1.
+     * @return 
+     */
+    public BitBoard getVisibility(int playerIndex) {
+        BitBoard visible = new BitBoard(radar[playerIndex]);
+        visible.or(sonar[playerIndex]);
+        return visible;
+    }
+    
+    /**
+     * @param playerIndex 0 or 1.
+     * @param position
+     * @return True if the position is in the radar range of the player.
+     */
+    public boolean isVisible(int playerIndex, Vector2 position) {
+        return radar[playerIndex].get(position);
+    }
+    
+    /**
+     * @param playerIndex 0 or 1.
+     * @param position
+     * @return True if the position is in the sonar range of the player.
+     */
+    public boolean isSeenBySonar(int playerIndex, Vector2 position) {
+        return sonar[playerIndex].get(position);
+    }
+    
     public static boolean[][] copyArray(boolean[][] array) {
         boolean[][] newArray = new boolean[array.length][array[0].length];
         for(int x = 0; x < newArray.length; x++) {
@@ -1398,7 +1524,7 @@ public class Map implements java.io.Serializable {
 	        case East:
 	            for(int i = 1; i <= 10; i++){
 	            	if(x + i < 30){
-	            		torpedoRange.add(new Vector2(x + i, y));
+	            		torpedoRange.add(Vector2.of(x + i, y));
 	            	}
 	            	else
 	            		break;
@@ -1408,7 +1534,7 @@ public class Map implements java.io.Serializable {
 	        case North: 
 	        	for(int i = 1; i <= 10; i++){
 	            	if(y - i >= 0){
-	            		torpedoRange.add(new Vector2(x, y - i));
+	            		torpedoRange.add(Vector2.of(x, y - i));
 	            	}
 	            	else
 	            		break;
@@ -1417,7 +1543,7 @@ public class Map implements java.io.Serializable {
 	        case South: 
 	        	for(int i = 1; i <= 10; i++){
 	            	if(y + i < 30){
-	            		torpedoRange.add(new Vector2(x, y + i));
+	            		torpedoRange.add(Vector2.of(x, y + i));
 	            	}
 	            	else
 	            		break;
@@ -1426,7 +1552,7 @@ public class Map implements java.io.Serializable {
 	        case West: 
 	        	for(int i = 1; i <= 10; i++){
 	            	if(x - i >= 0){
-	            		torpedoRange.add(new Vector2(x - i, y));
+	            		torpedoRange.add(Vector2.of(x - i, y));
 	            	}
 	            	else
 	            		break;
@@ -1442,9 +1568,9 @@ public class Map implements java.io.Serializable {
     		if(target == null)
     			continue;
     		
-    		if(target.getClass() == new ShipUnit().getClass() ||
-    		           target.getClass() == new BaseUnit().getClass() ||
-    		           target.getClass() == new Mine().getClass()) {
+    		if(target.getClass() == ShipUnit.class ||
+    		           target.getClass() == BaseUnit.class ||
+    		           target.getClass() == Mine.class) {
     			pos = vec;
     			break;
     		}	
@@ -1454,15 +1580,15 @@ public class Map implements java.io.Serializable {
     		return;
     	}
     	
-    	if(attacker.getClass() == new TorpedoBoat(10000).getClass()){
+    	if(attacker.getClass() == TorpedoBoat.class){
     		((TorpedoBoat) attacker).fireTorpedo(target);
     	}
-    	else if(attacker.getClass() == new Destroyer(10000).getClass()){
+    	else if(attacker.getClass() == Destroyer.class){
     		((Destroyer) attacker).fireTorpedo(target);	
     	}
     	else return;
     	
-    	if (target.getClass() == new Mine().getClass()){
+    	if (target.getClass() == Mine.class){
     		setObjectAt(pos, null);
     	}
     }
@@ -1476,6 +1602,14 @@ public class Map implements java.io.Serializable {
                 grid[i][j] = null;
             }
         }
+        occupied.clear();
+        coral.clear();
+        bases.clear();
+        mines.clear();
+        mineZones.clear();
+        Arrays.fill(mineZoneCount, (byte) 0);
+        ships[0].clear();
+        ships[1].clear();
     }
     
     
@@ -1496,7 +1630,7 @@ public class Map implements java.io.Serializable {
                 } else if(grid[x][y] instanceof CoralUnit) {
                     sb.append("C");
                 } else if(grid[x][y] instanceof ShipUnit) {
-                    ShipUnit su = (ShipUnit)getObjectAt(new Vector2(x,y));
+                    ShipUnit su = (ShipUnit)getObjectAt(Vector2.of(x,y));
                     if (su.isDamaged() || su.isDestroyed()){
                         sb.append("D");
                     }else if (su.isHealthy()){
@@ -1515,39 +1649,99 @@ public class Map implements java.io.Serializable {
     
 
     /**
-     * Recalculates the visibility of every grid cell for every player and
-     * saves the results in player0Visibility and player1Visibility.
+     * Recalculates the visibility of every grid cell for every player from
+     * all of its ships, when whole fleets were replaced. A single ship is
+     * updated with updateRadar().
      */
     public void updateRadarVisibilityArrays() {
-        player0Visibility = generateRadarVisibility(player0Ships);
-        player1Visibility = generateRadarVisibility(player1Ships);
-        
-        for(BaseUnit u: this.p0Base.getBaseUnits()) {
-            //make visible every grid cell around the base unit
-            Vector2 pos = u.getPosition();
-            makeVisibleAllNeighbours(pos, player0Visibility);
-            //add only the base blocks as visible to the other player
-            player1Visibility[pos.x][pos.y] = true;
-            
+        footprints.clear();
+        for(int p = 0; p < 2; p++) {
+            Arrays.fill(radarCount[p], (short) 0);
+            Arrays.fill(sonarCount[p], (short) 0);
+            radar[p].copyFrom(baseVisibility[p]);
+            //make the corals visible
+            radar[p].or(coral);
+            sonar[p].clear();
         }
-
-        for(BaseUnit u: this.p1Base.getBaseUnits()) {
-            //make visible every grid cell around the base unit
-            Vector2 pos = u.getPosition();
-            makeVisibleAllNeighbours(pos, player1Visibility);
-            //add only the base blocks as visible to the other player
-            player0Visibility[pos.x][pos.y] = true;
+        for(Ship s: player0Ships) {
+            addFootprint(s, 0);
         }
-        //add all obstacles as visible
-        for(int x = 0; x < WIDTH; x++) {
-            for(int y = 0; y < HEIGHT; y++) {
-                if(grid[x][y] instanceof CoralUnit) {
-                    //make the corals visible
-                    player0Visibility[x][y] = true;
-                    player1Visibility[x][y] = true;
-                }
+        for(Ship s: player1Ships) {
+            addFootprint(s, 1);
+        }
+    }
+    
+    /**
+     * Updates the radar and sonar of the player of a ship which moved, turned,
+     * changed its radar range or left its fleet. Only the cells the ship saw
+     * before and sees now are visited.
+     * @param s
+     */
+    public void updateRadar(Ship s) {
+        Footprint old = footprints.remove(s);
+        if(old != null) {
+            count(old, -1);
+        }
+        if(player0Ships.contains(s)) {
+            addFootprint(s, 0);
+        } else if(player1Ships.contains(s)) {
+            addFootprint(s, 1);
+        }
+    }
+    
+    /**
+     * Adds the cells a ship sees to the radar of a player: its radar range and
+     * its own units, and to the sonar if it is a mine layer.
+     */
+    private void addFootprint(Ship s, int player) {
+        RangeTemplate range = s.getRadarTemplate();
+        ShipUnit[] units = s.getShipUnits();
+        int[] cells = new int[range.getMaxCells() + units.length];
+        int n = range.getCells(s.getDirection(), s.getPosition(), cells, 0);
+        for(int i = 0; i < n; i++) {
+            scratch.set(cells[i], true);
+        }
+        int[] sonarCells = null;
+        if(s.getShipType().equals(Ship.ShipType.MineLayer)) {
+            //the mine layer's radar range is its sonar range
+            sonarCells = Arrays.copyOf(cells, n);
+        }
+        for(ShipUnit su: units) {
+            Vector2 position = su.getPosition();
+            if(BitBoard.onGrid(position.x, position.y) && !scratch.get(BitBoard.index(position.x, position.y))) {
+                cells[n] = BitBoard.index(position.x, position.y);
+                scratch.set(cells[n++], true);
             }
         }
+        for(int i = 0; i < n; i++) {
+            scratch.set(cells[i], false);
+        }
+        Footprint f = new Footprint(player, Arrays.copyOf(cells, n), sonarCells);
+        footprints.put(s, f);
+        count(f, 1);
+    }
+    
+    /**
+     * Adds a footprint to the counts of its player (delta 1) or takes it
+     * away (delta -1).
+     */
+    private void count(Footprint f, int delta) {
+        short[] counts = radarCount[f.player];
+        for(int i: f.radar) {
+            counts[i] += delta;
+            updateRadarCell(f.player, i);
+        }
+        if(f.sonar != null) {
+            counts = sonarCount[f.player];
+            for(int i: f.sonar) {
+                counts[i] += delta;
+                sonar[f.player].set(i, counts[i] > 0);
+            }
+        }
+    }
+    
+    private void updateRadarCell(int player, int i) {
+        radar[player].set(i, radarCount[player][i] > 0 || baseVisibility[player].get(i) || coral.get(i));
     }
 
     /**
@@ -1581,22 +1775,12 @@ public class Map implements java.io.Serializable {
      * @param pos
      * @param player0Visibility 
      */
-    private static void makeVisibleAllNeighbours(Vector2 pos, boolean[][] player0Visibility) {
-        try {
-            player0Visibility[pos.x][pos.y] = true;
-        } catch(IndexOutOfBoundsException ignore){}
-        try {
-            player0Visibility[pos.x - 1][pos.y] = true;
-        } catch(IndexOutOfBoundsException ignore){}
-        try {
-            player0Visibility[pos.x + 1][pos.y] = true;
-        } catch(IndexOutOfBoundsException ignore){}
-        try {
-            player0Visibility[pos.x][pos.y - 1] = true;
-        } catch(IndexOutOfBoundsException ignore){}
-        try {
-            player0Visibility[pos.x][pos.y + 1] = true;
-        } catch(IndexOutOfBoundsException ignore){}
+    private static void makeVisibleAllNeighbours(Vector2 pos, BitBoard visibility) {
+        visibility.set(pos.x, pos.y);
+        visibility.set(pos.x - 1, pos.y);
+        visibility.set(pos.x + 1, pos.y);
+        visibility.set(pos.x, pos.y - 1);
+        visibility.set(pos.x, pos.y + 1);
     }
 
     /**
@@ -1610,13 +1794,30 @@ public class Map implements java.io.Serializable {
         for(int x = 0; x < WIDTH && ! found; x++) {
             for(int y = 0; y < HEIGHT && !found; y++) {
                 if(grid[x][y] == object) {
-                    return new Vector2(x, y);
+                    return Vector2.of(x, y);
                 }
             }
         }
         return null;
     }
 
+    /**
+     * The cells one ship adds to the radar and sonar of its player.
+     */
+    private static class Footprint {
+        
+        final int player;
+        final int[] radar;
+        /** Null if the ship has no sonar. */
+        final int[] sonar;
+        
+        Footprint(int player, int[] radar, int[] sonar) {
+            this.player = player;
+            this.radar = radar;
+            this.sonar = sonar;
+        }
+    }
+
     /**
      * Copy the GameObjects from the provided map to this map within the specified
      * region between minX,minY and maxX,maxY.
@@ -1629,17 +1830,12 @@ public class Map implements java.io.Serializable {
     void setGrid(Map map, int minX, int minY, int maxX, int maxY) {
         for(int x = minX; x <= maxX; x++) {
             for(int y = minY; y <= maxY; y++) {
-                this.grid[x][y] = map.grid[x][y];
+                place(x, y, map.grid[x][y]);
             }
         }
     }
 
     public boolean isCoral(Vector2 position) {
-        GameObject o = grid[position.x][position.y];
-        if(o == null) {
-            return false;
-        } else {
-            return o.getObjectType().equals(GameObject.GameObjectType.CoralReef);
-        }
+        return coral.get(position);
     }
 }
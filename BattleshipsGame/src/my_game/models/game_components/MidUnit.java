@@ -11,6 +11,7 @@ import my_game.models.game_components.GameObject.GameObjectType;
  * @author wei
  */
 public class MidUnit extends ShipUnit {
+	private static final long serialVersionUID = 1366345023663434284L;
 	
 	protected Ship ship;
 	
@@ -4,6 +4,7 @@ import my_game.util.Vector2;
 
 
 public class Mine extends GameObject {
+	private static final long serialVersionUID = -2995280959929653872L;
 	
 	private boolean active;
 	private boolean destoryed;
@@ -42,7 +43,7 @@ public class Mine extends GameObject {
 		int x = position.x;
 		int y = position.y;
 		
-		Vector2[] zone =  {new Vector2(x, y-1), new Vector2(x, y+1), new Vector2(x-1, y), new Vector2(x+1, y)};
+		Vector2[] zone =  {Vector2.of(x, y-1), Vector2.of(x, y+1), Vector2.of(x-1, y), Vector2.of(x+1, y)};
 		
 		return zone;
 	}
@@ -11,6 +11,8 @@ import my_game.util.Vector2;
  * A description of the action of a ship moving to a new position.
  */
 public class MoveDescription extends ActionDescription {
+    private static final long serialVersionUID = -971012935322925992L;
+
     public Vector2[] oldPositions;
     public Vector2[] newPositions;
     
@@ -0,0 +1,148 @@
+package my_game.models.game_components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import my_game.util.Range;
+import my_game.util.ShipDirection;
+import my_game.util.Vector2;
+
+/**
+ * The cells of a range around the bow of a ship, worked out once for the
+ * four directions. A range is a rectangle of offsets from the bow, so
+ * finding the cells a ship sees or can hit is a translation of the
+ * rectangle of its direction by its bow, clipped to the grid.
+ * <p>
+ * Templates are shared: of() gives the same template for every range with
+ * the same corners.
+ */
+public final class RangeTemplate {
+
+    private static final HashMap<List<Integer>, RangeTemplate> TEMPLATES = new HashMap<List<Integer>, RangeTemplate>();
+
+    /** Offsets of the rectangle of each direction, by ShipDirection ordinal. */
+    private final int[] minX = new int[ShipDirection.values().length];
+    private final int[] maxX = new int[minX.length];
+    private final int[] minY = new int[minX.length];
+    private final int[] maxY = new int[minX.length];
+
+    private RangeTemplate() {
+        //NoDirection has no cells
+        Arrays.fill(maxX, -1);
+        Arrays.fill(maxY, -1);
+    }
+
+    /**
+     * @param r A range for a ship facing East.
+     * @return The template of the range.
+     */
+    public static synchronized RangeTemplate of(Range r) {
+        Vector2 tl = r.getTopLeft();
+        Vector2 tr = r.getTopRight();
+        Vector2 br = r.getBottomRight();
+        Vector2 bl = r.getBottomLeft();
+        List<Integer> key = Arrays.asList(tl.x, tl.y, tr.x, tr.y, br.x, br.y, bl.x, bl.y);
+        RangeTemplate t = TEMPLATES.get(key);
+        if(t == null) {
+            t = new RangeTemplate();
+            //the corners are turned the way ships always turned their ranges
+            t.setBounds(ShipDirection.East, tl.x, tr.x, tl.y, bl.y);
+            //counter-clock
+            t.setBounds(ShipDirection.North, -(bl.y), -(tl.y), bl.x, br.x);
+            //clock-wise
+            t.setBounds(ShipDirection.South, tr.y, br.y, -(tr.x), -(tl.x));
+            //180 deg.
+            t.setBounds(ShipDirection.West, -(br.x), -(bl.x), -(br.y), -(tr.y));
+            TEMPLATES.put(key, t);
+        }
+        return t;
+    }
+
+    /**
+     * @param length
+     * @return The template of a straight line of cells ahead of the bow, from
+     * the next cell to length cells away. North is up the grid.
+     */
+    public static RangeTemplate line(int length) {
+        RangeTemplate t = new RangeTemplate();
+        t.setBounds(ShipDirection.East, 1, length, 0, 0);
+        t.setBounds(ShipDirection.North, 0, 0, -length, -1);
+        t.setBounds(ShipDirection.South, 0, 0, 1, length);
+        t.setBounds(ShipDirection.West, -length, -1, 0, 0);
+        return t;
+    }
+
+    private void setBounds(ShipDirection d, int x0, int x1, int y0, int y1) {
+        int i = d.ordinal();
+        minX[i] = x0;
+        maxX[i] = x1;
+        minY[i] = y0;
+        maxY[i] = y1;
+    }
+
+    /**
+     * @return The largest number of cells the range has in a direction.
+     */
+    public int getMaxCells() {
+        int max = 0;
+        for(int i = 0; i < minX.length; i++) {
+            max = Math.max(max, Math.max(0, maxX[i] - minX[i] + 1) * Math.max(0, maxY[i] - minY[i] + 1));
+        }
+        return max;
+    }
+
+    /**
+     * @param d
+     * @param bow
+     * @param x
+     * @param y
+     * @return True if the cell is on the grid and in the range of a ship with
+     * this bow and direction.
+     */
+    public boolean contains(ShipDirection d, Vector2 bow, int x, int y) {
+        int i = d.ordinal();
+        int dx = x - bow.x;
+        int dy = y - bow.y;
+        return BitBoard.onGrid(x, y) && dx >= minX[i] && dx <= maxX[i] && dy >= minY[i] && dy <= maxY[i];
+    }
+
+    /**
+     * Writes the cells of the range on the grid (see BitBoard.index()).
+     * @param d
+     * @param bow
+     * @param cells Array to write to, with room for getMaxCells() cells.
+     * @param offset Where the first cell is written.
+     * @return The number of cells written.
+     */
+    public int getCells(ShipDirection d, Vector2 bow, int[] cells, int offset) {
+        int i = d.ordinal();
+        int xStart = Math.max(bow.x + minX[i], 0);
+        int xEnd = Math.min(bow.x + maxX[i], Map.WIDTH - 1);
+        int yStart = Math.max(bow.y + minY[i], 0);
+        int yEnd = Math.min(bow.y + maxY[i], Map.HEIGHT - 1);
+        int n = offset;
+        for(int x = xStart; x <= xEnd; x++) {
+            for(int y = yStart; y <= yEnd; y++) {
+                cells[n++] = BitBoard.index(x, y);
+            }
+        }
+        return n - offset;
+    }
+
+    /**
+     * @param d
+     * @param bow
+     * @return The positions of the range on the grid, by x then y.
+     */
+    public ArrayList<Vector2> getPositions(ShipDirection d, Vector2 bow) {
+        int i = d.ordinal();
+        ArrayList<Vector2> positions = new ArrayList<Vector2>();
+        for(int x = Math.max(bow.x + minX[i], 0); x <= Math.min(bow.x + maxX[i], Map.WIDTH - 1); x++) {
+            for(int y = Math.max(bow.y + minY[i], 0); y <= Math.min(bow.y + maxY[i], Map.HEIGHT - 1); y++) {
+                positions.add(Vector2.of(x, y));
+            }
+        }
+        return positions;
+    }
+}
@@ -16,6 +16,7 @@ import my_game.util.TurnPositions;
  *
  */
 public abstract class Ship implements java.io.Serializable {
+	private static final long serialVersionUID = 8484320281152248387L;
 
 	public enum ShipType {
 		Cruiser, Destroyer, TorpedoBoat, MineLayer, RadarBoat, KamikazeBoat
@@ -33,6 +34,8 @@ public abstract class Ship implements java.io.Serializable {
 	private int armour;
 	private ShipDirection direction;
 	private int destoryedUnit;
+	/** Index of this ship in its player's fleet, stable for the whole game. */
+	private int shipId;
 	protected ArrayList<Vector2> visiblePositions;
 	protected ArrayList<String> weapons = new ArrayList<String>();
 	/** The cannon range for a ship facing East as default. */
@@ -41,6 +44,8 @@ public abstract class Ship implements java.io.Serializable {
 	protected Range torpedoRange;
 	/** The radar range for a ship facing East as default. */
 	protected Range radarRange;
+	/** The templates of the ranges, made again when a range is set. */
+	private transient RangeTemplate cannonTemplate, radarTemplate;
 
 	/** Constructs a ship given a player ID. */
 	public Ship(int pid) {
@@ -136,6 +141,18 @@ public abstract class Ship implements java.io.Serializable {
 		return playerID;
 	}
 
+	/**
+	 * @return The index of this ship in its player's fleet. It does not change
+	 *         during a game and is used to refer to the ship over the network.
+	 */
+	public int getShipId() {
+		return shipId;
+	}
+
+	public void setShipId(int shipId) {
+		this.shipId = shipId;
+	}
+
 	/**
 	 * @return The type of this ship.
 	 */
@@ -169,6 +186,7 @@ public abstract class Ship implements java.io.Serializable {
 
 	public void setCannonRange(Range r) {
 		this.cannonRange = r;
+		this.cannonTemplate = null;
 	}
 
 	public void setTorpedoRange(Range r) {
@@ -177,6 +195,21 @@ public abstract class Ship implements java.io.Serializable {
 
 	public void setRadarRange(Range r) {
 		this.radarRange = r;
+		this.radarTemplate = null;
+	}
+
+	public RangeTemplate getCannonTemplate() {
+		if (cannonTemplate == null) {
+			cannonTemplate = RangeTemplate.of(cannonRange);
+		}
+		return cannonTemplate;
+	}
+
+	public RangeTemplate getRadarTemplate() {
+		if (radarTemplate == null) {
+			radarTemplate = RangeTemplate.of(radarRange);
+		}
+		return radarTemplate;
 	}
 
 	/**
@@ -215,15 +248,49 @@ public abstract class Ship implements java.io.Serializable {
 	}
 
 	public ArrayList<Vector2> getRadarPositions() {
-		Range r = this.getRadarRange();
-		ArrayList<Vector2> visible = getRangePositions(r);
-		return visible;
+		return getRadarTemplate().getPositions(getDirection(), getPosition());
 	}
 
 	public ArrayList<Vector2> getCannonPositions() {
-		Range r = this.getCannonRange();
-		ArrayList<Vector2> visible = getRangePositions(r);
-		return visible;
+		return getCannonTemplate().getPositions(getDirection(), getPosition());
+	}
+
+	/**
+	 * @param p
+	 * @return True if the position is on the grid and in the radar range.
+	 */
+	public boolean isInRadarRange(Vector2 p) {
+		return getRadarTemplate().contains(getDirection(), getPosition(), p.x, p.y);
+	}
+
+	/**
+	 * @param p
+	 * @return True if the position is on the grid and in the cannon range.
+	 */
+	public boolean isInCannonRange(Vector2 p) {
+		return getCannonTemplate().contains(getDirection(), getPosition(), p.x, p.y);
+	}
+
+	/**
+	 * @return The direction the bow points to, going by the positions of the
+	 *         bow and of the unit behind it. The direction of a ship of one
+	 *         unit.
+	 */
+	public ShipDirection getHeading() {
+		if (shipUnits.length < 2) {
+			return getDirection();
+		}
+		Vector2 bow = shipUnits[0].getPosition();
+		Vector2 next = shipUnits[1].getPosition();
+		int dx = Integer.signum(bow.x - next.x);
+		int dy = Integer.signum(bow.y - next.y);
+		if (dx != 0 && dy == 0) {
+			return (dx > 0) ? ShipDirection.East : ShipDirection.West;
+		}
+		if (dx == 0 && dy != 0) {
+			return (dy > 0) ? ShipDirection.South : ShipDirection.North;
+		}
+		return ShipDirection.NoDirection;
 	}
 
 	// repair one destroyed square at once. It's called by Game.
@@ -271,129 +338,6 @@ public abstract class Ship implements java.io.Serializable {
 		return objectHit;
 	}
 
-	/**
-	 * This method gets an arraylist of positions that is visible within the
-	 * ship's radar or canon range. (excluding the positions of the ship
-	 * itself).
-	 * 
-	 * @return
-	 */
-	private ArrayList<Vector2> getRangePositions(Range r) {
-		Vector2 tl = r.getTopLeft();
-		Vector2 tr = r.getTopRight();
-		Vector2 br = r.getBottomRight();
-		Vector2 bl = r.getBottomLeft();
-		Vector2 newtl, newtr, newbr, newbl;
-		Range newRange;
-		ShipDirection d = this.getDirection();
-		Vector2 shipPosition = this.getShipUnits()[0].getPosition();
-		ArrayList<Vector2> rangePositions = new ArrayList<Vector2>();
-		ArrayList<Vector2> filtered = new ArrayList<Vector2>();
-		switch (d) {
-		case East:
-			rangePositions = this.generateRangePositions(r, shipPosition);
-			break;
-		// counter-clock
-		case North:
-			newtl = new Vector2(-(bl.y), bl.x);
-			newtr = new Vector2(-(tl.y), tl.x);
-			newbr = new Vector2(-(tr.y), tr.x);
-			newbl = new Vector2(-(br.y), br.x);
-			newRange = new Range(newtl, newtr, newbr, newbl);
-			rangePositions = this
-					.generateRangePositions(newRange, shipPosition);
-			break;
-		// clock-wise
-		case South:
-			newtl = new Vector2(tr.y, -(tr.x));
-			newtr = new Vector2(br.y, -(br.x));
-			newbr = new Vector2(bl.y, -(bl.x));
-			newbl = new Vector2(tl.y, -(tl.x));
-			newRange = new Range(newtl, newtr, newbr, newbl);
-			rangePositions = this
-					.generateRangePositions(newRange, shipPosition);
-			break;
-		// 180 deg.
-		case West:
-			newtl = new Vector2(-(br.x), -(br.y));
-			newtr = new Vector2(-(bl.x), -(bl.y));
-			newbr = new Vector2(-(tl.x), -(tl.y));
-			newbl = new Vector2(-(tr.x), -(tr.y));
-			newRange = new Range(newtl, newtr, newbr, newbl);
-			rangePositions = this
-					.generateRangePositions(newRange, shipPosition);
-			break;
-		}
-		filtered = filterRangePositions(rangePositions);
-		return rangePositions;
-
-	}
-
-	/**
-	 * This method generates an arraylist of visible positions for this ship
-	 * (including the ship itself) given its radarRange.
-	 * 
-	 * @param r
-	 *            The visibility range
-	 * @param bowPosition
-	 * @return
-	 */
-	private ArrayList<Vector2> generateRangePositions(Range r,
-			Vector2 bowPosition) {
-		Vector2 tl = r.getTopLeft();
-		Vector2 tr = r.getTopRight();
-		Vector2 bl = r.getBottomLeft();
-		Vector2 sp = bowPosition;
-		int xStart, xEnd, yStart, yEnd, i, j;
-		ArrayList<Vector2> positions = new ArrayList<Vector2>();
-		xStart = bowPosition.x + tl.x;
-		xEnd = bowPosition.x + tr.x;
-		yStart = bowPosition.y + tl.y;
-		yEnd = bowPosition.y + bl.y;
-		/*
-		 * System.out.println("xStart " + xStart); System.out.println("xEnd" +
-		 * xEnd); System.out.println("yStart " + yStart);
-		 * System.out.println("yStart " + yEnd);
-		 */
-		for (i = xStart; i <= xEnd; i++) {
-			for (j = yStart; j <= yEnd; j++) {
-				if (i >= 0 && i < 30 && j >= 0 && j < 30) {
-					Vector2 p = new Vector2(i, j);
-					positions.add(p);
-				}
-			}
-		}
-
-		return positions;
-	}
-
-	/**
-	 * This method filters out the positions of the ship itself within the
-	 * ship's radar range.
-	 * 
-	 * @param p
-	 *            Arraylist of all positions within the ship's radar range.
-	 * @return Filtered list.
-	 */
-	private ArrayList<Vector2> filterRangePositions(ArrayList<Vector2> p) {
-		ArrayList<Vector2> filteredPositions = new ArrayList<Vector2>();
-		ShipUnit[] shipUnits = this.getShipUnits();
-		boolean isSelf;
-		// maybe filter the position that are outside of the map?
-		for (Vector2 v : p) {
-			isSelf = false;
-			for (ShipUnit su : shipUnits) {
-				if (su.getPosition().equals(p)) {
-					isSelf = true;
-				}
-			}
-			if (!isSelf) {
-				filteredPositions.add(v);
-			}
-		}
-		return filteredPositions;
-	}
-
 	/**
 	 * This method updates each ShipUnit to the new position, and it's called
 	 * for both move and turn actions.
@@ -432,7 +376,7 @@ public abstract class Ship implements java.io.Serializable {
 		KamikazeBoat k = (KamikazeBoat) this;
 		// explosion range is the same than move range.
 		Range r = k.getExplosionRange();
-		ArrayList<Vector2> allMoves = getRangePositions(r);
+		ArrayList<Vector2> allMoves = RangeTemplate.of(r).getPositions(getDirection(), getPosition());
 		if (allMoves != null) {
 			for (int i = 0; i < allMoves.size(); i++) {
 				if (allMoves.get(i).x > 29 || allMoves.get(i).x < 0
@@ -499,7 +443,7 @@ public abstract class Ship implements java.io.Serializable {
 		// move backward.
 		if (y + size < 30) {
 			for (i = y + 1; i <= y + size; i++) {
-				Vector2 p = new Vector2(x, i);
+				Vector2 p = Vector2.of(x, i);
 				back.add(p);
 			}
 		}
@@ -508,14 +452,14 @@ public abstract class Ship implements java.io.Serializable {
 		if (x - 1 >= 0) {
 			int leftX = x - 1;
 			for (i = y; i < y + size; i++) {
-				Vector2 p = new Vector2(leftX, i);
+				Vector2 p = Vector2.of(leftX, i);
 				left.add(p);
 			}
 		}
 		if (x + 1 < 30) {
 			int rightX = x + 1;
 			for (i = y; i < y + size; i++) {
-				Vector2 p = new Vector2(rightX, i);
+				Vector2 p = Vector2.of(rightX, i);
 				right.add(p);
 			}
 		}
@@ -523,12 +467,12 @@ public abstract class Ship implements java.io.Serializable {
 		// move forward.
 		if (y < speed) {
 			for (i = y + size - 1; i >= 0; i--) {
-				Vector2 p = new Vector2(x, i);
+				Vector2 p = Vector2.of(x, i);
 				forward.add(p);
 			}
 		} else {
 			for (i = y + size - 1; i >= y - speed; i--) {
-				Vector2 p = new Vector2(x, i);
+				Vector2 p = Vector2.of(x, i);
 				forward.add(p);
 			}
 		}
@@ -559,7 +503,7 @@ public abstract class Ship implements java.io.Serializable {
 		// move backward.
 		if (y - size >= 0) {
 			for (i = y - 1; i >= y - size; i--) {
-				Vector2 p = new Vector2(x, i);
+				Vector2 p = Vector2.of(x, i);
 				back.add(p);
 			}
 		}
@@ -567,7 +511,7 @@ public abstract class Ship implements java.io.Serializable {
 		if (x - 1 >= 0) {
 			int leftX = x - 1;
 			for (i = y; i > y - size; i--) {
-				Vector2 p = new Vector2(leftX, i);
+				Vector2 p = Vector2.of(leftX, i);
 				left.add(p);
 			}
 		}
@@ -575,19 +519,19 @@ public abstract class Ship implements java.io.Serializable {
 		if (x + 1 < 30) {
 			int rightX = x + 1;
 			for (i = y; i > y - size; i--) {
-				Vector2 p = new Vector2(rightX, i);
+				Vector2 p = Vector2.of(rightX, i);
 				right.add(p);
 			}
 		}
 		// move forward.
 		if (y + speed > 29) {
 			for (i = y - size + 1; i < 30; i++) {
-				Vector2 p = new Vector2(x, i);
+				Vector2 p = Vector2.of(x, i);
 				forward.add(p);
 			}
 		} else {
 			for (i = y - size + 1; i <= y + speed; i++) {
-				Vector2 p = new Vector2(x, i);
+				Vector2 p = Vector2.of(x, i);
 				forward.add(p);
 			}
 		}
@@ -608,7 +552,7 @@ public abstract class Ship implements java.io.Serializable {
 		// move backward.
 		if (x - size >= 0) {
 			for (i = x - 1; i >= x - size; i--) {
-				Vector2 p = new Vector2(i, y);
+				Vector2 p = Vector2.of(i, y);
 				back.add(p);
 			}
 		}
@@ -616,7 +560,7 @@ public abstract class Ship implements java.io.Serializable {
 		if (y - 1 >= 0) {
 			int leftY = y - 1;
 			for (i = x; i > x - size; i--) {
-				Vector2 p = new Vector2(i, leftY);
+				Vector2 p = Vector2.of(i, leftY);
 				left.add(p);
 			}
 		}
@@ -624,19 +568,19 @@ public abstract class Ship implements java.io.Serializable {
 		if (y + 1 < 30) {
 			int rightY = y + 1;
 			for (i = x; i > x - size; i--) {
-				Vector2 p = new Vector2(i, rightY);
+				Vector2 p = Vector2.of(i, rightY);
 				right.add(p);
 			}
 		}
 		// move forward.
 		if (x + speed > 29) {
 			for (i = x - size + 1; i < 30; i++) {
-				Vector2 p = new Vector2(i, y);
+				Vector2 p = Vector2.of(i, y);
 				forward.add(p);
 			}
 		} else {
 			for (i = x - size + 1; i <= x + speed; i++) {
-				Vector2 p = new Vector2(i, y);
+				Vector2 p = Vector2.of(i, y);
 				forward.add(p);
 			}
 		}
@@ -658,7 +602,7 @@ public abstract class Ship implements java.io.Serializable {
 		// move backward.
 		if (x + size < 30) {
 			for (i = x + 1; i <= x + size; i++) {
-				Vector2 p = new Vector2(i, y);
+				Vector2 p = Vector2.of(i, y);
 				back.add(p);
 			}
 		}
@@ -666,26 +610,26 @@ public abstract class Ship implements java.io.Serializable {
 		if (y - 1 >= 0) {
 			int rightY = y - 1;
 			for (i = x; i < x + size; i++) {
-				Vector2 p = new Vector2(i, rightY);
+				Vector2 p = Vector2.of(i, rightY);
 				right.add(p);
 			}
 		}
 		if (y + 1 < 30) {
 			int leftY = y + 1;
 			for (i = x; i < x + size; i++) {
-				Vector2 p = new Vector2(i, leftY);
+				Vector2 p = Vector2.of(i, leftY);
 				left.add(p);
 			}
 		}
 		// move forward.
 		if (x < speed) {
 			for (i = x + size - 1; i >= 0; i--) {
-				Vector2 p = new Vector2(i, y);
+				Vector2 p = Vector2.of(i, y);
 				forward.add(p);
 			}
 		} else {
 			for (i = x + size - 1; i >= x - speed; i--) {
-				Vector2 p = new Vector2(i, y);
+				Vector2 p = Vector2.of(i, y);
 				forward.add(p);
 			}
 		}
@@ -799,21 +743,21 @@ public abstract class Ship implements java.io.Serializable {
 					&& yPivot + 1 < 30) {
 				// left 90.
 				for (i = xPivot - 1; i <= xPivot + 1; i++) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					left.add(p);
 				}
 				d = ShipDirection.West;
 				positions.setLeft(left);
 				positions.setLeftDirection(d);
 				// leftpath
-				Vector2 p1 = new Vector2(xPivot - 1, yPivot - 1);
-				Vector2 p2 = new Vector2(xPivot + 1, yPivot + 1);
+				Vector2 p1 = Vector2.of(xPivot - 1, yPivot - 1);
+				Vector2 p2 = Vector2.of(xPivot + 1, yPivot + 1);
 				lPath.add(p1);
 				lPath.add(p2);
 				positions.setLeftPath(lPath);
 				// right 90.
 				for (i = xPivot + 1; i >= xPivot - 1; i--) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					right.add(p);
 				}
 				for (int w = 0; w < right.size(); w++) {
@@ -824,15 +768,15 @@ public abstract class Ship implements java.io.Serializable {
 				positions.setRight(right);
 				positions.setRightDirection(d);
 				// rightpath
-				Vector2 p3 = new Vector2(xPivot + 1, yPivot - 1);
-				Vector2 p4 = new Vector2(xPivot - 1, yPivot + 1);
+				Vector2 p3 = Vector2.of(xPivot + 1, yPivot - 1);
+				Vector2 p4 = Vector2.of(xPivot - 1, yPivot + 1);
 				rPath.add(p3);
 				rPath.add(p4);
 				positions.setRightPath(rPath);
 
 				// 180 turn should also be possible.
 				for (i = yPivot + 1; i >= yPivot - 1; i--) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					back.add(p);
 				}
 				d = ShipDirection.South;
@@ -848,7 +792,7 @@ public abstract class Ship implements java.io.Serializable {
 			if (xPivot - size + 1 >= 0) {
 				// left 90.
 				for (i = xPivot - size + 1; i <= xPivot; i++) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					left.add(p);
 				}
 				d = ShipDirection.West;
@@ -858,7 +802,7 @@ public abstract class Ship implements java.io.Serializable {
 				k = 0;
 				for (i = yPivot - 1; i >= yPivot - size + 1; i--) {
 					for (j = xPivot - size + 1 + k; j <= xPivot - 1; j++) {
-						Vector2 p = new Vector2(j, i);
+						Vector2 p = Vector2.of(j, i);
 						lPath.add(p);
 					}
 					k++;
@@ -868,7 +812,7 @@ public abstract class Ship implements java.io.Serializable {
 			if (xPivot + size - 1 < 30) {
 				// right 90;
 				for (i = xPivot + size - 1; i >= xPivot; i--) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					right.add(p);
 				}
 				d = ShipDirection.East;
@@ -878,7 +822,7 @@ public abstract class Ship implements java.io.Serializable {
 				k = 0;
 				for (i = yPivot - 1; i >= yPivot - size + 1; i--) {
 					for (j = xPivot + 1; j <= xPivot + size - 1 - k; j++) {
-						Vector2 p = new Vector2(j, i);
+						Vector2 p = Vector2.of(j, i);
 						rPath.add(p);
 					}
 					k++;
@@ -922,35 +866,35 @@ public abstract class Ship implements java.io.Serializable {
 					&& yPivot + 1 < 30) {
 				// left 90.
 				for (i = xPivot + 1; i >= xPivot - 1; i--) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					left.add(p);
 				}
 				d = ShipDirection.East;
 				positions.setLeftDirection(d);
 				positions.setLeft(left);
 				// leftpath
-				Vector2 p1 = new Vector2(xPivot - 1, yPivot - 1);
-				Vector2 p2 = new Vector2(xPivot + 1, yPivot + 1);
+				Vector2 p1 = Vector2.of(xPivot - 1, yPivot - 1);
+				Vector2 p2 = Vector2.of(xPivot + 1, yPivot + 1);
 				lPath.add(p1);
 				lPath.add(p2);
 				positions.setLeftPath(lPath);
 				// right 90.
 				for (i = xPivot - 1; i <= xPivot + 1; i++) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					right.add(p);
 				}
 				d = ShipDirection.West;
 				positions.setRightDirection(d);
 				positions.setRight(right);
 				// rightpath
-				Vector2 p3 = new Vector2(xPivot + 1, yPivot - 1);
-				Vector2 p4 = new Vector2(xPivot - 1, yPivot + 1);
+				Vector2 p3 = Vector2.of(xPivot + 1, yPivot - 1);
+				Vector2 p4 = Vector2.of(xPivot - 1, yPivot + 1);
 				rPath.add(p3);
 				rPath.add(p4);
 				positions.setRightPath(rPath);
 				// 180 turn should also be possible.
 				for (i = yPivot - 1; i <= yPivot + 1; i++) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					back.add(p);
 				}
 				d = ShipDirection.North;
@@ -966,7 +910,7 @@ public abstract class Ship implements java.io.Serializable {
 			// right 90.
 			if (xPivot - size + 1 >= 0) {
 				for (i = xPivot - size + 1; i <= xPivot; i++) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					right.add(p);
 				}
 				d = ShipDirection.West;
@@ -976,7 +920,7 @@ public abstract class Ship implements java.io.Serializable {
 				k = 0;
 				for (i = yPivot + 1; i <= yPivot + size - 1; i++) {
 					for (j = xPivot - size + 1 + k; j <= xPivot - 1; j++) {
-						Vector2 p = new Vector2(j, i);
+						Vector2 p = Vector2.of(j, i);
 						rPath.add(p);
 					}
 					k++;
@@ -986,7 +930,7 @@ public abstract class Ship implements java.io.Serializable {
 			// left 90;
 			if (xPivot + size - 1 < 30) {
 				for (i = xPivot + size - 1; i >= xPivot; i--) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					left.add(p);
 				}
 				d = ShipDirection.East;
@@ -996,7 +940,7 @@ public abstract class Ship implements java.io.Serializable {
 				k = 0;
 				for (i = yPivot + 1; i <= yPivot + size - 1; i++) {
 					for (j = xPivot + 1; j <= xPivot + size - 1 - k; j++) {
-						Vector2 p = new Vector2(j, i);
+						Vector2 p = Vector2.of(j, i);
 						lPath.add(p);
 					}
 					k++;
@@ -1030,35 +974,35 @@ public abstract class Ship implements java.io.Serializable {
 					&& yPivot + 1 < 30) {
 				// left 90.
 				for (i = yPivot - 1; i <= yPivot + 1; i++) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					left.add(p);
 				}
 				d = ShipDirection.North;
 				positions.setLeftDirection(d);
 				positions.setLeft(left);
 				// lefttpath
-				Vector2 p1 = new Vector2(xPivot + 1, yPivot - 1);
-				Vector2 p2 = new Vector2(xPivot - 1, yPivot + 1);
+				Vector2 p1 = Vector2.of(xPivot + 1, yPivot - 1);
+				Vector2 p2 = Vector2.of(xPivot - 1, yPivot + 1);
 				lPath.add(p1);
 				lPath.add(p2);
 				positions.setLeftPath(lPath);
 				// right 90.
 				for (i = yPivot + 1; i >= yPivot - 1; i--) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					right.add(p);
 				}
 				d = ShipDirection.South;
 				positions.setRightDirection(d);
 				positions.setRight(right);
 				// rightpath
-				Vector2 p3 = new Vector2(xPivot - 1, yPivot - 1);
-				Vector2 p4 = new Vector2(xPivot + 1, yPivot + 1);
+				Vector2 p3 = Vector2.of(xPivot - 1, yPivot - 1);
+				Vector2 p4 = Vector2.of(xPivot + 1, yPivot + 1);
 				rPath.add(p3);
 				rPath.add(p4);
 				positions.setRightPath(rPath);
 				// 180 turn should also be possible.
 				for (i = xPivot - 1; i <= xPivot + 1; i++) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					back.add(p);
 				}
 				d = ShipDirection.West;
@@ -1074,7 +1018,7 @@ public abstract class Ship implements java.io.Serializable {
 			// left 90.
 			if (yPivot - size + 1 >= 0) {
 				for (i = yPivot - size + 1; i <= yPivot; i++) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					System.out.println("CAN TURN " + p.x + " " + p.y);
 					left.add(p);
 				}
@@ -1085,7 +1029,7 @@ public abstract class Ship implements java.io.Serializable {
 				k = 0;
 				for (i = yPivot - 1; i >= yPivot - size + 1; i--) {
 					for (j = xPivot + 1; j <= xPivot + size - 1 - k; j++) {
-						Vector2 p = new Vector2(j, i);
+						Vector2 p = Vector2.of(j, i);
 						System.out.println("TURN path " + p.x + " " + p.y);
 						lPath.add(p);
 					}
@@ -1096,7 +1040,7 @@ public abstract class Ship implements java.io.Serializable {
 			// right 90;
 			if (yPivot + size - 1 < 30) {
 				for (i = yPivot + size - 1; i >= yPivot; i--) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					right.add(p);
 				}
 				d = ShipDirection.South;
@@ -1106,7 +1050,7 @@ public abstract class Ship implements java.io.Serializable {
 				k = 0;
 				for (i = yPivot + 1; i <= yPivot + size - 1; i++) {
 					for (j = xPivot + 1; j <= xPivot + size - 1 - k; j++) {
-						Vector2 p = new Vector2(j, i);
+						Vector2 p = Vector2.of(j, i);
 						rPath.add(p);
 					}
 					k++;
@@ -1140,35 +1084,35 @@ public abstract class Ship implements java.io.Serializable {
 					&& yPivot + 1 < 30) {
 				// left 90.
 				for (i = yPivot + 1; i >= yPivot - 1; i--) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					left.add(p);
 				}
 				d = ShipDirection.South;
 				positions.setLeftDirection(d);
 				positions.setLeft(left);
 				// lefttpath
-				Vector2 p1 = new Vector2(xPivot + 1, yPivot - 1);
-				Vector2 p2 = new Vector2(xPivot - 1, yPivot + 1);
+				Vector2 p1 = Vector2.of(xPivot + 1, yPivot - 1);
+				Vector2 p2 = Vector2.of(xPivot - 1, yPivot + 1);
 				lPath.add(p1);
 				lPath.add(p2);
 				positions.setLeftPath(lPath);
 				// right 90.
 				for (i = yPivot - 1; i <= yPivot + 1; i++) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					right.add(p);
 				}
 				d = ShipDirection.North;
 				positions.setRightDirection(d);
 				positions.setRight(right);
 				// rightpath
-				Vector2 p3 = new Vector2(xPivot - 1, yPivot - 1);
-				Vector2 p4 = new Vector2(xPivot + 1, yPivot + 1);
+				Vector2 p3 = Vector2.of(xPivot - 1, yPivot - 1);
+				Vector2 p4 = Vector2.of(xPivot + 1, yPivot + 1);
 				rPath.add(p3);
 				rPath.add(p4);
 				positions.setRightPath(rPath);
 				// 180 turn should also be possible.
 				for (i = xPivot + 1; i >= xPivot - 1; i--) {
-					Vector2 p = new Vector2(i, yPivot);
+					Vector2 p = Vector2.of(i, yPivot);
 					back.add(p);
 				}
 				d = ShipDirection.East;
@@ -1184,7 +1128,7 @@ public abstract class Ship implements java.io.Serializable {
 			// right 90.
 			if (yPivot - size + 1 >= 0) {
 				for (i = yPivot - size + 1; i <= yPivot; i++) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					right.add(p);
 				}
 				d = ShipDirection.North;
@@ -1194,7 +1138,7 @@ public abstract class Ship implements java.io.Serializable {
 				k = 0;
 				for (i = yPivot - 1; i >= yPivot - size + 1; i--) {
 					for (j = xPivot - size + 1 + k; j <= xPivot - 1; j++) {
-						Vector2 p = new Vector2(j, i);
+						Vector2 p = Vector2.of(j, i);
 						rPath.add(p);
 					}
 					k++;
@@ -1204,7 +1148,7 @@ public abstract class Ship implements java.io.Serializable {
 			// left 90;
 			if (yPivot + size - 1 < 30) {
 				for (i = yPivot + size - 1; i >= yPivot; i--) {
-					Vector2 p = new Vector2(xPivot, i);
+					Vector2 p = Vector2.of(xPivot, i);
 					left.add(p);
 				}
 				d = ShipDirection.South;
@@ -1214,7 +1158,7 @@ public abstract class Ship implements java.io.Serializable {
 				k = 0;
 				for (i = yPivot + 1; i <= yPivot + size - 1; i++) {
 					for (j = xPivot - size + 1 + k; j <= xPivot - 1; j++) {
-						Vector2 p = new Vector2(j, i);
+						Vector2 p = Vector2.of(j, i);
 						lPath.add(p);
 					}
 					k++;
@@ -11,6 +11,8 @@ import my_game.util.Vector2;
  * @author wei
  */
 public class ShipUnit extends GameObject implements java.io.Serializable {
+	private static final long serialVersionUID = 4120838727905322286L;
+
 	public int damageLevel;
 	public int unitArmour;
 	protected Vector2 position;
@@ -41,8 +43,7 @@ public class ShipUnit extends GameObject implements java.io.Serializable {
 	}
 
 	public Vector2 getPosition() {
-		Vector2 posCopy = new Vector2(this.position);
-		return posCopy;
+		return this.position;
 	}
 
 	public void setPosition(Vector2 newPosition) {
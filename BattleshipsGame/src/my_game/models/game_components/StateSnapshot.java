@@ -0,0 +1,483 @@
+package my_game.models.game_components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import my_game.models.game_components.GameState.GamePhase;
+import my_game.models.player_components.ChatLog;
+import my_game.models.player_components.Message;
+import my_game.models.player_components.Player;
+import my_game.models.ships_impl.Cruiser;
+import my_game.models.ships_impl.Destroyer;
+import my_game.models.ships_impl.KamikazeBoat;
+import my_game.models.ships_impl.MineLayer;
+import my_game.models.ships_impl.RadarBoat;
+import my_game.models.ships_impl.TorpedoBoat;
+import my_game.util.ShipDirection;
+import my_game.util.Vector2;
+
+/**
+ * A compact copy of the values of a GameState: one code per grid cell, one
+ * record of numbers per ship, the damage of the base units and the chat
+ * messages. Two snapshots can be compared to find what changed between two
+ * states (see GameStateDelta), and a snapshot can be turned back into a new,
+ * independent GameState.
+ * <p>
+ * Ships are referred to by slot: the player index times MAX_SHIPS plus the
+ * ship id. A snapshot is never modified once built.
+ */
+public class StateSnapshot {
+
+    /** Maximum number of ships per player which can be referred to by id. */
+    public static final int MAX_SHIPS = 16;
+    /** Number of ship slots: MAX_SHIPS per player. */
+    public static final int SHIP_SLOTS = 2 * MAX_SHIPS;
+    /** Number of units of one base. */
+    public static final int BASE_UNITS = 10;
+
+    /* The low 3 bits of a cell code give the kind of object in the cell,
+     * the other bits depend on the kind. */
+    public static final int CELL_EMPTY = 0;
+    public static final int CELL_CORAL = 1;
+    /** Followed by the player index (1 bit) and the base unit index. */
+    public static final int CELL_BASE = 2;
+    /** Followed by the ship slot (5 bits) and the ship unit index. */
+    public static final int CELL_SHIP = 3;
+    /** Followed by the destroyed and active flags of the mine. */
+    public static final int CELL_MINE = 4;
+
+    /* Layout of a ship record, the units follow as (x, y, damage) triples. */
+    static final int REC_TYPE = 0;
+    static final int REC_PLAYER_ID = 1;
+    static final int REC_DIRECTION = 2;
+    static final int REC_CURRENT_SIZE = 3;
+    static final int REC_CURRENT_SPEED = 4;
+    static final int REC_DESTROYED_UNITS = 5;
+    static final int REC_FLAGS = 6;
+    static final int REC_MINES = 7;
+    static final int REC_UNIT_COUNT = 8;
+    static final int REC_HEADER = 9;
+
+    /** The ship is in its player's fleet (sunk ships can stay on the grid). */
+    static final int FLAG_IN_FLEET = 1;
+    static final int FLAG_LONG_RADAR = 2;
+    static final int FLAG_KAMIKAZE_ACTIVE = 4;
+
+    final String name;
+    final Player[] players;
+    final GamePhase phase;
+    final int playerTurn;
+    /** Cell codes indexed by x * Map.HEIGHT + y. */
+    final int[] cells;
+    /** Ship records by slot, null where there is no ship. */
+    final int[][] ships;
+    /** Damage level of the base units, player0's first. */
+    final int[] baseDamage;
+    final ArrayList<Message> messages;
+    final ActionDescription previousAction;
+    private final int checksum;
+
+    StateSnapshot(String name, Player[] players, GamePhase phase, int playerTurn, int[] cells,
+            int[][] ships, int[] baseDamage, ArrayList<Message> messages, ActionDescription previousAction) {
+        this.name = name;
+        this.players = players;
+        this.phase = phase;
+        this.playerTurn = playerTurn;
+        this.cells = cells;
+        this.ships = ships;
+        this.baseDamage = baseDamage;
+        this.messages = messages;
+        this.previousAction = previousAction;
+        this.checksum = computeChecksum();
+    }
+
+    /**
+     * Takes a snapshot of the provided game state.
+     * @param gs
+     * @return
+     * @throws IllegalStateException If a ship has no valid id, in which case
+     * the state can only be sent in full.
+     */
+    public static StateSnapshot capture(GameState gs) {
+        Map map = gs.map;
+        Player[] players = new Player[] {gs.getPlayer(0), gs.getPlayer(1)};
+        int[][] ships = new int[SHIP_SLOTS][];
+        IdentityHashMap<Ship, Integer> slots = new IdentityHashMap<Ship, Integer>();
+        for(Ship s: map.player0Ships) {
+            addShip(s, 0, true, ships, slots);
+        }
+        for(Ship s: map.player1Ships) {
+            addShip(s, 1, true, ships, slots);
+        }
+
+        int[] cells = new int[Map.WIDTH * Map.HEIGHT];
+        for(int x = 0; x < Map.WIDTH; x++) {
+            for(int y = 0; y < Map.HEIGHT; y++) {
+                GameObject o = map.grid[x][y];
+                int code = CELL_EMPTY;
+                if(o instanceof ShipUnit) {
+                    ShipUnit su = (ShipUnit) o;
+                    Ship s = su.getShip();
+                    Integer slot = slots.get(s);
+                    if(slot == null) {
+                        //a ship which is still on the grid but not in a fleet anymore
+                        int playerIndex = (s.getPlayerID() == players[0].getID()) ? 0 : 1;
+                        slot = addShip(s, playerIndex, false, ships, slots);
+                    }
+                    code = shipCell(slot, indexOf(s.getShipUnits(), su));
+                } else if(o instanceof BaseUnit) {
+                    BaseUnit bu = (BaseUnit) o;
+                    Base b = bu.getBase();
+                    int playerIndex = (b == map.p1Base) ? 1 : 0;
+                    code = baseCell(playerIndex, indexOf(b.getBaseUnits(), bu));
+                } else if(o instanceof Mine) {
+                    Mine m = (Mine) o;
+                    code = mineCell(m.isDestoryed(), m.isActive());
+                } else if(o instanceof CoralUnit) {
+                    code = CELL_CORAL;
+                }
+                cells[x * Map.HEIGHT + y] = code;
+            }
+        }
+
+        int[] baseDamage = new int[2 * BASE_UNITS];
+        BaseUnit[] units0 = map.p0Base.getBaseUnits();
+        BaseUnit[] units1 = map.p1Base.getBaseUnits();
+        for(int i = 0; i < BASE_UNITS; i++) {
+            baseDamage[i] = units0[i].getDamageLevel();
+            baseDamage[BASE_UNITS + i] = units1[i].getDamageLevel();
+        }
+
+        return new StateSnapshot(gs.name, players, gs.getPhase(), gs.getPlayerTurn(), cells, ships,
+                baseDamage, new ArrayList<Message>(gs.chatLog.getAllMessages()), gs.previousAction);
+    }
+
+    /**
+     * Takes a snapshot of the part of the provided game state one player is
+     * allowed to see (see project).
+     * @param gs
+     * @param playerIndex The player the snapshot is taken for.
+     * @return
+     * @throws IllegalStateException If a ship has no valid id.
+     */
+    public static StateSnapshot capture(GameState gs, int playerIndex) {
+        return capture(gs).project(playerIndex, gs.map.getVisibility(playerIndex).toArray());
+    }
+
+    /**
+     * Checks the checksum a player sent with its action against the state the
+     * action led to. The player can hold the whole state, or only its view of
+     * it if it is sent its view of the states. That view is the one of the
+     * state before the action: what the action brings into sight is not in
+     * the player's state until it is sent its view again.
+     * @param gs The state after the action.
+     * @param playerIndex The player who sent the checksum.
+     * @param visible The cells the player could see before the action, by x then y.
+     * @param checksum
+     * @return True if the checksum is the one of the state or of the view of
+     * the player.
+     * @throws IllegalStateException If a ship has no valid id.
+     */
+    public static boolean matches(GameState gs, int playerIndex, boolean[][] visible, int checksum) {
+        StateSnapshot snapshot = capture(gs);
+        return snapshot.checksum() == checksum
+                || snapshot.project(playerIndex, visible).checksum() == checksum;
+    }
+
+    /**
+     * Builds the view of this snapshot one player is allowed to see. The
+     * enemy ships and the mines outside of the player's radar and sonar
+     * range are removed, and so are the messages sent to the other player.
+     * An enemy ship seen in part is kept whole, the position of its other
+     * units follows from its direction anyway.
+     * @param playerIndex The player the view is built for.
+     * @param visible The cells the player can see, by x then y.
+     * @return
+     */
+    public StateSnapshot project(int playerIndex, boolean[][] visible) {
+        boolean[] seen = new boolean[SHIP_SLOTS];
+        for(int slot = playerIndex * MAX_SHIPS; slot < (playerIndex + 1) * MAX_SHIPS; slot++) {
+            seen[slot] = true;
+        }
+        for(int i = 0; i < cells.length; i++) {
+            if((cells[i] & 7) == CELL_SHIP && visible[i / Map.HEIGHT][i % Map.HEIGHT]) {
+                seen[(cells[i] >> 3) & 0x1F] = true;
+            }
+        }
+
+        int[] viewCells = cells.clone();
+        for(int i = 0; i < viewCells.length; i++) {
+            switch(viewCells[i] & 7) {
+                case CELL_SHIP:
+                    if(!seen[(viewCells[i] >> 3) & 0x1F]) {
+                        viewCells[i] = CELL_EMPTY;
+                    }
+                    break;
+                case CELL_MINE:
+                    if(!visible[i / Map.HEIGHT][i % Map.HEIGHT]) {
+                        viewCells[i] = CELL_EMPTY;
+                    }
+                    break;
+            }
+        }
+        int[][] viewShips = new int[SHIP_SLOTS][];
+        for(int slot = 0; slot < SHIP_SLOTS; slot++) {
+            if(seen[slot]) {
+                viewShips[slot] = ships[slot];
+            }
+        }
+
+        ArrayList<Message> viewMessages = new ArrayList<Message>(messages.size());
+        for(Message m: messages) {
+            int receiver = GameStateDelta.playerIndex(players, m.getReceiver());
+            if(receiver < 0 || receiver == playerIndex) {
+                viewMessages.add(m);
+            }
+        }
+
+        //the move of a ship the player can not see would give its position away
+        ActionDescription action = previousAction;
+        if(action instanceof MoveDescription && !(allVisible(((MoveDescription) action).oldPositions, visible)
+                && allVisible(((MoveDescription) action).newPositions, visible))) {
+            action = null;
+        }
+        return new StateSnapshot(name, players, phase, playerTurn, viewCells, viewShips,
+                baseDamage, viewMessages, action);
+    }
+
+    private static boolean allVisible(Vector2[] positions, boolean[][] visible) {
+        if(positions == null) {
+            return true;
+        }
+        for(Vector2 p: positions) {
+            if(p != null && !visible[p.x][p.y]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int addShip(Ship s, int playerIndex, boolean inFleet, int[][] ships, IdentityHashMap<Ship, Integer> slots) {
+        int id = s.getShipId();
+        if(id < 0 || id >= MAX_SHIPS) {
+            throw new IllegalStateException("Ship id out of range: " + id);
+        }
+        int slot = playerIndex * MAX_SHIPS + id;
+        if(ships[slot] != null) {
+            throw new IllegalStateException("Two ships of player" + playerIndex + " have the id " + id);
+        }
+        ships[slot] = shipRecord(s, inFleet);
+        slots.put(s, slot);
+        return slot;
+    }
+
+    /**
+     * Builds the record of numbers describing a ship.
+     */
+    private static int[] shipRecord(Ship s, boolean inFleet) {
+        ShipUnit[] units = s.getShipUnits();
+        int[] r = new int[REC_HEADER + 3 * units.length];
+        r[REC_TYPE] = s.getShipType().ordinal();
+        r[REC_PLAYER_ID] = s.getPlayerID();
+        r[REC_DIRECTION] = (s.getDirection() == null) ? -1 : s.getDirection().ordinal();
+        r[REC_CURRENT_SIZE] = s.getCurrentSize();
+        r[REC_CURRENT_SPEED] = s.getCurrentSpeed();
+        r[REC_DESTROYED_UNITS] = s.getDestoryedUnit();
+        int flags = inFleet ? FLAG_IN_FLEET : 0;
+        if(s instanceof RadarBoat && ((RadarBoat) s).isLongRangeActive()) {
+            flags |= FLAG_LONG_RADAR;
+        }
+        if(s instanceof KamikazeBoat && ((KamikazeBoat) s).isAttackActive()) {
+            flags |= FLAG_KAMIKAZE_ACTIVE;
+        }
+        r[REC_FLAGS] = flags;
+        r[REC_MINES] = (s instanceof MineLayer) ? ((MineLayer) s).getMineCount() : 0;
+        r[REC_UNIT_COUNT] = units.length;
+        for(int i = 0; i < units.length; i++) {
+            Vector2 p = units[i].position;
+            r[REC_HEADER + 3 * i] = (p == null) ? -1 : p.x;
+            r[REC_HEADER + 3 * i + 1] = (p == null) ? -1 : p.y;
+            r[REC_HEADER + 3 * i + 2] = units[i].getDamageLevel();
+        }
+        return r;
+    }
+
+    private static int indexOf(Object[] array, Object o) {
+        for(int i = 0; i < array.length; i++) {
+            if(array[i] == o) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    static int shipCell(int slot, int unit) {
+        return CELL_SHIP | (slot << 3) | (unit << 8);
+    }
+
+    static int baseCell(int playerIndex, int unit) {
+        return CELL_BASE | (playerIndex << 3) | (unit << 4);
+    }
+
+    static int mineCell(boolean destroyed, boolean active) {
+        return CELL_MINE | (destroyed ? 8 : 0) | (active ? 16 : 0);
+    }
+
+    /**
+     * Builds a new GameState holding the values of this snapshot. The state
+     * shares no game objects with the state the snapshot was taken from.
+     * @return
+     */
+    public GameState toGameState() {
+        Base b0 = new Base(players[0].getID(), 1);
+        Base b1 = new Base(players[1].getID(), 0);
+        BaseUnit[] units0 = b0.getBaseUnits();
+        BaseUnit[] units1 = b1.getBaseUnits();
+        for(int i = 0; i < BASE_UNITS; i++) {
+            units0[i].setDamageLevel(baseDamage[i]);
+            units1[i].setDamageLevel(baseDamage[BASE_UNITS + i]);
+        }
+        Map map = new Map(b0, b1);
+
+        Ship[] built = new Ship[SHIP_SLOTS];
+        for(int slot = 0; slot < SHIP_SLOTS; slot++) {
+            if(ships[slot] == null) {
+                continue;
+            }
+            built[slot] = buildShip(ships[slot], slot % MAX_SHIPS);
+            if((ships[slot][REC_FLAGS] & FLAG_IN_FLEET) != 0) {
+                if(slot < MAX_SHIPS) {
+                    map.player0Ships.add(built[slot]);
+                } else {
+                    map.player1Ships.add(built[slot]);
+                }
+            }
+        }
+
+        for(int x = 0; x < Map.WIDTH; x++) {
+            for(int y = 0; y < Map.HEIGHT; y++) {
+                int code = cells[x * Map.HEIGHT + y];
+                GameObject o = null;
+                switch(code & 7) {
+                    case CELL_CORAL:
+                        o = new CoralUnit();
+                        break;
+                    case CELL_BASE:
+                        o = (((code >> 3) & 1) == 0 ? units0 : units1)[(code >> 4) & 0xF];
+                        break;
+                    case CELL_SHIP:
+                        Ship s = built[(code >> 3) & 0x1F];
+                        o = (s == null) ? null : s.getShipUnits()[(code >> 8) & 0xFF];
+                        break;
+                    case CELL_MINE:
+                        Mine m = new Mine();
+                        m.setPosition(Vector2.of(x, y));
+                        m.setDestoryed((code & 8) != 0);
+                        m.setActive((code & 16) != 0);
+                        o = m;
+                        break;
+                }
+                if(o != null) {
+                    map.setObjectAt(Vector2.of(x, y), o);
+                }
+            }
+        }
+        map.updateRadarVisibilityArrays();
+
+        ChatLog chatLog = new ChatLog();
+        for(Message m: messages) {
+            chatLog.addMessage(m);
+        }
+        return new GameState(name, players, playerTurn, phase, map, chatLog, previousAction);
+    }
+
+    /**
+     * Creates a ship out of its record.
+     */
+    private static Ship buildShip(int[] r, int id) {
+        ShipDirection d = (r[REC_DIRECTION] < 0) ? null : ShipDirection.values()[r[REC_DIRECTION]];
+        int unitCount = r[REC_UNIT_COUNT];
+        ArrayList<Vector2> positions = new ArrayList<Vector2>(unitCount);
+        for(int i = 0; i < unitCount; i++) {
+            int x = r[REC_HEADER + 3 * i];
+            int y = r[REC_HEADER + 3 * i + 1];
+            positions.add((x < 0) ? null : Vector2.of(x, y));
+        }
+        int pid = r[REC_PLAYER_ID];
+        Ship s;
+        switch(Ship.ShipType.values()[r[REC_TYPE]]) {
+            case Cruiser:
+                s = new Cruiser(pid, positions, d);
+                break;
+            case Destroyer:
+                s = new Destroyer(pid, positions, d);
+                break;
+            case TorpedoBoat:
+                s = new TorpedoBoat(pid, positions, d);
+                break;
+            case MineLayer:
+                s = new MineLayer(pid, positions, d);
+                ((MineLayer) s).setMineCount(r[REC_MINES]);
+                break;
+            case RadarBoat:
+                s = new RadarBoat(pid, positions, d);
+                if((r[REC_FLAGS] & FLAG_LONG_RADAR) != 0) {
+                    ((RadarBoat) s).turnOnLongRangeRadar();
+                }
+                break;
+            default:
+                s = new KamikazeBoat(pid, positions, d);
+                if((r[REC_FLAGS] & FLAG_KAMIKAZE_ACTIVE) != 0) {
+                    ((KamikazeBoat) s).activateAttack();
+                }
+                break;
+        }
+        ShipUnit[] units = s.getShipUnits();
+        if(units.length != unitCount) {
+            throw new IllegalStateException("A " + s.getShipType() + " can not have " + unitCount + " units.");
+        }
+        for(int i = 0; i < unitCount; i++) {
+            units[i].setDamageLevel(r[REC_HEADER + 3 * i + 2]);
+        }
+        s.setShipId(id);
+        s.setCurrentSize(r[REC_CURRENT_SIZE]);
+        s.setCurrentSpeed(r[REC_CURRENT_SPEED]);
+        s.setDestoryedUnit(r[REC_DESTROYED_UNITS]);
+        return s;
+    }
+
+    private int computeChecksum() {
+        int h = (phase == null) ? -1 : phase.ordinal();
+        h = 31 * h + playerTurn;
+        h = 31 * h + Arrays.hashCode(cells);
+        for(int[] record: ships) {
+            h = 31 * h + Arrays.hashCode(record);
+        }
+        h = 31 * h + Arrays.hashCode(baseDamage);
+        h = 31 * h + messages.size();
+        return h;
+    }
+
+    /**
+     * @return A hash of the values of this snapshot, used by both sides of a
+     * connection to check that they hold the same state.
+     */
+    public int checksum() {
+        return checksum;
+    }
+
+    /**
+     * @return The players of the state, player0 first.
+     */
+    public Player[] getPlayers() {
+        return new Player[] {players[0], players[1]};
+    }
+
+    /**
+     * @return The chat messages of the state, in order.
+     */
+    public List<Message> getMessages() {
+        return new ArrayList<Message>(messages);
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
  * A log of chat messages and game information messages sent between players.
  */
 public class ChatLog implements java.io.Serializable {
+    private static final long serialVersionUID = 2425309385869756450L;
     
     /** This is the log of messages. */
     private ArrayList<Message> messages;
@@ -54,6 +55,20 @@ public class ChatLog implements java.io.Serializable {
         return playerMsgs;
     }
     
+    /**
+     * @return A copy of the list of all messages, in the order they were added.
+     */
+    public List<Message> getAllMessages() {
+        return new ArrayList<Message>(this.messages);
+    }
+    
+    /**
+     * @return The number of messages in this chat log.
+     */
+    public int size() {
+        return this.messages.size();
+    }
+    
     /**
      * Adds a message to the chat log.
      * @param m 
@@ -9,6 +9,7 @@ package my_game.models.player_components;
  * means that it can be seen by one player and not the other.
  */
 public class Message implements java.io.Serializable {
+    private static final long serialVersionUID = -7395579659473602237L;
     
     public enum MessageType {
         Chat, NetworkInfo, NetworkError, Game
@@ -9,6 +9,7 @@ import java.net.InetAddress;
  * Contains all information necessary to represent a player.
  */
 public class Player implements java.io.Serializable {
+    private static final long serialVersionUID = -397413841401690273L;
 
 	
     /* Player's identification. */
@@ -17,6 +17,7 @@ import my_game.util.Vector2;
  *
  */
 public class Cruiser extends Ship {
+    private static final long serialVersionUID = -5814585799565877516L;
 	
     public Cruiser(int pid) {
     	super(pid);    
@@ -34,11 +35,11 @@ public class Cruiser extends Ship {
         setDirection(direction);
               
         weapons.add("cannon");
-        Range cr = new Range(new Vector2(-9,-5), new Vector2(5,-5), 
-            new Vector2(5,5), new Vector2(-9,5));   
+        Range cr = new Range(Vector2.of(-9,-5), Vector2.of(5,-5), 
+            Vector2.of(5,5), Vector2.of(-9,5));   
         setCannonRange(cr);
-        Range rr = new Range(new Vector2(-3,-1), new Vector2(6,-1), 
-              new Vector2(6,1), new Vector2(-3,1));       
+        Range rr = new Range(Vector2.of(-3,-1), Vector2.of(6,-1), 
+              Vector2.of(6,1), Vector2.of(-3,1));       
         setRadarRange(rr);
         
         ShipUnit[] tempShipUnits = new ShipUnit[getSize()];
@@ -23,6 +23,7 @@ import my_game.util.Range;
  *
  */
 public class Destroyer extends Ship{
+    private static final long serialVersionUID = -2279909584347820839L;
     
     private int cannonDamage;
     private int torpedoDamage;
@@ -42,16 +43,16 @@ public class Destroyer extends Ship{
         weapons.add("cannon");
         weapons.add("torpedo");
         
-        Range cr = new Range(new Vector2(-7,-4), new Vector2(4,-4), 
-            new Vector2(4,4), new Vector2(-7,4));   
+        Range cr = new Range(Vector2.of(-7,-4), Vector2.of(4,-4), 
+            Vector2.of(4,4), Vector2.of(-7,4));   
         setCannonRange(cr);
         
-    /*    Range tr = new Range(new Vector2(0,1), new Vector2(0,11),
-        		new Vector2(0,11), new Vector2(0,1));
+    /*    Range tr = new Range(Vector2.of(0,1), Vector2.of(0,11),
+        		Vector2.of(0,11), Vector2.of(0,1));
         setTorpedoRange(tr);
    */     
-        Range rr = new Range(new Vector2(-2,-1), new Vector2(5,-1), 
-              new Vector2(5,1), new Vector2(-2,1));       
+        Range rr = new Range(Vector2.of(-2,-1), Vector2.of(5,-1), 
+              Vector2.of(5,1), Vector2.of(-2,1));       
         setRadarRange(rr);
         
         ShipUnit[] tempShipUnits = new ShipUnit[getSize()];
@@ -16,6 +16,7 @@ import my_game.util.Vector2;
  * @author wei
  */
 public class KamikazeBoat extends Ship{
+    private static final long serialVersionUID = 9031975360448376208L;
     
     private Range explosionRange;
     private boolean activeAttack;
@@ -37,11 +38,11 @@ public class KamikazeBoat extends Ship{
         activeAttack = false;
               
       //  weapons.add("cannon");
-        Range rr = new Range(new Vector2(-2,-2), new Vector2(2,-2), 
-            new Vector2(2,2), new Vector2(-2,2));   
+        Range rr = new Range(Vector2.of(-2,-2), Vector2.of(2,-2), 
+            Vector2.of(2,2), Vector2.of(-2,2));   
         setRadarRange(rr);
-        Range er = new Range(new Vector2(-1,-1), new Vector2(1,-1), 
-              new Vector2(1,1), new Vector2(-1,1));       
+        Range er = new Range(Vector2.of(-1,-1), Vector2.of(1,-1), 
+              Vector2.of(1,1), Vector2.of(-1,1));       
         setCannonRange(er); //name to cannonrange so I can use method in Ship.
         setExplosionRange(er);
         ShipUnit[] tempShipUnits = new ShipUnit[getSize()];
@@ -65,6 +66,10 @@ public class KamikazeBoat extends Ship{
         }
     }
     
+    public boolean isAttackActive() {
+        return activeAttack;
+    }
+    
     public void suicideAttack(){
         if (this.getCurrentSize() > 0){
             ShipUnit su = this.getShipUnits()[0];
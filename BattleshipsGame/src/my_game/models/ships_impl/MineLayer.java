@@ -18,6 +18,7 @@ import my_game.util.Range;
  *
  */
 public class MineLayer extends Ship {
+	private static final long serialVersionUID = -200538771471295146L;
     
 	private int mineNum = 5;
     
@@ -34,11 +35,11 @@ public class MineLayer extends Ship {
         
         weapons.add("cannon");
         weapons.add("mine");
-        Range cr = new Range(new Vector2(-2,-2), new Vector2(1,-2), 
-            new Vector2(1,2), new Vector2(-2,2));   
+        Range cr = new Range(Vector2.of(-2,-2), Vector2.of(1,-2), 
+            Vector2.of(1,2), Vector2.of(-2,2));   
         setCannonRange(cr);
-        Range rr = new Range(new Vector2(-3,-2), new Vector2(2,-2), 
-              new Vector2(2,2), new Vector2(-3,2));       
+        Range rr = new Range(Vector2.of(-3,-2), Vector2.of(2,-2), 
+              Vector2.of(2,2), Vector2.of(-3,2));       
         setRadarRange(rr);
         
         ShipUnit[] tempShipUnits = new ShipUnit[getSize()];
@@ -66,28 +67,39 @@ public class MineLayer extends Ship {
 		y = pos.x;
             }
 		
-            range[0] = new Vector2(x-1, y-1) ;
-            range[1] = new Vector2(x, y-1) ;
-            range[2] = new Vector2(x-2, y) ;
-            range[3] = new Vector2(x+1, y) ;
-            range[4] = new Vector2(x-1, y+1) ;
-            range[5] = new Vector2(x, y+1) ;
+            range[0] = Vector2.of(x-1, y-1) ;
+            range[1] = Vector2.of(x, y-1) ;
+            range[2] = Vector2.of(x-2, y) ;
+            range[3] = Vector2.of(x+1, y) ;
+            range[4] = Vector2.of(x-1, y+1) ;
+            range[5] = Vector2.of(x, y+1) ;
 	}else{
             if (direction == ShipDirection.South){
                 x = pos.y;
 		y = pos.x;
             }		
 	
-            range[0] = new Vector2(x+1, y-1) ;
-            range[1] = new Vector2(x, y-1) ;
-            range[2] = new Vector2(x+2, y) ;
-            range[3] = new Vector2(x-1, y) ;
-            range[4] = new Vector2(x+1, y+1) ;
-            range[5] = new Vector2(x, y+1) ;
+            range[0] = Vector2.of(x+1, y-1) ;
+            range[1] = Vector2.of(x, y-1) ;
+            range[2] = Vector2.of(x+2, y) ;
+            range[3] = Vector2.of(x-1, y) ;
+            range[4] = Vector2.of(x+1, y+1) ;
+            range[5] = Vector2.of(x, y+1) ;
 	}
 	return range;
     }
     
+    /**
+     * @return The number of mines this mine layer still carries.
+     */
+    public int getMineCount() {
+        return mineNum;
+    }
+    
+    public void setMineCount(int mineNum) {
+        this.mineNum = mineNum;
+    }
+    
     public boolean hasMine() {
     	return mineNum > 0;
     }
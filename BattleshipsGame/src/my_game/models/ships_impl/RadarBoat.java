@@ -23,6 +23,8 @@ import my_game.util.Range;
  *
  */
 public class RadarBoat extends Ship {
+    private static final long serialVersionUID = 5254683500408651768L;
+
     private int cannonDamage;
     private boolean longRangeActive;
     private Range shortRange;
@@ -45,14 +47,14 @@ public class RadarBoat extends Ship {
         setDirection(direction);
         
         weapons.add("cannon");
-        Range cr = new Range(new Vector2(-3,-1), new Vector2(1,-1), 
-            new Vector2(1,1), new Vector2(-3,1));   
+        Range cr = new Range(Vector2.of(-3,-1), Vector2.of(1,-1), 
+            Vector2.of(1,1), Vector2.of(-3,1));   
         setCannonRange(cr);
-        shortRange = new Range(new Vector2(-1,-1), new Vector2(4,-1), 
-              new Vector2(4,1), new Vector2(-1,1));       
+        shortRange = new Range(Vector2.of(-1,-1), Vector2.of(4,-1), 
+              Vector2.of(4,1), Vector2.of(-1,1));       
         setRadarRange(shortRange);
-        longRange = new Range(new Vector2(-1,-1), new Vector2(10,-1), 
-              new Vector2(10,1), new Vector2(-1,1));       
+        longRange = new Range(Vector2.of(-1,-1), Vector2.of(10,-1), 
+              Vector2.of(10,1), Vector2.of(-1,1));       
     //    setLongRadarRange(lrr); 
         
                 
@@ -87,6 +89,10 @@ public class RadarBoat extends Ship {
         }
     }
 
+    public boolean isLongRangeActive() {
+        return longRangeActive;
+    }
+    
     public void toggleRadar() {
         if(longRangeActive) {
             turnOffLongRangeRadar();
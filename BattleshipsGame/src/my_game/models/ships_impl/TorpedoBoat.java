@@ -23,6 +23,8 @@ import my_game.util.Range;
  *
  */
 public class TorpedoBoat extends Ship {
+    private static final long serialVersionUID = -7231828129986652372L;
+
     private int torpedoDamage;
     
     public TorpedoBoat(int pid, ArrayList<Vector2> position, ShipDirection direction){
@@ -41,16 +43,16 @@ public class TorpedoBoat extends Ship {
         weapons.add("cannon");
         weapons.add("torpedo");
         
-        Range cr = new Range(new Vector2(-2,-2), new Vector2(2,-2), 
-            new Vector2(2,2), new Vector2(-2,2));   
+        Range cr = new Range(Vector2.of(-2,-2), Vector2.of(2,-2), 
+            Vector2.of(2,2), Vector2.of(-2,2));   
         setCannonRange(cr);
         
-    /*    Range tr = new Range(new Vector2(0,1), new Vector2(0,11),
-        		new Vector2(0,11), new Vector2(0,1));
+    /*    Range tr = new Range(Vector2.of(0,1), Vector2.of(0,11),
+        		Vector2.of(0,11), Vector2.of(0,1));
         setTorpedoRange(tr);
     */    
-        Range rr = new Range(new Vector2(-1,-1), new Vector2(4,-1), 
-              new Vector2(4,1), new Vector2(-1,1));       
+        Range rr = new Range(Vector2.of(-1,-1), Vector2.of(4,-1), 
+              Vector2.of(4,1), Vector2.of(-1,1));       
         setRadarRange(rr);
                 
         ShipUnit[] tempShipUnits = new ShipUnit[getSize()];
@@ -0,0 +1,104 @@
+package my_game.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of ByteBuffers in size classes of powers of two, from MIN_SIZE to
+ * MAX_SIZE bytes. Buffers are taken with acquire() and given back with
+ * release() once their content is not needed anymore, so encoding packets
+ * and reading sockets do not allocate new arrays every time.
+ * <p>
+ * Larger buffers are allocated on demand and are not kept. Buffers given back
+ * to a full size class are left to the garbage collector. The pool can be 
+ * used from any thread.
+ */
+public class BufferPool {
+    
+    public static final int MIN_SIZE = 512;
+    public static final int MAX_SIZE = 1024 * 1024;
+    /** Number of free buffers kept per size class. */
+    private static final int MAX_FREE = 32;
+    
+    /** Heap buffers, used to encode packets. */
+    public static final BufferPool HEAP = new BufferPool(false);
+    /** Direct buffers, used by the channel reads of the non-blocking server. */
+    public static final BufferPool DIRECT = new BufferPool(true);
+    
+    private final boolean direct;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> free;
+    private final AtomicInteger[] freeCount;
+    
+    public BufferPool(boolean direct) {
+        this.direct = direct;
+        int classes = sizeClass(MAX_SIZE) + 1;
+        free = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(classes);
+        freeCount = new AtomicInteger[classes];
+        for(int i = 0; i < classes; i++) {
+            free.add(new ConcurrentLinkedQueue<ByteBuffer>());
+            freeCount[i] = new AtomicInteger();
+        }
+    }
+    
+    /**
+     * @param capacity
+     * @return Index of the smallest size class holding the capacity.
+     */
+    private static int sizeClass(int capacity) {
+        int size = MIN_SIZE;
+        int index = 0;
+        while(size < capacity) {
+            size <<= 1;
+            index++;
+        }
+        return index;
+    }
+    
+    /**
+     * Takes a cleared buffer of at least the requested capacity.
+     * @param capacity
+     * @return 
+     */
+    public ByteBuffer acquire(int capacity) {
+        if(capacity > MAX_SIZE) {
+            return allocate(capacity);
+        }
+        int index = sizeClass(capacity);
+        ByteBuffer buffer = free.get(index).poll();
+        if(buffer == null) {
+            return allocate(MIN_SIZE << index);
+        }
+        freeCount[index].decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+    
+    /**
+     * Gives a buffer taken from this pool back. The buffer must not be used
+     * by the caller anymore.
+     * @param buffer Can be null.
+     */
+    public void release(ByteBuffer buffer) {
+        if(buffer == null || buffer.isDirect() != direct) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if(capacity > MAX_SIZE || Integer.bitCount(capacity) != 1 || capacity < MIN_SIZE) {
+            //not one of the size classes
+            return;
+        }
+        int index = sizeClass(capacity);
+        if(freeCount[index].incrementAndGet() > MAX_FREE) {
+            freeCount[index].decrementAndGet();
+            return;
+        }
+        free.get(index).add(buffer);
+    }
+    
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,158 @@
+package my_game.networking;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import my_game.networking.packets.impl.PingPacket;
+import my_game.networking.server.Constants;
+import my_game.util.Misc;
+
+/**
+ * Sends a ping to the peer of a connection every PING_INTERVAL and measures
+ * the round trip time from the pongs, smoothed like TCP does (RFC 6298): 
+ * the smoothed round trip time moves by 1/8 of each new sample, the jitter 
+ * (mean deviation) by 1/4 of each new deviation.
+ * <p>
+ * Every frame received shows that the peer is alive. If nothing is received
+ * for HEARTBEAT_TIMEOUT, the connection is considered dead and the timeout
+ * action given by the network entity is run, which closes the connection.
+ */
+public class Heartbeat {
+    
+    /** One thread sends the pings of every connection. */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Heartbeat");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    
+    private final NetworkEntity net;
+    private final Runnable onTimeout;
+    private ScheduledFuture<?> task;
+    /** System.nanoTime() of the last frame received. */
+    private volatile long lastReceived;
+    
+    /** Smoothed round trip time in milliseconds, negative before the first pong. */
+    private double srtt = -1;
+    /** Mean deviation of the round trip time in milliseconds. */
+    private double jitter;
+    private int samples;
+    
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+    
+    /**
+     * @param net The entity the pings are sent by.
+     * @param onTimeout Run once when the peer has not been heard of for 
+     * HEARTBEAT_TIMEOUT, should close the connection.
+     */
+    public Heartbeat(NetworkEntity net, Runnable onTimeout) {
+        this.net = net;
+        this.onTimeout = onTimeout;
+    }
+    
+    /**
+     * Starts pinging a newly connected peer.
+     */
+    public synchronized void start() {
+        stop();
+        lastReceived = System.nanoTime();
+        srtt = -1;
+        jitter = 0;
+        samples = 0;
+        task = TIMER.scheduleAtFixedRate(tick, Constants.PING_INTERVAL, Constants.PING_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stops pinging, called when the connection is closed.
+     */
+    public synchronized void stop() {
+        if(task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+    
+    /**
+     * Called for every frame received from the peer.
+     */
+    public void frameReceived() {
+        lastReceived = System.nanoTime();
+    }
+    
+    /**
+     * Answers a ping of the peer.
+     * @param ping 
+     */
+    public void onPing(PingPacket ping) {
+        net.sendPacket(new PingPacket(ping.getTimestamp(), true));
+    }
+    
+    /**
+     * Takes a round trip time sample from the answer to one of our pings.
+     * @param pong 
+     */
+    public synchronized void onPong(PingPacket pong) {
+        double rtt = (System.nanoTime() - pong.getTimestamp()) / 1e6;
+        if(srtt < 0) {
+            srtt = rtt;
+            jitter = rtt / 2;
+        } else {
+            jitter += (Math.abs(srtt - rtt) - jitter) / 4;
+            srtt += (rtt - srtt) / 8;
+        }
+        if(samples++ % Constants.RTT_LOG_INTERVAL == 0) {
+            Misc.log("[HEARTBEAT]: " + net.getRemote() + " " + this);
+        }
+    }
+    
+    private void tick() {
+        long silence = (System.nanoTime() - lastReceived) / 1000000;
+        if(silence > Constants.HEARTBEAT_TIMEOUT) {
+            Misc.log("[HEARTBEAT]: nothing received from " + net.getRemote() + " for " + silence + "ms, closing the connection.");
+            stop();
+            onTimeout.run();
+        } else {
+            net.sendPacket(new PingPacket(System.nanoTime(), false));
+        }
+    }
+    
+    /**
+     * @return The smoothed round trip time to the peer in milliseconds, or a
+     * negative value if it has not been measured yet.
+     */
+    public synchronized double getRoundTripTime() {
+        return srtt;
+    }
+    
+    /**
+     * @return The mean deviation of the round trip time in milliseconds.
+     */
+    public synchronized double getJitter() {
+        return jitter;
+    }
+    
+    /**
+     * @return The time since the last frame was received, in milliseconds.
+     */
+    public long getSilence() {
+        return (System.nanoTime() - lastReceived) / 1000000;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        if(srtt < 0) {
+            return "rtt: not measured";
+        }
+        return String.format("rtt: %.1fms, jitter: %.1fms", srtt, jitter);
+    }
+}
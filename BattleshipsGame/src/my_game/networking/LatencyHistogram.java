@@ -0,0 +1,119 @@
+package my_game.networking;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations which can be recorded from any thread without
+ * locking. Like an HDR histogram, the buckets are log-linear: every power of
+ * two of nanoseconds is split in SUB_BUCKETS linear buckets, so a
+ * percentile is known within 1/SUB_BUCKETS of its value from a fixed number
+ * of counters, whatever the range of the durations.
+ */
+public class LatencyHistogram {
+
+    /** Linear buckets per power of two, the relative precision is 1/SUB_BUCKETS. */
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+    /** Durations up to 2^MAX_MAGNITUDE nanoseconds (about 13 days) are told apart. */
+    private static final int MAX_MAGNITUDE = 50;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(SUB_BUCKETS * (MAX_MAGNITUDE - SUB_BITS + 2));
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     * @param nanos Duration in nanoseconds, negative durations count as 0.
+     */
+    public void record(long nanos) {
+        //kept in nanoseconds, the small packets take less than a microsecond
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m = max.get();
+        while(nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        if(nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int magnitude = Math.min(63 - Long.numberOfLeadingZeros(nanos), MAX_MAGNITUDE);
+        int sub = (int) (Math.min(nanos >>> (magnitude - SUB_BITS), 2 * SUB_BUCKETS - 1)) - SUB_BUCKETS;
+        return SUB_BUCKETS * (magnitude - SUB_BITS + 1) + sub;
+    }
+
+    /**
+     * @return The smallest duration of a bucket, in nanoseconds.
+     */
+    private static long lowestOf(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return sub << (magnitude - SUB_BITS);
+    }
+
+    /**
+     * @return A copy of the histogram at this time. Durations recorded while
+     * the copy is taken may be in some of its figures only.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length()];
+        long n = 0;
+        for(int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        return new Snapshot(counts, n, total.get(), max.get());
+    }
+
+    /**
+     * The figures of a histogram at one point in time, in nanoseconds.
+     */
+    public static class Snapshot {
+
+        public final long count;
+        public final double mean;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.count = count;
+            this.mean = (count == 0) ? 0 : (double) total / count;
+            this.p50 = percentile(counts, count, 0.50);
+            this.p90 = percentile(counts, count, 0.90);
+            this.p99 = percentile(counts, count, 0.99);
+            this.max = max;
+        }
+
+        private static long percentile(long[] counts, long count, double p) {
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank && seen > 0) {
+                    return lowestOf(i);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            if(count == 0) {
+                return "-";
+            }
+            return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus",
+                    count, mean / 1000, p50 / 1000.0, p90 / 1000.0, p99 / 1000.0, max / 1000.0);
+        }
+    }
+}
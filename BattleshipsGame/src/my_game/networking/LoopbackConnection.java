@@ -0,0 +1,331 @@
+package my_game.networking;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.StateSnapshot;
+import my_game.models.player_components.Player;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.packets.PacketFrame;
+import my_game.networking.packets.PacketHandler;
+import my_game.util.Misc;
+
+/**
+ * One end of an in-memory connection between two games running in the same
+ * process: bots, tests and hot-seat play. The ends are made by pair() and
+ * are connected from the start.
+ * <p>
+ * Game states, actions, votes and reefs are handed to the other end as
+ * objects, nothing is encoded. Each end runs what it receives one at a
+ * time, in the order it was sent, on the threads of a shared pool (see
+ * SerialExecutor), and calls the same NetEntityListener methods a network
+ * connection would. A game state is received as a copy, so the two games
+ * never share the objects of their states.
+ * <p>
+ * Other packets given to sendPacket() are encoded and handled by a
+ * PacketHandler on the other end, like received frames, in the same order
+ * as the rest.
+ */
+public class LoopbackConnection implements NetworkEntity {
+
+    /** Threads running what the ends of every loopback connection receive. */
+    private static final ExecutorService DELIVERY_POOL = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Loopback-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final String name;
+    private LoopbackConnection peer;
+    private Player opponent;
+    private final CopyOnWriteArrayList<NetEntityListener> listeners = new CopyOnWriteArrayList<NetEntityListener>();
+    /** Runs what this end receives in the order it was sent. */
+    private final SerialExecutor inbox = new SerialExecutor(DELIVERY_POOL);
+    private final NetMetrics metrics;
+    /** Never started, there is no round trip to measure. */
+    private final Heartbeat heartbeat;
+    private final PacketHandler packetHandler;
+    /** The last game state sent, sent again when the other end asks for it. */
+    private volatile GameState lastSent;
+    private volatile boolean closed = false;
+
+    private LoopbackConnection(String name) {
+        this.name = name;
+        this.metrics = new NetMetrics(name);
+        this.heartbeat = new Heartbeat(this, new Runnable() {
+            public void run() {
+                stopNet();
+            }
+        });
+        this.packetHandler = new PacketHandler(this, new StateSync(this), heartbeat);
+    }
+
+    /**
+     * Makes the two ends of a connection.
+     * @param host The player using the first end.
+     * @param client The player using the second end.
+     * @return The end of the host and the end of the client.
+     */
+    public static LoopbackConnection[] pair(Player host, Player client) {
+        LoopbackConnection hostEnd = new LoopbackConnection("loopback-host");
+        LoopbackConnection clientEnd = new LoopbackConnection("loopback-client");
+        hostEnd.peer = clientEnd;
+        clientEnd.peer = hostEnd;
+        hostEnd.opponent = client;
+        clientEnd.opponent = host;
+        return new LoopbackConnection[] {hostEnd, clientEnd};
+    }
+
+    /**
+     * Tells the listeners of both ends that they are connected, for the
+     * code waiting for onConnected() before starting a game.
+     */
+    public void connect() {
+        deliver(PacketTypes.HELLO, new Runnable() {
+            public void run() {
+                for(NetEntityListener l: peer.listeners) {
+                    l.onConnected();
+                }
+            }
+        }, 0);
+        peer.deliver(PacketTypes.HELLO, new Runnable() {
+            public void run() {
+                for(NetEntityListener l: listeners) {
+                    l.onConnected();
+                }
+            }
+        }, 0);
+    }
+
+    /**
+     * Queues a task on the inbox of the other end.
+     * @param type Type of the packet a network connection would have sent.
+     * @param task
+     * @param copyNanos Time spent copying what is sent.
+     */
+    private void deliver(PacketTypes type, Runnable task, long copyNanos) {
+        deliver(type, 0, task, copyNanos);
+    }
+
+    /**
+     * Queues a task on the inbox of the other end.
+     * @param type Type of the packet sent.
+     * @param bytes Size of the packet sent, 0 if it is not encoded.
+     * @param task
+     * @param copyNanos Time spent copying or encoding what is sent.
+     */
+    private void deliver(final PacketTypes type, final int bytes, final Runnable task, long copyNanos) {
+        if(closed) {
+            return;
+        }
+        metrics.packetSent(type, bytes, copyNanos, 0);
+        final LoopbackConnection receiver = peer;
+        final long queuedAt = System.nanoTime();
+        receiver.inbox.execute(new Runnable() {
+            public void run() {
+                if(receiver.closed) {
+                    return;
+                }
+                long start = System.nanoTime();
+                receiver.metrics.packetReceived(type, bytes);
+                task.run();
+                receiver.metrics.packetHandled(type, start - queuedAt, 0, System.nanoTime() - start);
+            }
+        });
+    }
+
+    public void setOpponent(Player p) {
+        this.opponent = p;
+    }
+
+    /**
+     * @return The player using the other end.
+     */
+    public Player getConnectedPlayer() {
+        return opponent;
+    }
+
+    public void sendGameStateToListeners(GameState gs) {
+        for(NetEntityListener l: listeners) {
+            l.onGameStateReceive(gs);
+        }
+    }
+
+    public void sendGameState(GameState gs) {
+        long start = System.nanoTime();
+        final StateSnapshot snapshot = capture(gs);
+        final GameState copy = (snapshot == null) ? new GameState(gs) : null;
+        lastSent = gs;
+        deliver(PacketTypes.GAMESTATE, new Runnable() {
+            public void run() {
+                peer.sendGameStateToListeners((snapshot != null) ? snapshot.toGameState() : copy);
+            }
+        }, System.nanoTime() - start);
+    }
+
+    public void sendAction(final ActionCommand action, GameState gs) {
+        long start = System.nanoTime();
+        StateSnapshot snapshot = capture(gs);
+        final int checksum = (snapshot == null) ? 0 : snapshot.checksum();
+        lastSent = gs;
+        deliver(PacketTypes.ACTION, new Runnable() {
+            public void run() {
+                peer.sendActionToListeners(action, checksum);
+            }
+        }, System.nanoTime() - start);
+    }
+
+    /**
+     * @param gs
+     * @return A snapshot of the state, null if it can not be captured.
+     */
+    private static StateSnapshot capture(GameState gs) {
+        try {
+            return StateSnapshot.capture(gs);
+        } catch(IllegalStateException ex) {
+            return null;
+        }
+    }
+
+    public void sendActionToListeners(ActionCommand action, int checksum) {
+        for(NetEntityListener l: listeners) {
+            l.onActionReceive(action, checksum);
+        }
+    }
+
+    public void actionApplied(GameState gs) {
+    }
+
+    public void requestGameState() {
+        final LoopbackConnection sender = peer;
+        deliver(PacketTypes.STATE_ACK, new Runnable() {
+            public void run() {
+                GameState gs = sender.lastSent;
+                if(gs != null) {
+                    sender.sendGameState(gs);
+                }
+            }
+        }, 0);
+    }
+
+    public void sendVote(final boolean vote) {
+        deliver(PacketTypes.VOTE, new Runnable() {
+            public void run() {
+                peer.sendVoteToListeners(vote);
+            }
+        }, 0);
+    }
+
+    public InetAddress getRemote() {
+        return InetAddress.getLoopbackAddress();
+    }
+
+    /**
+     * Sends a copy of the coral reef to the listeners of the other end.
+     * @param reef
+     */
+    public void sendCoralReefToListeners(CoralReef reef) {
+        long start = System.nanoTime();
+        final CoralReef copy = new CoralReef();
+        boolean[][] cells = new boolean[CoralReef.WIDTH][CoralReef.HEIGHT];
+        for(int x = 0; x < CoralReef.WIDTH; x++) {
+            for(int y = 0; y < CoralReef.HEIGHT; y++) {
+                cells[x][y] = reef.hasObstacleIn(x, y);
+            }
+        }
+        copy.setReef(cells);
+        deliver(PacketTypes.CORALREEF, new Runnable() {
+            public void run() {
+                for(NetEntityListener l: peer.listeners) {
+                    l.onReefReceive(copy);
+                }
+            }
+        }, System.nanoTime() - start);
+    }
+
+    public void sendVoteToListeners(boolean vote) {
+        for(NetEntityListener l: listeners) {
+            l.onVoteReceive(vote);
+        }
+    }
+
+    public void addNetListener(NetEntityListener l) {
+        listeners.add(l);
+    }
+
+    public void removeNetListener(NetEntityListener l) {
+        listeners.remove(l);
+    }
+
+    public void invalidPacket() {
+        Misc.log("[LOOPBACK]: " + name + " received an invalid packet.");
+    }
+
+    /**
+     * Encodes the packet and queues its frame for the packet handler of the
+     * other end, behind what was sent before.
+     * @param packet
+     */
+    public void sendPacket(Packet packet) {
+        if(closed) {
+            return;
+        }
+        long start = System.nanoTime();
+        byte[] data = packet.getData();
+        if(data == null) {
+            Misc.log("[LOOPBACK]: " + name + " could not encode a " + packet.getType() + " packet.");
+            return;
+        }
+        byte[] payload = Arrays.copyOfRange(data, Packet.HEADER_SIZE, data.length);
+        final PacketFrame frame = new PacketFrame(packet.getType().getId(), packet.getSequence(), payload);
+        deliver(packet.getType(), data.length, new Runnable() {
+            public void run() {
+                peer.packetHandler.handlePacketNow(frame);
+            }
+        }, System.nanoTime() - start);
+    }
+
+    public int getPendingPacketCount() {
+        return inbox.getQueueDepth() + packetHandler.getQueueDepth();
+    }
+
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    public NetMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Closes both ends, the listeners of the other end are told the
+     * connection is lost once it has run what was sent before.
+     */
+    public void stopNet() {
+        if(closed) {
+            return;
+        }
+        deliver(PacketTypes.SILENT, new Runnable() {
+            public void run() {
+                peer.closed = true;
+                for(NetEntityListener l: peer.listeners) {
+                    l.onDisconnected();
+                }
+            }
+        }, 0);
+        closed = true;
+    }
+}
@@ -4,6 +4,7 @@
  */
 package my_game.networking;
 
+import my_game.models.game_components.ActionCommand;
 import my_game.models.game_components.CoralReef;
 import my_game.models.game_components.GameState;
 
@@ -43,4 +44,19 @@ public interface NetEntityListener {
      * @param gs The GameState object received.
      */
     public void onGameStateReceive(GameState gs);
+
+    /**
+     * This method is called whenever the network entity receives an action
+     * taken by the other player.
+     * @param action The action received.
+     * @param checksum Checksum of the other player's game state after the
+     * action, 0 if unknown.
+     */
+    public void onActionReceive(ActionCommand action, int checksum);
+
+    /**
+     * This method is called when the connection to the other network entity
+     * is lost: it closed the connection or stopped answering.
+     */
+    public void onDisconnected();
 }
@@ -0,0 +1,186 @@
+package my_game.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.server.Constants;
+import my_game.util.Misc;
+
+/**
+ * Counts the packets of a network entity per packet type: packets and bytes
+ * received and sent, and histograms of the time spent encoding and decoding
+ * them, waiting in the outbound queue, waiting for a handler thread and
+ * being handled. Everything is recorded without locking, from the threads
+ * doing the work.
+ * <p>
+ * snapshot() gives the figures of every packet type seen so far. Once
+ * startLogging() is called they are also logged every METRICS_LOG_INTERVAL.
+ */
+public class NetMetrics {
+
+    /** One thread logs the metrics of every entity. */
+    private static final ScheduledExecutorService LOGGER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "NetMetrics");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final PacketTypes[] TYPES = PacketTypes.values();
+
+    private final String name;
+    private final AtomicLongArray packetsIn = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray bytesIn = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray packetsOut = new AtomicLongArray(TYPES.length);
+    private final AtomicLongArray bytesOut = new AtomicLongArray(TYPES.length);
+    private final LatencyHistogram[] encode = histograms();
+    private final LatencyHistogram[] decode = histograms();
+    private final LatencyHistogram[] queueWait = histograms();
+    private final LatencyHistogram[] dispatchWait = histograms();
+    private final LatencyHistogram[] handle = histograms();
+    private ScheduledFuture<?> logTask;
+
+    /**
+     * @param name Name of the entity, used in the logs.
+     */
+    public NetMetrics(String name) {
+        this.name = name;
+    }
+
+    private static LatencyHistogram[] histograms() {
+        LatencyHistogram[] h = new LatencyHistogram[TYPES.length];
+        for(int i = 0; i < h.length; i++) {
+            h[i] = new LatencyHistogram();
+        }
+        return h;
+    }
+
+    /**
+     * Records a packet written to the peer.
+     * @param type
+     * @param bytes Size of the whole frame.
+     * @param encodeNanos Time spent encoding the frame.
+     * @param queueNanos Time the packet waited to be written, 0 if not queued.
+     */
+    public void packetSent(PacketTypes type, int bytes, long encodeNanos, long queueNanos) {
+        int i = type.ordinal();
+        packetsOut.incrementAndGet(i);
+        bytesOut.addAndGet(i, bytes);
+        encode[i].record(encodeNanos);
+        if(queueNanos > 0) {
+            queueWait[i].record(queueNanos);
+        }
+    }
+
+    /**
+     * Records a frame read from the peer.
+     * @param type
+     * @param bytes Size of the whole frame.
+     */
+    public void packetReceived(PacketTypes type, int bytes) {
+        int i = type.ordinal();
+        packetsIn.incrementAndGet(i);
+        bytesIn.addAndGet(i, bytes);
+    }
+
+    /**
+     * Records the handling of a received packet.
+     * @param type
+     * @param waitNanos Time the packet waited for a handler thread.
+     * @param decodeNanos Time spent building the packet from its payload.
+     * @param handleNanos Time spent handing the packet to the listeners.
+     */
+    public void packetHandled(PacketTypes type, long waitNanos, long decodeNanos, long handleNanos) {
+        int i = type.ordinal();
+        dispatchWait[i].record(waitNanos);
+        decode[i].record(decodeNanos);
+        handle[i].record(handleNanos);
+    }
+
+    /**
+     * @return The figures of every packet type sent or received so far.
+     */
+    public List<TypeSnapshot> snapshot() {
+        ArrayList<TypeSnapshot> types = new ArrayList<TypeSnapshot>();
+        for(int i = 0; i < TYPES.length; i++) {
+            if(packetsIn.get(i) != 0 || packetsOut.get(i) != 0) {
+                types.add(new TypeSnapshot(i));
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Logs the metrics every METRICS_LOG_INTERVAL until stopLogging() is called.
+     */
+    public synchronized void startLogging() {
+        if(logTask == null) {
+            logTask = LOGGER.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    Misc.log("[METRICS]: " + NetMetrics.this);
+                }
+            }, Constants.METRICS_LOG_INTERVAL, Constants.METRICS_LOG_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stopLogging() {
+        if(logTask != null) {
+            logTask.cancel(false);
+            logTask = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name);
+        for(TypeSnapshot t: snapshot()) {
+            sb.append("\n  ").append(t);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The figures of one packet type at one point in time.
+     */
+    public class TypeSnapshot {
+
+        public final PacketTypes type;
+        public final long packetsIn;
+        public final long bytesIn;
+        public final long packetsOut;
+        public final long bytesOut;
+        public final LatencyHistogram.Snapshot encode;
+        public final LatencyHistogram.Snapshot decode;
+        public final LatencyHistogram.Snapshot queueWait;
+        public final LatencyHistogram.Snapshot dispatchWait;
+        public final LatencyHistogram.Snapshot handle;
+
+        private TypeSnapshot(int i) {
+            type = TYPES[i];
+            packetsIn = NetMetrics.this.packetsIn.get(i);
+            bytesIn = NetMetrics.this.bytesIn.get(i);
+            packetsOut = NetMetrics.this.packetsOut.get(i);
+            bytesOut = NetMetrics.this.bytesOut.get(i);
+            encode = NetMetrics.this.encode[i].snapshot();
+            decode = NetMetrics.this.decode[i].snapshot();
+            queueWait = NetMetrics.this.queueWait[i].snapshot();
+            dispatchWait = NetMetrics.this.dispatchWait[i].snapshot();
+            handle = NetMetrics.this.handle[i].snapshot();
+        }
+
+        @Override
+        public String toString() {
+            return type + ": in " + packetsIn + " (" + bytesIn + "B), out " + packetsOut + " (" + bytesOut + "B)"
+                    + "; encode " + encode + "; queue " + queueWait + "; decode " + decode
+                    + "; dispatch " + dispatchWait + "; handle " + handle;
+        }
+    }
+}
@@ -2,9 +2,11 @@ package my_game.networking;
 
 import java.awt.Color;
 import java.net.InetAddress;
+import my_game.models.game_components.ActionCommand;
 import my_game.models.game_components.CoralReef;
 import my_game.models.game_components.GameState;
 import my_game.models.player_components.Player;
+import my_game.networking.packets.Packet;
 
 public interface NetworkEntity {
 
@@ -29,6 +31,31 @@ public interface NetworkEntity {
 	 * @param gs
 	 */
 	public void sendGameState(GameState gs);
+        /**
+         * Sends an action to the connected entity, which holds the same 
+         * game state and applies the action on its side too.
+         * @param action
+         * @param gs The game state after the action.
+         */
+        public void sendAction(ActionCommand action, GameState gs);
+        /**
+         * Sends a received action back to all network listeners.
+         * @param action
+         * @param checksum Checksum of the sender's state after the action,
+         * 0 if unknown.
+         */
+        public void sendActionToListeners(ActionCommand action, int checksum);
+        /**
+         * Called once an action received was applied and led to the state
+         * of the connected entity, which does not need to be sent that state.
+         * @param gs The game state after the action.
+         */
+        public void actionApplied(GameState gs);
+        /**
+         * Asks the connected entity to send its last game state in full, 
+         * used when an action received did not lead to the same state.
+         */
+        public void requestGameState();
         
         /**
          * Sends a vote to all other connected entities (clients or servers).
@@ -36,6 +63,12 @@ public interface NetworkEntity {
          */
         public void sendVote(boolean vote);
         
+        /**
+         * @return The player connected to this network entity, known once
+         * it said hello, null before.
+         */
+        public Player getConnectedPlayer();
+        
         /**
          * Returns the ipAddress of the player connected to this network entity.
          * @return 
@@ -68,5 +101,27 @@ public interface NetworkEntity {
 
     public void invalidPacket();
 
+        /**
+         * Sends a packet to the connected entity.
+         * @param packet 
+         */
+        public void sendPacket(Packet packet);
+
+        /**
+         * @return The number of received packets waiting to be handled.
+         */
+        public int getPendingPacketCount();
+
+        /**
+         * @return The heartbeat of the connection, which measures the round
+         * trip time to the connected entity.
+         */
+        public Heartbeat getHeartbeat();
+
+        /**
+         * @return The packet counters and timings of the connection.
+         */
+        public NetMetrics getMetrics();
+
     public void stopNet();
 }
@@ -0,0 +1,254 @@
+package my_game.networking;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.server.Constants;
+import my_game.util.Misc;
+
+/**
+ * The packets waiting to be written to the peer of a connection, and the
+ * thread writing them. Senders only queue packets, so a peer which stops
+ * reading never blocks the game loop or the GUI. Everything queued when the
+ * writer wakes up is written as one batch, with a single flush.
+ * <p>
+ * The queue holds at most OUTBOUND_QUEUE_SIZE packets:
+ * <ul>
+ * <li>a game state or delta replaces the states queued since the last
+ * action, which the peer does not need anymore;</li>
+ * <li>heartbeat packets are dropped when the queue is full;</li>
+ * <li>if the queue is still full, or a write has been blocked for more than
+ * OUTBOUND_STALL_TIMEOUT, the connection is given up on by running the
+ * stall action, which should close it.</li>
+ * </ul>
+ * The size of every packet written, the time spent encoding it and the time
+ * it waited in the queue are recorded in the NetMetrics of the connection.
+ * <p>
+ * The packets are recorded in the replay buffer of the connection before
+ * being queued, so the ones lost with a closed connection are sent again if
+ * the session is resumed.
+ */
+public class OutboundQueue {
+
+    private final String name;
+    private final Runnable onStall;
+    private final NetMetrics metrics;
+    private final LinkedList<Entry> queue = new LinkedList<Entry>();
+    /** Stream the packets are written to, null while not connected. */
+    private OutputStream out;
+    private Thread writer;
+    /** Time the batch being written was started, 0 when not writing. */
+    private volatile long writingSince;
+
+    /**
+     * @param name Name of the connection, used by the writer thread and the logs.
+     * @param onStall Run when the peer does not keep up, should close the connection.
+     * @param metrics Records the packets written.
+     */
+    public OutboundQueue(String name, Runnable onStall, NetMetrics metrics) {
+        this.name = name;
+        this.onStall = onStall;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts writing the queued packets to a new connection.
+     * @param stream Output stream of the connection's socket.
+     */
+    public synchronized void attach(OutputStream stream) {
+        out = new BufferedOutputStream(stream, 8192);
+        queue.clear();
+        if(writer == null) {
+            writer = new Thread(new Writer(), "Outbound-" + name);
+            writer.setDaemon(true);
+            writer.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops writing, the packets still queued are forgotten. Packets queued
+     * until the next attach are ignored.
+     */
+    public synchronized void detach() {
+        out = null;
+        queue.clear();
+    }
+
+    /**
+     * Detaches the queue and stops its writer thread.
+     */
+    public synchronized void stop() {
+        detach();
+        if(writer != null) {
+            writer.interrupt();
+            writer = null;
+        }
+    }
+
+    /**
+     * @return The number of packets waiting to be written.
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * Queues a packet to be written by the writer thread.
+     * @param packet
+     */
+    public void offer(Packet packet) {
+        String stall = null;
+        synchronized(this) {
+            if(out == null) {
+                return;
+            }
+            long since = writingSince;
+            if(since != 0 && System.currentTimeMillis() - since > Constants.OUTBOUND_STALL_TIMEOUT) {
+                stall = "blocked for " + (System.currentTimeMillis() - since) + "ms";
+            } else {
+                if(isState(packet)) {
+                    coalesce();
+                }
+                if(queue.size() >= Constants.OUTBOUND_QUEUE_SIZE) {
+                    if(isHeartbeat(packet)) {
+                        return;
+                    }
+                    dropHeartbeats();
+                }
+                if(queue.size() >= Constants.OUTBOUND_QUEUE_SIZE) {
+                    stall = queue.size() + " packets queued";
+                } else {
+                    queue.add(new Entry(packet));
+                    notifyAll();
+                }
+            }
+            if(stall != null) {
+                detach();
+            }
+        }
+        if(stall != null) {
+            Misc.log("[OUTBOUND]: " + name + " is not keeping up (" + stall + "), closing the connection.");
+            onStall.run();
+        }
+    }
+
+    /**
+     * Removes the states queued after the last action, they are replaced by
+     * a newer one.
+     */
+    private void coalesce() {
+        ListIterator<Entry> it = queue.listIterator(queue.size());
+        while(it.hasPrevious()) {
+            Packet p = it.previous().packet;
+            if(p.getType() == PacketTypes.ACTION) {
+                //the peer applies the action on the state queued before it
+                return;
+            }
+            if(isState(p)) {
+                it.remove();
+            }
+        }
+    }
+
+    private void dropHeartbeats() {
+        Iterator<Entry> it = queue.iterator();
+        while(it.hasNext()) {
+            if(isHeartbeat(it.next().packet)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isState(Packet p) {
+        return p.getType() == PacketTypes.GAMESTATE || p.getType() == PacketTypes.GAMESTATE_DELTA;
+    }
+
+    private static boolean isHeartbeat(Packet p) {
+        switch(p.getType()) {
+            case PING:
+            case PONG:
+            case SILENT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * A queued packet and the time it was queued at.
+     */
+    private static class Entry {
+
+        final Packet packet;
+        final long queuedAt = System.nanoTime();
+
+        Entry(Packet packet) {
+            this.packet = packet;
+        }
+    }
+
+    /**
+     * Writes everything queued in batches, one flush per batch.
+     */
+    private class Writer implements Runnable {
+
+        public void run() {
+            ArrayList<Entry> batch = new ArrayList<Entry>();
+            while(!Thread.currentThread().isInterrupted()) {
+                OutputStream stream;
+                synchronized(OutboundQueue.this) {
+                    try {
+                        while(out == null || queue.isEmpty()) {
+                            OutboundQueue.this.wait();
+                        }
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    batch.addAll(queue);
+                    queue.clear();
+                    stream = out;
+                }
+                writingSince = System.currentTimeMillis();
+                try {
+                    for(Entry e: batch) {
+                        write(e, stream);
+                    }
+                    stream.flush();
+                } catch (IOException ex) {
+                    //the read loop of the connection notices it is closed
+                    Misc.log("[OUTBOUND]: Could not write to " + name + ": " + ex.getMessage());
+                    synchronized(OutboundQueue.this) {
+                        if(out == stream) {
+                            detach();
+                        }
+                    }
+                } finally {
+                    writingSince = 0;
+                    batch.clear();
+                }
+            }
+        }
+
+        private void write(Entry e, OutputStream stream) throws IOException {
+            long start = System.nanoTime();
+            ByteBuffer frame = e.packet.encode();
+            if(frame == null) {
+                throw new IOException("Packet " + e.packet.getType() + " could not be encoded.");
+            }
+            try {
+                metrics.packetSent(e.packet.getType(), frame.remaining(), System.nanoTime() - start, start - e.queuedAt);
+                stream.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+            } finally {
+                BufferPool.HEAP.release(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package my_game.networking;
+
+import java.util.LinkedHashMap;
+import my_game.networking.packets.impl.CoralReefPacket;
+import my_game.networking.server.Constants;
+
+/**
+ * The coral reefs exchanged on a connection, by content hash. The sender and
+ * the receiver each keep one: the sender sends a reef it sent before as its
+ * hash only, and the receiver finds the reef back from the hash. Both sides
+ * see the same reefs in the same order and keep the same number of them, so
+ * a reef the sender remembers is always known to the receiver.
+ */
+public class ReefCache {
+
+    private final LinkedHashMap<Long, boolean[][]> reefs = new LinkedHashMap<Long, boolean[][]>() {
+        @Override
+        protected boolean removeEldestEntry(java.util.Map.Entry<Long, boolean[][]> eldest) {
+            return size() > Constants.REEF_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Prepares a reef packet to be sent: a reef sent before is reduced to
+     * its hash.
+     * @param packet
+     */
+    public synchronized void onSend(CoralReefPacket packet) {
+        if(reefs.containsKey(packet.getHash())) {
+            packet.setHashOnly(true);
+        } else {
+            reefs.put(packet.getHash(), packet.reef);
+        }
+    }
+
+    /**
+     * Completes a received reef packet: the reef of a packet holding only
+     * a hash is found back from the hash.
+     * @param packet
+     * @return False if the hash is not known, the reef is then still null.
+     */
+    public synchronized boolean onReceive(CoralReefPacket packet) {
+        if(!packet.isHashOnly()) {
+            reefs.put(packet.getHash(), packet.reef);
+            return true;
+        }
+        packet.reef = reefs.get(packet.getHash());
+        return packet.reef != null;
+    }
+
+    /**
+     * Forgets every reef, called when a new connection is made.
+     */
+    public synchronized void clear() {
+        reefs.clear();
+    }
+}
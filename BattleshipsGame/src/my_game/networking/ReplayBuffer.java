@@ -0,0 +1,124 @@
+package my_game.networking;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.packets.PacketFrame;
+
+/**
+ * Numbers the game packets sent on a connection and keeps the most recent
+ * ones, so that the packets the peer missed can be sent again when it 
+ * resumes a lost connection. It also remembers the sequence number of the 
+ * last packet received from the peer, which tells the peer where to resume
+ * and skips the packets it sends twice.
+ * <p>
+ * Pings, pongs and the packets opening a connection are not numbered (their 
+ * sequence number stays 0) and are never sent again.
+ */
+public class ReplayBuffer {
+    
+    private final int capacity;
+    /** The last numbered packets sent, oldest first. */
+    private final ArrayDeque<Packet> sent;
+    private int nextSequence = 1;
+    private int lastReceived = 0;
+    
+    /**
+     * @param capacity Number of sent packets kept.
+     */
+    public ReplayBuffer(int capacity) {
+        this.capacity = capacity;
+        this.sent = new ArrayDeque<Packet>(capacity);
+    }
+    
+    /**
+     * Forgets everything, called when a new session starts.
+     */
+    public synchronized void reset() {
+        sent.clear();
+        nextSequence = 1;
+        lastReceived = 0;
+    }
+    
+    /**
+     * Numbers a packet about to be sent and keeps it. Packets have to be 
+     * recorded in the order they are written on the connection.
+     * @param packet 
+     */
+    public synchronized void record(Packet packet) {
+        if(!isNumbered(packet.getType())) {
+            return;
+        }
+        packet.setSequence(nextSequence++);
+        sent.addLast(packet);
+        if(sent.size() > capacity) {
+            sent.removeFirst();
+        }
+    }
+    
+    /**
+     * Records a frame received from the peer.
+     * @param frame
+     * @return False if the frame was already received, it should be ignored.
+     */
+    public synchronized boolean accept(PacketFrame frame) {
+        int sequence = frame.getSequence();
+        if(sequence == 0) {
+            return true;
+        }
+        if(sequence <= lastReceived) {
+            return false;
+        }
+        lastReceived = sequence;
+        return true;
+    }
+    
+    /**
+     * @return The sequence number of the last packet received from the peer.
+     */
+    public synchronized int getLastReceived() {
+        return lastReceived;
+    }
+    
+    /**
+     * @param lastSeen Sequence number of the last packet the peer received.
+     * @return The packets sent after it in order, or null if some of them 
+     * are not kept anymore.
+     */
+    public synchronized List<Packet> after(int lastSeen) {
+        ArrayList<Packet> missed = new ArrayList<Packet>();
+        for(Packet p: sent) {
+            if(p.getSequence() > lastSeen) {
+                missed.add(p);
+            }
+        }
+        int missedCount = nextSequence - 1 - lastSeen;
+        if(missedCount < 0 || missed.size() != missedCount) {
+            return null;
+        }
+        return missed;
+    }
+    
+    /**
+     * @param type
+     * @return True if the packets of this type carry game messages and are 
+     * numbered.
+     */
+    static boolean isNumbered(PacketTypes type) {
+        switch(type) {
+            case HELLO:
+            case RESUME:
+            case SILENT:
+            case PING:
+            case PONG:
+            case SERVERINFO:
+            case DISCOVERY:
+            case INVALID:
+                return false;
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package my_game.networking;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on the threads
+ * of a shared executor. Many serial executors can share one thread pool while
+ * each keeps its own tasks in order.
+ * <p>
+ * At most MAX_BATCH tasks are run before handing the pool thread back, so a
+ * busy executor does not starve the others.
+ */
+public class SerialExecutor implements Executor {
+    
+    /** Number of tasks run in a row on one pool thread. */
+    private static final int MAX_BATCH = 32;
+    
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    /** Tasks submitted and not finished yet. */
+    private final AtomicInteger depth = new AtomicInteger();
+    /** True while a drain of the queue is submitted to the executor or running. */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    
+    /**
+     * @param executor The executor whose threads run the tasks.
+     */
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+    
+    @Override
+    public void execute(Runnable task) {
+        depth.incrementAndGet();
+        tasks.add(task);
+        schedule();
+    }
+    
+    /**
+     * @return The number of tasks waiting or running.
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+    
+    private void schedule() {
+        if(scheduled.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+    }
+    
+    private void drain() {
+        Runnable task;
+        int count = 0;
+        while(count < MAX_BATCH && (task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch(RuntimeException ex) {
+                Logger.getLogger(SerialExecutor.class.getName()).log(Level.SEVERE, null, ex);
+            } finally {
+                depth.decrementAndGet();
+            }
+            count++;
+        }
+        scheduled.set(false);
+        //tasks added after the last poll, or left over from a full batch
+        if(!tasks.isEmpty()) {
+            schedule();
+        }
+    }
+}
@@ -6,6 +6,7 @@ package my_game.networking;
 
 import java.net.InetAddress;
 import javafx.beans.property.SimpleStringProperty;
+import my_game.networking.packets.impl.ServerInfoPacket;
 
 /**
  * A simple placeholder for the information about a server used to build up the
@@ -18,6 +19,9 @@ public class ServerInfo {
     public String playerName;
     public InetAddress ipAddress;
     public boolean isLoaded;
+    /** Number of players in the match, the host included. */
+    public int playerCount = 1;
+    public ServerInfoPacket.MatchStatus status = ServerInfoPacket.MatchStatus.Waiting;
     
     public final SimpleStringProperty serverNameString;
     public final SimpleStringProperty playerNameString;
@@ -35,6 +39,16 @@ public class ServerInfo {
         this.ipAddressString = new SimpleStringProperty(ipAddress.toString());
     }
     
+    /**
+     * @param info A server info packet received from the server.
+     * @param ipAddress The address the server was heard from.
+     */
+    public ServerInfo(ServerInfoPacket info, InetAddress ipAddress) {
+        this(info.serverName, info.playerName, ipAddress, info.isLoaded);
+        this.playerCount = info.playerCount;
+        this.status = info.status;
+    }
+    
     public String getServerNameString() {
         return serverNameString.get();
     }
@@ -66,4 +80,12 @@ public class ServerInfo {
             return false;
         }
     }
+    
+    @Override
+    public int hashCode() {
+        int hash = serverName.hashCode();
+        hash = 31 * hash + playerName.hashCode();
+        hash = 31 * hash + ipAddress.hashCode();
+        return hash;
+    }
 }
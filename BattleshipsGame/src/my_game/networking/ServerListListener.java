@@ -16,4 +16,11 @@ public interface ServerListListener {
      * @param si The information describing the server.
      */
     public void addServerInfo(ServerInfo si);
+    
+    /**
+     * A method which is called when a server found before has stopped
+     * announcing itself.
+     * @param si The information describing the server.
+     */
+    public void removeServerInfo(ServerInfo si);
 }
@@ -0,0 +1,241 @@
+package my_game.networking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameStateCodec;
+import my_game.models.game_components.StateSnapshot;
+import my_game.models.player_components.Player;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.impl.GameStatePacket;
+import my_game.networking.server.Constants;
+import my_game.util.Misc;
+
+/**
+ * Compresses the encoded game states sent on one connection, and inflates
+ * the ones received. Both sides use a preset dictionary made of typical
+ * encoded states, so even the first state sent compresses well. The
+ * dictionary is identified by its Adler-32 checksum, compression is only
+ * used when the HelloPackets of both sides carry the same dictionary id.
+ * <p>
+ * The Deflater, the Inflater and the buffers are kept for the life of the
+ * connection. States smaller than COMPRESSION_THRESHOLD, or which do not get
+ * smaller, are sent uncompressed.
+ * <p>
+ * The bytes saved and the time spent compressing are logged every
+ * COMPRESSION_LOG_INTERVAL states, see toString().
+ */
+public class StateCompressor {
+
+    /** The preset dictionary, built from typical encoded states. */
+    private static final byte[] DICTIONARY = buildDictionary();
+    /** Adler-32 checksum of the dictionary, 0 if it could not be built. */
+    public static final int DICTIONARY_ID = dictionaryId(DICTIONARY);
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final Inflater inflater = new Inflater();
+    /** The uncompressed encoding of the state being sent. */
+    private final RawBuffer raw = new RawBuffer(4096);
+    private byte[] deflated = new byte[4096];
+
+    private int compressed;
+    private int uncompressed;
+    private long rawBytes;
+    private long compressedBytes;
+    private long deflateNanos;
+    private int inflated;
+    private long inflateNanos;
+
+    /**
+     * Writes a state, with its format byte, compressed if it pays.
+     * @param s
+     * @param out
+     * @throws IOException
+     */
+    public synchronized void write(StateSnapshot s, DataOutputStream out) throws IOException {
+        raw.reset();
+        GameStateCodec.write(s, new DataOutputStream(raw));
+        int length = raw.size();
+        if(length >= Constants.COMPRESSION_THRESHOLD && DICTIONARY_ID != 0) {
+            long start = System.nanoTime();
+            deflater.reset();
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(raw.array(), 0, length);
+            deflater.finish();
+            int size = 0;
+            while(!deflater.finished() && size < length) {
+                if(size == deflated.length) {
+                    deflated = Arrays.copyOf(deflated, 2 * deflated.length);
+                }
+                size += deflater.deflate(deflated, size, deflated.length - size);
+            }
+            deflateNanos += System.nanoTime() - start;
+            if(deflater.finished() && size < length) {
+                out.writeByte(GameStatePacket.FORMAT_COMPRESSED);
+                out.writeInt(length);
+                out.write(deflated, 0, size);
+                rawBytes += length;
+                compressedBytes += size;
+                if(++compressed % Constants.COMPRESSION_LOG_INTERVAL == 0) {
+                    Misc.log("[COMPRESSION]: " + this);
+                }
+                return;
+            }
+        }
+        uncompressed++;
+        out.writeByte(GameStatePacket.FORMAT_COMPACT);
+        out.write(raw.array(), 0, length);
+    }
+
+    /**
+     * Inflates the encoding of a state received compressed.
+     * @param data
+     * @param offset Start of the data, right after the format byte.
+     * @param length
+     * @return The uncompressed encoding of the state.
+     * @throws IOException If the data can not be inflated.
+     */
+    public synchronized byte[] inflate(byte[] data, int offset, int length) throws IOException {
+        if(length < 4) {
+            throw new StreamCorruptedException("Compressed GameStatePacket too short.");
+        }
+        int size = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+        if(size < 0 || size > Packet.MAX_PAYLOAD_SIZE) {
+            throw new StreamCorruptedException("Invalid size of compressed GameStatePacket: " + size);
+        }
+        long start = System.nanoTime();
+        byte[] result = new byte[size];
+        inflater.reset();
+        inflater.setInput(data, offset + 4, length - 4);
+        try {
+            int done = 0;
+            while(done < size) {
+                int n = inflater.inflate(result, done, size - done);
+                if(n == 0) {
+                    if(inflater.needsDictionary() && DICTIONARY != null) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else {
+                        throw new StreamCorruptedException("Compressed GameStatePacket ends early.");
+                    }
+                }
+                done += n;
+            }
+        } catch(DataFormatException ex) {
+            throw new StreamCorruptedException("Malformed compressed GameStatePacket: " + ex.getMessage());
+        } catch(IllegalArgumentException ex) {
+            //the dictionary of the sender is not this one
+            throw new StreamCorruptedException("Compressed GameStatePacket uses another dictionary.");
+        }
+        inflateNanos += System.nanoTime() - start;
+        inflated++;
+        return result;
+    }
+
+    /**
+     * @return The number of bytes compression saved on the states sent.
+     */
+    public synchronized long getBytesSaved() {
+        return rawBytes - compressedBytes;
+    }
+
+    /**
+     * @return The time spent compressing and inflating states, in milliseconds.
+     */
+    public synchronized double getCpuTime() {
+        return (deflateNanos + inflateNanos) / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        String received = String.format("%d states inflated in %.3fms/state", 
+                inflated, (inflated == 0) ? 0 : inflateNanos / 1e6 / inflated);
+        if(compressed == 0) {
+            return "no state compressed, " + uncompressed + " sent uncompressed, " + received;
+        }
+        return String.format("%d states compressed, %d -> %d bytes (%.0f%% saved) in %.3fms/state, "
+                + "%d sent uncompressed, %s",
+                compressed, rawBytes, compressedBytes, 100.0 * (rawBytes - compressedBytes) / rawBytes,
+                deflateNanos / 1e6 / compressed, uncompressed, received);
+    }
+
+    /**
+     * The dictionary is made of the encodings of two states of a new game,
+     * one without coral and one with a reef generated from a fixed seed, so
+     * that it is the same on every side running the same version. The most
+     * typical one is put last, as the last bytes of a dictionary are the
+     * cheapest to refer to.
+     */
+    private static byte[] buildDictionary() {
+        try {
+            Player[] players = new Player[] {
+                new Player("player", "", InetAddress.getLoopbackAddress(), Constants.SERVER_PORT, 0),
+                new Player("opponent", "", InetAddress.getLoopbackAddress(), Constants.SERVER_PORT, 0)
+            };
+            CoralReef empty = new CoralReef();
+            CoralReef seeded = new CoralReef();
+            boolean[][] emptyCells = new boolean[CoralReef.WIDTH][CoralReef.HEIGHT];
+            boolean[][] seededCells = new boolean[CoralReef.WIDTH][CoralReef.HEIGHT];
+            Random random = new Random(361);
+            for(int x = 0; x < CoralReef.WIDTH; x++) {
+                for(int y = 0; y < CoralReef.HEIGHT; y++) {
+                    seededCells[x][y] = random.nextDouble() < 0.15;
+                }
+            }
+            empty.setReef(emptyCells);
+            seeded.setReef(seededCells);
+
+            ByteArrayOutputStream dictionary = new ByteArrayOutputStream(4096);
+            DataOutputStream out = new DataOutputStream(dictionary);
+            GameState gs = new GameState(players, empty, 0, "game");
+            gs.setGamePhase(GameState.GamePhase.ShipPositioning);
+            GameStateCodec.write(gs, out);
+            gs = new GameState(players, seeded, 0, "game");
+            gs.setGamePhase(GameState.GamePhase.PlayerTurns);
+            GameStateCodec.write(gs, out);
+            return dictionary.toByteArray();
+        } catch(IOException ex) {
+            Logger.getLogger(StateCompressor.class.getName()).log(Level.SEVERE, null, ex);
+        } catch(RuntimeException ex) {
+            //compression is simply not offered
+            Logger.getLogger(StateCompressor.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return null;
+    }
+
+    private static int dictionaryId(byte[] dictionary) {
+        if(dictionary == null) {
+            return 0;
+        }
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return (int) adler.getValue();
+    }
+
+    /**
+     * A ByteArrayOutputStream giving access to its array, so the encoding
+     * is compressed without being copied.
+     */
+    private static class RawBuffer extends ByteArrayOutputStream {
+
+        RawBuffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
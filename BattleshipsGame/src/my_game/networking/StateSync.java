@@ -0,0 +1,265 @@
+package my_game.networking;
+
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameStateDelta;
+import my_game.models.game_components.StateSnapshot;
+import my_game.models.player_components.Player;
+import my_game.networking.packets.impl.ActionPacket;
+import my_game.networking.packets.impl.GameStateDeltaPacket;
+import my_game.networking.packets.impl.GameStatePacket;
+import my_game.networking.packets.impl.StateAckPacket;
+import my_game.networking.server.Constants;
+import my_game.util.GameException;
+import my_game.util.Misc;
+
+/**
+ * Keeps track of the game states exchanged with the peer of one connection,
+ * so that a new state is sent as the changes from the last state the peer
+ * acknowledged. A full state is sent on the first update of a connection,
+ * or when the peer asks for it because a delta could not be applied.
+ * <p>
+ * Every state received is acknowledged with the checksum of its snapshot.
+ */
+public class StateSync {
+    
+    /** Number of recent snapshots kept to apply deltas against. */
+    private static final int HISTORY_SIZE = 8;
+    
+    private final NetworkEntity net;
+    private boolean deltaEnabled = Constants.DELTA_STATE_UPDATES;
+    private boolean fogEnabled = Constants.FOG_OF_WAR_STATES;
+    /** The player of the peer, only its view of the states is sent if set. */
+    private Player viewer;
+    /** Snapshots of the states recently sent or received, by checksum. */
+    private final LinkedHashMap<Integer, StateSnapshot> history;
+    /** Last state the peer is known to hold, the base of the next delta. */
+    private StateSnapshot acknowledged;
+    /** Last state sent, sent again in full if the peer asks for a resync. */
+    private StateSnapshot lastSent;
+    /** Compresses the full states sent and inflates the ones received. */
+    private final StateCompressor compressor = new StateCompressor();
+    /** True once the peer said it can inflate compressed states. */
+    private boolean compressionEnabled;
+    
+    public StateSync(NetworkEntity net) {
+        this.net = net;
+        this.history = new LinkedHashMap<Integer, StateSnapshot>() {
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<Integer, StateSnapshot> eldest) {
+                return size() > HISTORY_SIZE;
+            }
+        };
+    }
+    
+    /**
+     * Enables or disables delta updates. When disabled every state is sent in full.
+     * @param deltaEnabled 
+     */
+    public synchronized void setDeltaEnabled(boolean deltaEnabled) {
+        this.deltaEnabled = deltaEnabled;
+    }
+    
+    /**
+     * Enables or disables sending only the viewer's part of the states.
+     * @param fogEnabled 
+     */
+    public synchronized void setFogEnabled(boolean fogEnabled) {
+        this.fogEnabled = fogEnabled;
+    }
+    
+    /**
+     * Sets the player of the peer. When fog of war is enabled the states 
+     * sent are reduced to what this player can see.
+     * @param viewer 
+     */
+    public synchronized void setViewer(Player viewer) {
+        this.viewer = viewer;
+    }
+    
+    /**
+     * Enables or disables compressing the full states sent, called once the
+     * peer told whether it supports it.
+     * @param compressionEnabled 
+     */
+    public synchronized void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+    
+    /**
+     * @return The compressor of this connection, which inflates the states
+     * received and reports the bytes saved on the states sent.
+     */
+    public StateCompressor getCompressor() {
+        return compressor;
+    }
+    
+    /**
+     * Forgets everything about the peer, the next state will be sent in full.
+     * Called when a new connection is made.
+     */
+    public synchronized void reset() {
+        history.clear();
+        acknowledged = null;
+        lastSent = null;
+        compressionEnabled = false;
+    }
+    
+    /**
+     * @param gs
+     * @return A packet holding the whole state, compressed if the peer supports it.
+     */
+    private GameStatePacket fullState(GameState gs) {
+        GameStatePacket packet = new GameStatePacket(gs);
+        if(compressionEnabled) {
+            packet.setCompressor(compressor);
+        }
+        return packet;
+    }
+    
+    /**
+     * Sends a game state to the peer, as a delta if possible.
+     * @param gs 
+     */
+    public synchronized void sendState(GameState gs) {
+        StateSnapshot snapshot;
+        try {
+            if(fogEnabled && viewer != null) {
+                int playerIndex = viewer.equals(gs.getPlayer(0)) ? 0 : 1;
+                snapshot = StateSnapshot.capture(gs, playerIndex);
+            } else {
+                snapshot = StateSnapshot.capture(gs);
+            }
+        } catch(IllegalStateException ex) {
+            if(fogEnabled && viewer != null) {
+                //the full state would show the viewer everything
+                Logger.getLogger(StateSync.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            }
+            //the state can not be described by a snapshot, fall back to a full state
+            Logger.getLogger(StateSync.class.getName()).log(Level.WARNING, null, ex);
+            acknowledged = null;
+            lastSent = null;
+            net.sendPacket(fullState(gs));
+            return;
+        }
+        history.put(snapshot.checksum(), snapshot);
+        lastSent = snapshot;
+        if(!deltaEnabled || acknowledged == null) {
+            //a projected state is sent as built from its snapshot
+            net.sendPacket(fullState((fogEnabled && viewer != null) ? snapshot.toGameState() : gs));
+        } else {
+            net.sendPacket(new GameStateDeltaPacket(GameStateDelta.diff(acknowledged, snapshot)));
+        }
+    }
+    
+    /**
+     * Sends an action taken on a state the peer holds too. The resulting 
+     * state is recorded as the last one sent, so it is the one sent in full
+     * if the peer did not reach the same state and asks for a resync.
+     * <p>
+     * A peer which only gets its view of the states can not apply the
+     * action, and the action could tell it about ships it does not see, so
+     * it gets its view of the resulting state instead.
+     * @param action
+     * @param gs The state after the action.
+     */
+    public synchronized void sendAction(ActionCommand action, GameState gs) {
+        if(fogEnabled && viewer != null) {
+            sendState(gs);
+            return;
+        }
+        int checksum = 0;
+        try {
+            StateSnapshot snapshot = StateSnapshot.capture(gs);
+            history.put(snapshot.checksum(), snapshot);
+            lastSent = snapshot;
+            checksum = snapshot.checksum();
+        } catch(IllegalStateException ex) {
+            //the peer will not be able to check the result of the action
+            Logger.getLogger(StateSync.class.getName()).log(Level.WARNING, null, ex);
+        }
+        net.sendPacket(new ActionPacket(action, checksum));
+    }
+    
+    /**
+     * Asks the peer for the last state it sent, in full.
+     */
+    public void requestState() {
+        net.sendPacket(new StateAckPacket(0, true));
+    }
+    
+    /**
+     * Records a full state received from the peer and acknowledges it.
+     * @param gs
+     * @return The state to hand to the listeners.
+     */
+    public synchronized GameState onFullState(GameState gs) {
+        try {
+            StateSnapshot snapshot = StateSnapshot.capture(gs);
+            history.put(snapshot.checksum(), snapshot);
+            acknowledged = snapshot;
+            net.sendPacket(new StateAckPacket(snapshot.checksum(), false));
+        } catch(IllegalStateException ex) {
+            //can not be used as a delta base, the peer will keep sending full states
+            Logger.getLogger(StateSync.class.getName()).log(Level.WARNING, null, ex);
+        }
+        return gs;
+    }
+    
+    /**
+     * Applies a delta received from the peer. If it can not be applied a 
+     * full state is requested from the peer.
+     * @param delta
+     * @return The resulting state to hand to the listeners, or null if a 
+     * resync was requested.
+     */
+    public synchronized GameState onDelta(GameStateDelta delta) {
+        StateSnapshot base = history.get(delta.getBaseChecksum());
+        try {
+            if(base == null) {
+                throw new GameException("Unknown base state for delta.");
+            }
+            StateSnapshot snapshot = delta.applyTo(base);
+            GameState gs = snapshot.toGameState();
+            history.put(snapshot.checksum(), snapshot);
+            acknowledged = snapshot;
+            net.sendPacket(new StateAckPacket(snapshot.checksum(), false));
+            return gs;
+        } catch(GameException ex) {
+            Misc.log("[STATE_SYNC]: " + ex.getMessage() + " Requesting a full state.");
+        } catch(RuntimeException ex) {
+            Logger.getLogger(StateSync.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        net.sendPacket(new StateAckPacket(delta.getTargetChecksum(), true));
+        return null;
+    }
+    
+    /**
+     * Sends the last state sent again, in full.
+     */
+    public synchronized void resync() {
+        acknowledged = null;
+        if(lastSent != null) {
+            net.sendPacket(fullState(lastSent.toGameState()));
+        }
+    }
+    
+    /**
+     * Handles an acknowledgement from the peer.
+     * @param ack 
+     */
+    public synchronized void onAck(StateAckPacket ack) {
+        if(ack.isResync()) {
+            resync();
+        } else {
+            StateSnapshot snapshot = history.get(ack.getChecksum());
+            if(snapshot != null) {
+                acknowledged = snapshot;
+            }
+        }
+    }
+}
@@ -2,34 +2,45 @@ package my_game.networking.client;
 
 import com.sun.corba.se.impl.orbutil.closure.Constant;
 import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import my_game.models.game_components.ActionCommand;
 import my_game.models.game_components.CoralReef;
 import my_game.models.game_components.GameState;
+import my_game.networking.Heartbeat;
+import my_game.networking.NetMetrics;
 import my_game.networking.NetworkEntity;
+import my_game.networking.OutboundQueue;
+import my_game.networking.ReplayBuffer;
+import my_game.networking.StateSync;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.PacketFrame;
 import my_game.networking.packets.PacketHandler;
 import my_game.networking.server.Constants;
 import my_game.models.player_components.Player;
 import my_game.networking.NetEntityListener;
 import my_game.networking.ServerInfo;
 import my_game.networking.ServerListListener;
-import my_game.networking.packets.impl.GameStatePacket;
+import my_game.networking.packets.impl.DiscoveryPacket;
 import my_game.networking.packets.impl.HelloPacket;
+import my_game.networking.packets.impl.ResumePacket;
 import my_game.networking.packets.impl.ServerInfoPacket;
 import my_game.networking.packets.impl.SilentPacket;
 import my_game.networking.packets.impl.VotePacket;
-import my_game.util.GameException;
 import my_game.util.Misc;
 
 /**
@@ -67,11 +78,40 @@ public class GameClient extends Thread implements NetworkEntity {
      * A packet handler handling the packets received by the client.
      */
     private PacketHandler packetHandler;
+    /**
+     * Tracks the game states exchanged with the server.
+     */
+    private StateSync stateSync;
+    /**
+     * Pings the server and detects when it stops answering.
+     */
+    private Heartbeat heartbeat;
+    /**
+     * Numbers the packets sent to the server, to resume a lost connection.
+     */
+    private final ReplayBuffer replay = new ReplayBuffer(Constants.REPLAY_BUFFER_SIZE);
+    /**
+     * Packets waiting to be written to the server.
+     */
+    private OutboundQueue outbound;
+    /**
+     * Counts the packets exchanged with the server.
+     */
+    private final NetMetrics metrics = new NetMetrics("client");
+    /**
+     * False while the connection to the server is lost, packets are then only
+     * kept to be sent once the session is resumed.
+     */
+    private volatile boolean connected;
     /**
      * The socket used to connect to the server.
      */
     private Socket clientSocket;
     private Player connectedPlayer;
+    /**
+     * Token of the session sent by the server in its hello, 0 until then.
+     */
+    private long sessionToken;
     /* The thread on which this client is running. */
     private Thread mainThread;
 
@@ -82,7 +122,20 @@ public class GameClient extends Thread implements NetworkEntity {
         listeners = new ArrayList<NetEntityListener>(1);
 
         //initialise handlers and other objects used by this class
-        packetHandler = new PacketHandler(this);
+        stateSync = new StateSync(this);
+        Runnable closeSocket = new Runnable() {
+            public void run() {
+                //the read loop fails once the socket is closed
+                try {
+                    clientSocket.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        };
+        heartbeat = new Heartbeat(this, closeSocket);
+        outbound = new OutboundQueue("server", closeSocket, metrics);
+        packetHandler = new PacketHandler(this, stateSync, heartbeat);
         //Ready to connect!
     }
 
@@ -96,102 +149,57 @@ public class GameClient extends Thread implements NetworkEntity {
         
         //start the client thread
         clientRunning = true;
+        metrics.startLogging();
         mainThread = new Thread(new ClientThread());
         mainThread.start();
     }
     
     /**
-     * Gathers information about all servers on the LAN network. Since
-     * this process is slow, and the servers are retrieved one at a time,
-     * this method executes in a separate thread and every time it finds a server,
-     * it notifies the ServerListListener about it. This thread can be interrupted
-     * by the Thread reference returned.
+     * Gathers information about all servers on the LAN network, which announce
+     * themselves on a multicast group. This method executes in a separate 
+     * thread and every time it finds a server, or a server stops announcing 
+     * itself, it notifies the ServerListListener about it. This thread can be
+     * interrupted by the Thread reference returned.
      * @return The thread created for the server searching is returned.
      */
     public static Thread getLANServersList(final ServerListListener sll) {
-        
-        Thread t = new Thread(new Runnable() {
-            public void run() {
-                Thread t1 = new Thread(new Runnable() {
-                    public void run() {
-                        scanServers(1, 85, sll);
-                    }
-                });
-                t1.start();
-                Thread t2 = new Thread(new Runnable() {
-                    public void run() {
-                        scanServers(85, 170, sll);
-                    }
-                });
-                t2.start();
-                Thread t3 = new Thread(new Runnable() {
-                    public void run() {
-                        scanServers(170, 255, sll);
-                    }
-                });
-                t3.start();
-                try {
-                    t1.join();
-                    t2.join();
-                    t3.join();
-                } catch (InterruptedException ignore) {
-                } finally {
-                    t1.interrupt();
-                    t2.interrupt();
-                    t3.interrupt();
-                }
-            }
-        });
+        Thread t = new Thread(new LanDiscovery(sll), "LanDiscovery");
+        t.setDaemon(true);
         t.start();
         return t;
     }
-    
-    private static void scanServers(int startRange, int endRange, ServerListListener sll) {
-        boolean stop = false;
-        while(!stop) {  //scan the whole LAN IP range until told to stop
-            InetAddress localhost;
-            try {
-                localhost = InetAddress.getLocalHost();
-                // this code assumes IPv4 is used
 
-                byte[] ip = localhost.getAddress();
-
-                //if the thread is interrupted the for loop terminates
-                for (int i = startRange; i < endRange; i++) {
-                    if(Thread.currentThread().isInterrupted()) {    //check if interrupted
-                        stop = true;
-                        break;
-                    }
-                    ip[3] = (byte)i;
-                    InetAddress address = InetAddress.getByAddress(ip);
-                    //make connection to try to reach a server
-                    try {
-                        Socket s = new Socket();
-                        s.connect(new InetSocketAddress(address, Constants.SERVER_INFO_PORT), 50);
-                        DataInputStream di = new DataInputStream(s.getInputStream());
-
-                        byte[] data = new byte[1024];
-                        //wait to receive a packet
-                        di.read(data);
-                        //the packet should be a server info packet
-                        ServerInfoPacket sip = new ServerInfoPacket(data);
-                        //convert received packet into ServerInfo object
-                        ServerInfo si = new ServerInfo(sip.serverName, sip.playerName, sip.ipAddress, sip.isLoaded);
-                        synchronized(sll) {
-                            sll.addServerInfo(si);
-                        }
-                        //close socket and stream
-                        di.close();
-                        s.close();
-                    } catch (GameException ex) {
-                        Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
-                    } catch(SocketTimeoutException ignore) {}
-
-                }
-            } catch (IOException ex) {
-                Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
+    /**
+     * Asks one server for its information with a single datagram, without
+     * connecting to it.
+     * @param serverAddress
+     * @param timeout Time in milliseconds to wait for the answer.
+     * @return The information of the server, null if it did not answer in time.
+     */
+    public static ServerInfo getServerInfo(InetAddress serverAddress, int timeout) {
+        DatagramSocket socket = null;
+        try {
+            socket = new DatagramSocket();
+            socket.setSoTimeout(timeout);
+            byte[] probe = new DiscoveryPacket().getData();
+            socket.send(new DatagramPacket(probe, probe.length, serverAddress, Constants.SERVER_INFO_PORT));
+            byte[] buffer = new byte[Constants.MAX_DATAGRAM_SIZE];
+            DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+            socket.receive(datagram);
+            PacketFrame frame = PacketFrame.read(new DataInputStream(
+                    new ByteArrayInputStream(buffer, 0, datagram.getLength())));
+            if(frame.getType() == Packet.PacketTypes.SERVERINFO) {
+                return new ServerInfo(new ServerInfoPacket(frame.getPayload()), serverAddress);
+            }
+        } catch (SocketTimeoutException ignore) {
+        } catch (IOException ex) {
+            Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if(socket != null) {
+                socket.close();
             }
         }
+        return null;
     }
 
     public void addNetListener(NetEntityListener l) {
@@ -213,14 +221,42 @@ public class GameClient extends Thread implements NetworkEntity {
     }
 
     public void sendGameState(GameState gs) {
-        GameStatePacket p = new GameStatePacket(gs);
-        try {
-            this.sendData(p.getData());
-        } catch (IOException ex) {
-            Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
+        stateSync.sendState(gs);
+    }
+
+    public void sendAction(ActionCommand action, GameState gs) {
+        stateSync.sendAction(action, gs);
+    }
+
+    public void sendActionToListeners(ActionCommand action, int checksum) {
+        for(NetEntityListener l: listeners) {
+            l.onActionReceive(action, checksum);
         }
     }
 
+    public void actionApplied(GameState gs) {
+    }
+
+    public void requestGameState() {
+        stateSync.requestState();
+    }
+
+    public int getPendingPacketCount() {
+        return packetHandler.getQueueDepth();
+    }
+
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    public NetMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void sendPacket(Packet packet) {
+        writePacket(packet);
+    }
+
     public InetAddress getRemote() {
         return clientSocket.getInetAddress();
     }
@@ -250,11 +286,7 @@ public class GameClient extends Thread implements NetworkEntity {
     
     public void sendVote(boolean vote) {
         VotePacket v = new VotePacket(vote);
-        try {
-            sendData(v.getData());
-        } catch (IOException ex) {
-            Logger.getLogger(GameClient.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        writePacket(v);
     }
     
     public void invalidPacket() {
@@ -271,14 +303,15 @@ public class GameClient extends Thread implements NetworkEntity {
             try {
                 //open a socket to the server and wait for it to accept the connection
                 Misc.log("Client awaiting server to accept connection...");
-                clientSocket = new Socket(serverAddress, Constants.SERVER_PORT);
+                openSocket();
                 Misc.log("Client successfully connected to server.");
-                //get the input and output streams for communication with the server
-                out = new DataOutputStream(clientSocket.getOutputStream());
-                in = new DataInputStream(clientSocket.getInputStream());
-
+                //a new session, nothing was exchanged with the server yet
+                replay.reset();
+                sessionToken = 0;
+                outbound.attach(out);
+                connected = true;
                 //send client's username to the server by creating a hello packet with the username
-                sendData(new HelloPacket(client.getUsername()).getData());
+                writePacket(new HelloPacket(client.getUsername()));
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -287,44 +320,148 @@ public class GameClient extends Thread implements NetworkEntity {
             for(NetEntityListener l: listeners) {
                 l.onConnected();
             }
+            heartbeat.start();
             
+            boolean connectionLost = false;
             //client is listening until the clientRunning flag is set to false
             while (clientRunning) {
-                //construct packet object to save received data into
-                byte[] data = new byte[24576];
-
                 try {
-                    //wait to receive a packet
-                    in.read(data);
+                    //wait to receive a whole packet frame
+                    PacketFrame frame = PacketFrame.read(in);
 
                     if(invalidReceived) {
                         //test if connection is still alive by sending silent
-                        try {
-                            sendData(new SilentPacket().getData());
-                        } catch(IOException e) {
-                            clientRunning = false;
-                            Misc.log("Server disconnected. Will now close client.");
-                        } finally {
-                            invalidReceived = false;
-                        }
+                        writePacket(new SilentPacket());
+                        invalidReceived = false;
                     }
                                             
-                    //handle packet
-                    packetHandler.handlePacket(data);
+                    if(frame.getType().equals(Packet.PacketTypes.HELLO)) {
+                        sessionOpened(frame);
+                    }
+                    //handle packet, unless it was already received before a resume
+                    if(replay.accept(frame)) {
+                        packetHandler.handlePacket(frame);
+                    }
                 } catch (Exception e) {
                     Misc.log("Exception in client.");
-                    clientRunning = false;
+                    connected = false;
+                    outbound.detach();
+                    heartbeat.stop();
+                    if(clientRunning && resumeSession()) {
+                        heartbeat.start();
+                    } else {
+                        if(clientRunning) {
+                            //the connection was lost, the client was not stopped
+                            connectionLost = true;
+                        }
+                        clientRunning = false;
+                    }
+                }
+            }
+            heartbeat.stop();
+            if(connectionLost) {
+                for(NetEntityListener l: listeners) {
+                    l.onDisconnected();
                 }
             }
             //end of thread
         }
     }
 
+    /**
+     * Keeps the token of the session the server opened with its hello, 
+     * needed to resume the session.
+     * @param hello
+     */
+    private void sessionOpened(PacketFrame hello) {
+        try {
+            sessionToken = new HelloPacket(hello.getPayload()).getSessionToken();
+        } catch(IOException e) {
+            //the packet handler reports the malformed hello
+        }
+    }
+
+    /**
+     * Opens a connection to the server.
+     */
+    private void openSocket() throws IOException {
+        clientSocket = new Socket(serverAddress, Constants.SERVER_PORT);
+        //get the input and output streams for communication with the server
+        out = new DataOutputStream(clientSocket.getOutputStream());
+        in = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+    }
+
+    /**
+     * Reconnects to the server after the connection was lost and asks it to
+     * resume the session. The packets missed by either side are then sent 
+     * again. Keeps trying until the server answers or Constants.RESUME_GRACE
+     * has passed.
+     * @return True if the session was resumed.
+     */
+    private boolean resumeSession() {
+        long deadline = System.currentTimeMillis() + Constants.RESUME_GRACE;
+        while(clientRunning && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(Constants.RECONNECT_INTERVAL);
+                Misc.log("Client trying to resume the session...");
+                openSocket();
+                new ResumePacket(client.getID(), sessionToken, replay.getLastReceived(), true).writeTo(out);
+                out.flush();
+                //the server answers once it has noticed the lost connection itself
+                clientSocket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+                PacketFrame frame = PacketFrame.read(in);
+                clientSocket.setSoTimeout(0);
+                if(frame.getType().equals(Packet.PacketTypes.HELLO)) {
+                    //a server greeting a new client, a dedicated server, holds no session to resume
+                    Misc.log("Server does not keep sessions to resume.");
+                    return false;
+                }
+                if(!frame.getType().equals(Packet.PacketTypes.RESUME)) {
+                    throw new StreamCorruptedException("Unexpected answer to resume: " + frame.getType());
+                }
+                ResumePacket answer = new ResumePacket(frame.getPayload());
+                if(!answer.isAccepted()) {
+                    Misc.log("Server refused to resume the session.");
+                    return false;
+                }
+                synchronized(replay) {
+                    List<Packet> missed = replay.after(answer.getLastSequence());
+                    if(missed == null) {
+                        //the server resends its game state, this client's moves are lost
+                        Misc.log("Packets missed by the server are not kept anymore.");
+                    } else {
+                        for(Packet p: missed) {
+                            p.writeTo(out);
+                        }
+                        out.flush();
+                    }
+                    //packets sent from now on come after the missed ones
+                    outbound.attach(out);
+                    connected = true;
+                }
+                Misc.log("Session resumed.");
+                return true;
+            } catch(IOException e) {
+                Misc.log("Could not resume the session: " + e.getMessage());
+                if(clientSocket != null) {
+                    try {
+                        clientSocket.close();
+                    } catch(IOException ignore) {}
+                }
+            } catch(InterruptedException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
     /**
      * Closes the socket and streams.
      */
     private void closeClient() {
         Misc.log("Client will now close.");
+        outbound.stop();
+        metrics.stopLogging();
         try {
             clientSocket.close();
             in.close();
@@ -344,14 +481,17 @@ public class GameClient extends Thread implements NetworkEntity {
     }
     
     /**
-     * @param data Data to send to the server.
+     * Numbers a packet and sends it to the server. While the connection is 
+     * lost the packet is only kept, to be sent once the session is resumed.
+     * @param packet Packet to encode and send to the server.
      */
-    public void sendData(byte[] data) throws IOException {
-        //send packet
-        try {
-         out.write(data);
-        } catch(SocketException e) {
-            this.stopNet();
+    private void writePacket(Packet packet) {
+        //packets must not be numbered out of order
+        synchronized(replay) {
+            replay.record(packet);
+            if(connected) {
+                outbound.offer(packet);
+            }
         }
     }
 }
@@ -0,0 +1,137 @@
+package my_game.networking.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import my_game.networking.ServerInfo;
+import my_game.networking.ServerListListener;
+import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.packets.PacketFrame;
+import my_game.networking.packets.impl.DiscoveryPacket;
+import my_game.networking.packets.impl.ServerInfoPacket;
+import my_game.networking.server.Constants;
+
+/**
+ * Finds the servers of the LAN by listening to the discovery multicast group.
+ * A probe is sent first so every server announces itself right away, then
+ * the periodic announcements keep the list up to date. A server which has
+ * not been heard of for SERVER_EXPIRY is removed from the list.
+ * <p>
+ * Runs until the thread running it is interrupted.
+ */
+class LanDiscovery implements Runnable {
+    
+    /** How often expired servers are looked for while no datagram arrives. */
+    private static final int EXPIRY_CHECK = 250;
+    
+    private final ServerListListener sll;
+    /** The last announcement of each known server. */
+    private final LinkedHashMap<ServerInfo, Heard> lastSeen = new LinkedHashMap<ServerInfo, Heard>();
+    
+    LanDiscovery(ServerListListener sll) {
+        this.sll = sll;
+    }
+    
+    public void run() {
+        MulticastSocket socket = null;
+        try {
+            InetAddress group = InetAddress.getByName(Constants.DISCOVERY_GROUP);
+            socket = new MulticastSocket(Constants.DISCOVERY_PORT);
+            //null joins on the interface the system picks for multicast
+            socket.joinGroup(new InetSocketAddress(group, Constants.DISCOVERY_PORT), null);
+            socket.setSoTimeout(EXPIRY_CHECK);
+            byte[] probe = new DiscoveryPacket().getData();
+            socket.send(new DatagramPacket(probe, probe.length, group, Constants.DISCOVERY_PORT));
+            
+            byte[] buffer = new byte[Constants.MAX_DATAGRAM_SIZE];
+            while(!Thread.currentThread().isInterrupted()) {
+                try {
+                    DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(datagram);
+                    PacketFrame frame = PacketFrame.read(new DataInputStream(
+                            new ByteArrayInputStream(buffer, 0, datagram.getLength())));
+                    if(frame.getType() == PacketTypes.SERVERINFO) {
+                        ServerInfoPacket sip = new ServerInfoPacket(frame.getPayload());
+                        //the sender address is the one this client can reach the server at
+                        serverHeard(new ServerInfo(sip, datagram.getAddress()));
+                    }
+                } catch(SocketTimeoutException ignore) {
+                } catch(IOException ex) {
+                    //a datagram which is not a valid frame, ignore it
+                    if(socket.isClosed()) {
+                        throw ex;
+                    }
+                }
+                removeExpired();
+            }
+        } catch(IOException ex) {
+            Logger.getLogger(LanDiscovery.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            if(socket != null) {
+                socket.close();
+            }
+        }
+    }
+    
+    private void serverHeard(ServerInfo si) {
+        Heard previous = lastSeen.remove(si);
+        //reinserted so the map stays ordered by the time servers were last heard of
+        lastSeen.put(si, new Heard(si, System.currentTimeMillis()));
+        if(previous != null && !changed(previous.info, si)) {
+            return;
+        }
+        //ServerInfo.equals ignores the state of the match, the listener gets
+        //the new entry in place of the old one
+        synchronized(sll) {
+            if(previous != null) {
+                sll.removeServerInfo(previous.info);
+            }
+            sll.addServerInfo(si);
+        }
+    }
+    
+    private static boolean changed(ServerInfo before, ServerInfo after) {
+        return before.playerCount != after.playerCount
+                || before.status != after.status
+                || before.isLoaded != after.isLoaded;
+    }
+    
+    private void removeExpired() {
+        long expired = System.currentTimeMillis() - Constants.SERVER_EXPIRY;
+        Iterator<Map.Entry<ServerInfo, Heard>> it = lastSeen.entrySet().iterator();
+        while(it.hasNext()) {
+            Heard h = it.next().getValue();
+            if(h.time > expired) {
+                break;
+            }
+            it.remove();
+            synchronized(sll) {
+                sll.removeServerInfo(h.info);
+            }
+        }
+    }
+    
+    /**
+     * An announcement of a server and the time it was heard.
+     */
+    private static class Heard {
+        
+        final ServerInfo info;
+        final long time;
+        
+        Heard(ServerInfo info, long time) {
+            this.info = info;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package my_game.networking.client;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import my_game.networking.NetEntityListener;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.PacketFrame;
+import my_game.networking.packets.impl.GameStatePacket;
+import my_game.networking.packets.impl.SpectatePacket;
+import my_game.networking.server.Constants;
+import my_game.util.Misc;
+
+/**
+ * Watches the match hosted by a server. The spectator connects to the server
+ * info port, reads the server info and asks to spectate, after which the
+ * server streams every game state of the match in full. Only the connection,
+ * game state and disconnection events of the listeners are used.
+ */
+public class SpectatorClient {
+
+    private final String username;
+    private final ArrayList<NetEntityListener> listeners = new ArrayList<NetEntityListener>(1);
+    private Socket socket;
+    private volatile boolean running;
+
+    public SpectatorClient(String username) {
+        this.username = username;
+    }
+
+    public void addNetListener(NetEntityListener l) {
+        listeners.add(l);
+    }
+
+    public void removeNetListener(NetEntityListener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Connects to a server and starts watching its match on a new thread.
+     * @param serverAddress
+     */
+    public void watch(final InetAddress serverAddress) {
+        running = true;
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                spectate(serverAddress);
+            }
+        }, "SpectatorClient");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Stops watching the match.
+     */
+    public void stop() {
+        running = false;
+        try {
+            if(socket != null) {
+                socket.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(SpectatorClient.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private void spectate(InetAddress serverAddress) {
+        try {
+            socket = new Socket(serverAddress, Constants.SERVER_INFO_PORT);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            //the server info comes first
+            PacketFrame.read(in);
+            new SpectatePacket(username).writeTo(socket.getOutputStream());
+            Misc.log("Spectating the match of " + serverAddress + ".");
+            for(NetEntityListener l: listeners) {
+                l.onConnected();
+            }
+            while(running) {
+                PacketFrame frame = PacketFrame.read(in);
+                if(frame.getType().equals(Packet.PacketTypes.GAMESTATE)) {
+                    GameStatePacket g = new GameStatePacket(frame.getPayload());
+                    for(NetEntityListener l: listeners) {
+                        l.onGameStateReceive(g.getGameState());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if(running) {
+                Misc.log("Spectated server disconnected.");
+            }
+        }
+        running = false;
+        for(NetEntityListener l: listeners) {
+            l.onDisconnected();
+        }
+    }
+}
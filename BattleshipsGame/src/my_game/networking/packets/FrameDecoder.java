@@ -0,0 +1,60 @@
+package my_game.networking.packets;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Incremental decoder turning the bytes read from a non-blocking channel into
+ * packet frames. Bytes can arrive in any chunking: a partial header or payload
+ * is kept until the rest of it is fed to the decoder. One decoder is used per
+ * connection and is not thread safe.
+ */
+public class FrameDecoder {
+    
+    private final ByteBuffer header = ByteBuffer.allocate(Packet.HEADER_SIZE);
+    /** Payload of the frame being read, null while reading a header. */
+    private byte[] payload;
+    private int payloadPosition;
+    private int typeId;
+    private int sequence;
+    
+    /**
+     * Consumes all the remaining bytes of the buffer and adds every frame 
+     * completed by them to the output list.
+     * @param in A buffer ready to be read from (flipped).
+     * @param out List receiving the completed frames, in order.
+     * @throws StreamCorruptedException If a header is not valid, the 
+     * connection should then be closed.
+     */
+    public void decode(ByteBuffer in, List<PacketFrame> out) throws StreamCorruptedException {
+        while(in.hasRemaining()) {
+            if(payload == null) {
+                //still reading the header
+                while(header.hasRemaining() && in.hasRemaining()) {
+                    header.put(in.get());
+                }
+                if(header.hasRemaining()) {
+                    return;
+                }
+                header.flip();
+                short magic = header.getShort();
+                byte version = header.get();
+                typeId = header.get();
+                sequence = header.getInt();
+                int length = header.getInt();
+                header.clear();
+                PacketFrame.checkHeader(magic, version, length);
+                payload = new byte[length];
+                payloadPosition = 0;
+            }
+            int count = Math.min(in.remaining(), payload.length - payloadPosition);
+            in.get(payload, payloadPosition, count);
+            payloadPosition += count;
+            if(payloadPosition == payload.length) {
+                out.add(new PacketFrame(typeId, sequence, payload));
+                payload = null;
+            }
+        }
+    }
+}
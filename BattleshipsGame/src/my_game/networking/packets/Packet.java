@@ -1,15 +1,43 @@
 package my_game.networking.packets;
 
-import java.io.UnsupportedEncodingException;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import my_game.networking.server.GameServer;
+import my_game.networking.BufferPool;
 
+/**
+ * Base class of every packet sent between a GameServer and a GameClient.
+ * On the wire every packet is a frame made of a fixed size header followed
+ * by the payload written by the concrete packet:
+ * <pre>
+ *   magic (short) | version (byte) | type id (byte) | sequence (int) | payload length (int) | payload
+ * </pre>
+ * Frames are read back with {@link PacketFrame#read(java.io.DataInputStream)}.
+ * The sequence number is given by the ReplayBuffer of the connection, it is 
+ * 0 for packets which are not numbered.
+ * <p>
+ * Frames are encoded straight into a buffer of the BufferPool.HEAP pool, see
+ * {@link #encode()} and {@link #writeTo(OutputStream)}.
+ */
 public abstract class Packet {
 
+	/** Marks the start of every frame ("BS"). */
+	public static final short MAGIC = 0x4253;
+	/** Version of the wire protocol, bumped on incompatible changes. */
+	public static final byte PROTOCOL_VERSION = 2;
+	/** Size in bytes of the frame header. */
+	public static final int HEADER_SIZE = 12;
+	/** Largest payload accepted by a receiver, guards against corrupted lengths. */
+	public static final int MAX_PAYLOAD_SIZE = 8 * 1024 * 1024;
+
 	public static enum PacketTypes {
 		//assign an ID to every packet type
-		INVALID(-1), HELLO(00), VOTE(01), CORALREEF(02), GAMESTATE(03), SERVERINFO(04), SILENT(05);
+		INVALID(-1), HELLO(00), VOTE(01), CORALREEF(02), GAMESTATE(03), SERVERINFO(04), SILENT(05),
+		GAMESTATE_DELTA(06), STATE_ACK(07), DISCOVERY(8),
+		PING(9), PONG(10), ACTION(11), RESUME(12), SPECTATE(13);
 		
 		/** 
 		 * The ID determining the packet type. It should be 
@@ -36,6 +64,8 @@ public abstract class Packet {
 	
 	/** The ID describing the type of this packet. */
 	protected byte packetId;
+	/** Sequence number of this packet on its connection, 0 if not numbered. */
+	private int sequence;
 	
 	/**
 	 * Create a packet of the provided type.
@@ -46,44 +76,139 @@ public abstract class Packet {
 	}
 	
 	/**
-	 * @return The data of a packet in the form of a 
-	 * byte array.
+	 * @return The type of this packet.
 	 */
-	public abstract byte[] getData();
+	public PacketTypes getType() {
+		return lookupPacket(packetId);
+	}
 	
 	/**
-	 * Converts the data array of a packet
-	 * into a String and removes the two leading
-	 * packet id characters of the String.
-	 * @param data Data array of a packet.
-	 * @return A String message representing the data.
+	 * @return The sequence number of this packet, 0 if not numbered.
 	 */
-	public static String readData(byte[] data) {
-		String message = null;
-        try {
-            message = new String(data, "ISO-8859-1");
-        } catch (UnsupportedEncodingException ex) {
-            Logger.getLogger(Packet.class.getName()).log(Level.SEVERE, null, ex);
-        }
-		//trim out the beginning 2-digit packet type code
-		return message.substring(2);
+	public int getSequence() {
+		return sequence;
 	}
 	
 	/**
-	 * Returns the packet type for a packet with 
-	 * the provided packetId.
-	 * @param packetId The id of the packet in String form.
-	 * @return
+	 * Numbers this packet, called by the ReplayBuffer of the connection 
+	 * it is sent on.
+	 * @param sequence 
+	 */
+	public void setSequence(int sequence) {
+		this.sequence = sequence;
+	}
+	
+	/**
+	 * Writes the packet specific content of the frame. The header is 
+	 * written by {@link #getData()}.
+	 * @param out Stream positioned right after the frame header.
+	 * @throws IOException 
+	 */
+	protected abstract void writePayload(DataOutputStream out) throws IOException;
+	
+	/**
+	 * @return The expected size of the payload, used to pick the size of 
+	 * the buffer the frame is encoded into. Larger payloads still fit, at
+	 * the cost of moving to a larger buffer.
+	 */
+	protected int getSizeHint() {
+		return 64;
+	}
+	
+	/**
+	 * Encodes the complete frame of this packet (header and payload) into a
+	 * buffer taken from BufferPool.HEAP.
+	 * @return The buffer holding the frame, ready to be read (flipped). It 
+	 * should be given back to BufferPool.HEAP once written. Null if the 
+	 * packet could not be encoded.
+	 */
+	public ByteBuffer encode() {
+		PooledOutputStream pooled = new PooledOutputStream(HEADER_SIZE + getSizeHint());
+		DataOutputStream out = new DataOutputStream(pooled);
+		try {
+			out.writeShort(MAGIC);
+			out.writeByte(PROTOCOL_VERSION);
+			out.writeByte(packetId);
+			out.writeInt(sequence);
+			out.writeInt(0);	//payload length, patched once the payload is written
+			writePayload(out);
+		} catch (IOException ex) {
+			Logger.getLogger(Packet.class.getName()).log(Level.SEVERE, null, ex);
+			BufferPool.HEAP.release(pooled.buffer);
+			return null;
+		}
+		ByteBuffer frame = pooled.buffer;
+		frame.putInt(HEADER_SIZE - 4, frame.position() - HEADER_SIZE);
+		frame.flip();
+		return frame;
+	}
+	
+	/**
+	 * Encodes this packet and writes its frame to a stream, without copying
+	 * it out of the pooled buffer.
+	 * @param out
+	 * @throws IOException 
 	 */
-	public static PacketTypes lookupPacket(String packetId) {
+	public void writeTo(OutputStream out) throws IOException {
+		ByteBuffer frame = encode();
+		if(frame == null) {
+			throw new IOException("Packet " + getType() + " could not be encoded.");
+		}
 		try {
-			/* Call the integer parameter version of this method
-			 * with the parsed integer code in the beginning of
-			 * the packetId string.
-			 */
-			return lookupPacket(Integer.parseInt(packetId));
-		} catch(NumberFormatException e) {
-			return PacketTypes.INVALID;
+			out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+		} finally {
+			BufferPool.HEAP.release(frame);
+		}
+	}
+	
+	/**
+	 * @return The complete frame of this packet (header and payload) in 
+	 * the form of a byte array, ready to be written on a socket.
+	 */
+	public byte[] getData() {
+		ByteBuffer frame = encode();
+		if(frame == null) {
+			return null;
+		}
+		byte[] data = new byte[frame.remaining()];
+		frame.get(data);
+		BufferPool.HEAP.release(frame);
+		return data;
+	}
+	
+	/**
+	 * An output stream writing into a pooled buffer, which is swapped for a
+	 * larger one when full.
+	 */
+	private static class PooledOutputStream extends OutputStream {
+		
+		ByteBuffer buffer;
+		
+		PooledOutputStream(int capacity) {
+			buffer = BufferPool.HEAP.acquire(capacity);
+		}
+		
+		private void ensureRemaining(int count) {
+			if(buffer.remaining() >= count) {
+				return;
+			}
+			ByteBuffer larger = BufferPool.HEAP.acquire(Math.max(2 * buffer.capacity(), buffer.position() + count));
+			buffer.flip();
+			larger.put(buffer);
+			BufferPool.HEAP.release(buffer);
+			buffer = larger;
+		}
+		
+		@Override
+		public void write(int b) {
+			ensureRemaining(1);
+			buffer.put((byte) b);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+			ensureRemaining(len);
+			buffer.put(b, off, len);
 		}
 	}
 	
@@ -0,0 +1,102 @@
+package my_game.networking.packets;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import my_game.networking.packets.Packet.PacketTypes;
+
+/**
+ * A single frame read from a network stream: the packet type found in the 
+ * header and the payload which follows it. The payload is handed to the 
+ * byte[] constructor of the matching Packet implementation.
+ */
+public class PacketFrame {
+    
+    private final PacketTypes type;
+    private final int typeId;
+    private final int sequence;
+    private final byte[] payload;
+    
+    public PacketFrame(int typeId, int sequence, byte[] payload) {
+        this.typeId = typeId;
+        this.type = Packet.lookupPacket(typeId);
+        this.sequence = sequence;
+        this.payload = payload;
+    }
+    
+    /**
+     * Blocks until a whole frame has been read from the stream. A frame with 
+     * an unknown type id is still returned (with type INVALID) since its 
+     * length is known and the stream stays usable.
+     * @param in Stream to read from.
+     * @return The frame read.
+     * @throws IOException If the stream is closed or the header is not valid,
+     * in which case the stream can not be used anymore.
+     */
+    public static PacketFrame read(DataInputStream in) throws IOException {
+        short magic = in.readShort();
+        byte version = in.readByte();
+        int typeId = in.readByte();
+        int sequence = in.readInt();
+        int length = in.readInt();
+        checkHeader(magic, version, length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new PacketFrame(typeId, sequence, payload);
+    }
+    
+    /**
+     * Validates the fields of a frame header.
+     * @throws StreamCorruptedException If the header can not start a valid frame.
+     */
+    static void checkHeader(short magic, byte version, int length) throws StreamCorruptedException {
+        if(magic != Packet.MAGIC) {
+            throw new StreamCorruptedException("Bad frame magic: " + Integer.toHexString(magic & 0xFFFF));
+        }
+        if(version != Packet.PROTOCOL_VERSION) {
+            throw new StreamCorruptedException("Unsupported protocol version: " + version);
+        }
+        if(length < 0 || length > Packet.MAX_PAYLOAD_SIZE) {
+            throw new StreamCorruptedException("Bad frame length: " + length);
+        }
+    }
+    
+    /**
+     * Decodes a single frame from a byte array, as returned by Packet.getData().
+     * @param data
+     * @return
+     * @throws IOException 
+     */
+    public static PacketFrame decode(byte[] data) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * @return The packet type of this frame, INVALID if the id is unknown.
+     */
+    public PacketTypes getType() {
+        return type;
+    }
+
+    /**
+     * @return The raw type id found in the header.
+     */
+    public int getTypeId() {
+        return typeId;
+    }
+
+    /**
+     * @return The sequence number found in the header, 0 if not numbered.
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return The payload of this frame, without the header.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+}
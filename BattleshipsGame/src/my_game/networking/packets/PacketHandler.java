@@ -1,96 +1,244 @@
 package my_game.networking.packets;
 
-import de.lessvoid.nifty.loaderv2.types.apply.Convert;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import my_game.models.game_components.CoralReef;
 import my_game.models.game_components.GameState;
 import my_game.models.player_components.Player;
+import my_game.networking.Heartbeat;
 import my_game.networking.NetworkEntity;
-import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.ReefCache;
+import my_game.networking.SerialExecutor;
+import my_game.networking.StateSync;
+import my_game.networking.packets.impl.ActionPacket;
 import my_game.networking.packets.impl.CoralReefPacket;
+import my_game.networking.packets.impl.GameStateDeltaPacket;
 import my_game.networking.packets.impl.GameStatePacket;
+import my_game.networking.packets.impl.HelloPacket;
+import my_game.networking.packets.impl.PingPacket;
+import my_game.networking.packets.impl.StateAckPacket;
 import my_game.networking.packets.impl.VotePacket;
 import my_game.util.Misc;
 
 /**
  * A handler for different types of packets.
+ * <p>
+ * Packets are handled on the threads of a pool shared by every handler, one
+ * packet at a time per handler, so the listeners of a connection receive
+ * them in the order they arrived.
  */
 public class PacketHandler {
 	
+	/** Threads handling the packets of every connection. */
+	private static final ExecutorService DISPATCH_POOL = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "PacketDispatch-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
 	NetworkEntity net;
-        public static final String PACKET_SEPARATOR = "#end-of-packet#";
+	/** Runs the packets of this connection in arrival order. */
+	private final SerialExecutor dispatcher = new SerialExecutor(DISPATCH_POOL);
+	/** Tracks the game states exchanged with the peer. */
+	StateSync stateSync;
+	/** Keeps track of the liveness and round trip time of the peer. */
+	Heartbeat heartbeat;
+	/** The reefs received, found back from their hash when sent again. */
+	private final ReefCache reefs = new ReefCache();
 	
 	
-	public PacketHandler(NetworkEntity entity) {
+	public PacketHandler(NetworkEntity entity, StateSync stateSync, Heartbeat heartbeat) {
 		net = entity;
+		this.stateSync = stateSync;
+		this.heartbeat = heartbeat;
+	}
+	
+	/**
+	 * Queues a received packet to be handled after the packets received 
+	 * before it.
+	 * @param frame 
+	 */
+	public void handlePacket(PacketFrame frame) {
+		heartbeat.frameReceived();
+		net.getMetrics().packetReceived(frame.getType(), Packet.HEADER_SIZE + frame.getPayload().length);
+		//pings are answered right away, queueing them would add the time 
+		//spent handling other packets to the round trip time
+		if(answerPing(frame)) {
+			return;
+		}
+		dispatcher.execute(new PacketTask(frame));
 	}
 	
-	public void handlePacket(byte[] data) {
-		new HandlerThread(data).start();
+	/**
+	 * Handles a received packet on the calling thread, for a connection 
+	 * which already runs what it receives in order and records it in its
+	 * metrics.
+	 * @param frame 
+	 */
+	public void handlePacketNow(PacketFrame frame) {
+		heartbeat.frameReceived();
+		if(answerPing(frame)) {
+			return;
+		}
+		try {
+			Packet packet = decode(frame);
+			if(packet != null) {
+				handle(packet);
+			}
+		} catch (IOException ex) {
+			Logger.getLogger(PacketHandler.class.getName()).log(Level.SEVERE, "Malformed " + frame.getType() + " packet.", ex);
+			net.invalidPacket();
+		}
+	}
+	
+	/**
+	 * @param frame
+	 * @return True if the frame was a ping or pong, which is handled.
+	 */
+	private boolean answerPing(PacketFrame frame) {
+		try {
+			switch(frame.getType()) {
+			case PING:
+				heartbeat.onPing(new PingPacket(frame.getPayload(), false));
+				return true;
+			case PONG:
+				heartbeat.onPong(new PingPacket(frame.getPayload(), true));
+				return true;
+			default:
+				return false;
+			}
+		} catch (IOException ex) {
+			Logger.getLogger(PacketHandler.class.getName()).log(Level.SEVERE, "Malformed " + frame.getType() + " packet.", ex);
+			net.invalidPacket();
+			return true;
+		}
+	}
+	
+	/**
+	 * @return The number of received packets not handled yet.
+	 */
+	public int getQueueDepth() {
+		return dispatcher.getQueueDepth();
 	}
 
-	class HandlerThread extends Thread {
+	class PacketTask implements Runnable {
 		
-		private byte[] data;
+		private PacketFrame frame;
+		/** System.nanoTime() at which the frame was queued. */
+		private long queuedAt;
 		
-		HandlerThread(byte[] data) {
-			this.data = new byte[data.length];
-			for(int i = 0; i < data.length; i++) {
-				this.data[i] = data[i];
-			}
+		PacketTask(PacketFrame frame) {
+			this.frame = frame;
+			this.queuedAt = System.nanoTime();
 		}
 		
 		
 		@Override
 		public void run() {
+                    long start = System.nanoTime();
                     try {
-                        //extract packet message into a String
-                        String message = new String(data, "ISO-8859-1");
-                        //if more than one packets were received, separate them
-                        String[] args = message.split(PACKET_SEPARATOR);
-
-                        //process every packet
-                        for(int i = 0; i < args.length; i++) {
-                            //get the packet type using the lookupPacket method on 
-                            //the first 2 characters of the message String (the packet id)
-                            String typeCode = args[i].substring(0,2);
-                            PacketTypes type = Packet.lookupPacket(typeCode);
-                            //now we can remove the packet id code from the message string (first 2 characters)
-                            String noTypeMessage = args[i].substring(2);
-
-                            switch(type) {
-                            case VOTE:
-                                    VotePacket vote = new VotePacket(args[i].getBytes("ISO-8859-1"));
-                                    net.sendVoteToListeners(vote.getVote());
-                            case HELLO:
-                                    //send the username to the server
-                                //just set a player with the username and no other information
-                                net.setOpponent(new Player(noTypeMessage, "", net.getRemote(), 0, 0));
-                                break;
-                            case CORALREEF:
-                                CoralReefPacket p = new CoralReefPacket(args[i].getBytes("ISO-8859-1"));
-                                CoralReef reef = new CoralReef();
-                                reef.setReef(p.reef);
-                                net.sendCoralReefToListeners(reef);
-                                break;
-                            case GAMESTATE:
-                                GameStatePacket g = new GameStatePacket(args[i].getBytes("ISO-8859-1"));
-                                net.sendGameStateToListeners(g.getGameState());
-                                break;
-                            case SILENT:
-                                break;
-                            default:
-                            case INVALID:
-                                    Misc.log("[PKT_HAND]: Invalid packet received - code: " + typeCode + ", length: " + data.length);
-                                    net.invalidPacket();
-                                    break;
-                            }
+                        Packet packet = decode(frame);
+                        long decoded = System.nanoTime();
+                        if(packet != null) {
+                            handle(packet);
                         }
-                    } catch (UnsupportedEncodingException ex) {
-                        Logger.getLogger(PacketHandler.class.getName()).log(Level.SEVERE, null, ex);
+                        net.getMetrics().packetHandled(frame.getType(), start - queuedAt, decoded - start, System.nanoTime() - decoded);
+                    } catch (IOException ex) {
+                        Logger.getLogger(PacketHandler.class.getName()).log(Level.SEVERE, "Malformed " + frame.getType() + " packet.", ex);
+                        net.invalidPacket();
                     }
 		}
 	}
+	
+	/**
+	 * Builds the packet carried by a received frame.
+	 * @param frame
+	 * @return The packet, null if there is nothing to handle.
+	 * @throws IOException If the payload is malformed.
+	 */
+	private Packet decode(PacketFrame frame) throws IOException {
+            byte[] payload = frame.getPayload();
+            switch(frame.getType()) {
+            case VOTE:
+                return new VotePacket(payload);
+            case HELLO:
+                return new HelloPacket(payload);
+            case CORALREEF:
+                return new CoralReefPacket(payload);
+            case GAMESTATE:
+                return new GameStatePacket(payload, stateSync.getCompressor());
+            case GAMESTATE_DELTA:
+                return new GameStateDeltaPacket(payload);
+            case STATE_ACK:
+                return new StateAckPacket(payload);
+            case ACTION:
+                return new ActionPacket(payload);
+            case SILENT:
+                return null;
+            default:
+            case INVALID:
+                Misc.log("[PKT_HAND]: Invalid packet received - code: " + frame.getTypeId() + ", length: " + payload.length);
+                net.invalidPacket();
+                return null;
+            }
+	}
+	
+	/**
+	 * Hands a received packet to the network entity and its listeners.
+	 * @param packet 
+	 */
+	private void handle(Packet packet) {
+            switch(packet.getType()) {
+            case VOTE:
+                net.sendVoteToListeners(((VotePacket) packet).getVote());
+                break;
+            case HELLO:
+                //just set a player with the username and no other information
+                HelloPacket hello = (HelloPacket) packet;
+                net.setOpponent(new Player(hello.getUsername(), "", net.getRemote(), 0, 0));
+                stateSync.setCompressionEnabled(hello.supportsCompression());
+                break;
+            case CORALREEF:
+                CoralReefPacket p = (CoralReefPacket) packet;
+                if(!reefs.onReceive(p)) {
+                    Misc.log("[PKT_HAND]: Reef with unknown hash received: " + Long.toHexString(p.getHash()));
+                    net.invalidPacket();
+                    break;
+                }
+                CoralReef reef = new CoralReef();
+                reef.setReef(p.reef);
+                net.sendCoralReefToListeners(reef);
+                break;
+            case GAMESTATE:
+                GameStatePacket g = (GameStatePacket) packet;
+                net.sendGameStateToListeners(stateSync.onFullState(g.getGameState()));
+                break;
+            case GAMESTATE_DELTA:
+                GameStateDeltaPacket d = (GameStateDeltaPacket) packet;
+                GameState gs = stateSync.onDelta(d.getDelta());
+                if(gs != null) {
+                    net.sendGameStateToListeners(gs);
+                }
+                break;
+            case STATE_ACK:
+                stateSync.onAck((StateAckPacket) packet);
+                break;
+            case ACTION:
+                ActionPacket a = (ActionPacket) packet;
+                net.sendActionToListeners(a.getAction(), a.getChecksum());
+                break;
+            default:
+                break;
+            }
+	}
 }
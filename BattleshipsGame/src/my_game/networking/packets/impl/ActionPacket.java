@@ -0,0 +1,85 @@
+package my_game.networking.packets.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import my_game.gui.GameGUI.Action;
+import my_game.models.game_components.ActionCommand;
+import my_game.networking.packets.Packet;
+import my_game.util.Vector2;
+
+/**
+ * Carries a single action of the player who has the turn, along with the
+ * checksum of the sender's state once the action was applied so that the
+ * receiver can check it reached the same state.
+ */
+public class ActionPacket extends Packet {
+    
+    private ActionCommand action;
+    private int checksum;
+    
+    /**
+     * @param action
+     * @param checksum Checksum of the snapshot of the sender's state after
+     * the action, 0 if the state could not be captured.
+     */
+    public ActionPacket(ActionCommand action, int checksum) {
+        super(PacketTypes.ACTION.getId());
+        this.action = action;
+        this.checksum = checksum;
+    }
+    
+    /**
+     * Build an action packet from the payload of a received frame.
+     * @param payload
+     * @throws IOException If the payload is malformed.
+     */
+    public ActionPacket(byte[] payload) throws IOException {
+        super(PacketTypes.ACTION.getId());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int type = in.readUnsignedByte();
+        if(type >= Action.values().length) {
+            throw new StreamCorruptedException("Unknown action " + type + ".");
+        }
+        int shipId = in.readByte();
+        Vector2 target = null;
+        if(in.readBoolean()) {
+            int x = in.readShort();
+            int y = in.readShort();
+            target = Vector2.of(x, y);
+        }
+        action = new ActionCommand(Action.values()[type], shipId, target);
+        checksum = in.readInt();
+    }
+
+    @Override
+    protected int getSizeHint() {
+        return 16;
+    }
+
+    @Override
+    protected void writePayload(DataOutputStream out) throws IOException {
+        out.writeByte(action.getActionType().ordinal());
+        out.writeByte(action.getShipId());
+        Vector2 target = action.getTarget();
+        out.writeBoolean(target != null);
+        if(target != null) {
+            out.writeShort(target.x);
+            out.writeShort(target.y);
+        }
+        out.writeInt(checksum);
+    }
+    
+    public ActionCommand getAction() {
+        return action;
+    }
+    
+    /**
+     * @return The checksum of the sender's state after the action, 0 if unknown.
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+}
@@ -4,43 +4,74 @@
  */
 package my_game.networking.packets.impl;
 
-import java.io.UnsupportedEncodingException;
-import java.util.Scanner;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
 import my_game.models.game_components.CoralReef;
 import my_game.networking.packets.Packet;
-import my_game.networking.packets.PacketHandler;
 
 /**
  * A packet used to send the contents of a coral reef within the confirmation
  * screen to the other player.
+ * <p>
+ * The payload is a format byte, the width and height of the reef as ints and
+ * the 64-bit hash of its content, followed for a full reef by one bit per
+ * cell (x major) packed in longs. A reef the receiver already holds is sent
+ * as its hash only, see ReefCache.
  * @author Ivo
  */
 public class CoralReefPacket extends Packet {
+    
+    /** The cells of the reef follow the hash. */
+    public static final byte FORMAT_FULL = 0;
+    /** Only the hash is sent, the receiver holds the reef already. */
+    public static final byte FORMAT_HASH = 1;
 
     public boolean[][] reef;
+    private int width;
+    private int height;
+    private long hash;
+    private boolean hashOnly;
     
-    public CoralReefPacket(byte[] data) {
+    /**
+     * Build a coral reef packet from the payload of a received frame. The
+     * reef of a packet holding only the hash is null, it has to be found
+     * from the hash.
+     * @param payload
+     * @throws IOException If the payload is malformed.
+     */
+    public CoralReefPacket(byte[] payload) throws IOException {
         super(PacketTypes.CORALREEF.getId());
         
-        String message = readData(data);
-        message = message.split(PacketHandler.PACKET_SEPARATOR)[0];    //clearing the ending '#' symbol
-        String args[] = message.split("~");
-        int width = Integer.parseInt(args[0]);
-        int height = Integer.parseInt(args[1]);
-        
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte format = in.readByte();
+        width = in.readInt();
+        height = in.readInt();
+        hash = in.readLong();
+        //every reef has the same size, anything else is refused before allocating
+        if(width != CoralReef.WIDTH || height != CoralReef.HEIGHT) {
+            throw new StreamCorruptedException("Invalid reef size " + width + "x" + height + ".");
+        }
+        if(format == FORMAT_HASH) {
+            hashOnly = true;
+            return;
+        } else if(format != FORMAT_FULL) {
+            throw new StreamCorruptedException("Unknown CoralReefPacket format " + format + ".");
+        }
+        long[] words = new long[wordCount(width, height)];
+        for(int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        if(hash(width, height, words) != hash) {
+            throw new StreamCorruptedException("CoralReefPacket does not match its hash.");
+        }
         reef = new boolean[width][height];
-        //we need to go through the characters of the third string one by one
-        int index = 0;
         for(int x = 0; x < width; x++) {
             for(int y = 0; y < height; y++) {
-                if(args[2].charAt(index) == '1') {
-                    reef[x][y] = true;
-                } else {
-                    reef[x][y] = false;
-                }
-                index++;
+                int bit = x * height + y;
+                reef[x][y] = (words[bit >>> 6] & (1L << bit)) != 0;
             }
         }
     }
@@ -48,36 +79,88 @@ public class CoralReefPacket extends Packet {
     public CoralReefPacket(CoralReef reef) {
         super(PacketTypes.CORALREEF.getId());
         
-        this.reef = new boolean[reef.WIDTH][reef.HEIGHT];
+        this.width = CoralReef.WIDTH;
+        this.height = CoralReef.HEIGHT;
+        this.reef = new boolean[width][height];
         
-        for(int x = 0; x < reef.WIDTH; x++) {
-            for(int y = 0; y < reef.HEIGHT; y++) {
+        for(int x = 0; x < width; x++) {
+            for(int y = 0; y < height; y++) {
                 this.reef[x][y] = reef.hasObstacleIn(x, y);
             }
         }
+        this.hash = hash(width, height, pack());
     }
     
-    @Override
-    public byte[] getData() {
-        //figure out the packet id
-        int id = PacketTypes.CORALREEF.getId();
-        String typeId = (id > 9) ? (id + "") : ("0" + id);  //make sure the id is 2 digits
-        //build the coral reef array
-        StringBuilder coralReef = new StringBuilder();
-        for(int x = 0; x < reef.length; x++) {
-            for(int y = 0; y < reef[0].length; y++) {
+    /**
+     * @return The hash of the content of the reef.
+     */
+    public long getHash() {
+        return hash;
+    }
+    
+    /**
+     * @return True if only the hash of the reef was sent.
+     */
+    public boolean isHashOnly() {
+        return hashOnly;
+    }
+    
+    /**
+     * Sends only the hash of the reef, for a receiver which holds it already.
+     * @param hashOnly 
+     */
+    public void setHashOnly(boolean hashOnly) {
+        this.hashOnly = hashOnly;
+    }
+    
+    /**
+     * @return The cells of the reef, one bit per cell in x major order.
+     */
+    private long[] pack() {
+        long[] words = new long[wordCount(width, height)];
+        for(int x = 0; x < width; x++) {
+            for(int y = 0; y < height; y++) {
                 if(reef[x][y]) {
-                    coralReef.append('1');
-                } else {
-                    coralReef.append('0');
+                    int bit = x * height + y;
+                    words[bit >>> 6] |= 1L << bit;
                 }
             }
         }
-        try {
-            return (typeId + reef.length + "~" + reef[0].length + "~" + coralReef.toString() + PacketHandler.PACKET_SEPARATOR).getBytes("ISO-8859-1");
-        } catch (UnsupportedEncodingException ex) {
-            Logger.getLogger(CoralReefPacket.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
+        return words;
+    }
+    
+    private static int wordCount(int width, int height) {
+        return (int) (((long) width * height + 63) >>> 6);
+    }
+    
+    /**
+     * 64-bit FNV-1a hash of the size and cells of a reef.
+     */
+    private static long hash(int width, int height, long[] words) {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ width) * 0x100000001b3L;
+        h = (h ^ height) * 0x100000001b3L;
+        for(long w: words) {
+            h = (h ^ w) * 0x100000001b3L;
+        }
+        return h;
+    }
+    
+    @Override
+    protected int getSizeHint() {
+        return 17 + (hashOnly ? 0 : 8 * wordCount(width, height));
+    }
+
+    @Override
+    protected void writePayload(DataOutputStream out) throws IOException {
+        out.writeByte(hashOnly ? FORMAT_HASH : FORMAT_FULL);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeLong(hash);
+        if(!hashOnly) {
+            for(long w: pack()) {
+                out.writeLong(w);
+            }
         }
     }
     
@@ -0,0 +1,21 @@
+package my_game.networking.packets.impl;
+
+import java.io.DataOutputStream;
+import my_game.networking.packets.Packet;
+
+/**
+ * An empty packet sent by a client to the discovery multicast group, asking
+ * every server on the LAN to announce itself right away.
+ */
+public class DiscoveryPacket extends Packet {
+
+    public DiscoveryPacket() {
+        super(PacketTypes.DISCOVERY.getId());
+    }
+    
+    @Override
+    protected void writePayload(DataOutputStream out) {
+        //no payload, the header is enough
+    }
+    
+}
@@ -0,0 +1,46 @@
+package my_game.networking.packets.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import my_game.models.game_components.GameStateDelta;
+import my_game.networking.packets.Packet;
+
+/**
+ * A packet carrying only the changes between the game state last 
+ * acknowledged by the peer and the current one.
+ */
+public class GameStateDeltaPacket extends Packet {
+    
+    private GameStateDelta delta;
+    
+    public GameStateDeltaPacket(GameStateDelta delta) {
+        super(PacketTypes.GAMESTATE_DELTA.getId());
+        this.delta = delta;
+    }
+    
+    /**
+     * Build a delta packet from the payload of a received frame.
+     * @param payload
+     * @throws IOException If the payload is malformed.
+     */
+    public GameStateDeltaPacket(byte[] payload) throws IOException {
+        super(PacketTypes.GAMESTATE_DELTA.getId());
+        delta = GameStateDelta.read(new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    @Override
+    protected int getSizeHint() {
+        return 512;
+    }
+
+    @Override
+    protected void writePayload(DataOutputStream out) throws IOException {
+        delta.write(out);
+    }
+    
+    public GameStateDelta getDelta() {
+        return delta;
+    }
+}
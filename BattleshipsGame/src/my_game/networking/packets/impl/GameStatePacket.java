@@ -4,139 +4,139 @@ import java.io.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameStateCodec;
+import my_game.models.game_components.StateSnapshot;
+import my_game.networking.StateCompressor;
 import my_game.networking.packets.Packet;
-import my_game.networking.packets.PacketHandler;
-import my_game.util.GameException;
-import my_game.util.Misc;
 
 /**
  * A packet which can serialize a GameState object into a byte array to send
  * over a network and can also deserialize an incoming GameStatePacket to retreive
  * the GameState object sent.
+ * <p>
+ * The payload starts with a format byte. States are written with the compact
+ * GameStateCodec, or with Java serialization if the codec can not describe them.
+ * On a connection which negotiated compression, compact states are deflated
+ * by the StateCompressor of the connection.
  * @author Ivo Parvanov
  */
 public class GameStatePacket extends Packet {
+    
+    /** The state is written with Java serialization. */
+    public static final byte FORMAT_SERIALIZED = 0;
+    /** The state is written with GameStateCodec. */
+    public static final byte FORMAT_COMPACT = 1;
+    /** The state is written with GameStateCodec and deflated, preceded by
+     * its uncompressed size. */
+    public static final byte FORMAT_COMPRESSED = 2;
+    
     GameState gs;
+    /** Snapshot of the state to send, null if it has to be serialized. */
+    private StateSnapshot snapshot;
+    /** Compresses the state when it is written, null to send it uncompressed. */
+    private StateCompressor compressor;
     
     public GameStatePacket(GameState gs) {
         super(PacketTypes.GAMESTATE.getId());
+        //the snapshot is an independent copy of the state, like the serialized copy
+        try {
+            this.snapshot = GameStateCodec.prepare(gs);
+        } catch(IllegalStateException ex) {
+            Logger.getLogger(GameStatePacket.class.getName()).log(Level.WARNING, null, ex);
+            this.gs = new GameState(gs);
+        }
+    }
     
-        this.gs = new GameState(gs);
+    /**
+     * Deserializes the payload of a received frame into a game state object.
+     * @param payload 
+     * @throws IOException If the payload does not hold a GameState.
+     */
+    public GameStatePacket(byte[] payload) throws IOException {
+        this(payload, null);
     }
     
     /**
-     * Deserializes the data array into a game state object.
-     * @param data 
+     * Deserializes the payload of a received frame into a game state object.
+     * @param payload 
+     * @param compressor Inflates compressed states, can be null on a 
+     * connection without compression.
+     * @throws IOException If the payload does not hold a GameState.
      */
-    public GameStatePacket(byte[] data) {
+    public GameStatePacket(byte[] payload, StateCompressor compressor) throws IOException {
         super(PacketTypes.GAMESTATE.getId());
-        try {
-            //packet type checking
-            String message = new String(data, "ISO-8859-1");
-            if(message.contains(PacketHandler.PACKET_SEPARATOR)) {
-                 Logger.getLogger(GameStatePacket.class.getName()).log(Level.INFO, null, 
-                         new GameException("Packet separator received in game state but should have been treated in packet handler."));
-            }
-            //get the packet type using the lookupPacket method on
-            //the first 2 characters of the message String (the packet id)
-            String typeCode = message.substring(0,2);
-            PacketTypes type = Packet.lookupPacket(typeCode);
-            //remove the typeCode from the data, to be able to deserialize the
-            int id = PacketTypes.GAMESTATE.getId();
-            String typeId = (id > 9) ? (id + "") : ("0" + id);  //make sure the id is 2 digits
-            byte[] code = typeId.getBytes("ISO-8859-1");
-            byte[] gameStateData = new byte[data.length - code.length];
-            System.arraycopy(data, code.length, gameStateData, 0, gameStateData.length);
-            //GameState object
-            ByteArrayInputStream bis = new ByteArrayInputStream(gameStateData);
-            ObjectInputStream in = null;
-            try {
-                in = new ObjectInputStream(bis);
-                this.gs = (GameState) in.readObject();
-            } catch(IOException ex) {
-                ex.printStackTrace();
-            } catch(ClassNotFoundException ex) {
-                ex.printStackTrace();
-                Misc.log("Class was not found in GameStatePacket.");
-                this.gs = null;
-            } finally {
-              try {
-                    bis.close();
-                } catch (IOException ignore) {}
-                try {
-                    if (in != null) {
-                        in.close();
-                    }
-                } catch (IOException ignore) {}
-            }
-        } catch(UnsupportedEncodingException ex) {
-            Logger.getLogger(GameStatePacket.class.getName()).log(Level.SEVERE, null, ex);
+        if(payload.length == 0) {
+            throw new EOFException("Empty GameStatePacket.");
         }
-    }
-
-    @Override
-    public byte[] getData() {
-        if(this.gs == null) {
-            return null;
-        } else {
-            try {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                ObjectOutputStream out = null;
-                
-                byte[] data = null;
-                try {
-                    out = new ObjectOutputStream(bos);
-                    out.writeObject(this.gs);
-                    data = bos.toByteArray();
-                } catch(IOException e) {
-                    e.printStackTrace();
-                    data = null;
-                }finally {
-                    try {
-                        if(out != null) {
-                            out.close();
-                        }
-                    } catch (IOException ignore) {}
-                    try {
-                        bos.close();
-                    } catch (IOException ignore) {}
+        InputStream data = new ByteArrayInputStream(payload, 1, payload.length - 1);
+        switch(payload[0]) {
+            case FORMAT_COMPACT:
+                this.gs = GameStateCodec.read(new DataInputStream(data));
+                break;
+            case FORMAT_COMPRESSED:
+                if(compressor == null) {
+                    throw new StreamCorruptedException("Compressed GameStatePacket on a connection without compression.");
                 }
-                
-                //add the packet type code to the beginning of the byte array
-                int id = PacketTypes.GAMESTATE.getId();
-                String typeId = (id > 9) ? (id + "") : ("0" + id);  //make sure the id is 2 digits
-                byte[] typeCode = typeId.getBytes("ISO-8859-1");
-                
-                
-                byte[] typeAndData = concat(typeCode, data);
-                
-                return concat(typeAndData, PacketHandler.PACKET_SEPARATOR.getBytes("ISO-8859-1"));
-            } catch (UnsupportedEncodingException ex) {
-                Logger.getLogger(GameStatePacket.class.getName()).log(Level.SEVERE, null, ex);
-                return null;
-            }
+                byte[] state = compressor.inflate(payload, 1, payload.length - 1);
+                this.gs = GameStateCodec.read(new DataInputStream(new ByteArrayInputStream(state)));
+                break;
+            case FORMAT_SERIALIZED:
+                this.gs = readSerialized(data);
+                break;
+            default:
+                throw new StreamCorruptedException("Unknown GameStatePacket format " + payload[0] + ".");
         }
     }
     
+    private static GameState readSerialized(InputStream data) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(data);
+        try {
+            return (GameState) in.readObject();
+        } catch(ClassNotFoundException ex) {
+            throw new InvalidObjectException("Class was not found in GameStatePacket: " + ex.getMessage());
+        } catch(ClassCastException ex) {
+            throw new InvalidObjectException("GameStatePacket does not hold a GameState.");
+        } finally {
+            in.close();
+        }
+    }
+
     /**
-     * Concatenates two byte arrays into one byte array {A:B}
-     * @param A
-     * @param B
-     * @return The concatenated array.
+     * Compresses the state when the packet is written.
+     * @param compressor The compressor of the connection the packet is sent
+     * on, null to send the state uncompressed.
      */
-    private byte[] concat(byte[] A, byte[] B) {
-        int aLen = A.length;
-        int bLen = B.length;
-        //create an array which can hold both A and B arrays
-        byte[] C = new byte[aLen + bLen];
-        //copy A in the beginning of the new array
-        System.arraycopy(A, 0, C, 0, aLen);
-        //copy B starting from the first element after the last element of A
-        System.arraycopy(B, 0, C, aLen, bLen);
-        return C;
+    public void setCompressor(StateCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    @Override
+    protected int getSizeHint() {
+        return (snapshot != null) ? 2048 : 32 * 1024;
+    }
+
+    @Override
+    protected void writePayload(DataOutputStream out) throws IOException {
+        if(snapshot != null && compressor != null) {
+            compressor.write(snapshot, out);
+            return;
+        }
+        if(snapshot != null) {
+            out.writeByte(FORMAT_COMPACT);
+            GameStateCodec.write(snapshot, out);
+            return;
+        }
+        out.writeByte(FORMAT_SERIALIZED);
+        //the object stream is only flushed, closing it would close the frame stream
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(this.gs);
+        oos.flush();
     }
     
     public GameState getGameState() {
+        if(this.gs == null) {
+            this.gs = snapshot.toGameState();
+        }
         return this.gs;
     }
 }
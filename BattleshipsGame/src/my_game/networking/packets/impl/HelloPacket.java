@@ -1,45 +1,90 @@
 package my_game.networking.packets.impl;
 
-import java.io.UnsupportedEncodingException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import my_game.networking.StateCompressor;
 import my_game.networking.packets.Packet;
-import my_game.networking.packets.PacketHandler;
+import my_game.networking.server.Constants;
 
 /**
  * The hello packet is used to send
- * the username to other client/server.
+ * the username to other client/server, followed by the id of the 
+ * dictionary used to compress game states (0 if states can not be 
+ * compressed). Peers sending only the username do not compress.
+ * The hello of a server ends with the token of the session it opens,
+ * which the client has to give back to resume the session.
  * @author Ivaylo Parvanov
  */
 public class HelloPacket extends Packet {
 
 	private String username;
+	private int dictionaryId;
+	private long sessionToken;
 	
         /**
-         * Build a Hello Packet from the byte[] data, but make sure to
-         * remove the usual packet id (2 chars) from the beginning of the byte[] data.
-         * @param data 
+         * Build a Hello Packet from the payload of a received frame.
+         * @param payload 
+         * @throws IOException If the payload is malformed.
          */
-	public HelloPacket(byte[] data) {
-		this(readData(data));
+	public HelloPacket(byte[] payload) throws IOException {
+		super(PacketTypes.HELLO.getId());
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		username = in.readUTF();
+		if(in.available() >= 4) {
+			dictionaryId = in.readInt();
+		}
+		if(in.available() >= 8) {
+			sessionToken = in.readLong();
+		}
 	}
 	
 	public HelloPacket(String username) {
+		this(username, 0);
+	}
+	
+	/**
+	 * @param username
+	 * @param sessionToken Token of the session opened by a server, 0 if 
+	 * the sender opens no session.
+	 */
+	public HelloPacket(String username, long sessionToken) {
 		super(PacketTypes.HELLO.getId());	//since we an int is used, no need to explicitely write 00
 		//get the data into a String form
 		this.username = username;
+		this.dictionaryId = Constants.COMPRESSED_STATES ? StateCompressor.DICTIONARY_ID : 0;
+		this.sessionToken = sessionToken;
 	}
 
 	@Override
-	public byte[] getData() {
-            try {
-                //TODO Avoid using ~ as separator so that it can be used in passwords
-                return ("00" + this.username + PacketHandler.PACKET_SEPARATOR).getBytes("ISO-8859-1");
-            } catch (UnsupportedEncodingException ex) {
-                Logger.getLogger(HelloPacket.class.getName()).log(Level.SEVERE, null, ex);
-                return null;
-            }
+	protected void writePayload(DataOutputStream out) throws IOException {
+		out.writeUTF(this.username);
+		out.writeInt(dictionaryId);
+		if(sessionToken != 0) {
+			out.writeLong(sessionToken);
+		}
+	}
+	
+	/**
+	 * @return True if game states can be compressed on the connection this
+	 * packet was received on: both sides use the same dictionary.
+	 */
+	public boolean supportsCompression() {
+		return Constants.COMPRESSED_STATES && dictionaryId != 0 && dictionaryId == StateCompressor.DICTIONARY_ID;
 	}
 
+	/**
+	 * @return The username carried by this packet.
+	 */
+	public String getUsername() {
+		return username;
+	}
 	
+	/**
+	 * @return The token of the session opened by the server, 0 if none.
+	 */
+	public long getSessionToken() {
+		return sessionToken;
+	}
 }
@@ -0,0 +1,47 @@
+package my_game.networking.packets.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import my_game.networking.packets.Packet;
+
+/**
+ * A heartbeat packet carrying a timestamp. A PING is answered with a PONG 
+ * holding the same timestamp, which lets the sender of the ping measure the
+ * round trip time with its own clock.
+ */
+public class PingPacket extends Packet {
+
+    private long timestamp;
+    
+    /**
+     * @param timestamp Time the ping was sent, in the sender's System.nanoTime().
+     * @param reply True for a PONG answering a ping, false for a PING.
+     */
+    public PingPacket(long timestamp, boolean reply) {
+        super(reply ? PacketTypes.PONG.getId() : PacketTypes.PING.getId());
+        this.timestamp = timestamp;
+    }
+    
+    /**
+     * Build a ping or pong packet from the payload of a received frame.
+     * @param payload
+     * @param reply True if the frame is a PONG.
+     * @throws IOException If the payload is malformed.
+     */
+    public PingPacket(byte[] payload, boolean reply) throws IOException {
+        super(reply ? PacketTypes.PONG.getId() : PacketTypes.PING.getId());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        timestamp = in.readLong();
+    }
+    
+    @Override
+    protected void writePayload(DataOutputStream out) throws IOException {
+        out.writeLong(timestamp);
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,86 @@
+package my_game.networking.packets.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import my_game.networking.packets.Packet;
+
+/**
+ * Sent instead of a hello packet by a client reconnecting after it lost its
+ * connection, and sent back by the server. Both carry the id of their 
+ * player and the sequence number of the last packet they received from the
+ * other side, which then sends again only the packets after it. The client
+ * proves it owns the session with the token the server sent in its hello:
+ * the id of a player follows from its username, which anyone can see.
+ */
+public class ResumePacket extends Packet {
+    
+    private int playerId;
+    private long sessionToken;
+    private int lastSequence;
+    private boolean accepted;
+    
+    /**
+     * @param playerId Id of the player of the sender.
+     * @param sessionToken Token of the session to resume, 0 in the answer
+     * of the server.
+     * @param lastSequence Sequence number of the last packet received.
+     * @param accepted Whether the server resumes the session, always true 
+     * for the request of the client.
+     */
+    public ResumePacket(int playerId, long sessionToken, int lastSequence, boolean accepted) {
+        super(PacketTypes.RESUME.getId());
+        this.playerId = playerId;
+        this.sessionToken = sessionToken;
+        this.lastSequence = lastSequence;
+        this.accepted = accepted;
+    }
+    
+    /**
+     * Build a resume packet from the payload of a received frame.
+     * @param payload
+     * @throws IOException If the payload is malformed.
+     */
+    public ResumePacket(byte[] payload) throws IOException {
+        super(PacketTypes.RESUME.getId());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        playerId = in.readInt();
+        sessionToken = in.readLong();
+        lastSequence = in.readInt();
+        accepted = in.readBoolean();
+    }
+
+    @Override
+    protected void writePayload(DataOutputStream out) throws IOException {
+        out.writeInt(playerId);
+        out.writeLong(sessionToken);
+        out.writeInt(lastSequence);
+        out.writeBoolean(accepted);
+    }
+    
+    public int getPlayerId() {
+        return playerId;
+    }
+    
+    /**
+     * @return The token of the session to resume.
+     */
+    public long getSessionToken() {
+        return sessionToken;
+    }
+    
+    /**
+     * @return The sequence number of the last packet the sender received.
+     */
+    public int getLastSequence() {
+        return lastSequence;
+    }
+    
+    /**
+     * @return False if the server refused to resume the session.
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+}
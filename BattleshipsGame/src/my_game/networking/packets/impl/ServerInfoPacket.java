@@ -4,14 +4,13 @@
  */
 package my_game.networking.packets.impl;
 
-import java.io.UnsupportedEncodingException;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import my_game.networking.packets.Packet;
-import my_game.networking.packets.PacketHandler;
-import my_game.util.GameException;
 
 /**
  * A packet used to communicate basic information about the server to clients, 
@@ -24,63 +23,71 @@ public class ServerInfoPacket extends Packet {
     public String playerName;
     public InetAddress ipAddress;
     public boolean isLoaded;
+    /** Number of players in the match, the host included. */
+    public int playerCount;
+    public MatchStatus status;
     
+    /**
+     * Where the match of a server is at.
+     */
+    public static enum MatchStatus {
+        /** Waiting for a player to join. */
+        Waiting,
+        /** Both players are connected. */
+        Playing,
+        /** The other player lost its connection and may resume the session. */
+        Suspended
+    }
     
-    public ServerInfoPacket(byte[] data) throws GameException {
+    /**
+     * Build a server info packet from the payload of a received frame.
+     * @param payload
+     * @throws IOException If the payload is malformed.
+     */
+    public ServerInfoPacket(byte[] payload) throws IOException {
         super(PacketTypes.SERVERINFO.getId());
-        try {
-            //packet type checking
-            String message = new String(data, "ISO-8859-1");
-            //get the packet type using the lookupPacket method on
-            //the first 2 characters of the message String (the packet id)
-            String typeCode = message.substring(0,2);
-            PacketTypes type = Packet.lookupPacket(typeCode);
-            if(type.getId() != this.packetId) {
-                throw new GameException("Wrong packet type found in ServerInfoPacket constructor: " + typeCode);
-            }
-            message = readData(data);
-            message = message.split(PacketHandler.PACKET_SEPARATOR)[0];    //clearing the ending '#' symbol
-            String args[] = message.split("~");
-            //now the message is split into the different server info pieces
-            //parse info
-            serverName = args[0];
-            playerName = args[1];
-            try {
-                ipAddress = InetAddress.getByName(args[2]);
-            } catch (UnknownHostException ex) {
-                Logger.getLogger(ServerInfoPacket.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            //finally extract the is loaded boolean
-            if(args[3].equals("1")) {
-                isLoaded = true;
-            } else {
-                isLoaded = false;
-            }
-        } catch (UnsupportedEncodingException ex) {
-            Logger.getLogger(ServerInfoPacket.class.getName()).log(Level.SEVERE, null, ex);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        serverName = in.readUTF();
+        playerName = in.readUTF();
+        //the raw address bytes, 4 for IPv4 and 16 for IPv6
+        byte[] address = new byte[in.readUnsignedByte()];
+        in.readFully(address);
+        ipAddress = InetAddress.getByAddress(address);
+        isLoaded = in.readBoolean();
+        playerCount = in.readUnsignedByte();
+        int s = in.readUnsignedByte();
+        if(s >= MatchStatus.values().length) {
+            throw new StreamCorruptedException("Invalid match status: " + s);
         }
+        status = MatchStatus.values()[s];
     }
     
     public ServerInfoPacket(String serverName, String playerName, InetAddress ipAddress, boolean isLoaded) {
+        this(serverName, playerName, ipAddress, isLoaded, 1, MatchStatus.Waiting);
+    }
+    
+    public ServerInfoPacket(String serverName, String playerName, InetAddress ipAddress, boolean isLoaded,
+            int playerCount, MatchStatus status) {
         super(PacketTypes.SERVERINFO.getId());
         
         this.isLoaded = isLoaded;
+        this.playerCount = playerCount;
+        this.status = status;
         this.serverName = serverName;
         this.playerName = playerName;
         this.ipAddress = ipAddress;
     }
 
     @Override
-    public byte[] getData() {
-        int id = PacketTypes.SERVERINFO.getId();
-        String typeId = (id > 9) ? (id + "") : ("0" + id);  //make sure the id is 2 digits
-        String ret = (typeId + serverName + "~" + playerName + "~" + ipAddress.getHostAddress() + "~" + (isLoaded ? "1" : "0") + PacketHandler.PACKET_SEPARATOR);
-        try {
-            return ret.getBytes("ISO-8859-1");
-        } catch (UnsupportedEncodingException ex) {
-            Logger.getLogger(ServerInfoPacket.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
-        }
+    protected void writePayload(DataOutputStream out) throws IOException {
+        out.writeUTF(serverName);
+        out.writeUTF(playerName);
+        byte[] address = ipAddress.getAddress();
+        out.writeByte(address.length);
+        out.write(address);
+        out.writeBoolean(isLoaded);
+        out.writeByte(playerCount);
+        out.writeByte(status.ordinal());
     }
     
 }
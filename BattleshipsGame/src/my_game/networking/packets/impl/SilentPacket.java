@@ -4,30 +4,22 @@
  */
 package my_game.networking.packets.impl;
 
-import java.io.UnsupportedEncodingException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.DataOutputStream;
 import my_game.networking.packets.Packet;
 
 /**
- *
+ * An empty packet, sent to check that a connection is still alive.
  * @author Ivo
  */
 public class SilentPacket extends Packet {
 
     public SilentPacket() {
-        super(PacketTypes.HELLO.getId());
+        super(PacketTypes.SILENT.getId());
     }
     
     @Override
-    public byte[] getData() {
-            try {
-                //TODO Avoid using ~ as separator so that it can be used in passwords
-                return ("05").getBytes("ISO-8859-1");
-            } catch (UnsupportedEncodingException ex) {
-                Logger.getLogger(SilentPacket.class.getName()).log(Level.SEVERE, null, ex);
-                return null;
-            }
+    protected void writePayload(DataOutputStream out) {
+        //no payload, the header is enough
     }
     
 }
@@ -0,0 +1,42 @@
+package my_game.networking.packets.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import my_game.networking.packets.Packet;
+
+/**
+ * Sent by a spectator on the server info port, after reading the server
+ * info, to watch the match hosted by the server instead of closing.
+ */
+public class SpectatePacket extends Packet {
+
+	private String username;
+
+	/**
+	 * Build a spectate packet from the payload of a received frame.
+	 * @param payload
+	 * @throws IOException If the payload is malformed.
+	 */
+	public SpectatePacket(byte[] payload) throws IOException {
+		this(new DataInputStream(new ByteArrayInputStream(payload)).readUTF());
+	}
+
+	public SpectatePacket(String username) {
+		super(PacketTypes.SPECTATE.getId());
+		this.username = username;
+	}
+
+	@Override
+	protected void writePayload(DataOutputStream out) throws IOException {
+		out.writeUTF(this.username);
+	}
+
+	/**
+	 * @return The username of the spectator.
+	 */
+	public String getUsername() {
+		return username;
+	}
+}
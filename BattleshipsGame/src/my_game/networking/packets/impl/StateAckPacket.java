@@ -0,0 +1,56 @@
+package my_game.networking.packets.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import my_game.networking.packets.Packet;
+
+/**
+ * Sent back for every game state or delta received. It either acknowledges
+ * the state now held by the receiver (identified by its checksum), or asks 
+ * the sender for a full snapshot when a delta could not be applied.
+ */
+public class StateAckPacket extends Packet {
+    
+    private int checksum;
+    private boolean resync;
+    
+    public StateAckPacket(int checksum, boolean resync) {
+        super(PacketTypes.STATE_ACK.getId());
+        this.checksum = checksum;
+        this.resync = resync;
+    }
+    
+    /**
+     * Build an acknowledgement packet from the payload of a received frame.
+     * @param payload
+     * @throws IOException If the payload is malformed.
+     */
+    public StateAckPacket(byte[] payload) throws IOException {
+        super(PacketTypes.STATE_ACK.getId());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        checksum = in.readInt();
+        resync = in.readBoolean();
+    }
+
+    @Override
+    protected void writePayload(DataOutputStream out) throws IOException {
+        out.writeInt(checksum);
+        out.writeBoolean(resync);
+    }
+    
+    /**
+     * @return The checksum of the state acknowledged.
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+    
+    /**
+     * @return True if the receiver needs a full snapshot.
+     */
+    public boolean isResync() {
+        return resync;
+    }
+}
@@ -4,12 +4,11 @@
  */
 package my_game.networking.packets.impl;
 
-import java.io.UnsupportedEncodingException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import my_game.networking.packets.Packet;
-import my_game.networking.packets.PacketHandler;
-import my_game.util.GameException;
 
 /**
  *
@@ -25,45 +24,20 @@ public class VotePacket extends Packet {
         this.vote = vote;
     }
     
-    public VotePacket(byte[] data) {
+    /**
+     * Build a vote packet from the payload of a received frame.
+     * @param payload
+     * @throws IOException If the payload is malformed.
+     */
+    public VotePacket(byte[] payload) throws IOException {
         super(PacketTypes.VOTE.getId());
-        try {
-            //packet type checking
-            String message = new String(data, "ISO-8859-1");
-            
-            //get the packet type using the lookupPacket method on 
-            //the first 2 characters of the message String (the packet id)
-            String typeCode = message.substring(0,2);
-            PacketTypes type = Packet.lookupPacket(typeCode);
-            if(type.getId() != this.packetId) {
-                Logger.getLogger(VotePacket.class.getName()).log(Level.SEVERE, null, 
-                        new GameException("Wrong packet type found in ServerInfoPacket constructor: " + typeCode));
-            }
-            
-            message = readData(data);
-            message = message.split(PacketHandler.PACKET_SEPARATOR)[0];    //clearing the ending '#' symbol
-            if(message.charAt(0) == '1') {
-                vote = true;
-            } else {
-                vote = false;
-            }
-        } catch (UnsupportedEncodingException ex) {
-            Logger.getLogger(VotePacket.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        vote = in.readBoolean();
     }
     
     @Override
-    public byte[] getData() {
-        try {
-            String voteString = vote ? "1" : "0";
-            int id = PacketTypes.VOTE.getId();
-            String typeId = (id > 9) ? (id + "") : ("0" + id);  //make sure the id is 2 digits
-
-            return (typeId + voteString + PacketHandler.PACKET_SEPARATOR).getBytes("ISO-8859-1");
-        } catch (UnsupportedEncodingException ex) {
-            Logger.getLogger(VotePacket.class.getName()).log(Level.SEVERE, null, ex);
-            return null;
-        }
+    protected void writePayload(DataOutputStream out) throws IOException {
+        out.writeBoolean(vote);
     }
     
     public boolean getVote() {
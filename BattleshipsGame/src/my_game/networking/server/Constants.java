@@ -5,6 +5,18 @@ public class Constants {
 	/** Maximum amount of connections allowed on the server at a given time. */
 	public static final int MAX_CONNECTIONS = 512;
 	
+	/** Number of I/O threads used by the non-blocking multi-match server. */
+	public static final int IO_THREADS = 4;
+	
+	/** When true, game states are sent as the changes from the last state
+	 * acknowledged by the peer instead of in full. */
+	public static final boolean DELTA_STATE_UPDATES = true;
+	
+	/** When true, the host only sends to the other player the part of the
+	 * game states that player's radar and sonar can see, and sends its own
+	 * turns as such states instead of actions. */
+	public static final boolean FOG_OF_WAR_STATES = true;
+	
 	/** The port on which the server is listening. */
 	public static final int SERVER_PORT = 9955;
         
@@ -12,6 +24,102 @@ public class Constants {
          * requests. The server will answer on this same port with its 
          * detailed information. */
         public static final int SERVER_INFO_PORT = 9956;
+        
+        /** Time in milliseconds a connection to the server info port can
+         * stay open without asking to spectate. */
+        public static final int INFO_TIMEOUT = 1000;
+	
+        /** Time in milliseconds between two pings sent on a connection. */
+        public static final int PING_INTERVAL = 1000;
+        
+        /** Time in milliseconds without receiving anything after which a 
+         * connection is considered dead and closed. */
+        public static final int HEARTBEAT_TIMEOUT = 5000;
+        
+        /** The round trip time of a connection is logged every this many pongs. */
+        public static final int RTT_LOG_INTERVAL = 60;
+        
+        /** Number of packets waiting to be written to a peer after which 
+         * the peer is considered not to keep up and the connection is closed. */
+        public static final int OUTBOUND_QUEUE_SIZE = 64;
+        
+        /** Time in milliseconds a write to a peer can be blocked before the
+         * connection is closed. */
+        public static final int OUTBOUND_STALL_TIMEOUT = 5000;
+        
+        /** When true, full game states are compressed if the peer supports 
+         * it too. */
+        public static final boolean COMPRESSED_STATES = true;
+        
+        /** Size in bytes under which an encoded game state is not worth
+         * compressing. */
+        public static final int COMPRESSION_THRESHOLD = 256;
+        
+        /** The bytes saved by compression are logged every this many 
+         * compressed states. */
+        public static final int COMPRESSION_LOG_INTERVAL = 50;
+        
+        /** Number of coral reefs remembered on a connection, a reef sent
+         * again is then sent as its hash only. */
+        public static final int REEF_CACHE_SIZE = 16;
+        
+        /** Number of sent packets kept to be sent again when a lost 
+         * connection is resumed. */
+        public static final int REPLAY_BUFFER_SIZE = 256;
+        
+        /** Time in milliseconds during which a lost connection can be 
+         * resumed, after which the other player is considered gone. */
+        public static final int RESUME_GRACE = 15000;
+        
+        /** Time in milliseconds between two attempts to reconnect. */
+        public static final int RECONNECT_INTERVAL = 1000;
+        
+        /** Number of turns the game states are held back before being shown
+         * to spectators, 0 to show them right away. Two turns let each player
+         * play once more before the other can learn anything from them. */
+        public static final int SPECTATOR_DELAY = 2;
+        
+        /** Number of game states waiting to be written to a spectator, older
+         * ones are skipped when a spectator can not keep up. */
+        public static final int SPECTATOR_QUEUE_SIZE = 4;
+        
+        /** Time in milliseconds a write to a spectator can take before the
+         * spectator is dropped. */
+        public static final int SPECTATOR_WRITE_TIMEOUT = 5000;
+        
+        /** Time in milliseconds between two logs of the network metrics. */
+        public static final int METRICS_LOG_INTERVAL = 60000;
+        
+        /** Multicast group on which servers announce themselves on the LAN. */
+        public static final String DISCOVERY_GROUP = "239.255.66.83";
+        
+        /** Port of the discovery multicast group. */
+        public static final int DISCOVERY_PORT = 9957;
+        
+        /** Time in milliseconds between two announcements of a server. */
+        public static final int ANNOUNCE_INTERVAL = 1000;
+        
+        /** Time in milliseconds after which a server which stopped announcing
+         * itself is removed from the server list. */
+        public static final int SERVER_EXPIRY = 3500;
+        
+        /** Size of the buffer datagrams are received into. */
+        public static final int MAX_DATAGRAM_SIZE = 1024;
+        
+        /** Rating of a player who has not played yet. */
+        public static final int DEFAULT_RATING = 1500;
+        
+        /** Largest rating difference between two players paired by the
+         * matchmaking as soon as they are queued. */
+        public static final int MATCH_WINDOW = 50;
+        
+        /** Rating points added to the window of a queued player for every
+         * second it waits. */
+        public static final int MATCH_WIDENING = 25;
+        
+        /** Time in milliseconds between two pairings of the players left
+         * waiting by the matchmaking. */
+        public static final int MATCHMAKING_INTERVAL = 500;
 	
 	/** A string defining the server's name. */
 	public static final String SERVER_NAME = "Game Networking Demo Server";
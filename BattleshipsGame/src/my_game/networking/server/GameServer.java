@@ -1,24 +1,37 @@
 package my_game.networking.server;
 
 import com.bulletphysics.collision.dispatch.SimulationIslandManager;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import my_game.models.game_components.ActionCommand;
 import my_game.models.game_components.CoralReef;
 import my_game.models.game_components.GameState;
 import my_game.models.player_components.Player;
 import my_game.networking.NetEntityListener;
+import my_game.networking.Heartbeat;
+import my_game.networking.NetMetrics;
 import my_game.networking.NetworkEntity;
+import my_game.networking.ReefCache;
+import my_game.networking.OutboundQueue;
+import my_game.networking.ReplayBuffer;
+import my_game.networking.StateSync;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.PacketFrame;
 import my_game.networking.packets.PacketHandler;
 import my_game.networking.packets.impl.CoralReefPacket;
-import my_game.networking.packets.impl.GameStatePacket;
 import my_game.networking.packets.impl.HelloPacket;
+import my_game.networking.packets.impl.ResumePacket;
 import my_game.networking.packets.impl.ServerInfoPacket;
 import my_game.networking.packets.impl.SilentPacket;
 import my_game.networking.packets.impl.VotePacket;
@@ -30,14 +43,15 @@ import my_game.util.Misc;
 public class GameServer implements NetworkEntity {
 
     private final int CONNECTION_TIMEOUT = 1000;
+    /** Draws the tokens of the sessions. */
+    private static final SecureRandom TOKENS = new SecureRandom();
             
     /**
      * Socket on which the server accepts clients. */
     private ServerSocket socket;
     /**
-     * Socket on which the server receives info requests and replies to them
-     * with the server info. */
-    private ServerSocket infoSocket;
+     * Replies to the info requests with the server info. */
+    private InfoResponder infoResponder;
     /**
      * Assigned on connection with a client. */
     private Socket server;
@@ -50,6 +64,27 @@ public class GameServer implements NetworkEntity {
     /**
      * Packet handler for this server. */
     private PacketHandler packetHandler = null;
+    /**
+     * Tracks the game states exchanged with the client. */
+    private StateSync stateSync;
+    /**
+     * Pings the client and detects when it stops answering. */
+    private Heartbeat heartbeat;
+    /**
+     * Numbers the packets sent to the client, to resume a lost connection. */
+    private final ReplayBuffer replay = new ReplayBuffer(Constants.REPLAY_BUFFER_SIZE);
+    /**
+     * The reefs sent to the client, sent again as their hash only. */
+    private final ReefCache sentReefs = new ReefCache();
+    /**
+     * Packets waiting to be written to the client. */
+    private OutboundQueue outbound;
+    /**
+     * Counts the packets exchanged with the clients. */
+    private final NetMetrics metrics = new NetMetrics("server");
+    /**
+     * Streams the match to the spectators. */
+    private final SpectatorHub spectators = new SpectatorHub();
     /**
      * A reference to the player hosting the server. */
     private Player serverHost;
@@ -61,6 +96,8 @@ public class GameServer implements NetworkEntity {
     /** A reference to the main thread is necessary to stopNet it in case the server
      * is stopped while it is waiting for a client to connect. */
     private Thread mainThread;
+    /** Announces this server on the LAN discovery group. */
+    private ServerAnnouncer announcer;
     
     private boolean serverRunning = false;
     /**
@@ -73,8 +110,16 @@ public class GameServer implements NetworkEntity {
     private boolean clientConnected, invalidReceived;
     
     private Player connectedPlayer;
+    /**
+     * Time at which the connection of the client was lost, 0 if the session
+     * with the client is not waiting to be resumed. */
+    private long suspendedAt;
+    /**
+     * Token sent to the client in the hello of its session, which it has to
+     * give back to resume it. 0 while there is no session. */
+    private long sessionToken;
     
-    public boolean isLoaded;
+    private boolean isLoaded;
 
     public GameServer(Player hostPlayer, String serverName, boolean isLoaded) {
         this.serverHost = hostPlayer;
@@ -88,7 +133,15 @@ public class GameServer implements NetworkEntity {
             //start server
             socket = new ServerSocket(Constants.SERVER_PORT);
             //start the server info request server too
-            infoSocket = new ServerSocket(Constants.SERVER_INFO_PORT);
+            infoResponder = new InfoResponder(serverInfo(), spectators);
+            infoResponder.start();
+            //and announce the server on the LAN
+            try {
+                announcer = new ServerAnnouncer(serverInfo());
+                announcer.start();
+            } catch (IOException e) {
+                Misc.log("Server can not be announced on the LAN: " + e.getMessage());
+            }
             //if not exception, set the running flag to true
             serverRunning = true;
             Misc.log("Server initialised on port " + Constants.SERVER_PORT);
@@ -98,14 +151,71 @@ public class GameServer implements NetworkEntity {
         }
 
         //initialise handlers and other objects used by this class
-        packetHandler = new PacketHandler(this);
+        stateSync = new StateSync(this);
+        heartbeat = new Heartbeat(this, new Runnable() {
+            public void run() {
+                //the read loop fails once the socket is closed and waits for another client
+                closeClientSocket();
+            }
+        });
+        packetHandler = new PacketHandler(this, stateSync, heartbeat);
+        outbound = new OutboundQueue("client", new Runnable() {
+            public void run() {
+                closeClientSocket();
+            }
+        }, metrics);
+        metrics.startLogging();
 
         //start a new main thread
         mainThread = new Thread(new MainServerThread());
         mainThread.start();
-        //start also a server information request thread
-        Thread tInfo = new Thread(new ServerInfoThread());
-        tInfo.start();
+    }
+    
+    /**
+     * @return True if the game hosted was loaded from a save.
+     */
+    public boolean isLoaded() {
+        return isLoaded;
+    }
+    
+    /**
+     * @param isLoaded True if the game hosted is loaded from a save.
+     */
+    public void setLoaded(boolean isLoaded) {
+        if(this.isLoaded != isLoaded) {
+            this.isLoaded = isLoaded;
+            updateInfo();
+        }
+    }
+    
+    /**
+     * @return The information sent to the clients looking for a server.
+     */
+    private ServerInfoPacket serverInfo() {
+        ServerInfoPacket.MatchStatus status;
+        if(suspendedAt != 0) {
+            status = ServerInfoPacket.MatchStatus.Suspended;
+        } else if(clientConnected) {
+            status = ServerInfoPacket.MatchStatus.Playing;
+        } else {
+            status = ServerInfoPacket.MatchStatus.Waiting;
+        }
+        int playerCount = (status == ServerInfoPacket.MatchStatus.Waiting) ? 1 : 2;
+        return new ServerInfoPacket(serverName, serverHost.getUsername(), serverHost.getIP(), isLoaded, playerCount, status);
+    }
+    
+    /**
+     * Sends the new server information to the clients looking for a server,
+     * called when a client connects or leaves, or the game loaded changes.
+     */
+    private void updateInfo() {
+        ServerInfoPacket info = serverInfo();
+        if(infoResponder != null) {
+            infoResponder.setInfo(info);
+        }
+        if(announcer != null) {
+            announcer.setInfo(info);
+        }
     }
     
     public void addNetListener(NetEntityListener l) {
@@ -127,7 +237,15 @@ public class GameServer implements NetworkEntity {
                 server.close();
             }
             socket.close();
-            infoSocket.close();
+            if(infoResponder != null) {
+                infoResponder.stop();
+            }
+            if(announcer != null) {
+                announcer.stop();
+            }
+            spectators.stop();
+            outbound.stop();
+            metrics.stopLogging();
             if(in != null) {
                 in.close();
             }
@@ -140,13 +258,107 @@ public class GameServer implements NetworkEntity {
     }
 
     /**
-     * Sends a data array to a given address and port.
+     * Closes the socket of the connected client, if any.
+     */
+    private void closeClientSocket() {
+        try {
+            if(server != null) {
+                server.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Encodes a packet and writes its frame on an output stream, from the
+     * calling thread. Only used on streams the OutboundQueue does not write to.
      *
-     * @param data data to send to the client.
+     * @param packet Packet to send to the client.
+     */
+    private void writePacket(Packet packet, DataOutputStream output) throws IOException {
+        synchronized(output) {
+            packet.writeTo(output);
+            output.flush();
+        }
+    }
+
+    /**
+     * Numbers a packet for the connected client and sends it. While the 
+     * connection is lost the packet is only kept, to be sent once the client
+     * resumes the session.
+     * @param packet 
      */
-    public void sendData(byte[] data, DataOutputStream output) throws IOException {
-        //send packet
-        output.write(data);
+    private void writeToClient(Packet packet) {
+        synchronized(replay) {
+            replay.record(packet);
+            if(clientConnected) {
+                outbound.offer(packet);
+            }
+        }
+    }
+
+    /**
+     * Resumes the session of a client which reconnected after losing its
+     * connection, and sends it the packets it missed.
+     * @param request The resume packet sent by the client.
+     * @return False if the client does not own the session waiting to be resumed.
+     */
+    private boolean resumeSession(ResumePacket request) throws IOException {
+        if(suspendedAt == 0 || connectedPlayer == null || request.getPlayerId() != connectedPlayer.getID()
+                || sessionToken == 0 || request.getSessionToken() != sessionToken) {
+            Misc.log("Resume of the session refused to " + server.getRemoteSocketAddress() + ".");
+            writePacket(new ResumePacket(serverHost.getID(), 0, 0, false), out);
+            return false;
+        }
+        List<Packet> missed;
+        synchronized(replay) {
+            writePacket(new ResumePacket(serverHost.getID(), 0, replay.getLastReceived(), true), out);
+            missed = replay.after(request.getLastSequence());
+            if(missed != null) {
+                for(Packet p: missed) {
+                    writePacket(p, out);
+                }
+            }
+            //packets sent from now on come after the missed ones
+            outbound.attach(out);
+            clientConnected = true;
+        }
+        if(missed == null) {
+            //too much was missed, send the whole game state instead
+            stateSync.resync();
+        }
+        suspendedAt = 0;
+        updateInfo();
+        Misc.log(connectedPlayer.getUsername() + " resumed the session.");
+        return true;
+    }
+
+    /**
+     * @return A random token for a new session, never 0.
+     */
+    private static long newSessionToken() {
+        long token;
+        do {
+            token = TOKENS.nextLong();
+        } while(token == 0);
+        return token;
+    }
+
+    /**
+     * Ends the session with the client, which can not be resumed anymore.
+     */
+    private void endSession() {
+        suspendedAt = 0;
+        sessionToken = 0;
+        alreadySet = false;
+        connectedPlayer = null;
+        updateInfo();
+        if(serverRunning) {
+            for(NetEntityListener l: listeners) {
+                l.onDisconnected();
+            }
+        }
     }
 
     /**
@@ -165,6 +377,7 @@ public class GameServer implements NetworkEntity {
         System.out.println("Player connected to server: " + p);
         if(!alreadySet) {
             this.connectedPlayer = p;
+            stateSync.setViewer(p);
             alreadySet = true;
         }
     }
@@ -176,14 +389,46 @@ public class GameServer implements NetworkEntity {
     }
 
     public void sendGameState(GameState gs) {
-        GameStatePacket p = new GameStatePacket(gs);
-        try {
-            this.sendData(p.getData(), out);
-        } catch (IOException ex) {
-            Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
+        stateSync.sendState(gs);
+        spectators.publish(gs);
+    }
+
+    public void sendAction(ActionCommand action, GameState gs) {
+        stateSync.sendAction(action, gs);
+        spectators.publish(gs);
+    }
+
+    public void sendActionToListeners(ActionCommand action, int checksum) {
+        for(NetEntityListener l: listeners) {
+            l.onActionReceive(action, checksum);
         }
     }
 
+    public void actionApplied(GameState gs) {
+        //not sent to the client, but the spectators have not seen it yet
+        spectators.publish(gs);
+    }
+
+    public void requestGameState() {
+        stateSync.requestState();
+    }
+
+    public int getPendingPacketCount() {
+        return packetHandler.getQueueDepth();
+    }
+
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    public NetMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void sendPacket(Packet packet) {
+        writeToClient(packet);
+    }
+
     public Player getConnectedPlayer() {
         return connectedPlayer;
     }
@@ -208,10 +453,10 @@ public class GameServer implements NetworkEntity {
      */
     public void sendCoralReefToListeners(CoralReef reef) {
         CoralReefPacket packet = new CoralReefPacket(reef);
-        try {
-            this.sendData(packet.getData(), out);
-        } catch (IOException ex) {
-            Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
+        synchronized(replay) {
+            //the client receives the reefs in the order they are remembered
+            sentReefs.onSend(packet);
+            writeToClient(packet);
         }
     }
 
@@ -223,11 +468,7 @@ public class GameServer implements NetworkEntity {
 
     public void sendVote(boolean vote) {
         VotePacket v = new VotePacket(vote);
-        try {
-            this.sendData(v.getData(), out);
-        } catch (IOException ex) {
-            Logger.getLogger(GameServer.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        writeToClient(v);
     }
 
     /**
@@ -254,67 +495,92 @@ public class GameServer implements NetworkEntity {
                     socket.setSoTimeout(CONNECTION_TIMEOUT);
                     server = socket.accept();
                     Misc.log(server.getRemoteSocketAddress() + " has connected.");
-                    clientConnected = true;
                     
                     //get the input and output streams which are used to send and receive messages from the client
-                    in = new DataInputStream(server.getInputStream());
+                    in = new DataInputStream(new BufferedInputStream(server.getInputStream()));
                     out = new DataOutputStream(server.getOutputStream());
 
-                    //send host's username to the connected client by creating a hello packet with the username
-                    sendData(new HelloPacket(serverHost.getUsername()).getData(), out);
-                    clientConnected = true;
-                    //notify all listeners that a client has connected
-                    for(NetEntityListener l: listeners) {
-                        l.onConnected();
+                    //the client opens with a hello, or asks to resume its lost connection
+                    server.setSoTimeout(Constants.HEARTBEAT_TIMEOUT);
+                    PacketFrame first = PacketFrame.read(in);
+                    server.setSoTimeout(0);
+                    if(first.getType().equals(Packet.PacketTypes.RESUME)) {
+                        if(!resumeSession(new ResumePacket(first.getPayload()))) {
+                            closeClientSocket();
+                            continue;
+                        }
+                    } else if(suspendedAt != 0) {
+                        //the session waits for its own client to come back
+                        Misc.log("Connection refused, waiting for " + connectedPlayer.getUsername() + " to resume.");
+                        closeClientSocket();
+                        continue;
+                    } else {
+                        //a new client holds no game state yet
+                        stateSync.reset();
+                        replay.reset();
+                        sentReefs.clear();
+                        outbound.attach(out);
+                        clientConnected = true;
+                        updateInfo();
+                        //send host's username to the connected client by creating a hello packet with the username,
+                        //and the token the client resumes the session with
+                        sessionToken = newSessionToken();
+                        writeToClient(new HelloPacket(serverHost.getUsername(), sessionToken));
+                        //notify all listeners that a client has connected
+                        for(NetEntityListener l: listeners) {
+                            l.onConnected();
+                        }
+                        replay.accept(first);
+                        packetHandler.handlePacket(first);
                     }
+                    heartbeat.start();
 
                     //server is listening until the client disconnects
                     while (clientConnected) {
-                        //construct packet object to save received data into
-                        byte[] data = new byte[24576];
-                        
-                        //wait to receive a packet
-                        in.read(data);
-                        
-                        if(invalidReceived) {
-                            //test if connection is still alive by sending silent
-                            try {
-                                sendData(new SilentPacket().getData(), out);
-                            } catch(IOException e) {
-                                clientConnected = false;
-                                Misc.log("Client disconnected.");
-                            } finally {
+                        try {
+                            //wait to receive a whole packet frame
+                            PacketFrame frame = PacketFrame.read(in);
+
+                            if(invalidReceived) {
+                                //test if connection is still alive by sending silent
+                                outbound.offer(new SilentPacket());
                                 invalidReceived = false;
                             }
+                            //handle packet, unless it was already received before a resume
+                            if(replay.accept(frame)) {
+                                packetHandler.handlePacket(frame);
+                            }
+                        } catch(IOException e) {
+                            //end of stream or a corrupted frame, the connection can not be used anymore
+                            clientConnected = false;
+                            Misc.log("Client disconnected.");
                         }
-                        //handle packet
-                        packetHandler.handlePacket(data);
                     }
-                    alreadySet = false;
-                    connectedPlayer = null;
+                    heartbeat.stop();
+                    outbound.detach();
+                    closeClientSocket();
+                    if(serverRunning && connectedPlayer != null) {
+                        //keep the session for a while, the client may come back
+                        suspendedAt = System.currentTimeMillis();
+                        updateInfo();
+                        Misc.log("Waiting for " + connectedPlayer.getUsername() + " to resume the session.");
+                    } else {
+                        endSession();
+                    }
                     //end of thread
-                } catch (IOException ignore) {}
+                } catch (SocketTimeoutException e) {
+                    //no client connected, or a client connected without saying hello
+                    closeClientSocket();
+                    if(suspendedAt != 0 && System.currentTimeMillis() - suspendedAt > Constants.RESUME_GRACE) {
+                        Misc.log(connectedPlayer.getUsername() + " did not resume the session.");
+                        endSession();
+                    }
+                } catch (IOException ignore) {
+                    clientConnected = false;
+                    outbound.detach();
+                    closeClientSocket();
+                }
             }   //serverRunning == false, endwhile
         }
     }
-
-    private class ServerInfoThread implements Runnable {
-
-        public void run() {
-            while (serverRunning) {
-                try {
-                    infoSocket.setSoTimeout(CONNECTION_TIMEOUT);
-                    
-                    Socket s = infoSocket.accept();
-                    DataOutputStream out = new DataOutputStream(s.getOutputStream());
-                    //create an info packet, send it on the s socket and close socket and stream
-                    ServerInfoPacket pkt = new ServerInfoPacket(serverName, serverHost.getUsername(), serverHost.getIP(), isLoaded);
-                    sendData(pkt.getData(), out);
-                    out.close();
-                    s.close();
-                } catch (IOException e) { }
-            }//serverRunning == false, endwhile
-            //just end the thread
-        }
-    }
 }
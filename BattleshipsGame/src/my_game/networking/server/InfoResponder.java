@@ -0,0 +1,295 @@
+package my_game.networking.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import my_game.networking.packets.FrameDecoder;
+import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.packets.PacketFrame;
+import my_game.networking.packets.impl.ServerInfoPacket;
+import my_game.networking.packets.impl.SpectatePacket;
+import my_game.util.Misc;
+
+/**
+ * Answers the server information requests of a GameServer from a single
+ * thread and a Selector, so a LAN full of scanners is answered without
+ * blocking on any of them. The info frame is encoded once, and again only
+ * when setInfo() is given different information.
+ * <p>
+ * Requests come two ways on SERVER_INFO_PORT:
+ * <ul>
+ * <li>a datagram holding a DiscoveryPacket is answered with a datagram
+ * holding the info frame;</li>
+ * <li>a TCP connection gets the info frame as soon as it is accepted. A
+ * spectator then sends a SpectatePacket and its socket is handed to the
+ * SpectatorHub, any other connection is closed once the client closes it
+ * or after INFO_TIMEOUT.</li>
+ * </ul>
+ */
+public class InfoResponder implements Runnable {
+
+    private final SpectatorHub spectators;
+    private final Selector selector;
+    private final ServerSocketChannel tcp;
+    private final DatagramChannel udp;
+    private final Thread thread;
+    /** The encoded info frame, replaced as a whole when the info changes. */
+    private volatile byte[] info;
+    private volatile boolean running;
+    private long replies;
+    /** The spectators found while handling the selected keys, handed over after. */
+    private final List<SelectionKey> handoffs = new ArrayList<SelectionKey>();
+
+    /**
+     * Binds SERVER_INFO_PORT, for TCP and UDP.
+     * @param info The information sent until setInfo() is called.
+     * @param spectators Receives the connections of the spectators.
+     * @throws IOException If the port can not be bound.
+     */
+    public InfoResponder(ServerInfoPacket info, SpectatorHub spectators) throws IOException {
+        this.info = info.getData();
+        this.spectators = spectators;
+        this.selector = Selector.open();
+        this.tcp = ServerSocketChannel.open();
+        this.udp = DatagramChannel.open();
+        try {
+            tcp.configureBlocking(false);
+            tcp.socket().setReuseAddress(true);
+            tcp.socket().bind(new InetSocketAddress(Constants.SERVER_INFO_PORT), Constants.MAX_CONNECTIONS);
+            tcp.register(selector, SelectionKey.OP_ACCEPT);
+            udp.configureBlocking(false);
+            udp.socket().bind(new InetSocketAddress(Constants.SERVER_INFO_PORT));
+            udp.register(selector, SelectionKey.OP_READ);
+        } catch(IOException ex) {
+            close();
+            throw ex;
+        }
+        this.thread = new Thread(this, "InfoResponder");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Answers with new information from now on. Information equal to the
+     * current one is not encoded again.
+     * @param info
+     */
+    public void setInfo(ServerInfoPacket info) {
+        byte[] data = info.getData();
+        if(!Arrays.equals(data, this.info)) {
+            this.info = data;
+        }
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * @return The number of requests answered so far.
+     */
+    public synchronized long getReplyCount() {
+        return replies;
+    }
+
+    public void run() {
+        ByteBuffer datagram = ByteBuffer.allocate(Constants.MAX_DATAGRAM_SIZE);
+        List<PacketFrame> frames = new ArrayList<PacketFrame>(1);
+        while(running) {
+            try {
+                selector.select(Constants.INFO_TIMEOUT);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while(it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if(!key.isValid()) {
+                        continue;
+                    }
+                    if(key.isAcceptable()) {
+                        accept();
+                    } else if(key.channel() == udp) {
+                        answerDatagrams(datagram, frames);
+                    } else {
+                        read(key, frames);
+                    }
+                }
+                handOff();
+                closeExpired();
+            } catch(IOException ex) {
+                Logger.getLogger(InfoResponder.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        close();
+    }
+
+    /**
+     * Accepts the pending connections and sends them the info frame.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while((channel = tcp.accept()) != null) {
+            if(selector.keys().size() > Constants.MAX_CONNECTIONS) {
+                channel.close();
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                ByteBuffer frame = ByteBuffer.wrap(info);
+                channel.write(frame);
+                if(frame.hasRemaining()) {
+                    //a frame this small always fits the socket buffer of a new connection
+                    channel.close();
+                    continue;
+                }
+                replied();
+                channel.register(selector, SelectionKey.OP_READ, new Request());
+            } catch(IOException ex) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads what a connection sent after the info frame: a spectator asking
+     * to watch the match, or the end of the stream.
+     */
+    private void read(SelectionKey key, List<PacketFrame> frames) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Request request = (Request) key.attachment();
+        try {
+            int n = channel.read(request.buffer);
+            if(n < 0) {
+                close(key);
+                return;
+            }
+            request.buffer.flip();
+            frames.clear();
+            request.decoder.decode(request.buffer, frames);
+            request.buffer.clear();
+            if(frames.isEmpty()) {
+                return;
+            }
+            PacketFrame frame = frames.get(0);
+            if(frame.getType() != PacketTypes.SPECTATE) {
+                close(key);
+                return;
+            }
+            request.username = new SpectatePacket(frame.getPayload()).getUsername();
+            key.cancel();
+            handoffs.add(key);
+        } catch(IOException ex) {
+            close(key);
+        }
+    }
+
+    /**
+     * Hands the connections of the spectators to the SpectatorHub, whose
+     * threads write to them with blocking sockets. A channel can only be
+     * made blocking once its cancelled key has been removed by a select.
+     */
+    private void handOff() throws IOException {
+        if(handoffs.isEmpty()) {
+            return;
+        }
+        selector.selectNow();
+        for(SelectionKey key: handoffs) {
+            SocketChannel channel = (SocketChannel) key.channel();
+            try {
+                channel.configureBlocking(true);
+                spectators.add(channel.socket(), ((Request) key.attachment()).username);
+            } catch(IOException ex) {
+                channel.close();
+            }
+        }
+        handoffs.clear();
+    }
+
+    /**
+     * Answers every discovery datagram received.
+     */
+    private void answerDatagrams(ByteBuffer datagram, List<PacketFrame> frames) throws IOException {
+        SocketAddress sender;
+        datagram.clear();
+        while((sender = udp.receive(datagram)) != null) {
+            datagram.flip();
+            frames.clear();
+            try {
+                new FrameDecoder().decode(datagram, frames);
+            } catch(IOException ex) {
+                //not a frame, ignore it
+            }
+            if(!frames.isEmpty() && frames.get(0).getType() == PacketTypes.DISCOVERY) {
+                udp.send(ByteBuffer.wrap(info), sender);
+                replied();
+            }
+            datagram.clear();
+        }
+    }
+
+    private synchronized void replied() {
+        replies++;
+    }
+
+    /**
+     * Closes the connections which did not ask to spectate within INFO_TIMEOUT.
+     */
+    private void closeExpired() {
+        long now = System.currentTimeMillis();
+        for(SelectionKey key: selector.keys()) {
+            Object attachment = key.attachment();
+            if(attachment instanceof Request && now - ((Request) attachment).acceptedAt > Constants.INFO_TIMEOUT) {
+                close(key);
+            }
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch(IOException ignore) { }
+    }
+
+    private void close() {
+        try {
+            for(SelectionKey key: selector.keys()) {
+                key.channel().close();
+            }
+            tcp.close();
+            udp.close();
+            selector.close();
+        } catch(IOException ex) {
+            Logger.getLogger(InfoResponder.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        Misc.log(getReplyCount() + " server info requests answered.");
+    }
+
+    /**
+     * A connection which got the info frame, and may still ask to spectate.
+     */
+    private static class Request {
+
+        final long acceptedAt = System.currentTimeMillis();
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        final FrameDecoder decoder = new FrameDecoder();
+        /** Set once the connection asked to spectate. */
+        String username;
+    }
+}
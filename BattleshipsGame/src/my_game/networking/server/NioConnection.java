@@ -0,0 +1,335 @@
+package my_game.networking.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameState;
+import my_game.models.player_components.Player;
+import my_game.networking.BufferPool;
+import my_game.networking.Heartbeat;
+import my_game.networking.NetEntityListener;
+import my_game.networking.NetMetrics;
+import my_game.networking.NetworkEntity;
+import my_game.networking.StateSync;
+import my_game.networking.packets.FrameDecoder;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.PacketFrame;
+import my_game.networking.packets.PacketHandler;
+import my_game.networking.packets.impl.CoralReefPacket;
+import my_game.networking.packets.impl.HelloPacket;
+import my_game.networking.packets.impl.SilentPacket;
+import my_game.networking.packets.impl.VotePacket;
+import my_game.util.Misc;
+
+/**
+ * One client connection of a NioGameServer. For the game logic it behaves 
+ * like the GameServer of a single match: received packets are handed to the
+ * listeners and the send methods write packets to the client. Reads and 
+ * writes are done by the I/O thread owning the channel, the send methods 
+ * only queue the data and can be called from any thread.
+ */
+public class NioConnection implements NetworkEntity {
+    
+    private final NioGameServer server;
+    private final NioGameServer.IoLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final ArrayList<PacketFrame> frames = new ArrayList<PacketFrame>();
+    /** Frames waiting to be written, the head one may be partially written.
+     * The buffers come from BufferPool.HEAP and go back once written. */
+    private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+    /** Set while a flush task is queued on the I/O thread. */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    
+    private final PacketHandler packetHandler;
+    private final StateSync stateSync;
+    private final Heartbeat heartbeat;
+    private final CopyOnWriteArrayList<NetEntityListener> listeners;
+    private final InetAddress remote;
+    private Player connectedPlayer;
+    
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flushScheduled.set(false);
+            flush();
+        }
+    };
+    
+    NioConnection(NioGameServer server, NioGameServer.IoLoop loop, SocketChannel channel, SelectionKey key) {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.remote = channel.socket().getInetAddress();
+        this.stateSync = new StateSync(this);
+        this.heartbeat = new Heartbeat(this, new Runnable() {
+            public void run() {
+                stopNet();
+            }
+        });
+        this.packetHandler = new PacketHandler(this, stateSync, heartbeat);
+        this.listeners = new CopyOnWriteArrayList<NetEntityListener>();
+    }
+    
+    /**
+     * Greets the client, which joins a match session once it said hello.
+     * Called on the I/O thread once the channel is registered.
+     */
+    void open() {
+        Misc.log(channel.socket().getRemoteSocketAddress() + " has connected.");
+        //send the server name to the connected client, like a host sends its username
+        sendPacket(new HelloPacket(server.getName()));
+        heartbeat.start();
+    }
+    
+    /**
+     * Reads what is available on the channel and handles every completed frame.
+     */
+    void onReadable() {
+        //the read buffer of the I/O thread, the decoder keeps any partial frame
+        ByteBuffer readBuffer = loop.readBuffer;
+        readBuffer.clear();
+        try {
+            int read = channel.read(readBuffer);
+            if(read < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            decoder.decode(readBuffer, frames);
+        } catch (IOException e) {
+            //end of stream or a corrupted frame, the connection can not be used anymore
+            close();
+            return;
+        }
+        for(PacketFrame frame: frames) {
+            packetHandler.handlePacket(frame);
+        }
+        frames.clear();
+    }
+    
+    void onWritable() {
+        flush();
+    }
+    
+    /**
+     * Writes as many queued frames as the socket accepts. If some are left,
+     * the I/O thread is asked to call again once the socket can be written.
+     * Only called on the I/O thread.
+     */
+    private void flush() {
+        if(closed.get()) {
+            return;
+        }
+        try {
+            ByteBuffer buffer;
+            while((buffer = outbound.peek()) != null) {
+                channel.write(buffer);
+                if(buffer.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                BufferPool.HEAP.release(outbound.poll());
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close();
+        }
+    }
+    
+    /**
+     * Queues a whole packet frame to be written to the client.
+     * @param data 
+     */
+    public void sendData(byte[] data) {
+        if(data == null) {
+            return;
+        }
+        ByteBuffer frame = BufferPool.HEAP.acquire(data.length);
+        frame.put(data);
+        frame.flip();
+        queue(frame);
+    }
+    
+    /**
+     * Queues an encoded frame taken from BufferPool.HEAP.
+     * @param frame 
+     */
+    private void queue(ByteBuffer frame) {
+        if(frame == null) {
+            return;
+        }
+        if(closed.get()) {
+            BufferPool.HEAP.release(frame);
+            return;
+        }
+        outbound.add(frame);
+        if(flushScheduled.compareAndSet(false, true)) {
+            loop.execute(flushTask);
+        }
+    }
+    
+    public int getPendingPacketCount() {
+        return packetHandler.getQueueDepth();
+    }
+
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * @return The metrics of the server, shared by all its connections.
+     */
+    public NetMetrics getMetrics() {
+        return server.getMetrics();
+    }
+
+    public void sendPacket(Packet packet) {
+        long start = System.nanoTime();
+        ByteBuffer frame = packet.encode();
+        if(frame != null) {
+            server.getMetrics().packetSent(packet.getType(), frame.remaining(), System.nanoTime() - start, 0);
+        }
+        queue(frame);
+    }
+    
+    /**
+     * Closes the channel and removes the connection from its session.
+     */
+    public void close() {
+        if(!closed.compareAndSet(false, true)) {
+            return;
+        }
+        Misc.log(remote + " disconnected.");
+        heartbeat.stop();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            Logger.getLogger(NioConnection.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        ByteBuffer frame;
+        while((frame = outbound.poll()) != null) {
+            BufferPool.HEAP.release(frame);
+        }
+        server.connectionClosed(this);
+        for(NetEntityListener l: listeners) {
+            l.onDisconnected();
+        }
+    }
+    
+    public boolean isClosed() {
+        return closed.get();
+    }
+    
+    public void addNetListener(NetEntityListener l) {
+        listeners.add(l);
+    }
+    
+    public void removeNetListener(NetEntityListener l) {
+        listeners.remove(l);
+    }
+    
+    /**
+     * Called when the client says hello. The client is logged in with its
+     * first hello: the connection is then queued for matchmaking.
+     * @param p
+     */
+    public void setOpponent(Player p) {
+        boolean login = (connectedPlayer == null);
+        this.connectedPlayer = p;
+        stateSync.setViewer(p);
+        if(login && !closed.get()) {
+            server.getLobby().enqueue(this);
+            if(closed.get()) {
+                //closed meanwhile, the lobby may have been left before the queuing
+                server.getLobby().leave(this);
+                return;
+            }
+            for(NetEntityListener l: listeners) {
+                l.onConnected();
+            }
+        }
+    }
+    
+    public Player getConnectedPlayer() {
+        return connectedPlayer;
+    }
+    
+    public void sendGameStateToListeners(GameState gs) {
+        for(NetEntityListener l: listeners) {
+            l.onGameStateReceive(gs);
+        }
+    }
+    
+    public void sendGameState(GameState gs) {
+        stateSync.sendState(gs);
+    }
+
+    public void sendAction(ActionCommand action, GameState gs) {
+        stateSync.sendAction(action, gs);
+    }
+
+    public void sendActionToListeners(ActionCommand action, int checksum) {
+        for(NetEntityListener l: listeners) {
+            l.onActionReceive(action, checksum);
+        }
+    }
+
+    public void actionApplied(GameState gs) {
+    }
+
+    public void requestGameState() {
+        stateSync.requestState();
+    }
+    
+    public void sendVote(boolean vote) {
+        sendPacket(new VotePacket(vote));
+    }
+    
+    public InetAddress getRemote() {
+        return remote;
+    }
+    
+    /**
+     * Sends a CoralReef object to the client, like GameServer does.
+     * @param reef The coral reef to send.
+     */
+    public void sendCoralReefToListeners(CoralReef reef) {
+        sendPacket(new CoralReefPacket(reef));
+    }
+    
+    public void sendVoteToListeners(boolean vote) {
+        for(NetEntityListener l: listeners) {
+            l.onVoteReceive(vote);
+        }
+    }
+    
+    public void invalidPacket() {
+        //test if the connection is still alive, a failed write closes it
+        sendPacket(new SilentPacket());
+    }
+    
+    public void stopNet() {
+        if(!closed.get()) {
+            loop.execute(new Runnable() {
+                public void run() {
+                    close();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package my_game.networking.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import my_game.controller.GameLobby;
+import my_game.networking.BufferPool;
+import my_game.networking.NetMetrics;
+import my_game.util.Misc;
+
+/**
+ * A non-blocking server able to host many matches from one process. Client 
+ * connections are multiplexed on a small fixed pool of I/O threads, each one
+ * running its own Selector, and every connection is routed by the GameLobby
+ * to a match session. Each connection is a NetworkEntity, so it speaks the
+ * same protocol as a GameServer and the existing clients can connect to it.
+ */
+public class NioGameServer {
+    
+    /** Name of the server, sent to every client in the hello packet. */
+    private final String serverName;
+    private final int port;
+    private final GameLobby lobby;
+    /** The I/O threads, the first one also accepts the new connections. */
+    private final IoLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    
+    /** Counts the packets of every connection. */
+    private final NetMetrics metrics;
+    
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean serverRunning = false;
+    
+    public NioGameServer(String serverName, GameLobby lobby) {
+        this(serverName, Constants.SERVER_PORT, Constants.IO_THREADS, lobby);
+    }
+    
+    public NioGameServer(String serverName, int port, int ioThreads, GameLobby lobby) {
+        this.serverName = serverName;
+        this.port = port;
+        this.lobby = lobby;
+        this.loops = new IoLoop[ioThreads];
+        this.metrics = new NetMetrics(serverName);
+    }
+    
+    /**
+     * Binds the server socket and starts the I/O threads.
+     * @throws IOException If the port can not be bound.
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port), Constants.MAX_CONNECTIONS);
+        
+        serverRunning = true;
+        metrics.startLogging();
+        for(int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop(i);
+        }
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        for(IoLoop loop: loops) {
+            loop.thread.start();
+        }
+        Misc.log("Non-blocking server initialised on port " + port + " with " + loops.length + " I/O threads.");
+    }
+    
+    /**
+     * Stops the I/O threads and closes every connection.
+     */
+    public void stop() {
+        serverRunning = false;
+        metrics.stopLogging();
+        for(IoLoop loop: loops) {
+            if(loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+        try {
+            if(serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(NioGameServer.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    public String getName() {
+        return serverName;
+    }
+    
+    /**
+     * @return The packet counters and timings of all the connections.
+     */
+    public NetMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public GameLobby getLobby() {
+        return lobby;
+    }
+    
+    /**
+     * @return The number of clients currently connected.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+    
+    /**
+     * Called by a connection once its channel has been closed.
+     * @param connection 
+     */
+    void connectionClosed(NioConnection connection) {
+        connectionCount.decrementAndGet();
+        lobby.leave(connection);
+    }
+    
+    /**
+     * Accepts all pending connections and hands them to the I/O threads in
+     * turn. Connections beyond Constants.MAX_CONNECTIONS are closed right away.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while((channel = serverChannel.accept()) != null) {
+            if(connectionCount.incrementAndGet() > Constants.MAX_CONNECTIONS) {
+                connectionCount.decrementAndGet();
+                Misc.log("Connection refused, the server is full: " + channel.socket().getRemoteSocketAddress());
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            IoLoop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+            loop.register(channel);
+        }
+    }
+    
+    /**
+     * One I/O thread and its selector. Other threads only talk to it through
+     * its task queue, so channel registration and interest changes all happen
+     * on the I/O thread.
+     */
+    class IoLoop implements Runnable {
+        
+        /** Size of the buffer the channels of this thread are read into. */
+        private static final int READ_BUFFER_SIZE = 64 * 1024;
+        
+        final Selector selector;
+        final Thread thread;
+        /** Shared by the connections of this thread, each read is fully
+         * decoded before the next one. */
+        final ByteBuffer readBuffer;
+        private final ConcurrentLinkedQueue<Runnable> tasks;
+        
+        IoLoop(int index) throws IOException {
+            selector = Selector.open();
+            tasks = new ConcurrentLinkedQueue<Runnable>();
+            readBuffer = BufferPool.DIRECT.acquire(READ_BUFFER_SIZE);
+            thread = new Thread(this, "nio-server-" + index);
+            thread.setDaemon(true);
+        }
+        
+        /**
+         * Runs a task on this I/O thread.
+         * @param task 
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if(Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+        
+        void register(final SocketChannel channel) {
+            execute(new Runnable() {
+                public void run() {
+                    try {
+                        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                        NioConnection connection = new NioConnection(NioGameServer.this, IoLoop.this, channel, key);
+                        key.attach(connection);
+                        connection.open();
+                    } catch (IOException ex) {
+                        Logger.getLogger(NioGameServer.class.getName()).log(Level.SEVERE, null, ex);
+                        connectionCount.decrementAndGet();
+                        try {
+                            channel.close();
+                        } catch (IOException ignore) {}
+                    }
+                }
+            });
+        }
+        
+        public void run() {
+            while(serverRunning) {
+                try {
+                    //tasks queued by this thread itself do not wake the selector up,
+                    //so they are run before blocking
+                    Runnable task;
+                    while((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    selector.select();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while(it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if(!key.isValid()) {
+                            continue;
+                        }
+                        if(key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if(key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if(key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+                } catch (IOException ex) {
+                    Logger.getLogger(NioGameServer.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+            //server stopped, close every connection of this thread
+            for(SelectionKey key: new ArrayList<SelectionKey>(selector.keys())) {
+                if(key.attachment() instanceof NioConnection) {
+                    ((NioConnection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignore) {}
+            BufferPool.DIRECT.release(readBuffer);
+        }
+    }
+}
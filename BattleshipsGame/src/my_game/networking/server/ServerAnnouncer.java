@@ -0,0 +1,108 @@
+package my_game.networking.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketTimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.packets.PacketFrame;
+import my_game.networking.packets.impl.ServerInfoPacket;
+
+/**
+ * Announces a server on the LAN discovery multicast group. The server info
+ * frame is built once, and again only when the information changes. It is
+ * sent to the group every ANNOUNCE_INTERVAL, and also right away when a
+ * client sends a discovery probe to the group.
+ * <p>
+ * The answer to a probe goes to the group rather than to the client, so 
+ * every client listening at that moment gets it, including clients running
+ * on the same machine and sharing the discovery port.
+ */
+public class ServerAnnouncer implements Runnable {
+    
+    /** Smallest delay between two announcements, limits probe floods. */
+    private static final int MIN_INTERVAL = 100;
+    
+    private volatile byte[] info;
+    private final InetAddress group;
+    private final MulticastSocket socket;
+    private final Thread thread;
+    private volatile boolean running;
+    
+    /**
+     * Joins the discovery group.
+     * @param info The information announced.
+     * @throws IOException If the multicast socket can not be opened, in which
+     * case the server can still be reached directly or through a scan.
+     */
+    public ServerAnnouncer(ServerInfoPacket info) throws IOException {
+        this.info = info.getData();
+        this.group = InetAddress.getByName(Constants.DISCOVERY_GROUP);
+        this.socket = new MulticastSocket(Constants.DISCOVERY_PORT);
+        //null joins on the interface the system picks for multicast
+        socket.joinGroup(new InetSocketAddress(group, Constants.DISCOVERY_PORT), null);
+        this.thread = new Thread(this, "ServerAnnouncer");
+        thread.setDaemon(true);
+    }
+    
+    /**
+     * Announces new information from now on.
+     * @param info
+     */
+    public void setInfo(ServerInfoPacket info) {
+        this.info = info.getData();
+    }
+    
+    public void start() {
+        running = true;
+        thread.start();
+    }
+    
+    public void stop() {
+        running = false;
+        socket.close();
+    }
+    
+    public void run() {
+        byte[] buffer = new byte[Constants.MAX_DATAGRAM_SIZE];
+        long lastAnnounce = 0;
+        long nextAnnounce = 0;
+        while(running) {
+            try {
+                long now = System.currentTimeMillis();
+                if(now >= nextAnnounce) {
+                    announce();
+                    lastAnnounce = now;
+                    nextAnnounce = now + Constants.ANNOUNCE_INTERVAL;
+                }
+                socket.setSoTimeout((int) Math.max(1, nextAnnounce - now));
+                DatagramPacket datagram = new DatagramPacket(buffer, buffer.length);
+                socket.receive(datagram);
+                PacketFrame frame = PacketFrame.read(new DataInputStream(
+                        new ByteArrayInputStream(buffer, 0, datagram.getLength())));
+                if(frame.getType() == PacketTypes.DISCOVERY) {
+                    //answer soon, but not more often than MIN_INTERVAL
+                    nextAnnounce = Math.min(nextAnnounce, lastAnnounce + MIN_INTERVAL);
+                }
+            } catch(SocketTimeoutException ignore) {
+            } catch(IOException ex) {
+                //other traffic on the group which is not a frame, or the socket was closed
+                if(running && socket.isClosed()) {
+                    Logger.getLogger(ServerAnnouncer.class.getName()).log(Level.SEVERE, null, ex);
+                    running = false;
+                }
+            }
+        }
+    }
+    
+    private void announce() throws IOException {
+        byte[] info = this.info;
+        socket.send(new DatagramPacket(info, info.length, group, Constants.DISCOVERY_PORT));
+    }
+}
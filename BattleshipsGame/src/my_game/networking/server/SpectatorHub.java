@@ -0,0 +1,281 @@
+package my_game.networking.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import my_game.models.game_components.GameState;
+import my_game.networking.BufferPool;
+import my_game.networking.packets.impl.GameStatePacket;
+import my_game.util.Misc;
+
+/**
+ * Streams the match hosted by a GameServer to spectators. Every state
+ * published is encoded once, as a full game state showing everything, and
+ * the same frame is written to every spectator. States are held back for a
+ * number of turns before being shown, so spectators can not tell a player
+ * what the other one is doing.
+ * <p>
+ * Each spectator is written to by its own thread from a short queue. A
+ * spectator which can not keep up skips ahead to the latest state, and one
+ * stuck on a write for longer than SPECTATOR_WRITE_TIMEOUT is dropped, so
+ * spectators never slow down the players.
+ */
+public class SpectatorHub {
+
+    private final CopyOnWriteArrayList<Spectator> spectators = new CopyOnWriteArrayList<Spectator>();
+    /** Number of turns states are held back before being shown. */
+    private int delay = Constants.SPECTATOR_DELAY;
+    /** States published and not shown yet, oldest first. */
+    private final LinkedList<HeldFrame> held = new LinkedList<HeldFrame>();
+    /** Number of times the turn went to the other player. */
+    private int turns;
+    /** Player whose turn it was in the last state published, -1 before the first one. */
+    private int lastPlayerTurn = -1;
+    /** Last state shown, sent to spectators as they join. */
+    private SharedFrame latest;
+
+    /**
+     * Sets the number of turns states are held back before being shown to
+     * spectators.
+     * @param delay 0 to show them right away.
+     */
+    public synchronized void setDelay(int delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * @return The number of spectators watching.
+     */
+    public int getSpectatorCount() {
+        return spectators.size();
+    }
+
+    /**
+     * Shows a state to the spectators, once the delay has passed. The state
+     * is encoded right away and can be modified afterwards. Nothing is
+     * encoded while nobody is watching, the turns are only counted.
+     * @param gs
+     */
+    public synchronized void publish(GameState gs) {
+        if(gs.getPlayerTurn() != lastPlayerTurn) {
+            if(lastPlayerTurn >= 0) {
+                turns++;
+            }
+            lastPlayerTurn = gs.getPlayerTurn();
+        }
+        if(!spectators.isEmpty()) {
+            SharedFrame frame = SharedFrame.encode(new GameStatePacket(gs));
+            if(frame != null) {
+                held.add(new HeldFrame(frame, turns));
+            }
+        }
+        while(!held.isEmpty() && held.getFirst().turn + delay <= turns) {
+            show(held.removeFirst().frame);
+        }
+    }
+
+    /**
+     * Hands a frame to every spectator and keeps it for the ones joining later.
+     * @param frame A frame holding one reference for this hub.
+     */
+    private synchronized void show(SharedFrame frame) {
+        if(latest != null) {
+            latest.release();
+        }
+        latest = frame;
+        for(Spectator s: spectators) {
+            s.offer(frame);
+        }
+    }
+
+    /**
+     * Starts streaming the match to a spectator, beginning with the last
+     * state shown.
+     * @param socket Connection of the spectator, closed when it is dropped.
+     * @param username
+     */
+    public synchronized void add(Socket socket, String username) {
+        Spectator s;
+        try {
+            s = new Spectator(socket, username);
+        } catch(IOException ex) {
+            Logger.getLogger(SpectatorHub.class.getName()).log(Level.SEVERE, null, ex);
+            close(socket);
+            return;
+        }
+        spectators.add(s);
+        if(latest != null) {
+            s.offer(latest);
+        }
+        s.start();
+        Misc.log(username + " is now spectating.");
+    }
+
+    /**
+     * Drops every spectator and stops the hub.
+     */
+    public synchronized void stop() {
+        for(Spectator s: spectators) {
+            s.drop();
+        }
+        for(HeldFrame h: held) {
+            h.frame.release();
+        }
+        held.clear();
+        if(latest != null) {
+            latest.release();
+            latest = null;
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            Logger.getLogger(SpectatorHub.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * An encoded frame shared by every spectator. Its pooled buffer is never
+     * written again once encoded, and is given back to the pool when the last
+     * reference is released.
+     */
+    static class SharedFrame {
+
+        private final ByteBuffer buffer;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private SharedFrame(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @param packet
+         * @return A frame holding one reference, null if the packet could not be encoded.
+         */
+        static SharedFrame encode(GameStatePacket packet) {
+            ByteBuffer buffer = packet.encode();
+            return (buffer == null) ? null : new SharedFrame(buffer);
+        }
+
+        void retain() {
+            references.incrementAndGet();
+        }
+
+        void release() {
+            if(references.decrementAndGet() == 0) {
+                BufferPool.HEAP.release(buffer);
+            }
+        }
+
+        /**
+         * Writes the frame, without moving the position of the shared buffer.
+         * @param out
+         * @throws IOException
+         */
+        void writeTo(OutputStream out) throws IOException {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            out.flush();
+        }
+    }
+
+    /**
+     * A frame waiting for its turns to pass.
+     */
+    private static class HeldFrame {
+
+        final SharedFrame frame;
+        /** Number of turns when the state was published. */
+        final int turn;
+
+        HeldFrame(SharedFrame frame, int turn) {
+            this.frame = frame;
+            this.turn = turn;
+        }
+    }
+
+    /**
+     * A connected spectator and the thread writing to it.
+     */
+    private class Spectator extends Thread {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final BlockingQueue<SharedFrame> queue = new ArrayBlockingQueue<SharedFrame>(Constants.SPECTATOR_QUEUE_SIZE);
+        /** Time the write in progress started, 0 when not writing. */
+        private volatile long writingSince;
+        private volatile boolean dropped;
+
+        Spectator(Socket socket, String username) throws IOException {
+            super("Spectator-" + username);
+            setDaemon(true);
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        /**
+         * Queues a frame for this spectator, skipping the frames it did not
+         * write yet if the queue is full.
+         * @param frame
+         */
+        void offer(SharedFrame frame) {
+            long since = writingSince;
+            if(since != 0 && System.currentTimeMillis() - since > Constants.SPECTATOR_WRITE_TIMEOUT) {
+                Misc.log(getName() + " is not reading, dropping it.");
+                drop();
+                return;
+            }
+            frame.retain();
+            while(!queue.offer(frame)) {
+                //every frame is a whole state, the older ones are not needed
+                SharedFrame skipped = queue.poll();
+                if(skipped != null) {
+                    skipped.release();
+                }
+            }
+        }
+
+        /**
+         * Stops writing to this spectator and closes its connection.
+         */
+        void drop() {
+            dropped = true;
+            spectators.remove(this);
+            close(socket);
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while(!dropped) {
+                    SharedFrame frame = queue.take();
+                    writingSince = System.currentTimeMillis();
+                    try {
+                        frame.writeTo(out);
+                    } finally {
+                        writingSince = 0;
+                        frame.release();
+                    }
+                }
+            } catch(InterruptedException ignore) {
+            } catch(IOException ex) {
+                Misc.log(getName() + " disconnected.");
+            }
+            drop();
+            SharedFrame frame;
+            while((frame = queue.poll()) != null) {
+                frame.release();
+            }
+        }
+    }
+}
@@ -14,10 +14,10 @@ import my_game.util.Vector2;
 public class AttackTest {
 	public static void main(String[] args) {
 		ArrayList<Vector2> positions = new ArrayList<Vector2>();
-	    Vector2 p1 = new Vector2(3,1);        
-	    Vector2 p2 = new Vector2(4,1); 
-	    Vector2 p3 = new Vector2(5,1); 
-	    Vector2 p4 = new Vector2(6,1);         
+	    Vector2 p1 = Vector2.of(3,1);        
+	    Vector2 p2 = Vector2.of(4,1); 
+	    Vector2 p3 = Vector2.of(5,1); 
+	    Vector2 p4 = Vector2.of(6,1);         
 	    positions.add(p1);
 	    positions.add(p2);
 	    positions.add(p3);
@@ -27,11 +27,11 @@ public class AttackTest {
 	    Destroyer s1 = new Destroyer(1,positions, sd);
 	    
 	    ArrayList<Vector2> positions2 = new ArrayList<Vector2>();
-	    Vector2 p6 = new Vector2(10,1);
-	    Vector2 p7 = new Vector2(11,1); 
-	    Vector2 p8 = new Vector2(12,1); 
-	    Vector2 p9 = new Vector2(13,1); 
-	    Vector2 p10 = new Vector2(14,1);         
+	    Vector2 p6 = Vector2.of(10,1);
+	    Vector2 p7 = Vector2.of(11,1); 
+	    Vector2 p8 = Vector2.of(12,1); 
+	    Vector2 p9 = Vector2.of(13,1); 
+	    Vector2 p10 = Vector2.of(14,1);         
 	    positions2.add(p6);
 	    positions2.add(p7);
 	    positions2.add(p8);
@@ -4,7 +4,9 @@
  */
 package my_game.tests;
 
+import java.io.IOException;
 import my_game.models.game_components.CoralReef;
+import my_game.networking.packets.PacketFrame;
 import my_game.networking.packets.impl.CoralReefPacket;
 
 /**
@@ -13,13 +15,13 @@ import my_game.networking.packets.impl.CoralReefPacket;
  */
 public class CoralReefPacketTest {
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         CoralReef reef = new CoralReef();
         System.out.println("Generated reef: \n" + reef);
         CoralReefPacket packet = new CoralReefPacket(reef);
         byte[] data = packet.getData();
         //now generate a new packet out of the data and check if the obtained reef matches the initial one
-        packet = new CoralReefPacket(data);
+        packet = new CoralReefPacket(PacketFrame.decode(data).getPayload());
         reef.setReef(packet.reef);
         System.out.println("Received reef: \n" + reef);
     }
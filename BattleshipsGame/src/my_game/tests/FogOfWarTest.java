@@ -0,0 +1,158 @@
+package my_game.tests;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import my_game.gui.GameGUI.Action;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameObject;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameState.GamePhase;
+import my_game.models.game_components.Map;
+import my_game.models.game_components.Ship;
+import my_game.models.game_components.ShipUnit;
+import my_game.models.game_components.StateSnapshot;
+import my_game.models.player_components.Player;
+import my_game.util.Positions;
+import my_game.util.Vector2;
+
+/**
+ * Checks that the view of a state built for a player keeps its own fleet
+ * and only the enemy ships its radar and sonar can see, and that a move
+ * bringing enemy ships into view still matches the state of the mover.
+ */
+public class FogOfWarTest {
+
+    public static void main(String[] args) {
+        Player blue = new Player("blue", "", InetAddress.getLoopbackAddress(), 0, 0);
+        Player red = new Player("red", "", InetAddress.getLoopbackAddress(), 0, 0);
+        GameState gs = new GameState(new Player[] {blue, red}, new CoralReef(), 0, "FogOfWarTest");
+        int redId = gs.getPlayer(1).getID();
+        StateSnapshot full = StateSnapshot.capture(gs);
+
+        //the fleets start at their own bases, out of each other's range
+        GameState view = StateSnapshot.capture(gs, 0).toGameState();
+        System.out.println("Own ships kept: " + check(countShips(view, blue.getID()) == countShips(gs, blue.getID())));
+        System.out.println("Enemy ships out of range dropped: " + check(countShips(view, redId) == 0));
+
+        //a single visible cell of an enemy ship shows the whole ship, and only that ship
+        boolean[][] visible = new boolean[Map.WIDTH][Map.HEIGHT];
+        Ship seen = null;
+        for(int x = Map.WIDTH - 1; x >= 0 && seen == null; x--) {
+            for(int y = 0; y < Map.HEIGHT && seen == null; y++) {
+                GameObject o = gs.getMap().getObjectAt(Vector2.of(x, y));
+                if(o instanceof ShipUnit && ((ShipUnit) o).getShip().getPlayerID() == redId) {
+                    seen = ((ShipUnit) o).getShip();
+                    visible[x][y] = true;
+                }
+            }
+        }
+        view = full.project(0, visible).toGameState();
+        HashSet<Vector2> kept = shipCells(view, redId);
+        HashSet<Vector2> expected = new HashSet<Vector2>();
+        for(Vector2 p: seen.getPositions()) {
+            expected.add(p);
+        }
+        System.out.println("Enemy ship in range kept whole: " + check(kept.equals(expected)));
+        System.out.println("Other enemy ships dropped: " + check(countShips(view, redId) == 1));
+
+        //the fleets sail at each other, each mover holding only its view;
+        //the reefs are random, so several games are played if need be
+        int reveals = 0;
+        boolean matched = true;
+        for(int game = 0; game < GAMES && reveals < REVEALS; game++) {
+            gs = new GameState(new Player[] {blue, red}, new CoralReef(), 0, "FogOfWarTest");
+            gs.setGamePhase(GamePhase.PlayerTurns);
+            for(int turn = 0; turn < TURNS && !gs.gameOver() && reveals < REVEALS; turn++) {
+                int mover = gs.getPlayerTurn();
+                ActionCommand move = closingMove(gs, mover);
+                boolean[][] before = gs.getMap().getVisibility(mover).toArray();
+                GameState moverView = StateSnapshot.capture(gs, mover).toGameState();
+                int moverId = gs.getPlayer(mover).getID();
+                int enemyId = gs.getPlayer(1 - mover).getID();
+                int inSight = countSeen(gs, enemyId, before);
+                //a move stopped by something out of sight rightly leaves the mover out of step
+                if(move != null && gs.applyAction(move) && moverView.applyAction(move)
+                        && shipCells(gs, moverId).equals(shipCells(moverView, moverId))
+                        && countSeen(gs, enemyId, gs.getMap().getVisibility(mover).toArray()) > inSight) {
+                    reveals++;
+                    matched &= StateSnapshot.matches(gs, mover, before, StateSnapshot.capture(moverView).checksum());
+                }
+                if(gs.getPlayerTurn() == mover) {
+                    gs.applyAction(ActionCommand.endTurn());
+                }
+            }
+        }
+        System.out.println("Moves bringing enemy ships into view match: " + check(reveals > 0 && matched));
+    }
+
+    /** Games played at most to see REVEALS moves bringing enemy ships into view. */
+    private static final int GAMES = 20;
+    private static final int REVEALS = 5;
+    /** Turns played at most in a game, the fleets see each other well before. */
+    private static final int TURNS = 100;
+
+    private static String check(boolean ok) {
+        return ok ? "OK" : "FAILED";
+    }
+
+    /**
+     * @param gs
+     * @param playerIndex
+     * @return The move of a ship of the player which gets it closest to an
+     * enemy ship, null if no ship can move.
+     */
+    private static ActionCommand closingMove(GameState gs, int playerIndex) {
+        HashSet<Vector2> enemy = shipCells(gs, gs.getPlayer(1 - playerIndex).getID());
+        ActionCommand best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for(Vector2 p: shipCells(gs, gs.getPlayer(playerIndex).getID())) {
+            Ship s = ((ShipUnit) gs.getMap().getObjectAt(p)).getShip();
+            Positions moves = gs.getMap().prepareMoveShip(s);
+            if(moves == null) {
+                continue;
+            }
+            for(Vector2 target: moves.getAll()) {
+                for(Vector2 e: enemy) {
+                    int distance = Math.abs(e.x - target.x) + Math.abs(e.y - target.y);
+                    if(distance < bestDistance) {
+                        bestDistance = distance;
+                        best = new ActionCommand(Action.Move, s, target);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int countSeen(GameState gs, int playerId, boolean[][] visible) {
+        int seen = 0;
+        for(Vector2 p: shipCells(gs, playerId)) {
+            if(visible[p.x][p.y]) {
+                seen++;
+            }
+        }
+        return seen;
+    }
+
+    private static HashSet<Vector2> shipCells(GameState gs, int playerId) {
+        HashSet<Vector2> cells = new HashSet<Vector2>();
+        for(int x = 0; x < Map.WIDTH; x++) {
+            for(int y = 0; y < Map.HEIGHT; y++) {
+                GameObject o = gs.getMap().getObjectAt(Vector2.of(x, y));
+                if(o instanceof ShipUnit && ((ShipUnit) o).getShip().getPlayerID() == playerId) {
+                    cells.add(Vector2.of(x, y));
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static int countShips(GameState gs, int playerId) {
+        HashSet<Ship> ships = new HashSet<Ship>();
+        for(Vector2 p: shipCells(gs, playerId)) {
+            ships.add(((ShipUnit) gs.getMap().getObjectAt(p)).getShip());
+        }
+        return ships.size();
+    }
+}
@@ -0,0 +1,140 @@
+package my_game.tests;
+
+import java.net.InetAddress;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import my_game.controller.GameLobby;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameState;
+import my_game.models.player_components.Player;
+import my_game.networking.Heartbeat;
+import my_game.networking.NetEntityListener;
+import my_game.networking.NetMetrics;
+import my_game.networking.NetworkEntity;
+import my_game.networking.packets.Packet;
+
+/**
+ * Races a player being queued by the lobby against the same player leaving,
+ * the way a connection closed right after its hello does, alone in the queue
+ * and with an opponent waiting. Once both are done the player must be
+ * neither queued nor in a session.
+ */
+public class GameLobbyTest {
+
+    private static final int ROUNDS = 100000;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("Leaving while queued alone: " + check(race(false)));
+        System.out.println("Leaving while paired with a waiting player: " + check(race(true)));
+    }
+
+    private static String check(boolean ok) {
+        return ok ? "OK" : "FAILED";
+    }
+
+    /**
+     * @param opponent True to have a player with the same rating waiting.
+     * @return True if the lobby was left clean after every round.
+     */
+    private static boolean race(boolean opponent) throws InterruptedException {
+        final CyclicBarrier start = new CyclicBarrier(2);
+        final Round[] round = new Round[1];
+        Thread leaving = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for(int i = 0; i < ROUNDS; i++) {
+                        start.await();
+                        //as a connection which is closed
+                        round[0].closed.set(true);
+                        round[0].lobby.leave(round[0].player);
+                        start.await();
+                    }
+                } catch(InterruptedException ex) {
+                } catch(BrokenBarrierException ex) {
+                }
+            }
+        });
+        leaving.start();
+        boolean ok = true;
+        try {
+            for(int i = 0; i < ROUNDS; i++) {
+                Round r = new Round();
+                SimulatedPlayer waiting = new SimulatedPlayer();
+                if(opponent) {
+                    r.lobby.enqueue(waiting, 1000);
+                }
+                round[0] = r;
+                start.await();
+                //as a connection logging in, which checks it was not closed meanwhile
+                if(!r.closed.get()) {
+                    r.lobby.enqueue(r.player, 1000);
+                    if(r.closed.get()) {
+                        r.lobby.leave(r.player);
+                    }
+                }
+                start.await();
+                r.lobby.matchWaiting();
+                boolean clean = r.lobby.getSession(r.player) == null;
+                if(opponent) {
+                    //the opponent is either still waiting or alone in its session
+                    boolean queued = r.lobby.getSession(waiting) == null;
+                    clean &= r.lobby.getQueuedCount() == (queued ? 1 : 0) && r.lobby.getQueueLength() == (queued ? 1 : 0);
+                    if(queued) {
+                        //still in the queue, and paired with the next player
+                        r.lobby.enqueue(new SimulatedPlayer(), 1000);
+                        clean &= r.lobby.getSession(waiting) != null && r.lobby.getQueuedCount() == 0
+                                && r.lobby.getQueueLength() == 0;
+                    }
+                } else {
+                    clean &= r.lobby.getQueuedCount() == 0 && r.lobby.getQueueLength() == 0;
+                }
+                ok &= clean;
+            }
+        } catch(BrokenBarrierException ex) {
+            ok = false;
+        }
+        leaving.join();
+        return ok;
+    }
+
+    /**
+     * One round of the race: a new lobby and player.
+     */
+    private static class Round {
+
+        final GameLobby lobby = new GameLobby();
+        final SimulatedPlayer player = new SimulatedPlayer();
+        final AtomicBoolean closed = new AtomicBoolean();
+    }
+
+    /**
+     * A network entity which sends nothing, only used by the lobby.
+     */
+    private static class SimulatedPlayer implements NetworkEntity {
+
+        private final Player player = new Player("player", "", InetAddress.getLoopbackAddress(), 0, 0);
+
+        public void setOpponent(Player p) { }
+        public void sendGameStateToListeners(GameState gs) { }
+        public void sendGameState(GameState gs) { }
+        public void sendAction(ActionCommand action, GameState gs) { }
+        public void sendActionToListeners(ActionCommand action, int checksum) { }
+        public void actionApplied(GameState gs) { }
+        public void requestGameState() { }
+        public void sendVote(boolean vote) { }
+        public Player getConnectedPlayer() { return player; }
+        public InetAddress getRemote() { return player.getIP(); }
+        public void sendCoralReefToListeners(CoralReef reef) { }
+        public void sendVoteToListeners(boolean vote) { }
+        public void addNetListener(NetEntityListener l) { }
+        public void removeNetListener(NetEntityListener l) { }
+        public void invalidPacket() { }
+        public void sendPacket(Packet packet) { }
+        public int getPendingPacketCount() { return 0; }
+        public Heartbeat getHeartbeat() { return null; }
+        public NetMetrics getMetrics() { return null; }
+        public void stopNet() { }
+    }
+}
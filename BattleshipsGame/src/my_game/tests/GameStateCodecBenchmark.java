@@ -0,0 +1,111 @@
+package my_game.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameStateCodec;
+import my_game.models.game_components.StateSnapshot;
+import my_game.models.player_components.Message;
+import my_game.models.player_components.Player;
+import my_game.networking.server.Constants;
+import my_game.util.Misc;
+
+/**
+ * Compares the size and the encoding and decoding time of a GameState written
+ * with Java serialization and with GameStateCodec, and checks that the codec
+ * gives back the same state.
+ */
+public class GameStateCodecBenchmark {
+    
+    private static final int WARMUP = 200;
+    private static final int ROUNDS = 2000;
+    
+    public static void main(String[] args) {
+        try {
+            Player p0 = new Player("Player0", "", InetAddress.getLocalHost(), Constants.SERVER_PORT, 0);
+            Player p1 = new Player("Player1", "", InetAddress.getLocalHost(), Constants.SERVER_PORT, 0);
+            GameState gs = new GameState(new Player[] {p0, p1}, new CoralReef(), 0, "BenchmarkState");
+            for(int i = 0; i < 20; i++) {
+                gs.addMessage(new Message("Message number " + i, Message.MessageType.Chat, null));
+            }
+            
+            byte[] serialized = serialize(gs);
+            byte[] compact = encode(gs);
+            System.out.println("Serialized size: " + serialized.length + " bytes");
+            System.out.println("Compact size:    " + compact.length + " bytes");
+            
+            GameState decoded = decode(compact);
+            boolean same = StateSnapshot.capture(gs).checksum() == StateSnapshot.capture(decoded).checksum();
+            System.out.println("Decoded state matches: " + same);
+            
+            for(int i = 0; i < WARMUP; i++) {
+                deserialize(serialize(gs));
+                decode(encode(gs));
+            }
+            
+            long start = System.nanoTime();
+            for(int i = 0; i < ROUNDS; i++) {
+                serialize(gs);
+            }
+            long serializeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int i = 0; i < ROUNDS; i++) {
+                deserialize(serialized);
+            }
+            long deserializeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int i = 0; i < ROUNDS; i++) {
+                encode(gs);
+            }
+            long encodeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int i = 0; i < ROUNDS; i++) {
+                decode(compact);
+            }
+            long decodeTime = System.nanoTime() - start;
+            
+            System.out.println("Serialization:   write " + micros(serializeTime) + "us, read " + micros(deserializeTime) + "us");
+            System.out.println("GameStateCodec:  write " + micros(encodeTime) + "us, read " + micros(decodeTime) + "us");
+        } catch(IOException e) {
+            Misc.log("GameStateCodec benchmark failed: " + e.getMessage());
+        } catch(ClassNotFoundException e) {
+            Misc.log("GameStateCodec benchmark failed: " + e.getMessage());
+        }
+    }
+    
+    private static long micros(long total) {
+        return total / ROUNDS / 1000;
+    }
+    
+    private static byte[] serialize(GameState gs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(gs);
+        out.close();
+        return bytes.toByteArray();
+    }
+    
+    private static GameState deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+        GameState gs = (GameState) in.readObject();
+        in.close();
+        return gs;
+    }
+    
+    private static byte[] encode(GameState gs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameStateCodec.write(gs, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+    
+    private static GameState decode(byte[] data) throws IOException {
+        return GameStateCodec.read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+}
@@ -4,12 +4,14 @@
  */
 package my_game.tests;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import my_game.models.game_components.CoralReef;
 import my_game.models.game_components.GameState;
 import my_game.models.game_components.MoveDescription;
 import my_game.models.player_components.Player;
+import my_game.networking.packets.PacketFrame;
 import my_game.networking.packets.impl.GameStatePacket;
 import my_game.networking.server.Constants;
 import my_game.util.Misc;
@@ -34,13 +36,15 @@ public class GameStatePacketTest {
             GameStatePacket gsp = new GameStatePacket(gs);
             byte[] packedState = gsp.getData();
                     
-            gsp = new GameStatePacket(packedState);
+            gsp = new GameStatePacket(PacketFrame.decode(packedState).getPayload());
             GameState newState = gsp.getGameState();
             //output the new game state to see if it was properly conserved in transmission
             System.out.println("NEW GAME STATE:");
             System.out.println(newState);
         } catch(UnknownHostException e) {
             Misc.log("GameStatePacket test failed due to unknown host exception.");
+        } catch(IOException e) {
+            Misc.log("GameStatePacket test failed, the packet could not be decoded: " + e.getMessage());
         }
     }
 }
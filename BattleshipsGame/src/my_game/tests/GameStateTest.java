@@ -55,20 +55,20 @@ public class GameStateTest {
         /* TEST positionShip */
   /*  
         System.out.println( "reposition ship[10] at (0,20). ");
-        newPosition = new Vector2(0,20);
+        newPosition = Vector2.of(0,20);
         gs.positionShip(p0ships[10], newPosition);
          
         System.out.println(map.toString());     
 
         System.out.println( "reposition ship[5] at (6,5). should not change anything.");        
-        newPosition = new Vector2(6,5);
+        newPosition = Vector2.of(6,5);
         gs.positionShip(p0ships[5], newPosition);       
      
         System.out.println(map.toString());          
 
 
         System.out.println( "reposition player1 ship[8] at (29,20).");              
-        newPosition = new Vector2(29,20);
+        newPosition = Vector2.of(29,20);
         gs.positionShip(p1ships[8], newPosition);       
 
         System.out.println(map.toString());            
@@ -122,7 +122,7 @@ public class GameStateTest {
         }
         
         
-        map.layMine(s, new Vector2(8,11));
+        map.layMine(s, Vector2.of(8,11));
         System.out.println(map.toString());       
         Ship s2 = p0ships[3]; 
         Positions p = map.prepareMoveShip(s2);
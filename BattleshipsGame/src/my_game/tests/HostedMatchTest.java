@@ -0,0 +1,243 @@
+package my_game.tests;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import my_game.controller.GameLobby;
+import my_game.controller.HostedMatch;
+import my_game.controller.MatchSession;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameObject;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameState.GamePhase;
+import my_game.models.game_components.Map;
+import my_game.models.game_components.Ship;
+import my_game.models.game_components.ShipUnit;
+import my_game.models.player_components.Player;
+import my_game.networking.LoopbackConnection;
+import my_game.networking.NetEntityListener;
+import my_game.networking.NetworkEntity;
+import my_game.util.Vector2;
+
+/**
+ * Plays the start of a match hosted by a HostedMatch between two clients
+ * connected through loopback connections: the reef vote, the merge of the
+ * ship positions, and the relay or rejection of the actions.
+ */
+public class HostedMatchTest {
+
+    /** Time in milliseconds to wait for something which should arrive. */
+    private static final int TIMEOUT = 5000;
+    /** Time in milliseconds to wait for something which should not arrive. */
+    private static final int QUIET = 500;
+
+    public static void main(String[] args) throws InterruptedException {
+        Player server = new Player("server", "", InetAddress.getLoopbackAddress(), 0, 0);
+        Client blue = new Client(server, new Player("blue", "", InetAddress.getLoopbackAddress(), 0, 0));
+        Client red = new Client(server, new Player("red", "", InetAddress.getLoopbackAddress(), 0, 0));
+        GameLobby lobby = new GameLobby();
+        lobby.addLobbyListener(new GameLobby.LobbyListener() {
+            private boolean started;
+
+            public synchronized void onPlayerJoined(MatchSession session, NetworkEntity player) {
+                if(session.isFull() && !started) {
+                    started = true;
+                    new HostedMatch(session, "HostedMatchTest").start();
+                }
+            }
+
+            public void onPlayerLeft(MatchSession session, NetworkEntity player) {
+            }
+        });
+        lobby.enqueue(blue.seat);
+        lobby.enqueue(red.seat);
+
+        //a refused reef is replaced, the same for both players
+        CoralReef reef = blue.next(CoralReef.class);
+        System.out.println("Both players get the reef: " + check(sameReef(reef, red.next(CoralReef.class))));
+        blue.end.sendVote(false);
+        boolean refused = Boolean.FALSE.equals(blue.next(Boolean.class)) && Boolean.FALSE.equals(red.next(Boolean.class));
+        reef = blue.next(CoralReef.class);
+        System.out.println("Refused reef replaced: " + check(refused && sameReef(reef, red.next(CoralReef.class))));
+        blue.end.sendVote(true);
+        red.end.sendVote(true);
+        boolean accepted = Boolean.TRUE.equals(blue.next(Boolean.class)) && Boolean.TRUE.equals(red.next(Boolean.class));
+        GameState blueState = blue.next(GameState.class);
+        GameState redState = red.next(GameState.class);
+        System.out.println("Game state sent once both accept: " + check(accepted && blueState != null && redState != null));
+        if(blueState == null || redState == null) {
+            return;
+        }
+
+        //each player moves one of its ships, the server merges both fleets
+        Vector2[] blueMoved = blue.positionShip(blueState);
+        Vector2[] redMoved = red.positionShip(redState);
+        blue.end.sendGameState(blueState);
+        red.end.sendGameState(redState);
+        blueState = blue.next(GameState.class);
+        redState = red.next(GameState.class);
+        if(blueState == null || redState == null || blueMoved == null || redMoved == null) {
+            System.out.println("Ship positions merged: " + check(false));
+            return;
+        }
+        System.out.println("Ship positions merged: " + check(blue.hasShipAt(blueState, blueMoved) && red.hasShipAt(blueState, redMoved)
+                && blue.hasShipAt(redState, blueMoved) && red.hasShipAt(redState, redMoved)));
+        blueState.setGamePhase(GamePhase.PlayerTurns);
+        redState.setGamePhase(GamePhase.PlayerTurns);
+
+        Client mover = blueState.getCurrentPlayer().equals(blue.player) ? blue : red;
+        Client waiting = (mover == blue) ? red : blue;
+        GameState moverState = (mover == blue) ? blueState : redState;
+        GameState waitingState = (mover == blue) ? redState : blueState;
+
+        //out of turn: refused, the sender gets the server's state
+        waiting.end.sendAction(ActionCommand.endTurn(), waitingState);
+        boolean resent = waiting.next(GameState.class) != null;
+        System.out.println("Action out of turn refused: " + check(resent && mover.nothing()));
+
+        //in turn and consistent: passed on to the other player
+        moverState.applyAction(ActionCommand.endTurn());
+        mover.end.sendAction(ActionCommand.endTurn(), moverState);
+        ActionCommand relayed = waiting.next(ActionCommand.class);
+        System.out.println("Action passed on: " + check(relayed != null && mover.nothing()));
+        if(relayed != null) {
+            waitingState.applyAction(relayed);
+        }
+
+        //in turn and valid but leading elsewhere: passed on, the sender gets the server's state
+        GameState stale = new GameState(waitingState);
+        waitingState.applyAction(ActionCommand.endTurn());
+        waiting.end.sendAction(ActionCommand.endTurn(), stale);
+        GameState toSender = waiting.next(GameState.class);
+        ActionCommand toOther = mover.next(ActionCommand.class);
+        System.out.println("Valid action out of step passed on: " + check(toOther != null && waiting.nothing() && mover.nothing()));
+        System.out.println("Server's state sent to its sender: " + check(toSender != null
+                && toSender.getPlayerTurn() == waitingState.getPlayerTurn()));
+
+        blue.end.stopNet();
+        red.end.stopNet();
+    }
+
+    private static String check(boolean ok) {
+        return ok ? "OK" : "FAILED";
+    }
+
+    private static boolean sameReef(CoralReef a, CoralReef b) {
+        if(a == null || b == null) {
+            return false;
+        }
+        for(int x = 0; x < CoralReef.WIDTH; x++) {
+            for(int y = 0; y < CoralReef.HEIGHT; y++) {
+                if(a.hasObstacleIn(x, y) != b.hasObstacleIn(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A player connected to the match, which records what it receives.
+     */
+    private static class Client implements NetEntityListener {
+
+        final Player player;
+        /** The end the match uses for this player. */
+        final LoopbackConnection seat;
+        /** The end of the player. */
+        final LoopbackConnection end;
+        private final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+
+        Client(Player server, Player player) {
+            this.player = player;
+            LoopbackConnection[] ends = LoopbackConnection.pair(server, player);
+            this.seat = ends[0];
+            this.end = ends[1];
+            end.addNetListener(this);
+        }
+
+        /**
+         * @param type
+         * @return The next thing received, null if it is not of that type or
+         * nothing arrived in time.
+         */
+        <T> T next(Class<T> type) throws InterruptedException {
+            Object o = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            return type.isInstance(o) ? type.cast(o) : null;
+        }
+
+        /**
+         * @return True if nothing else arrives.
+         */
+        boolean nothing() throws InterruptedException {
+            return received.poll(QUIET, TimeUnit.MILLISECONDS) == null;
+        }
+
+        /**
+         * Moves the first ship of this player to another spot of its side.
+         * @param gs
+         * @return The new positions of the ship, null if it could not be moved.
+         */
+        Vector2[] positionShip(GameState gs) {
+            Ship ship = ships(gs)[0];
+            Vector2[] before = ship.getPositions();
+            int side = (before[0].x < 15) ? 0 : 29;
+            //the lanes along the edge of the map, north and south of the base
+            for(int y: new int[] {5, 20}) {
+                if(gs.positionShip(ship, Vector2.of(side, y)) && !Arrays.equals(before, ship.getPositions())) {
+                    return ship.getPositions();
+                }
+            }
+            return null;
+        }
+
+        boolean hasShipAt(GameState gs, Vector2[] positions) {
+            for(Ship s: ships(gs)) {
+                if(Arrays.equals(s.getPositions(), positions)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Ship[] ships(GameState gs) {
+            int id = gs.getPlayer(0).equals(player) ? gs.getPlayer(0).getID() : gs.getPlayer(1).getID();
+            LinkedHashSet<Ship> ships = new LinkedHashSet<Ship>();
+            for(int x = 0; x < Map.WIDTH; x++) {
+                for(int y = 0; y < Map.HEIGHT; y++) {
+                    GameObject o = gs.getMap().getObjectAt(Vector2.of(x, y));
+                    if(o instanceof ShipUnit && ((ShipUnit) o).getShip().getPlayerID() == id) {
+                        ships.add(((ShipUnit) o).getShip());
+                    }
+                }
+            }
+            return ships.toArray(new Ship[ships.size()]);
+        }
+
+        public void onConnected() {
+        }
+
+        public void onReefReceive(CoralReef reef) {
+            received.add(reef);
+        }
+
+        public void onVoteReceive(boolean vote) {
+            received.add(vote);
+        }
+
+        public void onGameStateReceive(GameState gs) {
+            received.add(gs);
+        }
+
+        public void onActionReceive(ActionCommand action, int checksum) {
+            received.add(action);
+        }
+
+        public void onDisconnected() {
+        }
+    }
+}
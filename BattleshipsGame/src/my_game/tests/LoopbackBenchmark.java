@@ -0,0 +1,122 @@
+package my_game.tests;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameState;
+import my_game.models.player_components.Player;
+import my_game.networking.LoopbackConnection;
+import my_game.networking.NetEntityListener;
+import my_game.networking.packets.impl.VotePacket;
+
+/**
+ * Measures the round trip of an action between the two ends of a loopback
+ * connection, and checks that packets given to sendPacket() arrive in order
+ * with the rest.
+ */
+public class LoopbackBenchmark {
+
+    private static final int WARMUP = 2000;
+    private static final int ROUNDS = 20000;
+    private static final int VOTES = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        Player host = new Player("host", "", InetAddress.getLoopbackAddress(), 0, 0);
+        Player client = new Player("client", "", InetAddress.getLoopbackAddress(), 0, 0);
+        final GameState gs = new GameState(new Player[] {host, client}, new CoralReef(), 0, "LoopbackBenchmark");
+        LoopbackConnection[] ends = LoopbackConnection.pair(host, client);
+        final LoopbackConnection hostEnd = ends[0];
+        final LoopbackConnection clientEnd = ends[1];
+
+        //the client sends every action back, the host counts them
+        final Object lock = new Object();
+        final int[] received = new int[1];
+        final List<Boolean> votes = new ArrayList<Boolean>();
+        clientEnd.addNetListener(new Listener() {
+            @Override
+            public void onActionReceive(ActionCommand action, int checksum) {
+                clientEnd.sendAction(action, gs);
+            }
+
+            @Override
+            public void onVoteReceive(boolean vote) {
+                synchronized(lock) {
+                    votes.add(vote);
+                    lock.notifyAll();
+                }
+            }
+        });
+        hostEnd.addNetListener(new Listener() {
+            @Override
+            public void onActionReceive(ActionCommand action, int checksum) {
+                synchronized(lock) {
+                    received[0]++;
+                    lock.notifyAll();
+                }
+            }
+        });
+
+        ActionCommand action = ActionCommand.endTurn();
+        roundTrips(hostEnd, action, gs, lock, received, WARMUP);
+        long start = System.nanoTime();
+        roundTrips(hostEnd, action, gs, lock, received, ROUNDS);
+        long time = System.nanoTime() - start;
+        System.out.println("Action round trip: " + (time / ROUNDS / 1000.0) + "us");
+
+        //encoded votes and votes handed over as objects, alternating
+        for(int i = 0; i < VOTES; i++) {
+            hostEnd.sendPacket(new VotePacket(true));
+            hostEnd.sendVote(false);
+        }
+        synchronized(lock) {
+            while(votes.size() < 2 * VOTES) {
+                lock.wait();
+            }
+        }
+        boolean ordered = true;
+        for(int i = 0; i < votes.size(); i++) {
+            ordered &= votes.get(i) == (i % 2 == 0);
+        }
+        System.out.println("Packets received in the order sent: " + (ordered ? "OK" : "FAILED"));
+        hostEnd.stopNet();
+    }
+
+    private static void roundTrips(LoopbackConnection end, ActionCommand action, GameState gs,
+            Object lock, int[] received, int rounds) throws InterruptedException {
+        for(int i = 0; i < rounds; i++) {
+            synchronized(lock) {
+                int before = received[0];
+                end.sendAction(action, gs);
+                while(received[0] == before) {
+                    lock.wait();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ignores everything, the listeners above override what they need.
+     */
+    private static class Listener implements NetEntityListener {
+
+        public void onConnected() {
+        }
+
+        public void onReefReceive(CoralReef reef) {
+        }
+
+        public void onVoteReceive(boolean vote) {
+        }
+
+        public void onGameStateReceive(GameState gs) {
+        }
+
+        public void onActionReceive(ActionCommand action, int checksum) {
+        }
+
+        public void onDisconnected() {
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package my_game.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import my_game.gui.GameGUI.Action;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.Base;
+import my_game.models.game_components.BaseUnit;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.CoralUnit;
+import my_game.models.game_components.GameObject;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameState.GamePhase;
+import my_game.models.game_components.Map;
+import my_game.models.game_components.Mine;
+import my_game.models.game_components.Ship;
+import my_game.models.game_components.ShipUnit;
+import my_game.models.game_components.StateSnapshot;
+import my_game.models.player_components.Player;
+import my_game.models.ships_impl.MineLayer;
+import my_game.models.ships_impl.RadarBoat;
+import my_game.util.Positions;
+import my_game.util.TurnPositions;
+import my_game.util.Vector2;
+
+/**
+ * Plays random games and checks, after every action, what the map answers
+ * from its bitboards, its radar kept up to date one ship at a time and its
+ * mine zone index against scans of the grid and the ships, the way the map
+ * used to find them. The copies of the final state, made with the copy
+ * constructor, with serialization and from a snapshot, are checked too.
+ */
+public class MapScanTest {
+
+    private static final int GAMES = 30;
+    private static final int TURNS = 60;
+
+    private static int checks = 0;
+    private static int mismatches = 0;
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        Random random = new Random(361);
+        Player p0 = new Player("Player0", "", InetAddress.getLoopbackAddress(), 0, 0);
+        Player p1 = new Player("Player1", "", InetAddress.getLoopbackAddress(), 0, 0);
+        for(int game = 0; game < GAMES; game++) {
+            GameState gs = new GameState(new Player[] {p0, p1}, reef(random), 0, "MapScanTest");
+            gs.setGamePhase(GamePhase.ShipPositioning);
+            for(int i = 0; i < 6; i++) {
+                Ship[] fleet = random.nextBoolean() ? gs.getShipsP0() : gs.getShipsP1();
+                gs.positionShip(fleet[random.nextInt(fleet.length)], Vector2.of(random.nextBoolean() ? 0 : Map.WIDTH - 1, random.nextInt(Map.HEIGHT)));
+                compare("game " + game + " positioning " + i, gs);
+            }
+            gs.setGamePhase(GamePhase.PlayerTurns);
+            for(int turn = 0; turn < TURNS && !gs.gameOver(); turn++) {
+                ActionCommand action = randomAction(gs, random);
+                try {
+                    gs.applyAction(action);
+                } catch(RuntimeException ex) {
+                    //some rules fail on odd positions, the map is still checked
+                    gs.nextTurn();
+                }
+                compare("game " + game + " turn " + turn + " " + action, gs);
+            }
+            compare("game " + game + " copy", new GameState(gs));
+            compare("game " + game + " serialized", serialize(gs));
+            compare("game " + game + " snapshot", StateSnapshot.capture(gs).toGameState());
+        }
+        System.out.println(checks + " checks, " + mismatches + " mismatches: " + ((mismatches == 0) ? "OK" : "FAILED"));
+    }
+
+    /**
+     * @param random
+     * @return A reef drawn from the seeded random, CoralReef draws its own.
+     */
+    private static CoralReef reef(Random random) {
+        CoralReef reef = new CoralReef();
+        boolean[][] cells = new boolean[CoralReef.WIDTH][CoralReef.HEIGHT];
+        for(int x = 0; x < CoralReef.WIDTH; x++) {
+            for(int y = 0; y < CoralReef.HEIGHT; y++) {
+                cells[x][y] = random.nextDouble() < 0.15;
+            }
+        }
+        reef.setReef(cells);
+        return reef;
+    }
+
+    private static ActionCommand randomAction(GameState gs, Random random) {
+        Ship[] fleet = (gs.getPlayerTurn() == 0) ? gs.getShipsP0() : gs.getShipsP1();
+        if(fleet.length == 0) {
+            return ActionCommand.endTurn();
+        }
+        Ship s = fleet[random.nextInt(fleet.length)];
+        Map map = gs.getMap();
+        switch(random.nextInt(7)) {
+            case 0:
+            case 1:
+                Positions moves = map.prepareMoveShip(s);
+                if(moves != null && !moves.getAll().isEmpty()) {
+                    return new ActionCommand(Action.Move, s, pick(moves.getAll(), random));
+                }
+                break;
+            case 2:
+                TurnPositions turns = map.prepareTurnShip(s);
+                if(turns.getAll() != null && !turns.getAll().isEmpty()) {
+                    return new ActionCommand(Action.Turn, s, pick(turns.getAll(), random));
+                }
+                break;
+            case 3:
+                ArrayList<Vector2> cannon = s.getCannonPositions();
+                if(!cannon.isEmpty()) {
+                    return new ActionCommand(Action.CannonAttack, s, pick(cannon, random));
+                }
+                break;
+            case 4:
+                for(Ship m: fleet) {
+                    Vector2[] zone = (m instanceof MineLayer) ? map.getFilteredMineDropZone(m) : null;
+                    if(zone != null && zone.length > 0) {
+                        return new ActionCommand(Action.Mine, m, zone[random.nextInt(zone.length)]);
+                    }
+                }
+                break;
+            case 5:
+                ArrayList<Vector2> torpedo = s.getWeapons().contains("torpedo") ? GameState.getTorpedoPositions(s) : null;
+                if(torpedo != null && !torpedo.isEmpty()) {
+                    return new ActionCommand(Action.TorpedoAttack, s, pick(torpedo, random));
+                }
+                break;
+            default:
+                if(s instanceof RadarBoat) {
+                    return new ActionCommand(Action.LongRadar, s, null);
+                }
+                break;
+        }
+        return ActionCommand.endTurn();
+    }
+
+    private static Vector2 pick(ArrayList<Vector2> positions, Random random) {
+        return positions.get(random.nextInt(positions.size()));
+    }
+
+    private static GameState serialize(GameState gs) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(gs);
+        out.close();
+        return (GameState) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+    private static void check(String what, boolean answer, boolean scanned) {
+        checks++;
+        if(answer != scanned && mismatches++ < 20) {
+            System.out.println("Mismatch, " + what + ": map says " + answer + ", scan says " + scanned);
+        }
+    }
+
+    private static void compare(String tag, GameState gs) {
+        Map map = gs.getMap();
+        Ship[][] fleets = new Ship[][] {gs.getShipsP0(), gs.getShipsP1()};
+        for(int x = 0; x < Map.WIDTH; x++) {
+            for(int y = 0; y < Map.HEIGHT; y++) {
+                Vector2 p = Vector2.of(x, y);
+                GameObject o = map.getObjectAt(p);
+                check(tag + ", mine at " + p, map.isMine(p), o instanceof Mine);
+                check(tag + ", mine zone at " + p, map.isMineZone(p), scanMineZone(map, p));
+                check(tag + ", clear at " + p, map.isClear(p), o == null);
+                check(tag + ", coral at " + p, map.isCoral(p), o instanceof CoralUnit);
+                check(tag + ", ship at " + p, map.isShip(p), o instanceof ShipUnit);
+                for(Ship[] fleet: fleets) {
+                    for(Ship s: fleet) {
+                        check(tag + ", " + s.getShipType() + " sees an obstacle at " + p, map.isVisibleObstacle(s, p), scanVisible(map, s, p));
+                        check(tag + ", " + s.getShipType() + " misses an obstacle at " + p, map.isHiddenObstacle(s, p), scanHidden(map, s, p));
+                    }
+                }
+            }
+        }
+        for(Ship[] fleet: fleets) {
+            for(Ship s: fleet) {
+                if(s instanceof MineLayer) {
+                    checks++;
+                    String zone = Arrays.asList(map.getFilteredMineDropZone(s)).toString();
+                    String scanned = scanDropZone(map, (MineLayer) s);
+                    if(!zone.equals(scanned) && mismatches++ < 20) {
+                        System.out.println("Mismatch, " + tag + ", drop zone: map says " + zone + ", scan says " + scanned);
+                    }
+                }
+            }
+        }
+        for(int index = 0; index < 2; index++) {
+            boolean[][] radar = map.getRadarVisibility(index);
+            boolean[][] sonar = map.getSonarVisibility(index);
+            boolean[][] scannedRadar = scanRadar(map, gs.getPlayer(index).getID(), fleets[index]);
+            boolean[][] scannedSonar = scanSonar(fleets[index]);
+            for(int x = 0; x < Map.WIDTH; x++) {
+                for(int y = 0; y < Map.HEIGHT; y++) {
+                    check(tag + ", radar of player" + index + " at " + x + "," + y, radar[x][y], scannedRadar[x][y]);
+                    check(tag + ", sonar of player" + index + " at " + x + "," + y, sonar[x][y], scannedSonar[x][y]);
+                }
+            }
+        }
+    }
+
+    private static boolean inRadar(Ship s, Vector2 p) {
+        for(Vector2 v: s.getRadarPositions()) {
+            if(v.equals(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean scanMineZone(Map map, Vector2 p) {
+        for(int x = 0; x < Map.WIDTH; x++) {
+            for(int y = 0; y < Map.HEIGHT; y++) {
+                GameObject o = map.getObjectAt(Vector2.of(x, y));
+                if(o instanceof Mine && Arrays.asList(((Mine) o).getMineZone()).contains(p)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean scanVisible(Map map, Ship s, Vector2 p) {
+        GameObject o = map.getObjectAt(p);
+        if(o == null) {
+            return false;
+        }
+        if(o instanceof BaseUnit || o instanceof CoralUnit) {
+            return true;
+        }
+        if(o instanceof ShipUnit) {
+            return ((ShipUnit) o).getShip().getPlayerID() == s.getPlayerID() || inRadar(s, p);
+        }
+        if(o instanceof Mine) {
+            return s.getShipType() == Ship.ShipType.MineLayer && inRadar(s, p);
+        }
+        return false;
+    }
+
+    private static boolean scanHidden(Map map, Ship s, Vector2 p) {
+        GameObject o = map.getObjectAt(p);
+        if(o == null) {
+            return false;
+        }
+        for(ShipUnit unit: s.getShipUnits()) {
+            if(unit.getPosition().equals(p)) {
+                return false;
+            }
+        }
+        return o instanceof ShipUnit && !inRadar(s, p);
+    }
+
+    private static String scanDropZone(Map map, MineLayer mineLayer) {
+        ArrayList<Vector2> zone = new ArrayList<Vector2>();
+        for(Vector2 p: mineLayer.getMineDropPickupZone()) {
+            GameObject o = map.getObjectAt(p);
+            if(o != null) {
+                if(!(o instanceof Mine)) {
+                    continue;
+                }
+                //a mine to pick up, and it can be listed twice like the map does
+                zone.add(p);
+            }
+            Mine mine = new Mine();
+            mine.setPosition(p);
+            int occupied = 0;
+            for(Vector2 q: mine.getMineZone()) {
+                if(map.getObjectAt(q) != null) {
+                    occupied++;
+                }
+            }
+            if(occupied <= 1) {
+                zone.add(p);
+            }
+        }
+        return zone.toString();
+    }
+
+    private static boolean[][] scanRadar(Map map, int playerId, Ship[] fleet) {
+        boolean[][] visible = Map.generateRadarVisibility(new ArrayList<Ship>(Arrays.asList(fleet)));
+        for(int x = 0; x < Map.WIDTH; x++) {
+            for(int y = 0; y < Map.HEIGHT; y++) {
+                GameObject o = map.getObjectAt(Vector2.of(x, y));
+                if(o instanceof CoralUnit) {
+                    visible[x][y] = true;
+                } else if(o instanceof BaseUnit) {
+                    Base base = ((BaseUnit) o).getBase();
+                    for(BaseUnit unit: base.getBaseUnits()) {
+                        Vector2 q = unit.getPosition();
+                        visible[q.x][q.y] = true;
+                        if(base.getPlayerID() == playerId) {
+                            //the own base also sees the cells next to it
+                            int[][] around = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+                            for(int[] d: around) {
+                                int ax = q.x + d[0];
+                                int ay = q.y + d[1];
+                                if(ax >= 0 && ax < Map.WIDTH && ay >= 0 && ay < Map.HEIGHT) {
+                                    visible[ax][ay] = true;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return visible;
+    }
+
+    private static boolean[][] scanSonar(Ship[] fleet) {
+        boolean[][] visible = new boolean[Map.WIDTH][Map.HEIGHT];
+        for(Ship s: fleet) {
+            if(s.getShipType() == Ship.ShipType.MineLayer) {
+                for(Vector2 v: s.getRadarPositions()) {
+                    visible[v.x][v.y] = true;
+                }
+            }
+        }
+        return visible;
+    }
+}
@@ -0,0 +1,112 @@
+package my_game.tests;
+
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import my_game.controller.GameLobby;
+import my_game.controller.MatchSession;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.CoralReef;
+import my_game.models.game_components.GameState;
+import my_game.models.player_components.Player;
+import my_game.networking.Heartbeat;
+import my_game.networking.NetEntityListener;
+import my_game.networking.NetMetrics;
+import my_game.networking.NetworkEntity;
+import my_game.networking.packets.Packet;
+
+/**
+ * Measures the matchmaking of a GameLobby with a queue of QUEUED waiting
+ * players: the queue is filled with ratings too far apart to be paired,
+ * then each arriving player is paired with one of them and replaced by a
+ * new waiting player, so the queue keeps its size. Every session is left
+ * as soon as it starts, like a match which is over right away.
+ */
+public class MatchmakingBenchmark {
+
+    private static final int QUEUED = 100000;
+    private static final int ARRIVALS = 500000;
+    /** Rating distance between two waiting players, far wider than the window. */
+    private static final int SPACING = 1000;
+
+    public static void main(String[] args) {
+        final GameLobby lobby = new GameLobby();
+        final AtomicInteger sessions = new AtomicInteger();
+        lobby.addLobbyListener(new GameLobby.LobbyListener() {
+            public void onPlayerJoined(MatchSession session, NetworkEntity player) {
+                if(session.isFull()) {
+                    sessions.incrementAndGet();
+                    for(NetworkEntity p: session.getPlayers()) {
+                        lobby.leave(p);
+                    }
+                }
+            }
+
+            public void onPlayerLeft(MatchSession session, NetworkEntity player) {
+            }
+        });
+
+        long start = System.nanoTime();
+        for(int i = 0; i < QUEUED; i++) {
+            lobby.enqueue(new SimulatedPlayer(), i * SPACING);
+        }
+        long fillTime = System.nanoTime() - start;
+        System.out.println("Queued " + lobby.getQueuedCount() + " players in " + millis(fillTime) + "ms, "
+                + sessions.get() + " sessions started");
+
+        Random random = new Random(361);
+        start = System.nanoTime();
+        for(int i = 0; i < ARRIVALS; i++) {
+            int waiting = random.nextInt(QUEUED);
+            //close enough to the waiting player to be paired right away
+            lobby.enqueue(new SimulatedPlayer(), waiting * SPACING + random.nextInt(81) - 40);
+            //another player takes the place of the one paired
+            lobby.enqueue(new SimulatedPlayer(), waiting * SPACING);
+        }
+        long pairTime = System.nanoTime() - start;
+        System.out.println("Paired " + sessions.get() + " sessions in " + millis(pairTime) + "ms: "
+                + (long) (ARRIVALS / (pairTime / 1e9)) + " pairings/s, "
+                + String.format("%.2f", pairTime / 1e3 / ARRIVALS) + "us per pairing and replacement");
+        System.out.println("Queue size kept: " + (lobby.getQueuedCount() == QUEUED) + " (" + lobby.getQueuedCount() + ")");
+
+        start = System.nanoTime();
+        int started = lobby.matchWaiting();
+        System.out.println("Sweep of the queue: " + started + " sessions started in " + millis(System.nanoTime() - start) + "ms");
+        System.out.println("Sessions still open: " + lobby.getSessionCount());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1e6);
+    }
+
+    /**
+     * A queued player without a connection.
+     */
+    private static class SimulatedPlayer implements NetworkEntity {
+
+        private static final AtomicInteger COUNT = new AtomicInteger();
+        private final Player player = new Player("player" + COUNT.incrementAndGet(), "",
+                InetAddress.getLoopbackAddress(), 0, 0);
+
+        public void setOpponent(Player p) { }
+        public void sendGameStateToListeners(GameState gs) { }
+        public void sendGameState(GameState gs) { }
+        public void sendAction(ActionCommand action, GameState gs) { }
+        public void sendActionToListeners(ActionCommand action, int checksum) { }
+        public void actionApplied(GameState gs) { }
+        public void requestGameState() { }
+        public void sendVote(boolean vote) { }
+        public Player getConnectedPlayer() { return player; }
+        public InetAddress getRemote() { return player.getIP(); }
+        public void sendCoralReefToListeners(CoralReef reef) { }
+        public void sendVoteToListeners(boolean vote) { }
+        public void addNetListener(NetEntityListener l) { }
+        public void removeNetListener(NetEntityListener l) { }
+        public void invalidPacket() { }
+        public void sendPacket(Packet packet) { }
+        public int getPendingPacketCount() { return 0; }
+        public Heartbeat getHeartbeat() { return null; }
+        public NetMetrics getMetrics() { return null; }
+        public void stopNet() { }
+    }
+}
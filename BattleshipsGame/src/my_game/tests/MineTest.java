@@ -9,8 +9,8 @@ import my_game.util.Vector2;
 public class MineTest {
 	public static void main(String[] args) {
 		ArrayList<Vector2> positions = new ArrayList<Vector2>();
-	    Vector2 p1 = new Vector2(3,1);        
-	    Vector2 p2 = new Vector2(4,1);         
+	    Vector2 p1 = Vector2.of(3,1);        
+	    Vector2 p2 = Vector2.of(4,1);         
 	    positions.add(p1);
 	    positions.add(p2);
 	    
@@ -0,0 +1,144 @@
+package my_game.tests;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import my_game.models.player_components.Player;
+import my_game.networking.ReplayBuffer;
+import my_game.networking.packets.Packet;
+import my_game.networking.packets.Packet.PacketTypes;
+import my_game.networking.packets.PacketFrame;
+import my_game.networking.packets.impl.HelloPacket;
+import my_game.networking.packets.impl.ResumePacket;
+import my_game.networking.packets.impl.VotePacket;
+import my_game.networking.server.Constants;
+import my_game.networking.server.GameServer;
+
+/**
+ * Checks which packets a replay buffer sends again once the oldest are
+ * dropped, then resumes a session with a game server: only the client
+ * giving back the token of the server's hello gets the session and the
+ * packets it missed.
+ */
+public class ResumeSessionTest {
+
+    /** Time in milliseconds to wait for the server. */
+    private static final int TIMEOUT = 5000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        //the buffer keeps the last 4 of the 10 packets sent
+        ReplayBuffer replay = new ReplayBuffer(4);
+        for(int i = 0; i < 10; i++) {
+            replay.record(new VotePacket(true));
+        }
+        List<Packet> missed = replay.after(6);
+        boolean kept = missed != null && missed.size() == 4;
+        for(int i = 0; kept && i < missed.size(); i++) {
+            kept = missed.get(i).getSequence() == 7 + i;
+        }
+        System.out.println("Packets still kept sent again: " + check(kept));
+        System.out.println("Dropped packets missed: " + check(replay.after(5) == null && replay.after(0) == null));
+        missed = replay.after(10);
+        System.out.println("Nothing missed: " + check(missed != null && missed.isEmpty()));
+        System.out.println("Packets never sent missed: " + check(replay.after(11) == null));
+
+        Player host = new Player("host", "", InetAddress.getLoopbackAddress(), Constants.SERVER_PORT, 0);
+        Player guest = new Player("guest", "", InetAddress.getLoopbackAddress(), Constants.SERVER_PORT, 0);
+        GameServer server = new GameServer(host, "ResumeSessionTest", false);
+        try {
+            //the guest says hello, gets the token and loses its connection
+            Connection c = new Connection();
+            new HelloPacket(guest.getUsername()).writeTo(c.out);
+            PacketFrame hello = c.next(PacketTypes.HELLO);
+            long token = (hello == null) ? 0 : new HelloPacket(hello.getPayload()).getSessionToken();
+            System.out.println("Session token sent with the hello: " + check(token != 0));
+            boolean suspended = waitFor(server, true);
+            c.close();
+            suspended &= waitFor(server, false);
+            System.out.println("Session suspended: " + check(suspended));
+            //missed by the guest
+            server.sendVote(true);
+
+            //the id of the guest alone does not resume the session
+            c = new Connection();
+            new ResumePacket(guest.getID(), token + 1, 0, true).writeTo(c.out);
+            PacketFrame answer = c.next(PacketTypes.RESUME);
+            c.close();
+            System.out.println("Resume without the token refused: " + check(answer != null
+                    && !new ResumePacket(answer.getPayload()).isAccepted()));
+
+            c = new Connection();
+            new ResumePacket(guest.getID(), token, 0, true).writeTo(c.out);
+            answer = c.next(PacketTypes.RESUME);
+            System.out.println("Resume with the token accepted: " + check(answer != null
+                    && new ResumePacket(answer.getPayload()).isAccepted()));
+            System.out.println("Missed packet sent again: " + check(c.next(PacketTypes.VOTE) != null));
+            c.close();
+        } finally {
+            server.stopServer();
+        }
+    }
+
+    private static String check(boolean ok) {
+        return ok ? "OK" : "FAILED";
+    }
+
+    /**
+     * @param server
+     * @param connected
+     * @return True if the server has or has not a client connected in time.
+     */
+    private static boolean waitFor(GameServer server, boolean connected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while(server.clientIsConnected() != connected || server.getConnectedPlayer() == null) {
+            if(System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * A connection to the server, written and read as a client would.
+     */
+    private static class Connection {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), Constants.SERVER_PORT);
+            socket.setSoTimeout(TIMEOUT);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(socket.getOutputStream());
+        }
+
+        /**
+         * @param type
+         * @return The next frame of that type received, skipping the pings
+         * and the like, null if none arrives in time.
+         */
+        PacketFrame next(PacketTypes type) {
+            try {
+                while(true) {
+                    PacketFrame frame = PacketFrame.read(in);
+                    if(frame.getType() == type) {
+                        return frame;
+                    }
+                }
+            } catch(IOException ex) {
+                return null;
+            }
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+}
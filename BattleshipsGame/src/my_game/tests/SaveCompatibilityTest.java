@@ -0,0 +1,74 @@
+package my_game.tests;
+
+import java.io.File;
+import java.io.IOException;
+import my_game.models.game_components.ActionCommand;
+import my_game.models.game_components.GameObject;
+import my_game.models.game_components.GameState;
+import my_game.models.game_components.GameState.GamePhase;
+import my_game.models.game_components.Ship;
+import my_game.models.game_components.ShipUnit;
+import my_game.models.game_components.StateSnapshot;
+import my_game.util.Vector2;
+
+/**
+ * Loads a game saved by the first release, serialized: blue and red in the
+ * turns phase, blue's kamikaze boat moved to 1,21. The loaded game has to
+ * be playable and saved again as the current release does.
+ * <p>
+ * Run from the BattleshipsGame folder, or give the path of the save.
+ */
+public class SaveCompatibilityTest {
+
+    private static final String SAVE = "src/my_game/tests/baseline.sav";
+
+    public static void main(String[] args) throws IOException {
+        GameState gs = GameState.loadGame(args.length > 0 ? args[0] : SAVE);
+        boolean loaded = gs != null && gs.getPhase() == GamePhase.PlayerTurns
+                && gs.getPlayer(0).getUsername().equals("blue") && gs.getPlayer(1).getUsername().equals("red");
+        System.out.println("Save of the first release loaded: " + check(loaded));
+        if(!loaded) {
+            return;
+        }
+        GameObject moved = gs.getMap().getObjectAt(Vector2.of(1, 21));
+        System.out.println("Ship moved before the save found: " + check(moved instanceof ShipUnit
+                && ((ShipUnit) moved).getShip().getShipType() == Ship.ShipType.KamikazeBoat
+                && ((ShipUnit) moved).getShip().getPlayerID() == gs.getPlayer(0).getID()));
+        System.out.println("Ships numbered in their fleet: " + check(numbered(gs, 0, gs.getShipsP0())
+                && numbered(gs, 1, gs.getShipsP1())));
+
+        int checksum = StateSnapshot.capture(gs).checksum();
+        File again = File.createTempFile("SaveCompatibilityTest", "");
+        again.delete();
+        GameState reloaded = null;
+        try {
+            gs.saveGame(again.getPath());
+            reloaded = GameState.loadGame(again.getPath() + ".sav");
+        } finally {
+            new File(again.getPath() + ".sav").delete();
+        }
+        System.out.println("Saved again and loaded back: " + check(reloaded != null
+                && StateSnapshot.capture(reloaded).checksum() == checksum));
+
+        System.out.println("Loaded game playable: " + check(gs.applyAction(ActionCommand.endTurn()) && gs.getPlayerTurn() == 1));
+    }
+
+    private static String check(boolean ok) {
+        return ok ? "OK" : "FAILED";
+    }
+
+    /**
+     * @param gs
+     * @param playerIndex
+     * @param fleet
+     * @return True if every ship of the fleet is found by its id, its index.
+     */
+    private static boolean numbered(GameState gs, int playerIndex, Ship[] fleet) {
+        for(int i = 0; i < fleet.length; i++) {
+            if(gs.findShip(playerIndex, i) != fleet[i]) {
+                return false;
+            }
+        }
+        return fleet.length > 0;
+    }
+}
@@ -49,6 +49,11 @@ public class ServerListPopulationTest {
                 System.out.println("Address: " + si.ipAddress.getHostAddress());
                 System.out.println();
             }
+
+            public void removeServerInfo(ServerInfo si) {
+                System.out.println("Server info expired: " + si.serverName);
+                System.out.println();
+            }
         });
         try {
             t.join();
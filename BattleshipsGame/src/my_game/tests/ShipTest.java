@@ -24,11 +24,11 @@ import my_game.util.TurnPositions;
 public class ShipTest {
     public static void main(String[] args) {
         ArrayList<Vector2> positions = new ArrayList<Vector2>();
-        Vector2 p1 = new Vector2(3,1);        
-        Vector2 p2 = new Vector2(4,1); 
-        Vector2 p3 = new Vector2(5,1); 
-        Vector2 p4 = new Vector2(6,1); 
-        Vector2 p5 = new Vector2(7,1);         
+        Vector2 p1 = Vector2.of(3,1);        
+        Vector2 p2 = Vector2.of(4,1); 
+        Vector2 p3 = Vector2.of(5,1); 
+        Vector2 p4 = Vector2.of(6,1); 
+        Vector2 p5 = Vector2.of(7,1);         
         positions.add(p1);
    /*     positions.add(p2);
         positions.add(p3);
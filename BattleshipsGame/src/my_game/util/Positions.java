@@ -41,6 +41,15 @@ public class Positions {
         return list;
     }
     
+    /**
+     * @param v
+     * @return True if the position is in one of the lists.
+     */
+    public boolean contains(Vector2 v) {
+        return (forward != null && forward.contains(v)) || (backward != null && backward.contains(v))
+                || (left != null && left.contains(v)) || (right != null && right.contains(v));
+    }
+    
     public ArrayList<Vector2> getBackward(){
         return this.backward;
     }
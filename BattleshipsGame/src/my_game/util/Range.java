@@ -1,6 +1,7 @@
 package my_game.util;
 
 public class Range implements java.io.Serializable {
+	private static final long serialVersionUID = 4351199894293803318L;
 
 	private Vector2 topLeft;
 	private Vector2 topRight;
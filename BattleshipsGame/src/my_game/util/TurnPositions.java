@@ -56,6 +56,16 @@ public class TurnPositions {
         return list;
     }
     
+    /**
+     * @param v
+     * @return True if the position is one of the highlight positions (see
+     * getAll()).
+     */
+    public boolean contains(Vector2 v) {
+        return (left != null && left.contains(v)) || (right != null && right.contains(v))
+                || (backward != null && backward.contains(v));
+    }
+    
     public ArrayList<Vector2> getLeft(){
         return this.left;
     }
@@ -1,37 +1,103 @@
 package my_game.util;
 
-public class Vector2 implements java.io.Serializable {
+import my_game.models.game_components.Map;
 
-	public int x;
-	public int y;
-	
-    public Vector2(int x, int y) {
+/**
+ * A cell coordinate. Vectors can not be changed, so they are shared instead
+ * of copied: of() gives the same instance for every cell of the map grid,
+ * which is made once, and a new one only for a position off the grid.
+ */
+public final class Vector2 implements java.io.Serializable {
+    private static final long serialVersionUID = 6363974870078573335L;
+
+    /** The vector of every cell of the grid, by x then y. */
+    private static final Vector2[] CELLS = new Vector2[Map.WIDTH * Map.HEIGHT];
+    static {
+        for (int x = 0; x < Map.WIDTH; x++) {
+            for (int y = 0; y < Map.HEIGHT; y++) {
+                CELLS[x * Map.HEIGHT + y] = new Vector2(x, y);
+            }
+        }
+    }
+
+    public final int x;
+    public final int y;
+
+    private Vector2(int x, int y) {
         this.x = x;
-	this.y = y;
+        this.y = y;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @return The shared vector of the cell if it is on the grid, otherwise a
+     * new vector.
+     */
+    public static Vector2 of(int x, int y) {
+        if (x >= 0 && x < Map.WIDTH && y >= 0 && y < Map.HEIGHT) {
+            return CELLS[x * Map.HEIGHT + y];
+        }
+        return new Vector2(x, y);
+    }
+
+    /**
+     * Packs a coordinate into an int, x in the high 16 bits and y in the low
+     * 16 bits. Both have to fit in a short.
+     * @param x
+     * @param y
+     * @return
+     */
+    public static int pack(int x, int y) {
+        return (x << 16) | (y & 0xFFFF);
+    }
+
+    /**
+     * @return This vector packed into an int (see pack(int, int)).
+     */
+    public int pack() {
+        return pack(x, y);
+    }
+
+    /**
+     * @param packed A vector packed by pack().
+     * @return The vector.
+     */
+    public static Vector2 unpack(int packed) {
+        return of(packed >> 16, (short) packed);
     }
 
-    public Vector2(Vector2 position) {
-        this.x = position.x;
-        this.y = position.y;
+    /**
+     * @return this - v
+     */
+    public Vector2 minus(Vector2 v) {
+        return of(this.x - v.x, this.y - v.y);
     }
-    
-    public boolean equals(Vector2 v){
-        if (this.x == v.x && this.y == v.y){
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
             return true;
-        }else{
+        }
+        if (!(o instanceof Vector2)) {
             return false;
         }
+        Vector2 v = (Vector2) o;
+        return this.x == v.x && this.y == v.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return pack(x, y);
     }
-    
+
     /**
-     * this = this - v
-     * @param v 
+     * A received vector is replaced by the shared one of its cell.
      */
-    public void sub(Vector2 v) {
-        this.x = this.x - v.x;
-        this.y = this.y - v.y;
+    private Object readResolve() {
+        return of(x, y);
     }
-    
+
     @Override
     public String toString() {
         return x + "," + y;